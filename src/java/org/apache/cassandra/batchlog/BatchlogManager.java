@@ -47,6 +47,7 @@ import org.apache.cassandra.hints.Hint;
 import org.apache.cassandra.hints.HintsService;
 import org.apache.cassandra.io.util.DataInputBuffer;
 import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.metrics.BatchlogMetrics;
 import org.apache.cassandra.net.MessageIn;
 import org.apache.cassandra.net.MessageOut;
 import org.apache.cassandra.net.MessagingService;
@@ -64,6 +65,8 @@ public class BatchlogManager implements BatchlogManagerMBean
     public static final String MBEAN_NAME = "org.apache.cassandra.db:type=BatchlogManager";
     private static final long REPLAY_INTERVAL = 10 * 1000; // milliseconds
     static final int DEFAULT_PAGE_SIZE = 128;
+    // The serialized size of the mutations of the batches being replayed at once.
+    static final long MAX_REPLAY_BYTES_IN_FLIGHT = 4 * 1024 * 1024;
 
     private static final Logger logger = LoggerFactory.getLogger(BatchlogManager.class);
     public static final BatchlogManager instance = new BatchlogManager();
@@ -208,13 +211,14 @@ public class BatchlogManager implements BatchlogManagerMBean
 
     private void processBatchlogEntries(UntypedResultSet batches, int pageSize, RateLimiter rateLimiter)
     {
-        int positionInPage = 0;
-        ArrayList<ReplayingBatch> unfinishedBatches = new ArrayList<>(pageSize);
+        // The batches sent out for replay without waiting for them, so that one stuck batch doesn't affect others,
+        // oldest first.
+        Deque<ReplayingBatch> unfinishedBatches = new ArrayDeque<>();
+        long bytesInFlight = 0;
 
         Set<InetAddress> hintedNodes = new HashSet<>();
-        Set<UUID> replayedBatches = new HashSet<>();
+        List<UUID> replayedBatches = new ArrayList<>(pageSize);
 
-        // Sending out batches for replay without waiting for them, so that one stuck batch doesn't affect others
         for (UntypedResultSet.Row row : batches)
         {
             UUID id = row.getUUID("id");
@@ -225,48 +229,69 @@ public class BatchlogManager implements BatchlogManagerMBean
                 if (batch.replay(rateLimiter, hintedNodes) > 0)
                 {
                     unfinishedBatches.add(batch);
+                    bytesInFlight += batch.replayedBytes;
+                    BatchlogMetrics.replayBytesInFlight.inc(batch.replayedBytes);
                 }
                 else
                 {
-                    remove(id); // no write mutations were sent (either expired or all CFs involved truncated).
-                    ++totalBatchesReplayed;
+                    // no write mutations were sent (either expired or all CFs involved truncated).
+                    replayedBatches.add(id);
+                    markReplayed(batch);
                 }
             }
             catch (IOException e)
             {
                 logger.warn("Skipped batch replay of {} due to {}", id, e);
-                remove(id);
+                replayedBatches.add(id);
             }
 
-            if (++positionInPage == pageSize)
-            {
-                // We have reached the end of a batch. To avoid keeping more than a page of mutations in memory,
-                // finish processing the page before requesting the next row.
-                finishAndClearBatches(unfinishedBatches, hintedNodes, replayedBatches);
-                positionInPage = 0;
-            }
-        }
+            // To bound the mutations kept in memory, wait for the oldest batches once too many bytes are in flight,
+            // rather than for all the batches of a page, so that the replicas are kept busy.
+            while (bytesInFlight > MAX_REPLAY_BYTES_IN_FLIGHT)
+                bytesInFlight -= finishBatch(unfinishedBatches.poll(), hintedNodes, replayedBatches);
 
-        finishAndClearBatches(unfinishedBatches, hintedNodes, replayedBatches);
+            if (replayedBatches.size() >= pageSize)
+                removeReplayedBatches(replayedBatches, hintedNodes);
+        }
 
-        // to preserve batch guarantees, we must ensure that hints (if any) have made it to disk, before deleting the batches
-        HintsService.instance.flushAndFsyncBlockingly(transform(hintedNodes, StorageService.instance::getHostIdForEndpoint));
+        while (!unfinishedBatches.isEmpty())
+            finishBatch(unfinishedBatches.poll(), hintedNodes, replayedBatches);
 
-        // once all generated hints are fsynced, actually delete the batches
-        replayedBatches.forEach(BatchlogManager::remove);
+        removeReplayedBatches(replayedBatches, hintedNodes);
     }
 
-    private void finishAndClearBatches(ArrayList<ReplayingBatch> batches, Set<InetAddress> hintedNodes, Set<UUID> replayedBatches)
+    private int finishBatch(ReplayingBatch batch, Set<InetAddress> hintedNodes, List<UUID> replayedBatches)
     {
         // schedule hints for timed out deliveries
-        for (ReplayingBatch batch : batches)
-        {
-            batch.finish(hintedNodes);
-            replayedBatches.add(batch.id);
-        }
+        batch.finish(hintedNodes);
+        BatchlogMetrics.replayBytesInFlight.dec(batch.replayedBytes);
+        replayedBatches.add(batch.id);
+        markReplayed(batch);
+        return batch.replayedBytes;
+    }
+
+    private void markReplayed(ReplayingBatch batch)
+    {
+        ++totalBatchesReplayed;
+        BatchlogMetrics.replayedBatches.mark();
+        BatchlogMetrics.replayedBytes.mark(batch.replayedBytes);
+    }
+
+    /**
+     * Deletes the replayed batches, once the hints written for them have made it to disk, so that the progress
+     * of a large replay is kept even if it is interrupted.
+     */
+    private static void removeReplayedBatches(List<UUID> replayedBatches, Set<InetAddress> hintedNodes)
+    {
+        // to preserve batch guarantees, we must ensure that hints (if any) have made it to disk, before deleting the batches
+        if (!hintedNodes.isEmpty())
+            HintsService.instance.flushAndFsyncBlockingly(transform(hintedNodes, StorageService.instance::getHostIdForEndpoint));
+
+        // once all generated hints are fsynced, actually delete the batches
+        replayedBatches.forEach(BatchlogManager::remove);
 
-        totalBatchesReplayed += batches.size();
-        batches.clear();
+        hintedNodes.clear();
+        replayedBatches.clear();
     }
 
     public static long getBatchlogTimeout()
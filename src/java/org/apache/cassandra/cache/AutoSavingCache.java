@@ -164,7 +164,7 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
                 if (size() > 0)
                     logger.info("Completed loading ({} ms; {} keys) {} cache",
                             TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
-                            CacheService.instance.keyCache.size(),
+                            size(),
                             cacheType);
                 es.shutdown();
             }
@@ -184,10 +184,16 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
         if (dataPath.exists() && crcPath.exists())
         {
             DataInputStreamPlus in = null;
+            Loader loader = null;
             try
             {
                 logger.info(String.format("reading saved cache %s", dataPath));
-                in = new DataInputStreamPlus(new LengthAvailableInputStream(new BufferedInputStream(streamFactory.getInputStream(dataPath, crcPath)), dataPath.length()));
+                LengthAvailableInputStream lengthIn = new LengthAvailableInputStream(new BufferedInputStream(streamFactory.getInputStream(dataPath, crcPath)), dataPath.length());
+                in = new DataInputStreamPlus(lengthIn);
+
+                // report the progress of the load like the one of a cache save, and allow to stop it the same way
+                loader = new Loader(lengthIn, dataPath.length());
+                CompactionManager.instance.getMetrics().beginCompaction(loader);
 
                 //Check the schema has not changed since CFs are looked up by name which is ambiguous
                 UUID schemaVersion = new UUID(in.readLong(), in.readLong());
@@ -200,6 +206,12 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
                 ArrayDeque<Future<Pair<K, V>>> futures = new ArrayDeque<Future<Pair<K, V>>>();
                 while (in.available() > 0)
                 {
+                    if (loader.isStopRequested())
+                    {
+                        logger.info("Stopped loading saved cache {}", dataPath);
+                        break;
+                    }
+
                     //ksname and cfname are serialized by the serializers in CacheService
                     //That is delegated there because there are serializer specific conditions
                     //where a cache key is skipped and not written
@@ -255,6 +267,9 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
             }
             finally
             {
+                if (loader != null)
+                    CompactionManager.instance.getMetrics().finishCompaction(loader);
+                cacheLoader.cleanupAfterDeserialize();
                 FileUtils.closeQuietly(in);
             }
         }
@@ -269,6 +284,43 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
         return CompactionManager.instance.submitCacheWrite(getWriter(keysToSave));
     }
 
+    /**
+     * Tracks the progress of a saved cache load, in bytes read from the saved cache file.
+     */
+    private class Loader extends CompactionInfo.Holder
+    {
+        private final LengthAvailableInputStream in;
+        private final CompactionInfo info;
+
+        private Loader(LengthAvailableInputStream in, long length)
+        {
+            this.in = in;
+
+            OperationType type;
+            if (cacheType == CacheService.CacheType.KEY_CACHE)
+                type = OperationType.KEY_CACHE_LOAD;
+            else if (cacheType == CacheService.CacheType.ROW_CACHE)
+                type = OperationType.ROW_CACHE_LOAD;
+            else if (cacheType == CacheService.CacheType.COUNTER_CACHE)
+                type = OperationType.COUNTER_CACHE_LOAD;
+            else
+                type = OperationType.UNKNOWN;
+
+            info = new CompactionInfo(CFMetaData.createFake(SystemKeyspace.NAME, cacheType.toString()),
+                                      type,
+                                      0,
+                                      length,
+                                      "bytes",
+                                      UUIDGen.getTimeUUID());
+        }
+
+        public CompactionInfo getCompactionInfo()
+        {
+            long total = info.getTotal();
+            return info.forProgress(Math.max(0, total - in.remaining()), total);
+        }
+    }
+
     public class Writer extends CompactionInfo.Holder
     {
         private final Iterator<K> keyIterator;
@@ -427,5 +479,12 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
         void serialize(K key, DataOutputPlus out, ColumnFamilyStore cfs) throws IOException;
 
         Future<Pair<K, V>> deserialize(DataInputPlus in, ColumnFamilyStore cfs) throws IOException;
+
+        /**
+         * Called once a load is over, to release any state kept between calls to deserialize().
+         */
+        default void cleanupAfterDeserialize()
+        {
+        }
     }
 }
@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.metrics.CacheMetrics;
+
+/**
+ * Node-wide cache of decompressed chunks of compressed sstables, shared by all the readers of a file.
+ *
+ * Chunks are kept off-heap in {@link RefCountedMemory}; {@link #getChunk} returns a referenced chunk, which a reader
+ * can use in place until it calls {@link RefCountedMemory#unreference()}, even if the chunk is evicted meanwhile.
+ * Entries are keyed by file path and chunk position, and {@link #invalidateFile} must be called once a file is
+ * no longer in use. The positions of the cached chunks of each file are indexed, so that invalidating a file only
+ * touches its own chunks.
+ */
+public class ChunkCache implements ICache<ChunkCache.Key, RefCountedMemory>
+{
+    private static final int DEFAULT_CONCURENCY_LEVEL = 64;
+
+    public static final ChunkCache instance = DatabaseDescriptor.getChunkCacheSizeInMB() > 0
+                                              ? new ChunkCache(DatabaseDescriptor.getChunkCacheSizeInMB() * 1024L * 1024L)
+                                              : null;
+
+    private final ConcurrentLinkedHashMap<Key, RefCountedMemory> map;
+    // the positions of the cached chunks of each file
+    private final ConcurrentMap<String, Set<Long>> filePositions = new ConcurrentHashMap<>();
+    public final CacheMetrics metrics;
+
+    private ChunkCache(long capacity)
+    {
+        EvictionListener<Key, RefCountedMemory> listener = new EvictionListener<Key, RefCountedMemory>()
+        {
+            public void onEviction(Key key, RefCountedMemory mem)
+            {
+                mem.unreference();
+                // the chunk may have been cached again since it was evicted
+                if (!map.containsKey(key))
+                    unindex(key);
+            }
+        };
+
+        this.map = new ConcurrentLinkedHashMap.Builder<Key, RefCountedMemory>()
+                   .weigher(new Weigher<RefCountedMemory>()
+                   {
+                       public int weightOf(RefCountedMemory value)
+                       {
+                           return (int) value.size();
+                       }
+                   })
+                   .maximumWeightedCapacity(capacity)
+                   .concurrencyLevel(DEFAULT_CONCURENCY_LEVEL)
+                   .listener(listener)
+                   .build();
+        this.metrics = new CacheMetrics("ChunkCache", this);
+    }
+
+    /**
+     * @return the referenced uncompressed chunk starting at {@code position} in {@code path}, or null if it
+     * isn't cached. The caller must unreference the returned chunk once done with it.
+     */
+    @SuppressWarnings("resource")
+    public RefCountedMemory getChunk(String path, long position)
+    {
+        metrics.requests.mark();
+        RefCountedMemory mem = map.get(new Key(path, position));
+        if (mem == null || !mem.reference())
+            return null;
+        metrics.hits.mark();
+        return mem;
+    }
+
+    /**
+     * Caches a copy of the remaining bytes of {@code chunk}, which holds the uncompressed chunk starting at
+     * {@code position} in {@code path}.
+     */
+    @SuppressWarnings("resource")
+    public void putChunk(String path, long position, ByteBuffer chunk)
+    {
+        RefCountedMemory mem;
+        try
+        {
+            mem = new RefCountedMemory(chunk.remaining());
+        }
+        catch (OutOfMemoryError e)
+        {
+            return; // out of memory.  never mind.
+        }
+        mem.setBytes(0, chunk);
+        put(new Key(path, position), mem);
+    }
+
+    /**
+     * Removes all the chunks of the given file.
+     */
+    public void invalidateFile(String path)
+    {
+        Set<Long> positions = filePositions.remove(path);
+        if (positions == null)
+            return;
+
+        for (Long position : positions)
+            remove(new Key(path, position));
+    }
+
+    private void index(Key key)
+    {
+        filePositions.computeIfAbsent(key.path, path -> ConcurrentHashMap.newKeySet()).add(key.position);
+    }
+
+    private void unindex(Key key)
+    {
+        Set<Long> positions = filePositions.get(key.path);
+        if (positions != null)
+            positions.remove(key.position);
+    }
+
+    public long capacity()
+    {
+        return map.capacity();
+    }
+
+    public void setCapacity(long capacity)
+    {
+        map.setCapacity(capacity);
+    }
+
+    @SuppressWarnings("resource")
+    public void put(Key key, RefCountedMemory value)
+    {
+        RefCountedMemory old;
+        try
+        {
+            old = map.put(key, value);
+        }
+        catch (Throwable t)
+        {
+            value.unreference();
+            throw t;
+        }
+
+        if (old != null)
+            old.unreference();
+        index(key);
+    }
+
+    public boolean putIfAbsent(Key key, RefCountedMemory value)
+    {
+        RefCountedMemory old = map.putIfAbsent(key, value);
+        if (old != null)
+            value.unreference();
+        else
+            index(key);
+        return old == null;
+    }
+
+    public boolean replace(Key key, RefCountedMemory old, RefCountedMemory value)
+    {
+        boolean success = map.replace(key, old, value);
+        (success ? old : value).unreference();
+        return success;
+    }
+
+    /**
+     * Unlike {@link #getChunk}, does not reference the returned chunk nor record any metrics.
+     */
+    public RefCountedMemory get(Key key)
+    {
+        return map.get(key);
+    }
+
+    @SuppressWarnings("resource")
+    public void remove(Key key)
+    {
+        RefCountedMemory mem = map.remove(key);
+        if (mem != null)
+        {
+            mem.unreference();
+            unindex(key);
+        }
+    }
+
+    public int size()
+    {
+        return map.size();
+    }
+
+    public long weightedSize()
+    {
+        return map.weightedSize();
+    }
+
+    public void clear()
+    {
+        for (Key key : map.keySet())
+            remove(key);
+        filePositions.clear();
+    }
+
+    public Iterator<Key> keyIterator()
+    {
+        return map.keySet().iterator();
+    }
+
+    public Iterator<Key> hotKeyIterator(int n)
+    {
+        return map.descendingKeySetWithLimit(n).iterator();
+    }
+
+    public boolean containsKey(Key key)
+    {
+        return map.containsKey(key);
+    }
+
+    public static final class Key
+    {
+        public final String path;
+        public final long position;
+
+        public Key(String path, long position)
+        {
+            this.path = path;
+            this.position = position;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+
+            Key that = (Key) o;
+            return position == that.position && path.equals(that.path);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * path.hashCode() + Long.hashCode(position);
+        }
+
+        @Override
+        public String toString()
+        {
+            return path + '@' + position;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.db.SerializationHeader;
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.format.SSTableFormat;
+import org.apache.cassandra.io.sstable.format.Version;
+import org.apache.cassandra.io.util.DataInputBuffer;
+import org.apache.cassandra.io.util.DataOutputBufferFixed;
+import org.apache.cassandra.utils.Pair;
+import org.caffinitas.ohc.DirectValueAccess;
+import org.caffinitas.ohc.OHCache;
+import org.caffinitas.ohc.OHCacheBuilder;
+
+/**
+ * An off-heap key cache, storing the index entries serialized as in the sstable index files, so that the index
+ * summaries of wide partitions don't weigh on the heap.
+ *
+ * Entries are only deserialized on lookup, straight from off-heap memory. Entries of pre-3.0 sstables, which we
+ * can't serialize, are not cached.
+ */
+public class OHCKeyCacheProvider implements CacheProvider<KeyCacheKey, RowIndexEntry>
+{
+    public ICache<KeyCacheKey, RowIndexEntry> create()
+    {
+        OHCacheBuilder<KeyCacheKey, SerializableEntry> builder = OHCacheBuilder.newBuilder();
+        builder.capacity(DatabaseDescriptor.getKeyCacheSizeInMB() * 1024 * 1024)
+               .keySerializer(KeySerializer.instance)
+               .valueSerializer(ValueSerializer.instance)
+               .throwOOME(true);
+
+        return new OHCacheAdapter(builder.build());
+    }
+
+    /**
+     * @return the serializer of the index entries of the sstable of the key, or null if its table doesn't exist anymore
+     */
+    private static RowIndexEntry.IndexSerializer<?> indexSerializer(KeyCacheKey key)
+    {
+        ColumnFamilyStore cfs = Schema.instance.getColumnFamilyStoreIncludingIndexes(key.ksAndCFName);
+        if (cfs == null)
+            return null;
+        return key.desc.getFormat().getIndexSerializer(cfs.metadata, key.desc.version, SerializationHeader.forKeyCache(cfs.metadata));
+    }
+
+    private static class OHCacheAdapter implements ICache<KeyCacheKey, RowIndexEntry>
+    {
+        private final OHCache<KeyCacheKey, SerializableEntry> ohCache;
+
+        public OHCacheAdapter(OHCache<KeyCacheKey, SerializableEntry> ohCache)
+        {
+            this.ohCache = ohCache;
+        }
+
+        private static SerializableEntry serializable(KeyCacheKey key, RowIndexEntry entry)
+        {
+            if (!key.desc.version.storeRows())
+                return null;
+
+            RowIndexEntry.IndexSerializer<?> serializer = indexSerializer(key);
+            return serializer == null ? null : new SerializableEntry(entry, serializer);
+        }
+
+        public long capacity()
+        {
+            return ohCache.capacity();
+        }
+
+        public void setCapacity(long capacity)
+        {
+            ohCache.setCapacity(capacity);
+        }
+
+        public void put(KeyCacheKey key, RowIndexEntry value)
+        {
+            SerializableEntry entry = serializable(key, value);
+            if (entry != null)
+                ohCache.put(key, entry);
+        }
+
+        public boolean putIfAbsent(KeyCacheKey key, RowIndexEntry value)
+        {
+            SerializableEntry entry = serializable(key, value);
+            return entry != null && ohCache.putIfAbsent(key, entry);
+        }
+
+        public boolean replace(KeyCacheKey key, RowIndexEntry old, RowIndexEntry value)
+        {
+            SerializableEntry oldEntry = serializable(key, old);
+            SerializableEntry entry = serializable(key, value);
+            return oldEntry != null && entry != null && ohCache.addOrReplace(key, oldEntry, entry);
+        }
+
+        public RowIndexEntry get(KeyCacheKey key)
+        {
+            try (DirectValueAccess value = ohCache.getDirect(key))
+            {
+                if (value == null)
+                    return null;
+
+                RowIndexEntry.IndexSerializer<?> serializer = indexSerializer(key);
+                if (serializer == null)
+                    return null;
+
+                // the deserialized entry copies everything it needs, so it's safe to release the off-heap value
+                return serializer.deserialize(new DataInputBuffer(value.buffer(), false));
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public void remove(KeyCacheKey key)
+        {
+            ohCache.remove(key);
+        }
+
+        public int size()
+        {
+            return (int) ohCache.size();
+        }
+
+        public long weightedSize()
+        {
+            return ohCache.memUsed();
+        }
+
+        public void clear()
+        {
+            ohCache.clear();
+        }
+
+        public Iterator<KeyCacheKey> hotKeyIterator(int n)
+        {
+            return ohCache.hotKeyIterator(n);
+        }
+
+        public Iterator<KeyCacheKey> keyIterator()
+        {
+            return ohCache.keyIterator();
+        }
+
+        public boolean containsKey(KeyCacheKey key)
+        {
+            return ohCache.containsKey(key);
+        }
+    }
+
+    /**
+     * An index entry, with the serializer of the sstable it belongs to.
+     */
+    private static final class SerializableEntry
+    {
+        private final RowIndexEntry entry;
+        private final RowIndexEntry.IndexSerializer serializer;
+
+        private SerializableEntry(RowIndexEntry entry, RowIndexEntry.IndexSerializer serializer)
+        {
+            this.entry = entry;
+            this.serializer = serializer;
+        }
+    }
+
+    private static class KeySerializer implements org.caffinitas.ohc.CacheSerializer<KeyCacheKey>
+    {
+        private static KeySerializer instance = new KeySerializer();
+
+        public void serialize(KeyCacheKey keyCacheKey, ByteBuffer buf)
+        {
+            @SuppressWarnings("resource")
+            DataOutputBufferFixed dataOutput = new DataOutputBufferFixed(buf);
+            Descriptor desc = keyCacheKey.desc;
+            try
+            {
+                dataOutput.writeUTF(keyCacheKey.ksAndCFName.left);
+                dataOutput.writeUTF(keyCacheKey.ksAndCFName.right);
+                dataOutput.writeUTF(desc.directory.getPath());
+                dataOutput.writeUTF(desc.ksname);
+                dataOutput.writeUTF(desc.cfname);
+                dataOutput.writeUTF(desc.formatType.name);
+                dataOutput.writeUTF(desc.version.getVersion());
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+            buf.putInt(desc.generation);
+            buf.putInt(keyCacheKey.key.length);
+            buf.put(keyCacheKey.key);
+        }
+
+        public KeyCacheKey deserialize(ByteBuffer buf)
+        {
+            @SuppressWarnings("resource")
+            DataInputBuffer dataInput = new DataInputBuffer(buf, false);
+            Descriptor desc;
+            Pair<String, String> ksAndCFName;
+            try
+            {
+                ksAndCFName = Pair.create(dataInput.readUTF(), dataInput.readUTF());
+                File directory = new File(dataInput.readUTF());
+                String ksName = dataInput.readUTF();
+                String cfName = dataInput.readUTF();
+                SSTableFormat.Type formatType = SSTableFormat.Type.validate(dataInput.readUTF());
+                Version version = formatType.info.getVersion(dataInput.readUTF());
+                desc = new Descriptor(version, directory, ksName, cfName, buf.getInt(), formatType,
+                                      Component.digestFor(version.uncompressedChecksumType()));
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+            byte[] key = new byte[buf.getInt()];
+            buf.get(key);
+            return new KeyCacheKey(ksAndCFName, desc, ByteBuffer.wrap(key));
+        }
+
+        public int serializedSize(KeyCacheKey keyCacheKey)
+        {
+            Descriptor desc = keyCacheKey.desc;
+            return TypeSizes.sizeof(keyCacheKey.ksAndCFName.left)
+                   + TypeSizes.sizeof(keyCacheKey.ksAndCFName.right)
+                   + TypeSizes.sizeof(desc.directory.getPath())
+                   + TypeSizes.sizeof(desc.ksname)
+                   + TypeSizes.sizeof(desc.cfname)
+                   + TypeSizes.sizeof(desc.formatType.name)
+                   + TypeSizes.sizeof(desc.version.getVersion())
+                   + 4
+                   + 4
+                   + keyCacheKey.key.length;
+        }
+    }
+
+    private static class ValueSerializer implements org.caffinitas.ohc.CacheSerializer<SerializableEntry>
+    {
+        private static ValueSerializer instance = new ValueSerializer();
+
+        @SuppressWarnings("unchecked")
+        public void serialize(SerializableEntry value, ByteBuffer buf)
+        {
+            try (DataOutputBufferFixed out = new DataOutputBufferFixed(buf))
+            {
+                value.serializer.serialize(value.entry, out);
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Never called: an entry can only be deserialized with the serializer of the sstable of its key, which the
+         * value bytes don't identify. The cache is only reachable through {@link OHCacheAdapter}, which reads entries
+         * with {@link OHCache#getDirect} and deserializes them itself, and never uses the OHC methods that deserialize
+         * values (get and getWithLoader). Any new read path must do the same.
+         */
+        public SerializableEntry deserialize(ByteBuffer buf)
+        {
+            throw new UnsupportedOperationException("Key cache entries must be read with OHCache.getDirect() and deserialized with the index serializer of their sstable");
+        }
+
+        @SuppressWarnings("unchecked")
+        public int serializedSize(SerializableEntry value)
+        {
+            return value.serializer.serializedSize(value.entry);
+        }
+    }
+}
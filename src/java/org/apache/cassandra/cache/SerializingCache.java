@@ -28,6 +28,7 @@ import com.googlecode.concurrentlinkedhashmap.EvictionListener;
 import com.googlecode.concurrentlinkedhashmap.Weigher;
 
 import org.apache.cassandra.io.ISerializer;
+import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.apache.cassandra.io.util.MemoryInputStream;
 import org.apache.cassandra.io.util.MemoryOutputStream;
 import org.apache.cassandra.io.util.WrappedDataOutputStreamPlus;
@@ -153,6 +154,23 @@ public class SerializingCache<K, V> implements ICache<K, V>
         map.clear();
     }
 
+    private boolean hasSerializedForm(RefCountedMemory mem, V value)
+    {
+        long serializedSize = serializer.serializedSize(value);
+        if (serializedSize != mem.size())
+            return false;
+
+        try (DataOutputBuffer buffer = new DataOutputBuffer((int) serializedSize))
+        {
+            serializer.serialize(value, buffer);
+            return mem.asByteBuffer(0, (int) serializedSize).equals(buffer.buffer());
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
     @SuppressWarnings("resource")
     public V get(K key)
     {
@@ -225,18 +243,22 @@ public class SerializingCache<K, V> implements ICache<K, V>
         if (old == null)
             return false;
 
-        V oldValue;
-        // reference old guy before de-serializing
+        // reference old guy before comparing it
         if (!old.reference())
             return false; // we have already freed hence noop.
 
-        oldValue = deserialize(old);
-        old.unreference();
-
-        if (!oldValue.equals(oldToReplace))
-            return false;
+        // see if the old value matches the one we want to replace: as values we return are always deserialized
+        // copies, we compare their serialized form, like off-heap caches do
+        try
+        {
+            if (!hasSerializedForm(old, oldToReplace))
+                return false;
+        }
+        finally
+        {
+            old.unreference();
+        }
 
-        // see if the old value matches the one we want to replace
         RefCountedMemory mem = serialize(value);
         if (mem == null)
             return false; // out of memory.  never mind.
@@ -167,6 +167,21 @@ public class SEPExecutor extends AbstractTracingAwareExecutorService
         }
     }
 
+    // takes a worker permit only if there are no tasks waiting to be processed, which a task run outside of the
+    // queue would otherwise overtake
+    private boolean takeWorkPermitIfNoTasks()
+    {
+        while (true)
+        {
+            long current = permits.get();
+            int workPermits = workPermits(current);
+            if (workPermits == 0 || taskPermits(current) > 0)
+                return false;
+            if (permits.compareAndSet(current, updateWorkPermits(current, workPermits - 1)))
+                return true;
+        }
+    }
+
     // gives up a work permit
     void returnWorkPermit()
     {
@@ -203,6 +218,31 @@ public class SEPExecutor extends AbstractTracingAwareExecutorService
         }
     }
 
+    /**
+     * Runs the task on the calling thread if a work permit is available and no task is queued, so that it counts
+     * toward the bound on the tasks running concurrently, and doesn't overtake the queued ones. Unlike
+     * {@link #maybeExecuteImmediately}, the task is never queued, and any exception is thrown to the caller.
+     *
+     * @return whether the task was run
+     */
+    public boolean tryExecuteInline(Runnable command)
+    {
+        if (!takeWorkPermitIfNoTasks())
+            return false;
+
+        try
+        {
+            command.run();
+        }
+        finally
+        {
+            returnWorkPermit();
+            // as for maybeExecuteImmediately, tasks may have been queued while we held the permit
+            maybeSchedule();
+        }
+        return true;
+    }
+
     public synchronized void shutdown()
     {
         shuttingDown = true;
@@ -95,6 +95,9 @@ public class Config
     public Integer concurrent_counter_writes = 32;
     public Integer concurrent_materialized_view_writes = 32;
 
+    public volatile boolean inline_local_reads = false;
+    public volatile int range_read_parallelism = 1;
+
     @Deprecated
     public Integer concurrent_replicates = null;
 
@@ -136,6 +139,8 @@ public class Config
     public Integer native_transport_max_frame_size_in_mb = 256;
     public volatile Long native_transport_max_concurrent_connections = -1L;
     public volatile Long native_transport_max_concurrent_connections_per_ip = -1L;
+    public volatile Long native_transport_max_concurrent_requests_in_mb_per_connection = -1L;
+    public volatile Long native_transport_max_concurrent_requests_in_mb_per_ip = null;
 
     @Deprecated
     public Integer thrift_max_message_length_in_mb = 16;
@@ -149,14 +154,18 @@ public class Config
     public volatile int batch_size_warn_threshold_in_kb = 5;
     public volatile int batch_size_fail_threshold_in_kb = 50;
     public Integer concurrent_compactors;
+    public volatile int concurrent_materialized_view_builders = 1;
     public volatile Integer compaction_throughput_mb_per_sec = 16;
     public volatile Integer compaction_large_partition_warning_threshold_mb = 100;
+    public volatile int compaction_min_shard_size_in_mb = 1024;
 
     public Integer max_streaming_retries = 3;
 
     public volatile Integer stream_throughput_outbound_megabits_per_sec = 200;
     public volatile Integer inter_dc_stream_throughput_outbound_megabits_per_sec = 0;
 
+    public boolean stream_entire_sstables = true;
+
     public String[] data_file_directories = new String[0];
 
     public String saved_caches_directory;
@@ -167,6 +176,7 @@ public class Config
     public CommitLogSync commitlog_sync;
     public Double commitlog_sync_batch_window_in_ms;
     public Integer commitlog_sync_period_in_ms;
+    public Double commitlog_sync_group_window_in_ms;
     public int commitlog_segment_size_in_mb = 32;
     public ParameterizedClass commitlog_compression;
     public int commitlog_max_compression_buffers_in_pool = 3;
@@ -211,6 +221,7 @@ public class Config
     public Long key_cache_size_in_mb = null;
     public volatile int key_cache_save_period = 14400;
     public volatile int key_cache_keys_to_save = Integer.MAX_VALUE;
+    public String key_cache_class_name;
 
     public String row_cache_class_name = "org.apache.cassandra.cache.OHCProvider";
     public long row_cache_size_in_mb = 0;
@@ -221,6 +232,8 @@ public class Config
     public volatile int counter_cache_save_period = 7200;
     public volatile int counter_cache_keys_to_save = Integer.MAX_VALUE;
 
+    public Long paxos_state_cache_size_in_mb = null;
+
     @Deprecated
     public String memory_allocator;
 
@@ -228,6 +241,10 @@ public class Config
 
     public Integer file_cache_size_in_mb = 512;
 
+    public Integer chunk_cache_size_in_mb;
+
+    public String sstable_format = "big";
+
     public boolean buffer_pool_use_heap_if_exhausted = true;
 
     public DiskOptimizationStrategy disk_optimization_strategy = DiskOptimizationStrategy.ssd;
@@ -240,6 +257,8 @@ public class Config
 
     public MemtableAllocationType memtable_allocation_type = MemtableAllocationType.heap_buffers;
 
+    public MemtablePartitionMapType memtable_partition_map = MemtablePartitionMapType.skiplist;
+
     private static boolean outboundBindAny = false;
 
     public volatile int tombstone_warn_threshold = 1000;
@@ -328,7 +347,8 @@ public class Config
     public enum CommitLogSync
     {
         periodic,
-        batch
+        batch,
+        group
     }
     public enum InternodeCompression
     {
@@ -351,6 +371,12 @@ public class Config
         offheap_objects
     }
 
+    public enum MemtablePartitionMapType
+    {
+        skiplist,
+        trie
+    }
+
     public enum DiskFailurePolicy
     {
         best_effort,
@@ -98,6 +98,7 @@ public class DatabaseDescriptor
 
     private static long keyCacheSizeInMB;
     private static long counterCacheSizeInMB;
+    private static long paxosStateCacheSizeInMB;
     private static long indexSummaryCapacityInMB;
 
     private static String localDC;
@@ -279,21 +280,33 @@ public class DatabaseDescriptor
             {
                 throw new ConfigurationException("Missing value for commitlog_sync_batch_window_in_ms: Double expected.", false);
             }
-            else if (conf.commitlog_sync_period_in_ms != null)
+            else if (conf.commitlog_sync_period_in_ms != null || conf.commitlog_sync_group_window_in_ms != null)
             {
-                throw new ConfigurationException("Batch sync specified, but commitlog_sync_period_in_ms found. Only specify commitlog_sync_batch_window_in_ms when using batch sync", false);
+                throw new ConfigurationException("Batch sync specified, but commitlog_sync_period_in_ms or commitlog_sync_group_window_in_ms found. Only specify commitlog_sync_batch_window_in_ms when using batch sync", false);
             }
             logger.debug("Syncing log with a batch window of {}", conf.commitlog_sync_batch_window_in_ms);
         }
+        else if (conf.commitlog_sync == Config.CommitLogSync.group)
+        {
+            if (conf.commitlog_sync_group_window_in_ms == null)
+            {
+                throw new ConfigurationException("Missing value for commitlog_sync_group_window_in_ms: Double expected.", false);
+            }
+            else if (conf.commitlog_sync_period_in_ms != null || conf.commitlog_sync_batch_window_in_ms != null)
+            {
+                throw new ConfigurationException("Group sync specified, but commitlog_sync_period_in_ms or commitlog_sync_batch_window_in_ms found. Only specify commitlog_sync_group_window_in_ms when using group sync", false);
+            }
+            logger.debug("Syncing log with a group window of {}", conf.commitlog_sync_group_window_in_ms);
+        }
         else
         {
             if (conf.commitlog_sync_period_in_ms == null)
             {
                 throw new ConfigurationException("Missing value for commitlog_sync_period_in_ms: Integer expected", false);
             }
-            else if (conf.commitlog_sync_batch_window_in_ms != null)
+            else if (conf.commitlog_sync_batch_window_in_ms != null || conf.commitlog_sync_group_window_in_ms != null)
             {
-                throw new ConfigurationException("commitlog_sync_period_in_ms specified, but commitlog_sync_batch_window_in_ms found.  Only specify commitlog_sync_period_in_ms when using periodic sync.", false);
+                throw new ConfigurationException("commitlog_sync_period_in_ms specified, but commitlog_sync_batch_window_in_ms or commitlog_sync_group_window_in_ms found.  Only specify commitlog_sync_period_in_ms when using periodic sync.", false);
             }
             logger.debug("Syncing log with a period of {}", conf.commitlog_sync_period_in_ms);
         }
@@ -396,6 +409,23 @@ public class DatabaseDescriptor
         if (conf.file_cache_size_in_mb == null)
             conf.file_cache_size_in_mb = Math.min(512, (int) (Runtime.getRuntime().maxMemory() / (4 * 1048576)));
 
+        if (conf.chunk_cache_size_in_mb == null)
+            conf.chunk_cache_size_in_mb = Math.min(256, (int) (Runtime.getRuntime().maxMemory() / (8 * 1048576)));
+        else if (conf.chunk_cache_size_in_mb < 0)
+            throw new ConfigurationException("chunk_cache_size_in_mb must be non-negative, but was " + conf.chunk_cache_size_in_mb, false);
+
+        if (conf.native_transport_max_concurrent_requests_in_mb_per_ip == null)
+            conf.native_transport_max_concurrent_requests_in_mb_per_ip = Math.max(1L, Runtime.getRuntime().maxMemory() / (40 * 1048576));
+
+        try
+        {
+            sstable_format = SSTableFormat.Type.validate(conf.sstable_format);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new ConfigurationException("Unknown sstable_format '" + conf.sstable_format + "'", false);
+        }
+
         if (conf.memtable_offheap_space_in_mb == null)
             conf.memtable_offheap_space_in_mb = (int) (Runtime.getRuntime().maxMemory() / (4 * 1048576));
         if (conf.memtable_offheap_space_in_mb < 0)
@@ -604,6 +634,9 @@ public class DatabaseDescriptor
         if (conf.concurrent_compactors <= 0)
             throw new ConfigurationException("concurrent_compactors should be strictly greater than 0, but was " + conf.concurrent_compactors, false);
 
+        if (conf.concurrent_materialized_view_builders <= 0)
+            throw new ConfigurationException("concurrent_materialized_view_builders should be strictly greater than 0, but was " + conf.concurrent_materialized_view_builders, false);
+
         if (conf.initial_token != null)
             for (String token : tokensFromString(conf.initial_token))
                 partitioner.getTokenFactory().validate(token);
@@ -645,6 +678,15 @@ public class DatabaseDescriptor
                     + conf.counter_cache_size_in_mb + "', supported values are <integer> >= 0.", false);
         }
 
+        // if paxos_state_cache_size_in_mb option was set to "auto" then size of the cache should be "min(1% of Heap (in MB), 32MB)
+        paxosStateCacheSizeInMB = (conf.paxos_state_cache_size_in_mb == null)
+                ? Math.min(Math.max(1, (int) (Runtime.getRuntime().totalMemory() * 0.01 / 1024 / 1024)), 32)
+                : conf.paxos_state_cache_size_in_mb;
+
+        if (paxosStateCacheSizeInMB < 0)
+            throw new ConfigurationException("paxos_state_cache_size_in_mb option was set incorrectly to '"
+                    + conf.paxos_state_cache_size_in_mb + "', supported values are <integer> >= 0.", false);
+
         // if set to empty/"auto" then use 5% of Heap size
         indexSummaryCapacityInMB = (conf.index_summary_capacity_in_mb == null)
             ? Math.max(1, (int) (Runtime.getRuntime().totalMemory() * 0.05 / 1024 / 1024))
@@ -1101,6 +1143,7 @@ public class DatabaseDescriptor
             case PAXOS_PREPARE:
             case PAXOS_PROPOSE:
             case HINT:
+            case HINT_BATCH:
             case BATCH_STORE:
             case BATCH_REMOVE:
                 return getWriteRpcTimeout();
@@ -1139,6 +1182,28 @@ public class DatabaseDescriptor
         return conf.concurrent_reads;
     }
 
+    public static boolean getInlineLocalReads()
+    {
+        return conf.inline_local_reads;
+    }
+
+    @VisibleForTesting
+    public static void setInlineLocalReads(boolean inlineLocalReads)
+    {
+        conf.inline_local_reads = inlineLocalReads;
+    }
+
+    public static int getRangeReadParallelism()
+    {
+        return conf.range_read_parallelism;
+    }
+
+    @VisibleForTesting
+    public static void setRangeReadParallelism(int rangeReadParallelism)
+    {
+        conf.range_read_parallelism = rangeReadParallelism;
+    }
+
     public static int getConcurrentWriters()
     {
         return conf.concurrent_writes;
@@ -1164,6 +1229,16 @@ public class DatabaseDescriptor
         return conf.concurrent_compactors;
     }
 
+    public static int getConcurrentViewBuilders()
+    {
+        return conf.concurrent_materialized_view_builders;
+    }
+
+    public static void setConcurrentViewBuilders(int value)
+    {
+        conf.concurrent_materialized_view_builders = value;
+    }
+
     public static int getCompactionThroughputMbPerSec()
     {
         return conf.compaction_throughput_mb_per_sec;
@@ -1176,6 +1251,17 @@ public class DatabaseDescriptor
 
     public static int getCompactionLargePartitionWarningThreshold() { return conf.compaction_large_partition_warning_threshold_mb * 1024 * 1024; }
 
+    public static long getCompactionMinShardSize()
+    {
+        return conf.compaction_min_shard_size_in_mb * 1024L * 1024L;
+    }
+
+    @VisibleForTesting
+    public static void setCompactionMinShardSizeInMB(int value)
+    {
+        conf.compaction_min_shard_size_in_mb = value;
+    }
+
     public static boolean getDisableSTCSInL0()
     {
         return Boolean.getBoolean("cassandra.disable_stcs_in_l0");
@@ -1186,6 +1272,17 @@ public class DatabaseDescriptor
         return conf.stream_throughput_outbound_megabits_per_sec;
     }
 
+    public static boolean streamEntireSSTables()
+    {
+        return conf.stream_entire_sstables;
+    }
+
+    @VisibleForTesting
+    public static void setStreamEntireSSTables(boolean value)
+    {
+        conf.stream_entire_sstables = value;
+    }
+
     public static void setStreamThroughputOutboundMegabitsPerSec(int value)
     {
         conf.stream_throughput_outbound_megabits_per_sec = value;
@@ -1410,6 +1507,26 @@ public class DatabaseDescriptor
         conf.native_transport_max_concurrent_connections_per_ip = native_transport_max_concurrent_connections_per_ip;
     }
 
+    public static long getNativeTransportMaxConcurrentRequestsInMbPerConnection()
+    {
+        return conf.native_transport_max_concurrent_requests_in_mb_per_connection;
+    }
+
+    public static void setNativeTransportMaxConcurrentRequestsInMbPerConnection(long nativeTransportMaxConcurrentRequestsInMbPerConnection)
+    {
+        conf.native_transport_max_concurrent_requests_in_mb_per_connection = nativeTransportMaxConcurrentRequestsInMbPerConnection;
+    }
+
+    public static long getNativeTransportMaxConcurrentRequestsInMbPerIp()
+    {
+        return conf.native_transport_max_concurrent_requests_in_mb_per_ip;
+    }
+
+    public static void setNativeTransportMaxConcurrentRequestsInMbPerIp(long nativeTransportMaxConcurrentRequestsInMbPerIp)
+    {
+        conf.native_transport_max_concurrent_requests_in_mb_per_ip = nativeTransportMaxConcurrentRequestsInMbPerIp;
+    }
+
     public static double getCommitLogSyncBatchWindow()
     {
         return conf.commitlog_sync_batch_window_in_ms;
@@ -1420,6 +1537,16 @@ public class DatabaseDescriptor
         conf.commitlog_sync_batch_window_in_ms = windowMillis;
     }
 
+    public static double getCommitLogSyncGroupWindow()
+    {
+        return conf.commitlog_sync_group_window_in_ms;
+    }
+
+    public static void setCommitLogSyncGroupWindow(double windowMillis)
+    {
+        conf.commitlog_sync_group_window_in_ms = windowMillis;
+    }
+
     public static int getCommitLogSyncPeriod()
     {
         return conf.commitlog_sync_period_in_ms;
@@ -1639,6 +1766,12 @@ public class DatabaseDescriptor
         return conf.file_cache_size_in_mb;
     }
 
+    public static int getChunkCacheSizeInMB()
+    {
+        // not set in client mode, where we don't want the cache
+        return conf.chunk_cache_size_in_mb == null ? 0 : conf.chunk_cache_size_in_mb;
+    }
+
     public static boolean getBufferPoolUseHeapIfExhausted()
     {
         return conf.buffer_pool_use_heap_if_exhausted;
@@ -1721,6 +1854,11 @@ public class DatabaseDescriptor
         conf.key_cache_keys_to_save = keyCacheKeysToSave;
     }
 
+    public static String getKeyCacheClassName()
+    {
+        return conf.key_cache_class_name;
+    }
+
     public static String getRowCacheClassName()
     {
         return conf.row_cache_class_name;
@@ -1757,6 +1895,11 @@ public class DatabaseDescriptor
         return counterCacheSizeInMB;
     }
 
+    public static long getPaxosStateCacheSizeInMB()
+    {
+        return paxosStateCacheSizeInMB;
+    }
+
     public static void setRowCacheKeysToSave(int rowCacheKeysToSave)
     {
         conf.row_cache_keys_to_save = rowCacheKeysToSave;
@@ -1802,6 +1945,12 @@ public class DatabaseDescriptor
         return conf.internode_compression;
     }
 
+    @VisibleForTesting
+    public static void setInternodeCompression(Config.InternodeCompression compression)
+    {
+        conf.internode_compression = compression;
+    }
+
     public static boolean getInterDCTcpNoDelay()
     {
         return conf.inter_dc_tcp_nodelay;
@@ -1813,6 +1962,12 @@ public class DatabaseDescriptor
         return sstable_format;
     }
 
+    @VisibleForTesting
+    public static void setSSTableFormat(SSTableFormat.Type format)
+    {
+        sstable_format = format;
+    }
+
     public static MemtablePool getMemtableAllocatorPool()
     {
         long heapLimit = ((long) conf.memtable_heap_space_in_mb) << 20;
@@ -1837,6 +1992,11 @@ public class DatabaseDescriptor
         }
     }
 
+    public static Config.MemtablePartitionMapType getMemtablePartitionMapType()
+    {
+        return conf.memtable_partition_map;
+    }
+
     public static int getIndexSummaryResizeIntervalInMinutes()
     {
         return conf.index_summary_resize_interval_in_minutes;
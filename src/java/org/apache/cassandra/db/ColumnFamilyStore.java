@@ -50,6 +50,7 @@ import org.apache.cassandra.db.filter.ClusteringIndexFilter;
 import org.apache.cassandra.db.filter.DataLimits;
 import org.apache.cassandra.db.view.ViewManager;
 import org.apache.cassandra.db.lifecycle.*;
+import org.apache.cassandra.db.partitions.CachedBTreePartition;
 import org.apache.cassandra.db.partitions.CachedPartition;
 import org.apache.cassandra.db.partitions.PartitionUpdate;
 import org.apache.cassandra.db.rows.CellPath;
@@ -72,6 +73,7 @@ import org.apache.cassandra.metrics.TableMetrics.Sampler;
 import org.apache.cassandra.schema.*;
 import org.apache.cassandra.service.CacheService;
 import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.tracing.Tracing;
 import org.apache.cassandra.utils.*;
 import org.apache.cassandra.utils.TopKSampler.SamplerResult;
 import org.apache.cassandra.utils.concurrent.OpOrder;
@@ -754,7 +756,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         return getSSTablePath(directory, format.info.getLatestVersion(), format);
     }
 
-    private String getSSTablePath(File directory, Version version, SSTableFormat.Type format)
+    public String getSSTablePath(File directory, Version version, SSTableFormat.Type format)
     {
         Descriptor desc = new Descriptor(version,
                                          directory,
@@ -1117,13 +1119,38 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         return String.format("%.2f/%.2f", onHeap, offHeap);
     }
 
-    public void maybeUpdateRowCache(DecoratedKey key)
+    /**
+     * Applies an update to the cached partition of its key, if any, rather than invalidating it, so the row cache
+     * stays useful for tables that are written to.
+     *
+     * If the partition is being cached by a read, we remove its sentinel so that the read doesn't cache data
+     * predating the update (CASSANDRA-3862). Likewise, if the cached partition changes while we apply the update,
+     * or if the update cannot be applied to it, the partition is invalidated.
+     */
+    public void maybeUpdateRowCache(PartitionUpdate update)
     {
         if (!isRowCacheEnabled())
             return;
 
-        RowCacheKey cacheKey = new RowCacheKey(metadata.ksAndCFName, key);
-        invalidateCachedPartition(cacheKey);
+        RowCacheKey cacheKey = new RowCacheKey(metadata.ksAndCFName, update.partitionKey());
+        IRowCacheEntry cached = CacheService.instance.rowCache.getInternal(cacheKey);
+        if (cached == null)
+            return;
+
+        if (cached instanceof RowCacheSentinel)
+        {
+            invalidateCachedPartition(cacheKey);
+            return;
+        }
+
+        CachedPartition updated = CachedBTreePartition.apply((CachedBTreePartition) cached,
+                                                             update,
+                                                             metadata.params.caching.rowsPerPartitionToCache(),
+                                                             FBUtilities.nowInSeconds());
+        if (updated == null || !CacheService.instance.rowCache.replace(cacheKey, cached, updated))
+            invalidateCachedPartition(cacheKey);
+        else
+            Tracing.trace("Updated cached partition");
     }
 
     /**
@@ -1140,7 +1167,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         Memtable mt = data.getMemtableFor(opGroup, replayPosition);
         long timeDelta = mt.put(update, indexer, opGroup);
         DecoratedKey key = update.partitionKey();
-        maybeUpdateRowCache(key);
+        maybeUpdateRowCache(update);
         metric.samplers.get(Sampler.WRITES).addSample(key.getKey(), key.hashCode(), 1);
         metric.writeLatency.addNano(System.nanoTime() - start);
         if(timeDelta < Long.MAX_VALUE)
@@ -1758,6 +1785,37 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         invalidateCachedPartition(new RowCacheKey(metadata.ksAndCFName, key));
     }
 
+    /**
+     * Invalidates the cached partitions of this table whose token is in one of the given bounds.
+     *
+     * @return the number of invalidated partitions
+     */
+    public int invalidateRowCache(Collection<Bounds<Token>> boundsToInvalidate)
+    {
+        if (!isRowCacheEnabled())
+            return 0;
+
+        int invalidatedKeys = 0;
+        for (Iterator<RowCacheKey> keyIter = CacheService.instance.rowCache.keyIterator(); keyIter.hasNext(); )
+        {
+            RowCacheKey key = keyIter.next();
+            if (!key.ksAndCFName.equals(metadata.ksAndCFName))
+                continue;
+
+            DecoratedKey dk = decorateKey(ByteBuffer.wrap(key.key));
+            for (Bounds<Token> bounds : boundsToInvalidate)
+            {
+                if (bounds.contains(dk.getToken()))
+                {
+                    invalidateCachedPartition(key);
+                    invalidatedKeys++;
+                    break;
+                }
+            }
+        }
+        return invalidatedKeys;
+    }
+
     public ClockAndCount getCachedCounter(ByteBuffer partitionKey, Clustering clustering, ColumnDefinition column, CellPath path)
     {
         if (CacheService.instance.counterCache.getCapacity() == 0L) // counter cache disabled.
@@ -152,8 +152,8 @@ public interface ColumnFamilyStoreMBean
     public long trueSnapshotsSize();
 
     /**
-     * begin sampling for a specific sampler with a given capacity.  The cardinality may
-     * be larger than the capacity, but depending on the use case it may affect its accuracy
+     * begin sampling for a specific sampler (READS, WRITES, TOMBSTONES or LIVE_ROWS) with a given capacity.  The
+     * cardinality may be larger than the capacity, but depending on the use case it may affect its accuracy
      */
     public void beginLocalSampling(String sampler, int capacity);
 
@@ -19,15 +19,23 @@ package org.apache.cassandra.db;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
-import com.google.common.base.Function;
-import com.google.common.base.Objects;
-import com.google.common.collect.Iterables;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
-import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import org.apache.cassandra.cache.CounterCacheKey;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.rows.*;
@@ -50,8 +58,6 @@ public class CounterMutation implements IMutation
 {
     public static final CounterMutationSerializer serializer = new CounterMutationSerializer();
 
-    private static final Striped<Lock> LOCKS = Striped.lazyWeakLock(DatabaseDescriptor.getConcurrentCounterWriters() * 1024);
-
     private final Mutation mutation;
     private final ConsistencyLevel consistency;
 
@@ -99,12 +105,11 @@ public class CounterMutation implements IMutation
     /**
      * Applies the counter mutation, returns the result Mutation (for replication to other nodes).
      *
-     * 1. Grabs the striped cell-level locks in the proper order
-     * 2. Gets the current values of the counters-to-be-modified from the counter cache
+     * 1. Queues the mutation on its partition, and applies the queued mutations unless another thread already does
+     * 2. Gets the current values of the counters-to-be-modified from the batch being applied, then the counter cache
      * 3. Reads the rest of the current values (cache misses) from the CF
-     * 4. Writes the updated counter values
+     * 4. Writes the updated counter values of the whole batch at once
      * 5. Updates the counter cache
-     * 6. Releases the lock(s)
      *
      * See CASSANDRA-4775 and CASSANDRA-6504 for further details.
      *
@@ -112,127 +117,88 @@ public class CounterMutation implements IMutation
      */
     public Mutation apply() throws WriteTimeoutException
     {
-        Mutation result = new Mutation(getKeyspaceName(), key());
-        Keyspace keyspace = Keyspace.open(getKeyspaceName());
-
-        List<Lock> locks = new ArrayList<>();
-        Tracing.trace("Acquiring counter locks");
+        long startTime = System.nanoTime();
+        Pair<String, DecoratedKey> partition = Pair.create(getKeyspaceName(), key());
+        PartitionQueue queue = PartitionQueue.acquire(partition);
         try
         {
-            grabCounterLocks(keyspace, locks);
-            for (PartitionUpdate upd : getPartitionUpdates())
-                result.add(processModifications(upd));
-            result.apply();
-            return result;
+            Pending pending = new Pending(this);
+            queue.pending.add(pending);
+            return pending.await(queue, startTime + TimeUnit.MILLISECONDS.toNanos(getTimeout()));
         }
         finally
         {
-            for (Lock lock : locks)
-                lock.unlock();
-        }
-    }
-
-    private void grabCounterLocks(Keyspace keyspace, List<Lock> locks) throws WriteTimeoutException
-    {
-        long startTime = System.nanoTime();
-
-        for (Lock lock : LOCKS.bulkGet(getCounterLockKeys()))
-        {
-            long timeout = TimeUnit.MILLISECONDS.toNanos(getTimeout()) - (System.nanoTime() - startTime);
-            try
-            {
-                if (!lock.tryLock(timeout, TimeUnit.NANOSECONDS))
-                    throw new WriteTimeoutException(WriteType.COUNTER, consistency(), 0, consistency().blockFor(keyspace));
-                locks.add(lock);
-            }
-            catch (InterruptedException e)
-            {
-                throw new WriteTimeoutException(WriteType.COUNTER, consistency(), 0, consistency().blockFor(keyspace));
-            }
+            PartitionQueue.release(partition);
         }
     }
 
-    /**
-     * Returns a wrapper for the Striped#bulkGet() call (via Keyspace#counterLocksFor())
-     * Striped#bulkGet() depends on Object#hashCode(), so here we make sure that the cf id and the partition key
-     * all get to be part of the hashCode() calculation.
-     */
-    private Iterable<Object> getCounterLockKeys()
+    private Mutation processModifications(Map<CounterCacheKey, ClockAndCount> values)
     {
-        return Iterables.concat(Iterables.transform(getPartitionUpdates(), new Function<PartitionUpdate, Iterable<Object>>()
-        {
-            public Iterable<Object> apply(final PartitionUpdate update)
-            {
-                return Iterables.concat(Iterables.transform(update, new Function<Row, Iterable<Object>>()
-                {
-                    public Iterable<Object> apply(final Row row)
-                    {
-                        return Iterables.concat(Iterables.transform(row, new Function<ColumnData, Object>()
-                        {
-                            public Object apply(final ColumnData data)
-                            {
-                                return Objects.hashCode(update.metadata().cfId, key(), row.clustering(), data.column());
-                            }
-                        }));
-                    }
-                }));
-            }
-        }));
+        Mutation result = new Mutation(getKeyspaceName(), key());
+        for (PartitionUpdate upd : getPartitionUpdates())
+            result.add(processModifications(upd, values));
+        return result;
     }
 
-    private PartitionUpdate processModifications(PartitionUpdate changes)
+    private PartitionUpdate processModifications(PartitionUpdate changes, Map<CounterCacheKey, ClockAndCount> values)
     {
         ColumnFamilyStore cfs = Keyspace.open(getKeyspaceName()).getColumnFamilyStore(changes.metadata().cfId);
 
         List<PartitionUpdate.CounterMark> marks = changes.collectCounterMarks();
 
-        if (CacheService.instance.counterCache.getCapacity() != 0)
-        {
-            Tracing.trace("Fetching {} counter values from cache", marks.size());
-            updateWithCurrentValuesFromCache(marks, cfs);
-            if (marks.isEmpty())
-                return changes;
-        }
+        Tracing.trace("Fetching {} counter values from the batch and cache", marks.size());
+        updateWithCurrentValuesFromCache(marks, cfs, values);
+        if (marks.isEmpty())
+            return changes;
 
         Tracing.trace("Reading {} counter values from the CF", marks.size());
-        updateWithCurrentValuesFromCFS(marks, cfs);
+        updateWithCurrentValuesFromCFS(marks, cfs, values);
 
         // What's remain is new counters
         for (PartitionUpdate.CounterMark mark : marks)
-            updateWithCurrentValue(mark, ClockAndCount.BLANK, cfs);
+            updateWithCurrentValue(mark, ClockAndCount.BLANK, cfs, values);
 
         return changes;
     }
 
-    private void updateWithCurrentValue(PartitionUpdate.CounterMark mark, ClockAndCount currentValue, ColumnFamilyStore cfs)
+    private CounterCacheKey cacheKey(PartitionUpdate.CounterMark mark, ColumnFamilyStore cfs)
+    {
+        return CounterCacheKey.create(cfs.metadata.ksAndCFName, key().getKey(), mark.clustering(), mark.column(), mark.path());
+    }
+
+    private void updateWithCurrentValue(PartitionUpdate.CounterMark mark, ClockAndCount currentValue, ColumnFamilyStore cfs, Map<CounterCacheKey, ClockAndCount> values)
     {
         long clock = currentValue.clock + 1L;
         long count = currentValue.count + CounterContext.instance().total(mark.value());
 
         mark.setValue(CounterContext.instance().createGlobal(CounterId.getLocalId(), clock, count));
 
-        // Cache the newly updated value
-        cfs.putCachedCounter(key().getKey(), mark.clustering(), mark.column(), mark.path(), ClockAndCount.create(clock, count));
+        // Keep the newly updated value for the next mutations of the batch, and the counter cache once written
+        values.put(cacheKey(mark, cfs), ClockAndCount.create(clock, count));
     }
 
-    // Returns the count of cache misses.
-    private void updateWithCurrentValuesFromCache(List<PartitionUpdate.CounterMark> marks, ColumnFamilyStore cfs)
+    // Updates the marks with the values updated by the previous mutations of the batch or cached.
+    private void updateWithCurrentValuesFromCache(List<PartitionUpdate.CounterMark> marks, ColumnFamilyStore cfs, Map<CounterCacheKey, ClockAndCount> values)
     {
+        boolean isCacheEnabled = CacheService.instance.counterCache.getCapacity() != 0;
         Iterator<PartitionUpdate.CounterMark> iter = marks.iterator();
         while (iter.hasNext())
         {
             PartitionUpdate.CounterMark mark = iter.next();
-            ClockAndCount cached = cfs.getCachedCounter(key().getKey(), mark.clustering(), mark.column(), mark.path());
-            if (cached != null)
+            CounterCacheKey key = cacheKey(mark, cfs);
+            ClockAndCount current = values.get(key);
+            if (current == null && isCacheEnabled)
+                current = CacheService.instance.counterCache.get(key);
+            if (current != null)
             {
-                updateWithCurrentValue(mark, cached, cfs);
+                updateWithCurrentValue(mark, current, cfs, values);
                 iter.remove();
             }
         }
     }
 
     // Reads the missing current values from the CFS.
-    private void updateWithCurrentValuesFromCFS(List<PartitionUpdate.CounterMark> marks, ColumnFamilyStore cfs)
+    private void updateWithCurrentValuesFromCFS(List<PartitionUpdate.CounterMark> marks, ColumnFamilyStore cfs, Map<CounterCacheKey, ClockAndCount> values)
     {
         ColumnFilter.Builder builder = ColumnFilter.selectionBuilder();
         BTreeSet.Builder<Clustering> names = BTreeSet.builder(cfs.metadata.comparator);
@@ -251,14 +217,14 @@ public class CounterMutation implements IMutation
         PeekingIterator<PartitionUpdate.CounterMark> markIter = Iterators.peekingIterator(marks.iterator());
         try (OpOrder.Group op = cfs.readOrdering.start(); RowIterator partition = UnfilteredRowIterators.filter(cmd.queryMemtableAndDisk(cfs, op), nowInSec))
         {
-            updateForRow(markIter, partition.staticRow(), cfs);
+            updateForRow(markIter, partition.staticRow(), cfs, values);
 
             while (partition.hasNext())
             {
                 if (!markIter.hasNext())
                     return;
 
-                updateForRow(markIter, partition.next(), cfs);
+                updateForRow(markIter, partition.next(), cfs, values);
             }
         }
     }
@@ -273,7 +239,7 @@ public class CounterMutation implements IMutation
         return cfs.getComparator().compare(c1, c2);
     }
 
-    private void updateForRow(PeekingIterator<PartitionUpdate.CounterMark> markIter, Row row, ColumnFamilyStore cfs)
+    private void updateForRow(PeekingIterator<PartitionUpdate.CounterMark> markIter, Row row, ColumnFamilyStore cfs, Map<CounterCacheKey, ClockAndCount> values)
     {
         int cmp = 0;
         // If the mark is before the row, we have no value for this mark, just consume it
@@ -289,7 +255,7 @@ public class CounterMutation implements IMutation
             Cell cell = mark.path() == null ? row.getCell(mark.column()) : row.getCell(mark.column(), mark.path());
             if (cell != null)
             {
-                updateWithCurrentValue(mark, CounterContext.instance().getLocalClockAndCount(cell.value()), cfs);
+                updateWithCurrentValue(mark, CounterContext.instance().getLocalClockAndCount(cell.value()), cfs, values);
                 markIter.remove();
             }
             if (!markIter.hasNext())
@@ -304,6 +270,213 @@ public class CounterMutation implements IMutation
         return DatabaseDescriptor.getCounterWriteRpcTimeout();
     }
 
+    /**
+     * The counter mutations queued for a partition, which are applied in batches by whichever thread applying one of
+     * them gets the lock first, so that the other threads don't have to wait for the lock to have theirs applied.
+     * A thread only applies a single batch at a time though, then hands the mutations still queued over to the
+     * thread of the first of them, so that a thread never applies the mutations of a hot partition indefinitely.
+     *
+     * Queues are reference counted by the threads applying mutations to their partition, so that a partition never
+     * has more than one queue, and discarded once unused.
+     */
+    private static final class PartitionQueue
+    {
+        private static final ConcurrentMap<Pair<String, DecoratedKey>, PartitionQueue> queues = new ConcurrentHashMap<>();
+        private static final int MAX_BATCH_SIZE = 128;
+
+        private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+        private final Lock lock = new ReentrantLock();
+        // only updated within queues.compute()
+        private int references;
+
+        private static PartitionQueue acquire(Pair<String, DecoratedKey> partition)
+        {
+            return queues.compute(partition, (k, queue) -> {
+                if (queue == null)
+                    queue = new PartitionQueue();
+                queue.references++;
+                return queue;
+            });
+        }
+
+        private static void release(Pair<String, DecoratedKey> partition)
+        {
+            queues.computeIfPresent(partition, (k, queue) -> --queue.references == 0 ? null : queue);
+        }
+
+        /**
+         * Applies a batch of the queued mutations unless another thread is already doing it. As the thread holding
+         * the lock checks the queue again after releasing it, and wakes up the thread of the first mutation still
+         * queued if any, a mutation is never left in the queue with no thread to apply it.
+         */
+        private void drain()
+        {
+            if (pending.isEmpty() || !lock.tryLock())
+                return;
+
+            try
+            {
+                List<Pending> batch = new ArrayList<>();
+                Pending next;
+                while (batch.size() < MAX_BATCH_SIZE && (next = pending.poll()) != null)
+                {
+                    if (next.start())
+                        batch.add(next);
+                }
+
+                if (!batch.isEmpty())
+                    apply(batch);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            handOver();
+        }
+
+        /**
+         * Wakes up the thread of the first mutation still queued, if any, so that it applies the next batch.
+         */
+        private void handOver()
+        {
+            for (Pending next : pending)
+            {
+                if (next.wakeUp())
+                    return;
+            }
+        }
+
+        private static void apply(List<Pending> batch)
+        {
+            // the values of the counters updated by the batch, so that each one is only read once
+            Map<CounterCacheKey, ClockAndCount> values = new HashMap<>();
+            List<Mutation> results = new ArrayList<>(batch.size());
+            try
+            {
+                for (Pending pending : batch)
+                    results.add(pending.mutation.processModifications(values));
+
+                // the updates of a same counter are reconciled on their clock, so the merged mutation holds the last one
+                Mutation.merge(results).apply();
+            }
+            catch (Throwable t)
+            {
+                JVMStabilityInspector.inspectThrowable(t);
+                for (Pending pending : batch)
+                    pending.completeExceptionally(t);
+                return;
+            }
+
+            if (CacheService.instance.counterCache.getCapacity() != 0)
+            {
+                for (Map.Entry<CounterCacheKey, ClockAndCount> value : values.entrySet())
+                    CacheService.instance.counterCache.put(value.getKey(), value.getValue());
+            }
+
+            for (int i = 0; i < batch.size(); i++)
+                batch.get(i).complete(results.get(i));
+        }
+    }
+
+    private static final class Pending
+    {
+        private static final int QUEUED = 0;
+        private static final int STARTED = 1;
+        private static final int CANCELLED = 2;
+
+        private final CounterMutation mutation;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private final CompletableFuture<Mutation> result = new CompletableFuture<>();
+        private final Thread thread = Thread.currentThread();
+
+        private Pending(CounterMutation mutation)
+        {
+            this.mutation = mutation;
+        }
+
+        private boolean start()
+        {
+            return state.compareAndSet(QUEUED, STARTED);
+        }
+
+        private void complete(Mutation applied)
+        {
+            result.complete(applied);
+            LockSupport.unpark(thread);
+        }
+
+        private void completeExceptionally(Throwable t)
+        {
+            result.completeExceptionally(t);
+            LockSupport.unpark(thread);
+        }
+
+        /**
+         * Wakes up the thread of this mutation, so that it applies the next batch, unless it isn't queued anymore.
+         */
+        private boolean wakeUp()
+        {
+            if (state.get() != QUEUED)
+                return false;
+            LockSupport.unpark(thread);
+            return true;
+        }
+
+        /**
+         * Applies batches of the queued mutations, until this one is applied, whenever no other thread is applying
+         * them, and waits for another thread to apply it or to hand the queue over otherwise.
+         */
+        private Mutation await(PartitionQueue queue, long deadlineNanos) throws WriteTimeoutException
+        {
+            boolean interrupted = false;
+            while (!result.isDone())
+            {
+                if (state.get() == QUEUED)
+                    queue.drain();
+                if (result.isDone())
+                    break;
+
+                long remainingNanos = deadlineNanos - System.nanoTime();
+                if (remainingNanos <= 0 || interrupted)
+                {
+                    // like for the lock acquisition this replaces, we only time out before the mutation is applied
+                    if (state.compareAndSet(QUEUED, CANCELLED))
+                    {
+                        // we may have been handed the queue over
+                        queue.handOver();
+                        if (interrupted)
+                            Thread.currentThread().interrupt();
+                        throw timeout();
+                    }
+                    break;
+                }
+
+                LockSupport.parkNanos(this, remainingNanos);
+                interrupted |= Thread.interrupted();
+            }
+
+            try
+            {
+                return Uninterruptibles.getUninterruptibly(result);
+            }
+            catch (ExecutionException e)
+            {
+                throw Throwables.propagate(e.getCause());
+            }
+            finally
+            {
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+            }
+        }
+
+        private WriteTimeoutException timeout()
+        {
+            Keyspace keyspace = Keyspace.open(mutation.getKeyspaceName());
+            return new WriteTimeoutException(WriteType.COUNTER, mutation.consistency(), 0, mutation.consistency().blockFor(keyspace));
+        }
+    }
+
     @Override
     public String toString()
     {
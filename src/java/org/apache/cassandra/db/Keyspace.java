@@ -22,13 +22,11 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.Lock;
 
 import com.google.common.base.Function;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 
-import org.apache.cassandra.concurrent.Stage;
-import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.config.*;
 import org.apache.cassandra.db.commitlog.CommitLog;
 import org.apache.cassandra.db.commitlog.ReplayPosition;
@@ -397,6 +395,17 @@ public class Keyspace
         apply(mutation, false, true, true);
     }
 
+    /**
+     * Like {@link #apply(Mutation, boolean, boolean)}, but returns before the mutation is applied if it has to wait for
+     * the previous view updates of its partition.
+     *
+     * @return a future completed once the mutation is applied, or completed exceptionally with the reason it wasn't.
+     */
+    public CompletableFuture<?> applyFuture(Mutation mutation, boolean writeCommitLog, boolean updateIndexes)
+    {
+        return apply(mutation, writeCommitLog, updateIndexes, false, true);
+    }
+
     /**
      * This method appends a row to the global CommitLog, then updates memtables and indexes.
      *
@@ -407,52 +416,77 @@ public class Keyspace
      * @param isClReplay     true if caller is the commitlog replayer
      */
     public void apply(final Mutation mutation, final boolean writeCommitLog, boolean updateIndexes, boolean isClReplay)
+    {
+        try
+        {
+            // not deferrable, so the mutation has been applied, or has failed to, on return
+            apply(mutation, writeCommitLog, updateIndexes, isClReplay, false).get();
+        }
+        catch (ExecutionException e)
+        {
+            throw Throwables.propagate(e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * @param isDeferrable true if the mutation can be applied after returning, when it has to wait for the previous
+     *                     view updates of its partition, rather than wait for them
+     */
+    private CompletableFuture<?> apply(final Mutation mutation, final boolean writeCommitLog, boolean updateIndexes, boolean isClReplay, boolean isDeferrable)
     {
         if (TEST_FAIL_WRITES && metadata.name.equals(TEST_FAIL_WRITES_KS))
             throw new RuntimeException("Testing write failures");
 
-        Lock lock = null;
         boolean requiresViewUpdate = updateIndexes && viewManager.updatesAffectView(Collections.singleton(mutation), false);
 
         if (requiresViewUpdate)
         {
-            mutation.viewLockAcquireStart.compareAndSet(0L, System.currentTimeMillis());
-            lock = ViewManager.acquireLockFor(mutation.key().getKey());
+            // the mutations of a partition are applied in order, so that each one reads the previous ones to update
+            // the views, and we only wait for the previous ones until the write timeout, or forever on replay
+            long enqueuedAt = System.nanoTime();
+            long timeout = isClReplay
+                         ? Long.MAX_VALUE
+                         : TimeUnit.MILLISECONDS.toNanos(DatabaseDescriptor.getWriteRpcTimeout() - (System.currentTimeMillis() - mutation.createdAt));
+            CompletableFuture<Boolean> applied = viewManager.applyInOrder(mutation, timeout, isDeferrable, () -> {
+                if (!isClReplay)
+                {
+                    long waitTime = System.nanoTime() - enqueuedAt;
+                    for (UUID cfid : mutation.getColumnFamilyIds())
+                        columnFamilyStores.get(cfid).metric.viewLockAcquireTime.update(waitTime, TimeUnit.NANOSECONDS);
+                }
+                applyInternal(mutation, writeCommitLog, updateIndexes, isClReplay, true);
+            });
 
-            if (lock == null)
-            {
-                if ((System.currentTimeMillis() - mutation.createdAt) > DatabaseDescriptor.getWriteRpcTimeout())
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            applied.whenComplete((isApplied, t) -> {
+                if (t != null)
                 {
-                    logger.trace("Could not acquire lock for {}", ByteBufferUtil.bytesToHex(mutation.key().getKey()));
-                    Tracing.trace("Could not acquire MV lock");
-                    throw new WriteTimeoutException(WriteType.VIEW, ConsistencyLevel.LOCAL_ONE, 0, 1);
+                    future.completeExceptionally(t);
                 }
-                else
+                else if (!isApplied)
                 {
-                    //This view update can't happen right now. so rather than keep this thread busy
-                    // we will re-apply ourself to the queue and try again later
-                    StageManager.getStage(Stage.MUTATION).execute(() -> {
-                        if (writeCommitLog)
-                            mutation.apply();
-                        else
-                            mutation.applyUnsafe();
-                    });
-
-                    return;
+                    logger.trace("Timed out waiting for the previous view updates of {}", ByteBufferUtil.bytesToHex(mutation.key().getKey()));
+                    Tracing.trace("Timed out waiting for the previous MV updates of the partition");
+                    future.completeExceptionally(new WriteTimeoutException(WriteType.VIEW, ConsistencyLevel.LOCAL_ONE, 0, 1));
                 }
-            }
-            else
-            {
-                long acquireTime = System.currentTimeMillis() - mutation.viewLockAcquireStart.get();
-                if (!isClReplay)
+                else
                 {
-                    for(UUID cfid : mutation.getColumnFamilyIds())
-                    {
-                        columnFamilyStores.get(cfid).metric.viewLockAcquireTime.update(acquireTime, TimeUnit.MILLISECONDS);
-                    }
+                    future.complete(null);
                 }
-            }
+            });
+            return future;
         }
+
+        applyInternal(mutation, writeCommitLog, updateIndexes, isClReplay, false);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private void applyInternal(Mutation mutation, boolean writeCommitLog, boolean updateIndexes, boolean isClReplay, boolean requiresViewUpdate)
+    {
         int nowInSec = FBUtilities.nowInSeconds();
         try (OpOrder.Group opGroup = writeOrder.start())
         {
@@ -499,11 +533,6 @@ public class Keyspace
                     baseComplete.set(System.currentTimeMillis());
             }
         }
-        finally
-        {
-            if (lock != null)
-                lock.unlock();
-        }
     }
 
     public AbstractReplicationStrategy getReplicationStrategy()
@@ -0,0 +1,399 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.Iterators;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.db.partitions.AtomicBTreePartition;
+import org.apache.cassandra.dht.*;
+import org.apache.cassandra.dht.Murmur3Partitioner.LongToken;
+import org.apache.cassandra.serializers.MarshalException;
+import org.apache.cassandra.utils.AbstractIterator;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.NoSpamLogger;
+import org.apache.cassandra.utils.ObjectSizes;
+import org.apache.cassandra.utils.concurrent.OpOrder;
+import org.apache.cassandra.utils.memory.MemtableAllocator;
+import org.apache.cassandra.utils.trie.InMemoryTrie;
+
+/**
+ * The sorted collection of partitions held by a {@link Memtable}.
+ *
+ * The implementation is chosen by the memtable_partition_map setting, which a table can override with a
+ * "memtable_partition_map" entry in its schema extensions:
+ *  - skiplist: a ConcurrentSkipListMap keyed by the partition key, usable with any partitioner.
+ *  - trie: a set of off-heap {@link InMemoryTrie}s, each owning a slice of the token ring, which avoids most of
+ *    the per-partition heap objects of the skip list. Only available with the Murmur3Partitioner; tables using
+ *    another partitioner fall back to the skip list.
+ */
+public abstract class MemtablePartitions
+{
+    private static final Logger logger = LoggerFactory.getLogger(MemtablePartitions.class);
+
+    public static final String EXTENSION_KEY = "memtable_partition_map";
+
+    public static MemtablePartitions create(CFMetaData metadata)
+    {
+        if (type(metadata) == Config.MemtablePartitionMapType.trie && metadata.partitioner instanceof Murmur3Partitioner)
+            return new TriePartitions();
+        return new SkipListPartitions();
+    }
+
+    static Config.MemtablePartitionMapType type(CFMetaData metadata)
+    {
+        ByteBuffer override = metadata.params.extensions.get(EXTENSION_KEY);
+        if (override == null)
+            return DatabaseDescriptor.getMemtablePartitionMapType();
+
+        // the schema validates the extension, but a table created before it did may still hold an invalid one
+        Config.MemtablePartitionMapType type = parseType(override);
+        if (type != null)
+            return type;
+
+        NoSpamLogger.log(logger, NoSpamLogger.Level.WARN, 1, TimeUnit.MINUTES,
+                         "Invalid {} extension for table {}.{}, using the configured {} instead",
+                         EXTENSION_KEY, metadata.ksName, metadata.cfName, DatabaseDescriptor.getMemtablePartitionMapType());
+        return DatabaseDescriptor.getMemtablePartitionMapType();
+    }
+
+    /**
+     * @return the partition map type of the given memtable_partition_map extension value, or null if it isn't valid
+     */
+    public static Config.MemtablePartitionMapType parseType(ByteBuffer value)
+    {
+        try
+        {
+            return Config.MemtablePartitionMapType.valueOf(UTF8Type.instance.compose(value));
+        }
+        catch (IllegalArgumentException | MarshalException e)
+        {
+            return null;
+        }
+    }
+
+    public abstract AtomicBTreePartition get(DecoratedKey key);
+
+    /**
+     * @return the partition already present for {@code key}, or null if {@code partition} was added
+     */
+    public abstract AtomicBTreePartition putIfAbsent(DecoratedKey key, AtomicBTreePartition partition);
+
+    public abstract int size();
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * @return all the partitions, in partition key order
+     */
+    public abstract Iterator<AtomicBTreePartition> iterator();
+
+    /**
+     * @return the partitions within {@code keyRange}, in partition key order
+     */
+    public abstract Iterator<AtomicBTreePartition> iterator(AbstractBounds<PartitionPosition> keyRange);
+
+    /**
+     * The on-heap overhead of each partition, excluding its token and contents, to account in the memtable allocator.
+     */
+    public abstract int partitionOverheadHeapSize();
+
+    /**
+     * Accounts any memory allocated by this structure outside of the partitions themselves since the last call.
+     */
+    public void accountAllocations(MemtableAllocator allocator, OpOrder.Group opGroup)
+    {
+    }
+
+    /**
+     * Releases any memory held by this structure. Must only be called once the memtable can no longer be read.
+     */
+    public void release()
+    {
+    }
+
+    static class SkipListPartitions extends MemtablePartitions
+    {
+        private static final int ROW_OVERHEAD_HEAP_SIZE = estimateRowOverhead(Integer.parseInt(System.getProperty("cassandra.memtable_row_overhead_computation_step", "100000")));
+
+        // We index the memtable by PartitionPosition only for the purpose of being able
+        // to select key range using Token.KeyBound. However put() ensures that we
+        // actually only store DecoratedKey.
+        private final ConcurrentNavigableMap<PartitionPosition, AtomicBTreePartition> partitions = new ConcurrentSkipListMap<>();
+
+        public AtomicBTreePartition get(DecoratedKey key)
+        {
+            return partitions.get(key);
+        }
+
+        public AtomicBTreePartition putIfAbsent(DecoratedKey key, AtomicBTreePartition partition)
+        {
+            return partitions.putIfAbsent(key, partition);
+        }
+
+        public int size()
+        {
+            return partitions.size();
+        }
+
+        public boolean isEmpty()
+        {
+            return partitions.isEmpty();
+        }
+
+        public Iterator<AtomicBTreePartition> iterator()
+        {
+            return partitions.values().iterator();
+        }
+
+        public Iterator<AtomicBTreePartition> iterator(AbstractBounds<PartitionPosition> keyRange)
+        {
+            boolean startIsMin = keyRange.left.isMinimum();
+            boolean stopIsMin = keyRange.right.isMinimum();
+
+            boolean isBound = keyRange instanceof Bounds;
+            boolean includeStart = isBound || keyRange instanceof IncludingExcludingBounds;
+            boolean includeStop = isBound || keyRange instanceof Range;
+            Map<PartitionPosition, AtomicBTreePartition> subMap;
+            if (startIsMin)
+                subMap = stopIsMin ? partitions : partitions.headMap(keyRange.right, includeStop);
+            else
+                subMap = stopIsMin
+                       ? partitions.tailMap(keyRange.left, includeStart)
+                       : partitions.subMap(keyRange.left, includeStart, keyRange.right, includeStop);
+
+            return subMap.values().iterator();
+        }
+
+        public int partitionOverheadHeapSize()
+        {
+            return ROW_OVERHEAD_HEAP_SIZE;
+        }
+
+        private static int estimateRowOverhead(final int count)
+        {
+            // calculate row overhead
+            try (final OpOrder.Group group = new OpOrder().start())
+            {
+                int rowOverhead;
+                MemtableAllocator allocator = Memtable.MEMORY_POOL.newAllocator();
+                ConcurrentNavigableMap<PartitionPosition, Object> partitions = new ConcurrentSkipListMap<>();
+                final Object val = new Object();
+                for (int i = 0 ; i < count ; i++)
+                    partitions.put(allocator.clone(new BufferDecoratedKey(new LongToken(i), ByteBufferUtil.EMPTY_BYTE_BUFFER), group), val);
+                double avgSize = ObjectSizes.measureDeep(partitions) / (double) count;
+                rowOverhead = (int) ((avgSize - Math.floor(avgSize)) < 0.05 ? Math.floor(avgSize) : Math.ceil(avgSize));
+                rowOverhead -= ObjectSizes.measureDeep(new LongToken(0));
+                rowOverhead += AtomicBTreePartition.EMPTY_SIZE;
+                allocator.setDiscarding();
+                allocator.setDiscarded();
+                return rowOverhead;
+            }
+        }
+    }
+
+    /**
+     * Partitions stored in one off-heap trie per token range shard. The trie key of a partition is its token,
+     * as 8 big-endian bytes with the sign bit flipped, followed by the partition key bytes, which sorts exactly
+     * like DecoratedKey.compareTo.
+     *
+     * Each shard takes one writer at a time, but only inserting a new partition needs to write to the trie:
+     * updates to existing partitions are applied to the AtomicBTreePartition found by a lock-free lookup.
+     */
+    static class TriePartitions extends MemtablePartitions
+    {
+        private static final int SHARD_BITS = Integer.numberOfTrailingZeros(Integer.highestOneBit(Integer.getInteger("cassandra.memtable_trie_shards",
+                                                                                                                      FBUtilities.getAvailableProcessors())));
+
+        // only the partition and the reference to it in the trie content array live on heap
+        private static final int ROW_OVERHEAD_HEAP_SIZE = (int) (AtomicBTreePartition.EMPTY_SIZE
+                                                                 + ObjectSizes.measureDeep(new BufferDecoratedKey(new LongToken(0), ByteBufferUtil.EMPTY_BYTE_BUFFER))
+                                                                 - ObjectSizes.measureDeep(new LongToken(0))
+                                                                 + ObjectSizes.sizeOfReferenceArray(1)
+                                                                 - ObjectSizes.sizeOfReferenceArray(0));
+
+        private final InMemoryTrie<AtomicBTreePartition>[] shards;
+        private final long[] accounted;
+        private final AtomicLong unaccounted = new AtomicLong();
+
+        @SuppressWarnings("unchecked")
+        TriePartitions()
+        {
+            shards = new InMemoryTrie[1 << SHARD_BITS];
+            accounted = new long[shards.length];
+            for (int i = 0; i < shards.length; i++)
+                shards[i] = new InMemoryTrie<>();
+        }
+
+        private static long token(PartitionPosition position)
+        {
+            return ((LongToken) position.getToken()).token;
+        }
+
+        private static int shard(long token)
+        {
+            return SHARD_BITS == 0 ? 0 : (int) ((token ^ Long.MIN_VALUE) >>> (64 - SHARD_BITS));
+        }
+
+        private static byte[] encode(long token, ByteBuffer key)
+        {
+            byte[] bytes = new byte[8 + key.remaining()];
+            long v = token ^ Long.MIN_VALUE;
+            for (int i = 0; i < 8; i++)
+                bytes[i] = (byte) (v >>> (56 - 8 * i));
+            ByteBufferUtil.arrayCopy(key, key.position(), bytes, 8, key.remaining());
+            return bytes;
+        }
+
+        public AtomicBTreePartition get(DecoratedKey key)
+        {
+            long token = token(key);
+            return shards[shard(token)].get(encode(token, key.getKey()));
+        }
+
+        public AtomicBTreePartition putIfAbsent(DecoratedKey key, AtomicBTreePartition partition)
+        {
+            long token = token(key);
+            int shard = shard(token);
+            byte[] bytes = encode(token, key.getKey());
+            InMemoryTrie<AtomicBTreePartition> trie = shards[shard];
+            synchronized (trie)
+            {
+                AtomicBTreePartition previous = trie.putIfAbsent(bytes, partition);
+                long allocated = trie.allocatedBytes();
+                if (allocated > accounted[shard])
+                {
+                    unaccounted.addAndGet(allocated - accounted[shard]);
+                    accounted[shard] = allocated;
+                }
+                return previous;
+            }
+        }
+
+        public int size()
+        {
+            int size = 0;
+            for (InMemoryTrie<AtomicBTreePartition> trie : shards)
+                size += trie.size();
+            return size;
+        }
+
+        public Iterator<AtomicBTreePartition> iterator()
+        {
+            List<Iterator<AtomicBTreePartition>> iterators = new ArrayList<>(shards.length);
+            for (InMemoryTrie<AtomicBTreePartition> trie : shards)
+                iterators.add(trie.values());
+            return Iterators.concat(iterators.iterator());
+        }
+
+        public Iterator<AtomicBTreePartition> iterator(AbstractBounds<PartitionPosition> keyRange)
+        {
+            final PartitionPosition start = keyRange.left.isMinimum() ? null : keyRange.left;
+            final PartitionPosition stop = keyRange.right.isMinimum() ? null : keyRange.right;
+            final boolean includeStart = keyRange instanceof Bounds || keyRange instanceof IncludingExcludingBounds;
+            final boolean includeStop = keyRange instanceof Bounds || keyRange instanceof Range;
+
+            int firstShard = start == null ? 0 : shard(token(start));
+            int lastShard = stop == null ? shards.length - 1 : shard(token(stop));
+            List<Iterator<AtomicBTreePartition>> iterators = new ArrayList<>(Math.max(0, lastShard - firstShard + 1));
+            for (int i = firstShard; i <= lastShard; i++)
+            {
+                if (i > firstShard || start == null)
+                    iterators.add(shards[i].values());
+                else
+                    // a KeyBound sorts before or after all the keys of its token: start from the token and skip
+                    // anything before the bound below
+                    iterators.add(shards[i].valuesFrom(encode(token(start), start instanceof DecoratedKey
+                                                                            ? ((DecoratedKey) start).getKey()
+                                                                            : ByteBufferUtil.EMPTY_BYTE_BUFFER)));
+            }
+            final Iterator<AtomicBTreePartition> iter = Iterators.concat(iterators.iterator());
+
+            return new AbstractIterator<AtomicBTreePartition>()
+            {
+                protected AtomicBTreePartition computeNext()
+                {
+                    while (iter.hasNext())
+                    {
+                        AtomicBTreePartition partition = iter.next();
+                        DecoratedKey key = partition.partitionKey();
+                        if (start != null)
+                        {
+                            int cmp = key.compareTo(start);
+                            if (cmp < 0 || (cmp == 0 && !includeStart))
+                                continue;
+                        }
+                        if (stop != null)
+                        {
+                            int cmp = key.compareTo(stop);
+                            if (cmp > 0 || (cmp == 0 && !includeStop))
+                                return endOfData();
+                        }
+                        return partition;
+                    }
+                    return endOfData();
+                }
+            };
+        }
+
+        public int partitionOverheadHeapSize()
+        {
+            return ROW_OVERHEAD_HEAP_SIZE;
+        }
+
+        public void accountAllocations(MemtableAllocator allocator, OpOrder.Group opGroup)
+        {
+            long size = unaccounted.getAndSet(0);
+            if (size == 0)
+                return;
+
+            // the trie lives off-heap, but count it against the heap limit if the pool has no off-heap limit
+            if (Memtable.MEMORY_POOL.offHeap.limit > 0)
+                allocator.offHeap().allocate(size, opGroup);
+            else
+                allocator.onHeap().allocate(size, opGroup);
+        }
+
+        public void release()
+        {
+            for (InMemoryTrie<AtomicBTreePartition> trie : shards)
+            {
+                synchronized (trie)
+                {
+                    trie.release();
+                }
+            }
+        }
+    }
+}
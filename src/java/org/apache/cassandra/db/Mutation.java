@@ -20,7 +20,7 @@ package org.apache.cassandra.db;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.cassandra.config.CFMetaData;
@@ -57,8 +57,6 @@ public class Mutation implements IMutation
 
     // Time at which this mutation was instantiated
     public final long createdAt = System.currentTimeMillis();
-    // keep track of when mutation has started waiting for a MV partition lock
-    public final AtomicLong viewLockAcquireStart = new AtomicLong(0);
 
     public Mutation(String keyspaceName, DecoratedKey key)
     {
@@ -205,6 +203,16 @@ public class Mutation implements IMutation
         ks.apply(this, ks.getMetadata().params.durableWrites);
     }
 
+    /**
+     * Like {@link #apply()}, but may return before the mutation is applied if it has to wait for the previous view
+     * updates of its partition.
+     */
+    public CompletableFuture<?> applyFuture()
+    {
+        Keyspace ks = Keyspace.open(keyspaceName);
+        return ks.applyFuture(this, ks.getMetadata().params.durableWrites, true);
+    }
+
     public void apply(boolean durableWrites)
     {
         Keyspace.open(keyspaceName).apply(this, durableWrites);
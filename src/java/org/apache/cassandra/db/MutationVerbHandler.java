@@ -20,6 +20,12 @@ package org.apache.cassandra.db;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.google.common.base.Throwables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.batchlog.LegacyBatchlogMigrator;
 import org.apache.cassandra.exceptions.WriteTimeoutException;
@@ -29,6 +35,8 @@ import org.apache.cassandra.tracing.Tracing;
 
 public class MutationVerbHandler implements IVerbHandler<Mutation>
 {
+    private static final Logger logger = LoggerFactory.getLogger(MutationVerbHandler.class);
+
     public void doVerb(MessageIn<Mutation> message, int id)  throws IOException
     {
         // Check if there were any forwarding headers in this message
@@ -49,17 +57,53 @@ public class MutationVerbHandler implements IVerbHandler<Mutation>
         try
         {
             if (message.version < MessagingService.VERSION_30 && LegacyBatchlogMigrator.isLegacyBatchlogMutation(message.payload))
+            {
                 LegacyBatchlogMigrator.handleLegacyMutation(message.payload);
-            else
-                message.payload.apply();
+                reply(id, replyTo);
+                return;
+            }
 
-            Tracing.trace("Enqueuing response to {}", replyTo);
-            MessagingService.instance().sendReply(WriteResponse.createMessage(), id, replyTo);
+            // mutations waiting for the previous view updates of their partition are replied to once applied, rather
+            // than have this thread wait for them
+            CompletableFuture<?> future = message.payload.applyFuture();
+            if (future.isDone())
+            {
+                future.join();
+                reply(id, replyTo);
+                return;
+            }
+
+            future.whenComplete((result, t) -> {
+                if (t == null)
+                    reply(id, replyTo);
+                else if (t instanceof WriteTimeoutException)
+                    failed();
+                else
+                    logger.error("Failed to apply mutation", t);
+            });
         }
         catch (WriteTimeoutException wto)
         {
-            Tracing.trace("Payload application resulted in WriteTimeout, not replying");
+            failed();
         }
+        catch (CompletionException e)
+        {
+            if (e.getCause() instanceof WriteTimeoutException)
+                failed();
+            else
+                throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private static void reply(int id, InetAddress replyTo)
+    {
+        Tracing.trace("Enqueuing response to {}", replyTo);
+        MessagingService.instance().sendReply(WriteResponse.createMessage(), id, replyTo);
+    }
+
+    private static void failed()
+    {
+        Tracing.trace("Payload application resulted in WriteTimeout, not replying");
     }
 
     /**
@@ -19,9 +19,11 @@ package org.apache.cassandra.db;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Iterables;
 
 import org.apache.cassandra.config.CFMetaData;
@@ -32,6 +34,8 @@ import org.apache.cassandra.db.lifecycle.View;
 import org.apache.cassandra.db.partitions.*;
 import org.apache.cassandra.db.rows.UnfilteredRowIterator;
 import org.apache.cassandra.dht.AbstractBounds;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.exceptions.RequestExecutionException;
 import org.apache.cassandra.index.Index;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
@@ -47,6 +51,7 @@ import org.apache.cassandra.service.pager.*;
 import org.apache.cassandra.thrift.ThriftResultsMerger;
 import org.apache.cassandra.tracing.Tracing;
 import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.Pair;
 
 /**
  * A read command that selects a (part of a) range of partitions.
@@ -55,6 +60,12 @@ public class PartitionRangeReadCommand extends ReadCommand
 {
     protected static final SelectionDeserializer selectionDeserializer = new Deserializer();
 
+    // the minimum number of index summary samples in each sub-range of a range scanned in parallel
+    private static final int MIN_SAMPLES_PER_PARALLEL_SCAN = 8;
+    // the number of partitions, and of bytes of partitions, each parallel scan reads ahead of the merged result
+    private static final int PARALLEL_SCAN_BUFFER_SIZE = 32;
+    private static final int PARALLEL_SCAN_BUFFER_BYTES = 1024 * 1024;
+
     private final DataRange dataRange;
     private int oldestUnrepairedTombstone = Integer.MAX_VALUE;
 
@@ -178,6 +189,119 @@ public class PartitionRangeReadCommand extends ReadCommand
     protected UnfilteredPartitionIterator queryStorage(final ColumnFamilyStore cfs, ReadExecutionController executionController)
     {
         ColumnFamilyStore.ViewFragment view = cfs.select(View.select(SSTableSet.LIVE, dataRange().keyRange()));
+
+        int parallelism = DatabaseDescriptor.getRangeReadParallelism();
+        if (parallelism > 1 && !cfs.isIndex())
+        {
+            List<AbstractBounds<PartitionPosition>> subRanges = splitRange(view.sstables, parallelism);
+            if (subRanges.size() > 1)
+                return queryStorageInParallel(cfs, subRanges);
+        }
+        return queryStorage(cfs, view);
+    }
+
+    /**
+     * Splits the range of this command in at most {@code parallelism} sub-ranges holding about the same amount of data,
+     * estimated from the keys sampled by the index summaries of the sstables. Ranges holding too few partitions for
+     * a parallel scan to be worth it are not split, and neither are ranges for which the limit of this command is
+     * likely to be reached within the first sub-range, as the other sub-ranges would then be scanned for nothing.
+     */
+    @VisibleForTesting
+    List<AbstractBounds<PartitionPosition>> splitRange(Iterable<SSTableReader> sstables, int parallelism)
+    {
+        AbstractBounds<PartitionPosition> keyRange = dataRange().keyRange();
+        Range<Token> tokenRange = new Range<>(keyRange.left.getToken(), keyRange.right.getToken());
+
+        // each sample stands for the data of an sstable between it and the next sample
+        List<Pair<DecoratedKey, Double>> samples = new ArrayList<>();
+        double totalWeight = 0;
+        double estimatedPartitions = 0;
+        for (SSTableReader sstable : sstables)
+        {
+            int summarySize = sstable.getIndexSummarySize();
+            if (summarySize == 0)
+                continue;
+
+            double weight = (double) sstable.onDiskLength() / summarySize;
+            for (DecoratedKey key : sstable.getKeySamples(tokenRange))
+            {
+                if (!keyRange.contains(key))
+                    continue;
+                samples.add(Pair.create(key, weight));
+                totalWeight += weight;
+                estimatedPartitions += sstable.getEffectiveIndexInterval();
+            }
+        }
+
+        int count = Math.min(parallelism, samples.size() / MIN_SAMPLES_PER_PARALLEL_SCAN);
+        if (count <= 1 || limits().count() < estimatedPartitions / count)
+            return Collections.singletonList(keyRange);
+
+        Collections.sort(samples, (a, b) -> a.left.compareTo(b.left));
+        List<AbstractBounds<PartitionPosition>> subRanges = new ArrayList<>(count);
+        AbstractBounds<PartitionPosition> remainder = keyRange;
+        double weight = 0;
+        for (Pair<DecoratedKey, Double> sample : samples)
+        {
+            if (subRanges.size() == count - 1)
+                break;
+
+            weight += sample.right;
+            if (weight < totalWeight * (subRanges.size() + 1) / count)
+                continue;
+
+            // split after all the partitions of the token, as keys sharing a token can only be told apart by their key
+            PartitionPosition boundary = sample.left.getToken().maxKeyBound();
+            if (!remainder.contains(boundary))
+                continue;
+
+            Pair<AbstractBounds<PartitionPosition>, AbstractBounds<PartitionPosition>> split = remainder.split(boundary);
+            if (split == null)
+                continue;
+
+            subRanges.add(split.left);
+            remainder = split.right;
+        }
+        subRanges.add(remainder);
+        return subRanges;
+    }
+
+    /**
+     * Scans the sub-ranges of the range of this command concurrently. Each sub-range is scanned by a sub-command, which
+     * references the memtables and sstables of the sub-range the same way this command does when not split.
+     */
+    private UnfilteredPartitionIterator queryStorageInParallel(ColumnFamilyStore cfs, List<AbstractBounds<PartitionPosition>> subRanges)
+    {
+        Tracing.trace("Executing parallel seq scan of {} sub-ranges for {}", subRanges.size(), dataRange().keyRange().getString(metadata().getKeyValidator()));
+
+        final List<UnfilteredPartitionIterator> iterators = new ArrayList<>(subRanges.size());
+        try
+        {
+            for (AbstractBounds<PartitionPosition> subRange : subRanges)
+            {
+                PartitionRangeReadCommand command = forSubRange(subRange);
+                iterators.add(command.queryStorage(cfs, cfs.select(View.select(SSTableSet.LIVE, subRange))));
+                oldestUnrepairedTombstone = Math.min(oldestUnrepairedTombstone, command.oldestUnrepairedTombstone);
+            }
+            return new ParallelScanPartitionIterator(iterators, PARALLEL_SCAN_BUFFER_SIZE, PARALLEL_SCAN_BUFFER_BYTES);
+        }
+        catch (RuntimeException | Error e)
+        {
+            try
+            {
+                FBUtilities.closeAll(iterators);
+            }
+            catch (Exception suppressed)
+            {
+                e.addSuppressed(suppressed);
+            }
+
+            throw e;
+        }
+    }
+
+    private UnfilteredPartitionIterator queryStorage(ColumnFamilyStore cfs, ColumnFamilyStore.ViewFragment view)
+    {
         Tracing.trace("Executing seq scan across {} sstables for {}", view.sstables.size(), dataRange().keyRange().getString(metadata().getKeyValidator()));
 
         // fetch data from current memtable, historical memtables, and SSTables in the correct order.
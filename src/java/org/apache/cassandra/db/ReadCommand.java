@@ -396,11 +396,16 @@ public abstract class ReadCommand extends MonitorableImpl implements ReadQuery
             private int liveRows = 0;
             private int tombstones = 0;
 
+            // the counts of the current partition, for the partition samplers
+            private int partitionLiveRows = 0;
+            private int partitionTombstones = 0;
+
             private DecoratedKey currentKey;
 
             @Override
             public UnfilteredRowIterator computeNext(UnfilteredRowIterator iter)
             {
+                recordPartitionSamples();
                 currentKey = iter.partitionKey();
 
                 return new AlteringUnfilteredRowIterator(iter)
@@ -415,7 +420,10 @@ public abstract class ReadCommand extends MonitorableImpl implements ReadQuery
                     protected Row computeNext(Row row)
                     {
                         if (row.hasLiveData(ReadCommand.this.nowInSec()))
+                        {
                             ++liveRows;
+                            ++partitionLiveRows;
+                        }
 
                         for (Cell cell : row.cells())
                         {
@@ -435,6 +443,7 @@ public abstract class ReadCommand extends MonitorableImpl implements ReadQuery
                     private void countTombstone(ClusteringPrefix clustering)
                     {
                         ++tombstones;
+                        ++partitionTombstones;
                         if (tombstones > failureThreshold && respectTombstoneThresholds)
                         {
                             String query = ReadCommand.this.toCQLString();
@@ -445,6 +454,23 @@ public abstract class ReadCommand extends MonitorableImpl implements ReadQuery
                 };
             }
 
+            /**
+             * Records what was scanned in the current partition, so that "nodetool toppartitions" can point at the
+             * partitions with the most tombstones or rows read. This is a no-op unless these samplers are enabled.
+             */
+            private void recordPartitionSamples()
+            {
+                if (currentKey == null)
+                    return;
+
+                if (partitionTombstones > 0)
+                    metric.samplers.get(TableMetrics.Sampler.TOMBSTONES).addSample(currentKey.getKey(), currentKey.hashCode(), partitionTombstones);
+                if (partitionLiveRows > 0)
+                    metric.samplers.get(TableMetrics.Sampler.LIVE_ROWS).addSample(currentKey.getKey(), currentKey.hashCode(), partitionLiveRows);
+                partitionTombstones = 0;
+                partitionLiveRows = 0;
+            }
+
             @Override
             public void close()
             {
@@ -454,6 +480,7 @@ public abstract class ReadCommand extends MonitorableImpl implements ReadQuery
                 }
                 finally
                 {
+                    recordPartitionSamples();
                     recordLatency(metric, System.nanoTime() - startTimeNanos);
 
                     metric.tombstoneScannedHistogram.update(tombstones);
@@ -83,7 +83,9 @@ public abstract class ReadResponse
 
     protected static ByteBuffer makeDigest(UnfilteredPartitionIterator iterator, int version)
     {
-        MessageDigest digest = FBUtilities.threadLocalMD5Digest();
+        MessageDigest digest = version >= MessagingService.VERSION_32
+                             ? FBUtilities.threadLocalMurmur3Digest()
+                             : FBUtilities.threadLocalMD5Digest();
         UnfilteredPartitionIterators.digest(iterator, digest, version);
         return ByteBuffer.wrap(digest.digest());
     }
@@ -380,7 +382,7 @@ public abstract class ReadResponse
             if (digest.hasRemaining())
                 return new DigestResponse(digest);
 
-            assert version == MessagingService.VERSION_30;
+            assert version >= MessagingService.VERSION_30;
             ByteBuffer data = ByteBufferUtil.readWithVIntLength(in);
             return new RemoteDataResponse(data);
         }
@@ -415,9 +417,10 @@ public abstract class ReadResponse
             long size = ByteBufferUtil.serializedSizeWithVIntLength(digest);
             if (!isDigest)
             {
-                // Note that we can only get there if version == 3.0, which is the current_version. When we'll change the
-                // version, we'll have to deserialize/re-serialize the data to be in the proper version.
-                assert version == MessagingService.VERSION_30;
+                // Note that we can only get there if version >= 3.0. The data is serialized in the current_version, which
+                // 3.0 nodes can read since 3.2 only changed the digest algorithm. When we'll change the serialization
+                // format, we'll have to deserialize/re-serialize the data to be in the proper version.
+                assert version >= MessagingService.VERSION_30;
                 ByteBuffer data = ((DataResponse)response).data;
                 size += ByteBufferUtil.serializedSizeWithVIntLength(data);
             }
@@ -281,7 +281,7 @@ public abstract class SinglePartitionReadCommand<F extends ClusteringIndexFilter
 
         // Attempt a sentinel-read-cache sequence.  if a write invalidates our sentinel, we'll return our
         // (now potentially obsolete) data, but won't cache it. see CASSANDRA-3862
-        // TODO: don't evict entire partitions on writes (#2864)
+        // Writes to a cached partition are otherwise applied to it, see ColumnFamilyStore#maybeUpdateRowCache
         IRowCacheEntry cached = CacheService.instance.rowCache.get(key);
         if (cached != null)
         {
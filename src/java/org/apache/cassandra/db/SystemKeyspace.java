@@ -96,6 +96,7 @@ public final class SystemKeyspace
     public static final String SIZE_ESTIMATES = "size_estimates";
     public static final String AVAILABLE_RANGES = "available_ranges";
     public static final String VIEWS_BUILDS_IN_PROGRESS = "views_builds_in_progress";
+    public static final String VIEWS_BUILDS_RANGES_IN_PROGRESS = "views_builds_ranges_in_progress";
     public static final String BUILT_VIEWS = "built_views";
 
     @Deprecated public static final String LEGACY_HINTS = "hints";
@@ -256,6 +257,17 @@ public final class SystemKeyspace
                 + "generation_number int,"
                 + "PRIMARY KEY ((keyspace_name), view_name))");
 
+    private static final CFMetaData ViewsBuildsRangesInProgress =
+        compile(VIEWS_BUILDS_RANGES_IN_PROGRESS,
+                "views builds current progress per token range",
+                "CREATE TABLE %s ("
+                + "keyspace_name text,"
+                + "view_name text,"
+                + "start_token varchar,"
+                + "end_token varchar,"
+                + "last_token varchar,"
+                + "PRIMARY KEY ((keyspace_name), view_name, start_token, end_token))");
+
     private static final CFMetaData BuiltViews =
         compile(BUILT_VIEWS,
                 "built views",
@@ -431,6 +443,7 @@ public final class SystemKeyspace
                          SizeEstimates,
                          AvailableRanges,
                          ViewsBuildsInProgress,
+                         ViewsBuildsRangesInProgress,
                          BuiltViews,
                          LegacyHints,
                          LegacyBatchlog,
@@ -548,14 +561,34 @@ public final class SystemKeyspace
         String buildReq = "DELETE FROM %S.%s WHERE keyspace_name = ? AND view_name = ?";
         executeInternal(String.format(buildReq, NAME, VIEWS_BUILDS_IN_PROGRESS), keyspaceName, viewName);
         forceBlockingFlush(VIEWS_BUILDS_IN_PROGRESS);
+        executeInternal(String.format(buildReq, NAME, VIEWS_BUILDS_RANGES_IN_PROGRESS), keyspaceName, viewName);
+        forceBlockingFlush(VIEWS_BUILDS_RANGES_IN_PROGRESS);
 
         String builtReq = "DELETE FROM %s.\"%s\" WHERE keyspace_name = ? AND view_name = ?";
         executeInternal(String.format(builtReq, NAME, BUILT_VIEWS), keyspaceName, viewName);
         forceBlockingFlush(BUILT_VIEWS);
     }
 
-    public static void beginViewBuild(String ksname, String viewName, int generationNumber)
-    {
+    /**
+     * Records the start of a view build over the given token ranges, each of which then has its progress recorded
+     * independently by {@link #updateViewBuildStatus(String, String, Range, Token)}.
+     */
+    public static void beginViewBuild(String ksname, String viewName, int generationNumber, Collection<Range<Token>> ranges)
+    {
+        // The ranges are recorded before the generation, so that a build is only resumed with all of its ranges, and
+        // replace those of any build which didn't get to record its generation.
+        executeInternal(String.format("DELETE FROM system.%s WHERE keyspace_name = ? AND view_name = ?", VIEWS_BUILDS_RANGES_IN_PROGRESS), ksname, viewName);
+        String req = "INSERT INTO system.%s (keyspace_name, view_name, start_token, end_token) VALUES (?, ?, ?, ?)";
+        Token.TokenFactory factory = ViewsBuildsRangesInProgress.partitioner.getTokenFactory();
+        for (Range<Token> range : ranges)
+        {
+            executeInternal(String.format(req, VIEWS_BUILDS_RANGES_IN_PROGRESS),
+                            ksname,
+                            viewName,
+                            factory.toString(range.left),
+                            factory.toString(range.right));
+        }
+
         executeInternal(String.format("INSERT INTO system.%s (keyspace_name, view_name, generation_number) VALUES (?, ?, ?)", VIEWS_BUILDS_IN_PROGRESS),
                         ksname,
                         viewName,
@@ -573,35 +606,60 @@ public final class SystemKeyspace
         forceBlockingFlush(BUILT_VIEWS);
         executeInternal(String.format("DELETE FROM system.%s WHERE keyspace_name = ? AND view_name = ?", VIEWS_BUILDS_IN_PROGRESS), ksname, viewName);
         forceBlockingFlush(VIEWS_BUILDS_IN_PROGRESS);
+        executeInternal(String.format("DELETE FROM system.%s WHERE keyspace_name = ? AND view_name = ?", VIEWS_BUILDS_RANGES_IN_PROGRESS), ksname, viewName);
+        forceBlockingFlush(VIEWS_BUILDS_RANGES_IN_PROGRESS);
     }
 
-    public static void updateViewBuildStatus(String ksname, String viewName, Token token)
+    /**
+     * Records that the view has been built for all the keys of the range up to the given token, which is the end of
+     * the range once it has been entirely built.
+     */
+    public static void updateViewBuildStatus(String ksname, String viewName, Range<Token> range, Token token)
     {
-        String req = "INSERT INTO system.%s (keyspace_name, view_name, last_token) VALUES (?, ?, ?)";
-        Token.TokenFactory factory = ViewsBuildsInProgress.partitioner.getTokenFactory();
-        executeInternal(String.format(req, VIEWS_BUILDS_IN_PROGRESS), ksname, viewName, factory.toString(token));
+        String req = "INSERT INTO system.%s (keyspace_name, view_name, start_token, end_token, last_token) VALUES (?, ?, ?, ?, ?)";
+        Token.TokenFactory factory = ViewsBuildsRangesInProgress.partitioner.getTokenFactory();
+        executeInternal(String.format(req, VIEWS_BUILDS_RANGES_IN_PROGRESS),
+                        ksname,
+                        viewName,
+                        factory.toString(range.left),
+                        factory.toString(range.right),
+                        factory.toString(token));
     }
 
-    public static Pair<Integer, Token> getViewBuildStatus(String ksname, String viewName)
+    /**
+     * @return the generation of the sstables the view build is done from along with, for each of the ranges the
+     * build was started with, the last token it has been built up to (or null if the range build hasn't started),
+     * or null if no view build is in progress, or if the build in progress can't be resumed because it was started
+     * before ranges were recorded.
+     */
+    public static Pair<Integer, Map<Range<Token>, Token>> getViewBuildStatus(String ksname, String viewName)
     {
-        String req = "SELECT generation_number, last_token FROM system.%s WHERE keyspace_name = ? AND view_name = ?";
+        String req = "SELECT generation_number FROM system.%s WHERE keyspace_name = ? AND view_name = ?";
         UntypedResultSet queryResultSet = executeInternal(String.format(req, VIEWS_BUILDS_IN_PROGRESS), ksname, viewName);
         if (queryResultSet == null || queryResultSet.isEmpty())
             return null;
 
         UntypedResultSet.Row row = queryResultSet.one();
+        if (!row.has("generation_number"))
+            return null;
+        int generation = row.getInt("generation_number");
 
-        Integer generation = null;
-        Token lastKey = null;
-        if (row.has("generation_number"))
-            generation = row.getInt("generation_number");
-        if (row.has("last_key"))
+        req = "SELECT start_token, end_token, last_token FROM system.%s WHERE keyspace_name = ? AND view_name = ?";
+        Token.TokenFactory factory = ViewsBuildsRangesInProgress.partitioner.getTokenFactory();
+        Map<Range<Token>, Token> ranges = new HashMap<>();
+        for (UntypedResultSet.Row rangeRow : executeInternal(String.format(req, VIEWS_BUILDS_RANGES_IN_PROGRESS), ksname, viewName))
         {
-            Token.TokenFactory factory = ViewsBuildsInProgress.partitioner.getTokenFactory();
-            lastKey = factory.fromString(row.getString("last_key"));
+            Range<Token> range = new Range<>(factory.fromString(rangeRow.getString("start_token")),
+                                             factory.fromString(rangeRow.getString("end_token")));
+            Token lastToken = rangeRow.has("last_token") ? factory.fromString(rangeRow.getString("last_token")) : null;
+            ranges.put(range, lastToken);
         }
 
-        return Pair.create(generation, lastKey);
+        // builds started by previous versions only recorded a last token for the whole build, and are restarted
+        if (ranges.isEmpty())
+            return null;
+
+        return Pair.create(generation, ranges);
     }
 
     public static synchronized void saveTruncationRecord(ColumnFamilyStore cfs, long truncatedAt, ReplayPosition position)
@@ -46,36 +46,37 @@ public abstract class AbstractCommitLogService
 
     final CommitLog commitLog;
     private final String name;
-    private final long pollIntervalMillis;
+    private final long pollIntervalNanos;
 
     private static final Logger logger = LoggerFactory.getLogger(AbstractCommitLogService.class);
 
     /**
      * CommitLogService provides a fsync service for Allocations, fulfilling either the
-     * Batch or Periodic contract.
+     * Batch, Group or Periodic contract.
      *
      * Subclasses may be notified when a sync finishes by using the syncComplete WaitQueue.
      */
-    AbstractCommitLogService(final CommitLog commitLog, final String name, final long pollIntervalMillis)
+    AbstractCommitLogService(final CommitLog commitLog, final String name, final long pollIntervalNanos)
     {
         this.commitLog = commitLog;
         this.name = name;
-        this.pollIntervalMillis = pollIntervalMillis;
+        this.pollIntervalNanos = pollIntervalNanos;
     }
 
     // Separated into individual method to ensure relevant objects are constructed before this is started.
     void start()
     {
-        if (pollIntervalMillis < 1)
-            throw new IllegalArgumentException(String.format("Commit log flush interval must be positive: %dms", pollIntervalMillis));
+        if (pollIntervalNanos < 1)
+            throw new IllegalArgumentException(String.format("Commit log flush interval must be positive: %fms", pollIntervalNanos * 1e-6));
 
         Runnable runnable = new Runnable()
         {
             public void run()
             {
+                boolean lagging = false;
                 long firstLagAt = 0;
-                long totalSyncDuration = 0; // total time spent syncing since firstLagAt
-                long syncExceededIntervalBy = 0; // time that syncs exceeded pollInterval since firstLagAt
+                long totalSyncDuration = 0; // total time spent syncing since firstLagAt, in nanoseconds
+                long syncExceededIntervalBy = 0; // time that syncs exceeded pollInterval since firstLagAt, in nanoseconds
                 int lagCount = 0;
                 int syncCount = 0;
 
@@ -88,20 +89,23 @@ public abstract class AbstractCommitLogService
                         run = !shutdown;
 
                         // sync and signal
-                        long syncStarted = System.currentTimeMillis();
+                        long syncStartedMillis = System.currentTimeMillis();
+                        long syncStarted = System.nanoTime();
+                        beforeSync();
                         commitLog.sync(shutdown);
-                        lastSyncedAt = syncStarted;
+                        lastSyncedAt = syncStartedMillis;
                         syncComplete.signalAll();
 
 
                         // sleep any time we have left before the next one is due
-                        long now = System.currentTimeMillis();
-                        long sleep = syncStarted + pollIntervalMillis - now;
+                        long now = System.nanoTime();
+                        long sleep = syncStarted + pollIntervalNanos - now;
                         if (sleep < 0)
                         {
                             // if we have lagged noticeably, update our lag counter
-                            if (firstLagAt == 0)
+                            if (!lagging)
                             {
+                                lagging = true;
                                 firstLagAt = now;
                                 totalSyncDuration = syncExceededIntervalBy = syncCount = lagCount = 0;
                             }
@@ -111,7 +115,7 @@ public abstract class AbstractCommitLogService
                         syncCount++;
                         totalSyncDuration += now - syncStarted;
 
-                        if (firstLagAt > 0)
+                        if (lagging)
                         {
                             //Only reset the lag tracking if it actually logged this time
                             boolean logged = NoSpamLogger.log(
@@ -120,9 +124,9 @@ public abstract class AbstractCommitLogService
                                     5,
                                     TimeUnit.MINUTES,
                                     "Out of {} commit log syncs over the past {}s with average duration of {}ms, {} have exceeded the configured commit interval by an average of {}ms",
-                                                      syncCount, (now - firstLagAt) / 1000, String.format("%.2f", (double) totalSyncDuration / syncCount), lagCount, String.format("%.2f", (double) syncExceededIntervalBy / lagCount));
+                                                      syncCount, TimeUnit.NANOSECONDS.toSeconds(now - firstLagAt), String.format("%.2f", totalSyncDuration * 1e-6 / syncCount), lagCount, String.format("%.2f", syncExceededIntervalBy * 1e-6 / lagCount));
                            if (logged)
-                               firstLagAt = 0;
+                               lagging = false;
                         }
 
                         // if we have lagged this round, we probably have work to do already so we don't sleep
@@ -131,7 +135,7 @@ public abstract class AbstractCommitLogService
 
                         try
                         {
-                            haveWork.tryAcquire(sleep, TimeUnit.MILLISECONDS);
+                            haveWork.tryAcquire(sleep, TimeUnit.NANOSECONDS);
                             haveWork.drainPermits();
                         }
                         catch (InterruptedException e)
@@ -147,7 +151,7 @@ public abstract class AbstractCommitLogService
                         // sleep for full poll-interval after an error, so we don't spam the log file
                         try
                         {
-                            haveWork.tryAcquire(pollIntervalMillis, TimeUnit.MILLISECONDS);
+                            haveWork.tryAcquire(pollIntervalNanos, TimeUnit.NANOSECONDS);
                         }
                         catch (InterruptedException e)
                         {
@@ -173,6 +177,13 @@ public abstract class AbstractCommitLogService
 
     protected abstract void maybeWaitForSync(Allocation alloc);
 
+    /**
+     * Called by the sync thread right before each sync, which will persist all the Allocations written so far
+     */
+    protected void beforeSync()
+    {
+    }
+
     /**
      * Sync immediately, but don't block for the sync to cmplete
      */
@@ -23,7 +23,7 @@ class BatchCommitLogService extends AbstractCommitLogService
 {
     public BatchCommitLogService(CommitLog commitLog)
     {
-        super(commitLog, "COMMIT-LOG-WRITER", (int) DatabaseDescriptor.getCommitLogSyncBatchWindow());
+        super(commitLog, "COMMIT-LOG-WRITER", (long) (DatabaseDescriptor.getCommitLogSyncBatchWindow() * 1e6));
     }
 
     protected void maybeWaitForSync(CommitLogSegment.Allocation alloc)
@@ -23,24 +23,27 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.Future;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.CRC32;
 
 import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Ordering;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.apache.cassandra.concurrent.Stage;
-import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
 import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.rows.SerializationHelper;
@@ -68,17 +71,19 @@ public class CommitLogReplayer
     static final String IGNORE_REPLAY_ERRORS_PROPERTY = "cassandra.commitlog.ignorereplayerrors";
     private static final Logger logger = LoggerFactory.getLogger(CommitLogReplayer.class);
     private static final int MAX_OUTSTANDING_REPLAY_COUNT = Integer.getInteger("cassandra.commitlog_max_outstanding_replay_count", 1024);
+    private static final int REPLAY_THREADS = Integer.getInteger("cassandra.commitlog_replay_threads", FBUtilities.getAvailableProcessors());
     private static final int LEGACY_END_OF_SEGMENT_MARKER = 0;
+    private static final Object END_OF_SEGMENT = new Object();
 
     private final Set<Keyspace> keyspacesRecovered;
-    private final List<Future<?>> futures;
-    private final Map<UUID, AtomicInteger> invalidMutations;
+    private final Deque<Future<?>> futures;
+    private final ConcurrentMap<UUID, AtomicInteger> invalidMutations;
     private final AtomicInteger replayedCount;
     private final Map<UUID, ReplayPosition> cfPositions;
     private final ReplayPosition globalPosition;
-    private final CRC32 checksum;
-    private byte[] buffer;
-    private byte[] uncompressedBuffer;
+
+    // mutations to the same partition are applied in commit log order by the same single threaded executor
+    private ExecutorService[] appliers;
 
     private final ReplayFilter replayFilter;
     private final CommitLogArchiver archiver;
@@ -86,13 +91,10 @@ public class CommitLogReplayer
     CommitLogReplayer(CommitLog commitLog, ReplayPosition globalPosition, Map<UUID, ReplayPosition> cfPositions, ReplayFilter replayFilter)
     {
         this.keyspacesRecovered = new NonBlockingHashSet<Keyspace>();
-        this.futures = new ArrayList<Future<?>>();
-        this.buffer = new byte[4096];
-        this.uncompressedBuffer = new byte[4096];
-        this.invalidMutations = new HashMap<UUID, AtomicInteger>();
+        this.futures = new ArrayDeque<Future<?>>();
+        this.invalidMutations = new ConcurrentHashMap<UUID, AtomicInteger>();
         // count the number of replayed mutation. We don't really care about atomicity, but we need it to be a reference.
         this.replayedCount = new AtomicInteger();
-        this.checksum = new CRC32();
         this.cfPositions = cfPositions;
         this.globalPosition = globalPosition;
         this.replayFilter = replayFilter;
@@ -146,9 +148,56 @@ public class CommitLogReplayer
 
     public void recover(File[] clogs) throws IOException
     {
-        int i;
-        for (i = 0; i < clogs.length; ++i)
-            recover(clogs[i], i + 1 == clogs.length);
+        int threads = Math.min(REPLAY_THREADS, clogs.length);
+        if (threads <= 1)
+        {
+            int i;
+            for (i = 0; i < clogs.length; ++i)
+                recover(clogs[i], i + 1 == clogs.length);
+            return;
+        }
+
+        // Read, decompress and deserialize several segments at once, each into its own bounded queue, but
+        // hand their mutations on in commit log order: all of a segment's before any of the next one's.
+        ExecutorService readers = DebuggableThreadPoolExecutor.createWithFixedPoolSize("CommitLogReplayReader", threads);
+        try
+        {
+            List<SegmentQueue> segments = new ArrayList<>(clogs.length);
+            for (int i = 0; i < clogs.length; ++i)
+            {
+                final File clog = clogs[i];
+                final boolean tolerateTruncation = i + 1 == clogs.length;
+                final SegmentQueue segment = new SegmentQueue();
+                segments.add(segment);
+                readers.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            new SegmentReader(clog, tolerateTruncation, segment).read();
+                        }
+                        catch (Throwable t)
+                        {
+                            JVMStabilityInspector.inspectThrowable(t);
+                            segment.failure = t;
+                        }
+                        finally
+                        {
+                            segment.finish();
+                        }
+                    }
+                });
+            }
+
+            for (SegmentQueue segment : segments)
+                segment.drain();
+        }
+        finally
+        {
+            // if a segment failed, readers of later segments may be blocked on their full queue
+            readers.shutdownNow();
+        }
     }
 
     public int blockForWrites()
@@ -156,9 +205,15 @@ public class CommitLogReplayer
         for (Map.Entry<UUID, AtomicInteger> entry : invalidMutations.entrySet())
             logger.warn(String.format("Skipped %d mutations from unknown (probably removed) CF with id %s", entry.getValue().intValue(), entry.getKey()));
 
-        // wait for all the writes to finish on the mutation stage
+        // wait for all the writes to finish
         FBUtilities.waitOnFutures(futures);
         logger.trace("Finished waiting on mutations from recovery");
+        if (appliers != null)
+        {
+            for (ExecutorService applier : appliers)
+                applier.shutdown();
+            appliers = null;
+        }
 
         // flush replayed keyspaces
         futures.clear();
@@ -290,278 +345,381 @@ public class CommitLogReplayer
 
     public void recover(File file, boolean tolerateTruncation) throws IOException
     {
-        CommitLogDescriptor desc = CommitLogDescriptor.fromFileName(file.getName());
-        try(ChannelProxy channel = new ChannelProxy(file);
-            RandomAccessReader reader = RandomAccessReader.open(channel))
+        new SegmentReader(file, tolerateTruncation, this::handleMutation).read();
+    }
+
+    public boolean logAndCheckIfShouldSkip(File file, CommitLogDescriptor desc)
+    {
+        logger.debug("Replaying {} (CL version {}, messaging version {}, compression {})",
+                    file.getPath(),
+                    desc.version,
+                    desc.getMessagingVersion(),
+                    desc.compression);
+
+        if (globalPosition.segment > desc.id)
         {
-            if (desc.version < CommitLogDescriptor.VERSION_21)
-            {
-                if (logAndCheckIfShouldSkip(file, desc))
-                    return;
-                if (globalPosition.segment == desc.id)
-                    reader.seek(globalPosition.position);
-                replaySyncSection(reader, (int) reader.length(), desc, desc.fileName(), tolerateTruncation);
-                return;
-            }
+            logger.trace("skipping replay of fully-flushed {}", file);
+            return true;
+        }
+        return false;
+    }
 
-            final long segmentId = desc.id;
-            try
-            {
-                desc = CommitLogDescriptor.readHeader(reader);
-            }
-            catch (IOException e)
-            {
-                desc = null;
-            }
-            if (desc == null) {
-                handleReplayError(false, "Could not read commit log descriptor in file %s", file);
-                return;
-            }
-            if (segmentId != desc.id)
-            {
-                handleReplayError(false, "Segment id mismatch (filename %d, descriptor %d) in file %s", segmentId, desc.id, file);
-                // continue processing if ignored.
-            }
+    /**
+     * Receives the mutations read from a segment, in commit log order.
+     */
+    private interface MutationHandler
+    {
+        void handle(Mutation mutation, long entryLocation, CommitLogDescriptor desc) throws IOException;
+    }
 
-            if (logAndCheckIfShouldSkip(file, desc))
-                return;
+    /**
+     * Reads the sync sections of a segment, checking, decompressing and deserializing the mutations in them.
+     */
+    private class SegmentReader
+    {
+        private final File file;
+        private final boolean tolerateTruncation;
+        private final MutationHandler handler;
+        private final CRC32 checksum = new CRC32();
+        private byte[] buffer = new byte[4096];
+        private byte[] uncompressedBuffer = new byte[4096];
+
+        SegmentReader(File file, boolean tolerateTruncation, MutationHandler handler)
+        {
+            this.file = file;
+            this.tolerateTruncation = tolerateTruncation;
+            this.handler = handler;
+        }
 
-            ICompressor compressor = null;
-            if (desc.compression != null)
+        void read() throws IOException
+        {
+            CommitLogDescriptor desc = CommitLogDescriptor.fromFileName(file.getName());
+            try(ChannelProxy channel = new ChannelProxy(file);
+                RandomAccessReader reader = RandomAccessReader.open(channel))
             {
+                if (desc.version < CommitLogDescriptor.VERSION_21)
+                {
+                    if (logAndCheckIfShouldSkip(file, desc))
+                        return;
+                    if (globalPosition.segment == desc.id)
+                        reader.seek(globalPosition.position);
+                    replaySyncSection(reader, (int) reader.length(), desc, desc.fileName(), tolerateTruncation);
+                    return;
+                }
+
+                final long segmentId = desc.id;
                 try
                 {
-                    compressor = CompressionParams.createCompressor(desc.compression);
+                    desc = CommitLogDescriptor.readHeader(reader);
                 }
-                catch (ConfigurationException e)
+                catch (IOException e)
                 {
-                    handleReplayError(false, "Unknown compression: %s", e.getMessage());
+                    desc = null;
+                }
+                if (desc == null) {
+                    handleReplayError(false, "Could not read commit log descriptor in file %s", file);
                     return;
                 }
-            }
-
-            assert reader.length() <= Integer.MAX_VALUE;
-            int end = (int) reader.getFilePointer();
-            int replayEnd = end;
-
-            while ((end = readSyncMarker(desc, end, reader, tolerateTruncation)) >= 0)
-            {
-                int replayPos = replayEnd + CommitLogSegment.SYNC_MARKER_SIZE;
-
-                if (logger.isTraceEnabled())
-                    logger.trace("Replaying {} between {} and {}", file, reader.getFilePointer(), end);
-                if (compressor != null)
+                if (segmentId != desc.id)
                 {
-                    int uncompressedLength = reader.readInt();
-                    replayEnd = replayPos + uncompressedLength;
+                    handleReplayError(false, "Segment id mismatch (filename %d, descriptor %d) in file %s", segmentId, desc.id, file);
+                    // continue processing if ignored.
                 }
-                else
+
+                if (logAndCheckIfShouldSkip(file, desc))
+                    return;
+
+                ICompressor compressor = null;
+                if (desc.compression != null)
                 {
-                    replayEnd = end;
+                    try
+                    {
+                        compressor = CompressionParams.createCompressor(desc.compression);
+                    }
+                    catch (ConfigurationException e)
+                    {
+                        handleReplayError(false, "Unknown compression: %s", e.getMessage());
+                        return;
+                    }
                 }
 
-                if (segmentId == globalPosition.segment && replayEnd < globalPosition.position)
-                    // Skip over flushed section.
-                    continue;
+                assert reader.length() <= Integer.MAX_VALUE;
+                int end = (int) reader.getFilePointer();
+                int replayEnd = end;
 
-                FileDataInput sectionReader = reader;
-                String errorContext = desc.fileName();
-                // In the uncompressed case the last non-fully-flushed section can be anywhere in the file.
-                boolean tolerateErrorsInSection = tolerateTruncation;
-                if (compressor != null)
+                while ((end = readSyncMarker(desc, end, reader, tolerateTruncation)) >= 0)
                 {
-                    // In the compressed case we know if this is the last section.
-                    tolerateErrorsInSection &= end == reader.length() || end < 0;
+                    int replayPos = replayEnd + CommitLogSegment.SYNC_MARKER_SIZE;
 
-                    int start = (int) reader.getFilePointer();
-                    try
+                    if (logger.isTraceEnabled())
+                        logger.trace("Replaying {} between {} and {}", file, reader.getFilePointer(), end);
+                    if (compressor != null)
                     {
-                        int compressedLength = end - start;
-                        if (logger.isTraceEnabled())
-                            logger.trace("Decompressing {} between replay positions {} and {}",
-                                         file,
-                                         replayPos,
-                                         replayEnd);
-                        if (compressedLength > buffer.length)
-                            buffer = new byte[(int) (1.2 * compressedLength)];
-                        reader.readFully(buffer, 0, compressedLength);
-                        int uncompressedLength = replayEnd - replayPos;
-                        if (uncompressedLength > uncompressedBuffer.length)
-                            uncompressedBuffer = new byte[(int) (1.2 * uncompressedLength)];
-                        compressedLength = compressor.uncompress(buffer, 0, compressedLength, uncompressedBuffer, 0);
-                        sectionReader = new FileSegmentInputStream(ByteBuffer.wrap(uncompressedBuffer), reader.getPath(), replayPos);
-                        errorContext = "compressed section at " + start + " in " + errorContext;
+                        int uncompressedLength = reader.readInt();
+                        replayEnd = replayPos + uncompressedLength;
                     }
-                    catch (IOException | ArrayIndexOutOfBoundsException e)
+                    else
                     {
-                        handleReplayError(tolerateErrorsInSection,
-                                          "Unexpected exception decompressing section at %d: %s",
-                                          start, e);
-                        continue;
+                        replayEnd = end;
                     }
-                }
 
-                if (!replaySyncSection(sectionReader, replayEnd, desc, errorContext, tolerateErrorsInSection))
-                    break;
-            }
-            logger.debug("Finished reading {}", file);
-        }
-    }
+                    if (segmentId == globalPosition.segment && replayEnd < globalPosition.position)
+                        // Skip over flushed section.
+                        continue;
 
-    public boolean logAndCheckIfShouldSkip(File file, CommitLogDescriptor desc)
-    {
-        logger.debug("Replaying {} (CL version {}, messaging version {}, compression {})",
-                    file.getPath(),
-                    desc.version,
-                    desc.getMessagingVersion(),
-                    desc.compression);
+                    FileDataInput sectionReader = reader;
+                    String errorContext = desc.fileName();
+                    // In the uncompressed case the last non-fully-flushed section can be anywhere in the file.
+                    boolean tolerateErrorsInSection = tolerateTruncation;
+                    if (compressor != null)
+                    {
+                        // In the compressed case we know if this is the last section.
+                        tolerateErrorsInSection &= end == reader.length() || end < 0;
+
+                        int start = (int) reader.getFilePointer();
+                        try
+                        {
+                            int compressedLength = end - start;
+                            if (logger.isTraceEnabled())
+                                logger.trace("Decompressing {} between replay positions {} and {}",
+                                             file,
+                                             replayPos,
+                                             replayEnd);
+                            if (compressedLength > buffer.length)
+                                buffer = new byte[(int) (1.2 * compressedLength)];
+                            reader.readFully(buffer, 0, compressedLength);
+                            int uncompressedLength = replayEnd - replayPos;
+                            if (uncompressedLength > uncompressedBuffer.length)
+                                uncompressedBuffer = new byte[(int) (1.2 * uncompressedLength)];
+                            compressedLength = compressor.uncompress(buffer, 0, compressedLength, uncompressedBuffer, 0);
+                            sectionReader = new FileSegmentInputStream(ByteBuffer.wrap(uncompressedBuffer), reader.getPath(), replayPos);
+                            errorContext = "compressed section at " + start + " in " + errorContext;
+                        }
+                        catch (IOException | ArrayIndexOutOfBoundsException e)
+                        {
+                            handleReplayError(tolerateErrorsInSection,
+                                              "Unexpected exception decompressing section at %d: %s",
+                                              start, e);
+                            continue;
+                        }
+                    }
 
-        if (globalPosition.segment > desc.id)
-        {
-            logger.trace("skipping replay of fully-flushed {}", file);
-            return true;
+                    if (!replaySyncSection(sectionReader, replayEnd, desc, errorContext, tolerateErrorsInSection))
+                        break;
+                }
+                logger.debug("Finished reading {}", file);
+            }
         }
-        return false;
-    }
 
-    /**
-     * Replays a sync section containing a list of mutations.
-     *
-     * @return Whether replay should continue with the next section.
-     */
-    private boolean replaySyncSection(FileDataInput reader, int end, CommitLogDescriptor desc, String errorContext, boolean tolerateErrors) throws IOException
-    {
-         /* read the logs populate Mutation and apply */
-        while (reader.getFilePointer() < end && !reader.isEOF())
+        /**
+         * Replays a sync section containing a list of mutations.
+         *
+         * @return Whether replay should continue with the next section.
+         */
+        private boolean replaySyncSection(FileDataInput reader, int end, CommitLogDescriptor desc, String errorContext, boolean tolerateErrors) throws IOException
         {
-            long mutationStart = reader.getFilePointer();
-            if (logger.isTraceEnabled())
-                logger.trace("Reading mutation at {}", mutationStart);
-
-            long claimedCRC32;
-            int serializedSize;
-            try
+             /* read the logs populate Mutation and apply */
+            while (reader.getFilePointer() < end && !reader.isEOF())
             {
-                // any of the reads may hit EOF
-                serializedSize = reader.readInt();
-                if (serializedSize == LEGACY_END_OF_SEGMENT_MARKER)
+                long mutationStart = reader.getFilePointer();
+                if (logger.isTraceEnabled())
+                    logger.trace("Reading mutation at {}", mutationStart);
+
+                long claimedCRC32;
+                int serializedSize;
+                try
                 {
-                    logger.trace("Encountered end of segment marker at {}", reader.getFilePointer());
-                    return false;
-                }
+                    // any of the reads may hit EOF
+                    serializedSize = reader.readInt();
+                    if (serializedSize == LEGACY_END_OF_SEGMENT_MARKER)
+                    {
+                        logger.trace("Encountered end of segment marker at {}", reader.getFilePointer());
+                        return false;
+                    }
 
-                // Mutation must be at LEAST 10 bytes:
-                // 3 each for a non-empty Keyspace and Key (including the
-                // 2-byte length from writeUTF/writeWithShortLength) and 4 bytes for column count.
-                // This prevents CRC by being fooled by special-case garbage in the file; see CASSANDRA-2128
-                if (serializedSize < 10)
+                    // Mutation must be at LEAST 10 bytes:
+                    // 3 each for a non-empty Keyspace and Key (including the
+                    // 2-byte length from writeUTF/writeWithShortLength) and 4 bytes for column count.
+                    // This prevents CRC by being fooled by special-case garbage in the file; see CASSANDRA-2128
+                    if (serializedSize < 10)
+                    {
+                        handleReplayError(tolerateErrors,
+                                          "Invalid mutation size %d at %d in %s",
+                                          serializedSize, mutationStart, errorContext);
+                        return false;
+                    }
+
+                    long claimedSizeChecksum;
+                    if (desc.version < CommitLogDescriptor.VERSION_21)
+                        claimedSizeChecksum = reader.readLong();
+                    else
+                        claimedSizeChecksum = reader.readInt() & 0xffffffffL;
+                    checksum.reset();
+                    if (desc.version < CommitLogDescriptor.VERSION_20)
+                        checksum.update(serializedSize);
+                    else
+                        updateChecksumInt(checksum, serializedSize);
+
+                    if (checksum.getValue() != claimedSizeChecksum)
+                    {
+                        handleReplayError(tolerateErrors,
+                                          "Mutation size checksum failure at %d in %s",
+                                          mutationStart, errorContext);
+                        return false;
+                    }
+                    // ok.
+
+                    if (serializedSize > buffer.length)
+                        buffer = new byte[(int) (1.2 * serializedSize)];
+                    reader.readFully(buffer, 0, serializedSize);
+                    if (desc.version < CommitLogDescriptor.VERSION_21)
+                        claimedCRC32 = reader.readLong();
+                    else
+                        claimedCRC32 = reader.readInt() & 0xffffffffL;
+                }
+                catch (EOFException eof)
                 {
                     handleReplayError(tolerateErrors,
-                                      "Invalid mutation size %d at %d in %s",
-                                      serializedSize, mutationStart, errorContext);
-                    return false;
+                                      "Unexpected end of segment",
+                                      mutationStart, errorContext);
+                    return false; // last CL entry didn't get completely written. that's ok.
                 }
 
-                long claimedSizeChecksum;
-                if (desc.version < CommitLogDescriptor.VERSION_21)
-                    claimedSizeChecksum = reader.readLong();
-                else
-                    claimedSizeChecksum = reader.readInt() & 0xffffffffL;
-                checksum.reset();
-                if (desc.version < CommitLogDescriptor.VERSION_20)
-                    checksum.update(serializedSize);
-                else
-                    updateChecksumInt(checksum, serializedSize);
-
-                if (checksum.getValue() != claimedSizeChecksum)
+                checksum.update(buffer, 0, serializedSize);
+                if (claimedCRC32 != checksum.getValue())
                 {
                     handleReplayError(tolerateErrors,
-                                      "Mutation size checksum failure at %d in %s",
+                                      "Mutation checksum failure at %d in %s",
                                       mutationStart, errorContext);
-                    return false;
+                    continue;
                 }
-                // ok.
+                readMutation(buffer, serializedSize, reader.getFilePointer(), desc);
+            }
+            return true;
+        }
 
-                if (serializedSize > buffer.length)
-                    buffer = new byte[(int) (1.2 * serializedSize)];
-                reader.readFully(buffer, 0, serializedSize);
-                if (desc.version < CommitLogDescriptor.VERSION_21)
-                    claimedCRC32 = reader.readLong();
-                else
-                    claimedCRC32 = reader.readInt() & 0xffffffffL;
+        /**
+         * Deserializes a commit log entry and hands it on to be replayed.
+         */
+        private void readMutation(byte[] inputBuffer, int size, long entryLocation, CommitLogDescriptor desc) throws IOException
+        {
+            final Mutation mutation;
+            try (RebufferingInputStream bufIn = new DataInputBuffer(inputBuffer, 0, size))
+            {
+                mutation = Mutation.serializer.deserialize(bufIn,
+                                                           desc.getMessagingVersion(),
+                                                           SerializationHelper.Flag.LOCAL);
+                // doublecheck that what we read is [still] valid for the current schema
+                for (PartitionUpdate upd : mutation.getPartitionUpdates())
+                    upd.validate();
             }
-            catch (EOFException eof)
+            catch (UnknownColumnFamilyException ex)
             {
-                handleReplayError(tolerateErrors,
-                                  "Unexpected end of segment",
-                                  mutationStart, errorContext);
-                return false; // last CL entry didn't get completely written. that's ok.
+                if (ex.cfId == null)
+                    return;
+                invalidMutations.computeIfAbsent(ex.cfId, id -> new AtomicInteger()).incrementAndGet();
+                return;
             }
-
-            checksum.update(buffer, 0, serializedSize);
-            if (claimedCRC32 != checksum.getValue())
+            catch (Throwable t)
             {
-                handleReplayError(tolerateErrors,
-                                  "Mutation checksum failure at %d in %s",
-                                  mutationStart, errorContext);
-                continue;
+                JVMStabilityInspector.inspectThrowable(t);
+                File f = File.createTempFile("mutation", "dat");
+
+                try (DataOutputStream out = new DataOutputStream(new FileOutputStream(f)))
+                {
+                    out.write(inputBuffer, 0, size);
+                }
+
+                // Checksum passed so this error can't be permissible.
+                handleReplayError(false,
+                                  "Unexpected error deserializing mutation; saved to %s.  " +
+                                  "This may be caused by replaying a mutation against a table with the same name but incompatible schema.  " +
+                                  "Exception follows: %s",
+                                  f.getAbsolutePath(),
+                                  t);
+                return;
             }
-            replayMutation(buffer, serializedSize, reader.getFilePointer(), desc);
+
+            handler.handle(mutation, entryLocation, desc);
         }
-        return true;
     }
 
     /**
-     * Deserializes and replays a commit log entry.
+     * The mutations of a segment read ahead of their replay. The queue is bounded so that segments
+     * being read ahead cannot fill the heap.
      */
-    void replayMutation(byte[] inputBuffer, int size,
-            final long entryLocation, final CommitLogDescriptor desc) throws IOException
+    private class SegmentQueue implements MutationHandler
     {
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(MAX_OUTSTANDING_REPLAY_COUNT);
+        // set by the reader before finish(), so visible to drain() once it takes END_OF_SEGMENT
+        private Throwable failure;
 
-        final Mutation mutation;
-        try (RebufferingInputStream bufIn = new DataInputBuffer(inputBuffer, 0, size))
+        public void handle(Mutation mutation, long entryLocation, CommitLogDescriptor desc) throws IOException
         {
-            mutation = Mutation.serializer.deserialize(bufIn,
-                                                       desc.getMessagingVersion(),
-                                                       SerializationHelper.Flag.LOCAL);
-            // doublecheck that what we read is [still] valid for the current schema
-            for (PartitionUpdate upd : mutation.getPartitionUpdates())
-                upd.validate();
+            try
+            {
+                queue.put(new PendingMutation(mutation, entryLocation, desc));
+            }
+            catch (InterruptedException e)
+            {
+                throw new InterruptedIOException("Replay was abandoned");
+            }
         }
-        catch (UnknownColumnFamilyException ex)
+
+        void finish()
         {
-            if (ex.cfId == null)
-                return;
-            AtomicInteger i = invalidMutations.get(ex.cfId);
-            if (i == null)
+            try
             {
-                i = new AtomicInteger(1);
-                invalidMutations.put(ex.cfId, i);
+                queue.put(END_OF_SEGMENT);
+            }
+            catch (InterruptedException e)
+            {
+                // replay was abandoned, so nothing is waiting for this segment
             }
-            else
-                i.incrementAndGet();
-            return;
         }
-        catch (Throwable t)
+
+        /**
+         * Replays the mutations of this segment as they are read, rethrowing any error reading it.
+         */
+        void drain() throws IOException
         {
-            JVMStabilityInspector.inspectThrowable(t);
-            File f = File.createTempFile("mutation", "dat");
+            while (true)
+            {
+                Object next = Uninterruptibles.takeUninterruptibly(queue);
+                if (next == END_OF_SEGMENT)
+                    break;
+                PendingMutation pending = (PendingMutation) next;
+                handleMutation(pending.mutation, pending.entryLocation, pending.desc);
+            }
 
-            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(f)))
+            if (failure != null)
             {
-                out.write(inputBuffer, 0, size);
+                Throwables.propagateIfInstanceOf(failure, IOException.class);
+                throw Throwables.propagate(failure);
             }
+        }
+    }
 
-            // Checksum passed so this error can't be permissible.
-            handleReplayError(false,
-                              "Unexpected error deserializing mutation; saved to %s.  " +
-                              "This may be caused by replaying a mutation against a table with the same name but incompatible schema.  " +
-                              "Exception follows: %s",
-                              f.getAbsolutePath(),
-                              t);
-            return;
+    private static final class PendingMutation
+    {
+        final Mutation mutation;
+        final long entryLocation;
+        final CommitLogDescriptor desc;
+
+        PendingMutation(Mutation mutation, long entryLocation, CommitLogDescriptor desc)
+        {
+            this.mutation = mutation;
+            this.entryLocation = entryLocation;
+            this.desc = desc;
         }
+    }
 
+    /**
+     * Replays a deserialized commit log entry. Entries are handed to this method one at a time and in commit log
+     * order, even when several segments are being read at once.
+     */
+    void handleMutation(final Mutation mutation, final long entryLocation, final CommitLogDescriptor desc)
+    {
         if (logger.isTraceEnabled())
             logger.trace("replaying mutation for {}.{}: {}", mutation.getKeyspaceName(), mutation.key(), "{" + StringUtils.join(mutation.getPartitionUpdates().iterator(), ", ") + "}");
 
@@ -607,14 +765,23 @@ public class CommitLogReplayer
                 }
             }
         };
-        futures.add(StageManager.getStage(Stage.MUTATION).submit(runnable));
-        if (futures.size() > MAX_OUTSTANDING_REPLAY_COUNT)
+        futures.add(applier(mutation).submit(runnable));
+        while (futures.size() > MAX_OUTSTANDING_REPLAY_COUNT)
+            FBUtilities.waitOnFuture(futures.poll());
+    }
+
+    private ExecutorService applier(Mutation mutation)
+    {
+        if (appliers == null)
         {
-            FBUtilities.waitOnFutures(futures);
-            futures.clear();
+            appliers = new ExecutorService[DatabaseDescriptor.getConcurrentWriters()];
+            for (int i = 0; i < appliers.length; i++)
+                appliers[i] = DebuggableThreadPoolExecutor.createWithFixedPoolSize("CommitLogReplay-" + i, 1);
         }
+        return appliers[(mutation.key().hashCode() & Integer.MAX_VALUE) % appliers.length];
     }
 
+
     protected boolean pointInTimeExceeded(Mutation fm)
     {
         long restoreTarget = archiver.restorePointInTime;
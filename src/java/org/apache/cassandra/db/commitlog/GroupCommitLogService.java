@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+
+/**
+ * Like {@link BatchCommitLogService}, writes are only acknowledged once they are synced to disk, but instead of
+ * requesting a sync for each write, writers wait for the next sync, which happens every group window. A single sync
+ * thus persists all the writes received during the window.
+ */
+class GroupCommitLogService extends AbstractCommitLogService
+{
+    // the writes waiting for the next sync
+    private final AtomicLong group = new AtomicLong();
+
+    public GroupCommitLogService(CommitLog commitLog)
+    {
+        super(commitLog, "GROUP-COMMIT-LOG-WRITER", (long) (DatabaseDescriptor.getCommitLogSyncGroupWindow() * 1e6));
+    }
+
+    protected void maybeWaitForSync(CommitLogSegment.Allocation alloc)
+    {
+        // wait until record has been safely persisted to disk by the next sync
+        pending.incrementAndGet();
+        group.incrementAndGet();
+        alloc.awaitDiskSync(commitLog.metrics.waitingOnCommit);
+        pending.decrementAndGet();
+    }
+
+    @Override
+    protected void beforeSync()
+    {
+        long size = group.getAndSet(0);
+        if (size > 0)
+            commitLog.metrics.groupCommitSize.update(size);
+    }
+}
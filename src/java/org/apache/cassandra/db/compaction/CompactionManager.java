@@ -46,6 +46,7 @@ import org.apache.cassandra.db.lifecycle.SSTableSet;
 import org.apache.cassandra.db.lifecycle.View;
 import org.apache.cassandra.db.rows.UnfilteredRowIterator;
 import org.apache.cassandra.db.view.ViewBuilder;
+import org.apache.cassandra.db.view.ViewBuilderTask;
 import org.apache.cassandra.dht.Bounds;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
@@ -111,9 +112,11 @@ public class CompactionManager implements CompactionManagerMBean
 
     private final CompactionExecutor executor = new CompactionExecutor();
     private final CompactionExecutor validationExecutor = new ValidationExecutor();
+    private final CompactionExecutor shardExecutor = new CompactionExecutor(Math.max(1, DatabaseDescriptor.getConcurrentCompactors()), "CompactionShardExecutor");
+    private final CompactionExecutor viewBuildExecutor = new CompactionExecutor(Math.max(1, DatabaseDescriptor.getConcurrentViewBuilders()), "ViewBuildExecutor");
     private final static CompactionExecutor cacheCleanupExecutor = new CacheCleanupExecutor();
 
-    private final CompactionMetrics metrics = new CompactionMetrics(executor, validationExecutor);
+    private final CompactionMetrics metrics = new CompactionMetrics(executor, validationExecutor, viewBuildExecutor);
     private final Multiset<ColumnFamilyStore> compactingCF = ConcurrentHashMultiset.create();
 
     private final RateLimiter compactionRateLimiter = RateLimiter.create(Double.MAX_VALUE);
@@ -186,6 +189,10 @@ public class CompactionManager implements CompactionManagerMBean
     {
         executor.shutdown();
         executor.awaitTermination(timeout, unit);
+        shardExecutor.shutdown();
+        shardExecutor.awaitTermination(timeout, unit);
+        viewBuildExecutor.shutdown();
+        viewBuildExecutor.awaitTermination(timeout, unit);
     }
 
     // the actual sstables to compact are not determined until we run the BCT; that way, if new sstables
@@ -1335,35 +1342,79 @@ public class CompactionManager implements CompactionManagerMBean
     }
 
     public Future<?> submitViewBuilder(final ViewBuilder builder)
+    {
+        if (executor.isShutdown())
+        {
+            logger.info("Compaction executor has shut down, not submitting view build");
+            return null;
+        }
+
+        return executor.submit(builder);
+    }
+
+    /**
+     * Submits the build of a range of a view, run by the given runnable, tracking it with the given task. The ranges
+     * are built on their own executor, so that no more than concurrent_materialized_view_builders of them run at once
+     * and the other ones wait without taking compaction threads.
+     */
+    public Future<?> submitViewBuilderTask(final ViewBuilderTask task, final Runnable build)
     {
         Runnable runnable = new Runnable()
         {
             public void run()
             {
-                metrics.beginCompaction(builder);
+                metrics.beginCompaction(task);
                 try
                 {
-                    builder.run();
+                    build.run();
                 }
                 finally
                 {
-                    metrics.finishCompaction(builder);
+                    metrics.finishCompaction(task);
                 }
             }
         };
-        if (executor.isShutdown())
+        if (viewBuildExecutor.isShutdown())
         {
-            logger.info("Compaction executor has shut down, not submitting index build");
+            logger.info("View build executor has shut down, not submitting view build");
             return null;
         }
 
-        return executor.submit(runnable);
+        return viewBuildExecutor.submit(runnable);
+    }
+
+    /**
+     * Used by operations running outside of the compaction executors, like saved cache loads, to be listed with
+     * the active compactions.
+     */
+    public CompactionMetrics getMetrics()
+    {
+        return metrics;
     }
+
     public int getActiveCompactions()
     {
         return CompactionMetrics.getCompactions().size();
     }
 
+    /**
+     * @return the number of compactor threads not running any compaction, including the one asking if it isn't
+     * registered yet, which is how many shards a compaction can be split into without exceeding concurrent_compactors
+     */
+    public int getIdleCompactorThreads()
+    {
+        return Math.max(0, executor.getMaximumPoolSize() - getActiveCompactions());
+    }
+
+    /**
+     * Runs a shard of a compaction split by {@link CompactionTask}, which is expected to have checked
+     * {@link #getIdleCompactorThreads()} first.
+     */
+    Future<?> submitShard(Runnable shard)
+    {
+        return shardExecutor.submit(shard);
+    }
+
     private static class CompactionExecutor extends JMXEnabledThreadPoolExecutor
     {
         protected CompactionExecutor(int minThreads, int maxThreads, String name, BlockingQueue<Runnable> queue)
@@ -1552,6 +1603,30 @@ public class CompactionManager implements CompactionManagerMBean
         validationExecutor.setMaximumPoolSize(number);
     }
 
+    public int getConcurrentViewBuilders()
+    {
+        return viewBuildExecutor.getMaximumPoolSize();
+    }
+
+    public synchronized void setConcurrentViewBuilders(int number)
+    {
+        if (number <= 0)
+            throw new IllegalArgumentException("concurrent_materialized_view_builders should be strictly greater than 0, but was " + number);
+
+        // the core size may never exceed the maximum size
+        if (number > viewBuildExecutor.getMaximumPoolSize())
+        {
+            viewBuildExecutor.setMaximumPoolSize(number);
+            viewBuildExecutor.setCorePoolSize(number);
+        }
+        else
+        {
+            viewBuildExecutor.setCorePoolSize(number);
+            viewBuildExecutor.setMaximumPoolSize(number);
+        }
+        DatabaseDescriptor.setConcurrentViewBuilders(number);
+    }
+
     /**
      * Try to stop all of the compactions for given ColumnFamilies.
      *
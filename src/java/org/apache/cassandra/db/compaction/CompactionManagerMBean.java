@@ -106,4 +106,15 @@ public interface CompactionManagerMBean
      * @param number New maximum of validator threads
      */
     public void setMaximumValidatorThreads(int number);
+
+    /**
+     * Returns the number of view ranges which may be built at once
+     */
+    public int getConcurrentViewBuilders();
+
+    /**
+     * Allows user to resize the number of view ranges which may be built at once.
+     * @param number New number of concurrent view builders
+     */
+    public void setConcurrentViewBuilders(int number);
 }
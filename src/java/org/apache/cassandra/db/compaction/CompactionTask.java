@@ -160,44 +160,60 @@ public class CompactionTask extends AbstractCompactionTask
             // to both ifile and dfile and SSTR will throw deletion errors on Windows if it tries to delete before scanner is closed.
             // See CASSANDRA-8019 and CASSANDRA-8399
             int nowInSec = FBUtilities.nowInSeconds();
-            try (Refs<SSTableReader> refs = Refs.ref(actuallyCompact);
-                 AbstractCompactionStrategy.ScannerList scanners = strategy.getScanners(actuallyCompact);
-                 CompactionIterator ci = new CompactionIterator(compactionType, scanners.scanners, controller, nowInSec, taskId))
+            int shards = getShardCount(actuallyCompact);
+            if (shards > 1)
             {
-                if (collector != null)
-                    collector.beginCompaction(ci);
-                long lastCheckObsoletion = start;
+                try (Refs<SSTableReader> refs = Refs.ref(actuallyCompact))
+                {
+                    ShardedCompaction sharded = new ShardedCompaction(this, actuallyCompact, shards, nowInSec);
+                    logger.debug("Compacting ({}) in {} shards", taskId, sharded.shards());
+                    estimatedKeys = SSTableReader.getApproximateKeyCount(actuallyCompact);
+                    newSStables = sharded.execute(collector);
+                    totalKeysWritten = sharded.totalKeysWritten();
+                    mergedRowCounts = sharded.mergedRowCounts();
+                }
+            }
+            else
+            {
+                try (Refs<SSTableReader> refs = Refs.ref(actuallyCompact);
+                     AbstractCompactionStrategy.ScannerList scanners = strategy.getScanners(actuallyCompact);
+                     CompactionIterator ci = new CompactionIterator(compactionType, scanners.scanners, controller, nowInSec, taskId))
+                {
+                    if (collector != null)
+                        collector.beginCompaction(ci);
+                    long lastCheckObsoletion = start;
 
-                if (!controller.cfs.getCompactionStrategyManager().isActive)
-                    throw new CompactionInterruptedException(ci.getCompactionInfo());
+                    if (!controller.cfs.getCompactionStrategyManager().isActive)
+                        throw new CompactionInterruptedException(ci.getCompactionInfo());
 
-                try (CompactionAwareWriter writer = getCompactionAwareWriter(cfs, getDirectories(), transaction, actuallyCompact))
-                {
-                    estimatedKeys = writer.estimatedKeys();
-                    while (ci.hasNext())
+                    try (CompactionAwareWriter writer = getCompactionAwareWriter(cfs, getDirectories(), transaction, actuallyCompact))
                     {
-                        if (ci.isStopRequested())
-                            throw new CompactionInterruptedException(ci.getCompactionInfo());
+                        estimatedKeys = writer.estimatedKeys();
+                        while (ci.hasNext())
+                        {
+                            if (ci.isStopRequested())
+                                throw new CompactionInterruptedException(ci.getCompactionInfo());
 
-                        if (writer.append(ci.next()))
-                            totalKeysWritten++;
+                            if (writer.append(ci.next()))
+                                totalKeysWritten++;
 
-                        if (System.nanoTime() - lastCheckObsoletion > TimeUnit.MINUTES.toNanos(1L))
-                        {
-                            controller.maybeRefreshOverlaps();
-                            lastCheckObsoletion = System.nanoTime();
+                            if (System.nanoTime() - lastCheckObsoletion > TimeUnit.MINUTES.toNanos(1L))
+                            {
+                                controller.maybeRefreshOverlaps();
+                                lastCheckObsoletion = System.nanoTime();
+                            }
                         }
-                    }
 
-                    // point of no return
-                    newSStables = writer.finish();
-                }
-                finally
-                {
-                    if (collector != null)
-                        collector.finishCompaction(ci);
+                        // point of no return
+                        newSStables = writer.finish();
+                    }
+                    finally
+                    {
+                        if (collector != null)
+                            collector.finishCompaction(ci);
 
-                    mergedRowCounts = ci.getMergedRowCounts();
+                        mergedRowCounts = ci.getMergedRowCounts();
+                    }
                 }
             }
 
@@ -224,6 +240,31 @@ public class CompactionTask extends AbstractCompactionTask
         }
     }
 
+    /**
+     * Large compactions are split by token range into shards merged in parallel, as many as there are idle compactor
+     * threads, but none smaller than compaction_min_shard_size_in_mb.
+     *
+     * @return the number of shards to split the compaction of the given sstables into, 1 if it shouldn't be split
+     */
+    protected int getShardCount(Set<SSTableReader> actuallyCompact)
+    {
+        long minShardSize = DatabaseDescriptor.getCompactionMinShardSize();
+        if (minShardSize <= 0 || offline || keepOriginals || !allowsSharding() || actuallyCompact.isEmpty())
+            return 1;
+
+        long shards = Math.min(CompactionManager.instance.getIdleCompactorThreads(), SSTableReader.getTotalBytes(actuallyCompact) / minShardSize);
+        return (int) Math.max(1, shards);
+    }
+
+    /**
+     * Whether the output of this task can be written by independent shards, each to a single sstable; false for
+     * tasks that need control over the size or number of their output sstables.
+     */
+    protected boolean allowsSharding()
+    {
+        return true;
+    }
+
     @Override
     public CompactionAwareWriter getCompactionAwareWriter(ColumnFamilyStore cfs,
                                                           Directories directories,
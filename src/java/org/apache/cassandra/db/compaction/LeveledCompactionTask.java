@@ -58,6 +58,12 @@ public class LeveledCompactionTask extends CompactionTask
         return false;
     }
 
+    @Override
+    protected boolean allowsSharding()
+    {
+        return false;
+    }
+
     protected int getLevel()
     {
         return level;
@@ -36,7 +36,10 @@ public enum OperationType
     FLUSH("Flush"),
     STREAM("Stream"),
     WRITE("Write"),
-    VIEW_BUILD("View build");
+    VIEW_BUILD("View build"),
+    KEY_CACHE_LOAD("Key cache load"),
+    ROW_CACHE_LOAD("Row cache load"),
+    COUNTER_CACHE_LOAD("Counter cache load");
 
     public final String type;
     public final String fileName;
@@ -0,0 +1,304 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Iterables;
+
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Directories;
+import org.apache.cassandra.db.SerializationHeader;
+import org.apache.cassandra.db.compaction.CompactionManager.CompactionExecutorStatsCollector;
+import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.SSTableRewriter;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.sstable.format.SSTableWriter;
+import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.Pair;
+import org.apache.cassandra.utils.Throwables;
+
+/**
+ * Merges the sstables of a {@link CompactionTask} in parallel, split into shards covering disjoint token ranges.
+ *
+ * Each shard has its own controller, scanners and {@link CompactionIterator}, and writes the partitions of its range
+ * to its own sstable. The transaction is only used from the task thread: the writers are all created before the
+ * shards start, and handed to a single {@link SSTableRewriter} once they have all completed, so that the new
+ * sstables replace the originals together. Early opening is not supported.
+ *
+ * The first shard runs on the task thread, and the others on the shard executor of {@link CompactionManager}. If a
+ * shard fails or is stopped, the others are interrupted and the whole compaction is aborted.
+ */
+class ShardedCompaction
+{
+    // the number of index summary entries sampled from each sstable per shard to balance the shards
+    private static final int SAMPLES_PER_SHARD = 128;
+
+    private final CompactionTask task;
+    private final ColumnFamilyStore cfs;
+    private final LifecycleTransaction transaction;
+    private final Set<SSTableReader> actuallyCompact;
+    private final List<Range<Token>> ranges;
+    private final int nowInSec;
+
+    // the first failure of any shard, which the other shards check to stop early
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private long totalKeysWritten;
+    private long[] mergedRowCounts = new long[0];
+
+    ShardedCompaction(CompactionTask task, Set<SSTableReader> actuallyCompact, int shards, int nowInSec)
+    {
+        this.task = task;
+        this.cfs = task.cfs;
+        this.transaction = task.transaction;
+        this.actuallyCompact = actuallyCompact;
+        this.ranges = splitRanges(actuallyCompact, shards);
+        this.nowInSec = nowInSec;
+    }
+
+    /**
+     * Splits the token range of the given sstables into at most {@code shards} ranges holding roughly the same
+     * amount of data, using the keys sampled by their index summaries.
+     *
+     * @return contiguous ranges covering the whole ring, in token order
+     */
+    @VisibleForTesting
+    static List<Range<Token>> splitRanges(Collection<SSTableReader> sstables, int shards)
+    {
+        IPartitioner partitioner = sstables.iterator().next().getPartitioner();
+        List<Pair<Token, Double>> samples = new ArrayList<>();
+        double totalWeight = 0;
+        for (SSTableReader sstable : sstables)
+        {
+            int size = sstable.getIndexSummarySize();
+            if (size == 0)
+                continue;
+
+            // each sample stands for the same share of the sstable data
+            int step = Math.max(1, size / (SAMPLES_PER_SHARD * shards));
+            double weight = (double) sstable.onDiskLength() * step / size;
+            for (int i = 0; i < size; i += step)
+            {
+                Token token = partitioner.decorateKey(ByteBuffer.wrap(sstable.getIndexSummaryKey(i))).getToken();
+                samples.add(Pair.create(token, weight));
+                totalWeight += weight;
+            }
+        }
+
+        Collections.sort(samples, new Comparator<Pair<Token, Double>>()
+        {
+            public int compare(Pair<Token, Double> o1, Pair<Token, Double> o2)
+            {
+                return o1.left.compareTo(o2.left);
+            }
+        });
+
+        List<Token> boundaries = new ArrayList<>(shards - 1);
+        double weight = 0;
+        for (Pair<Token, Double> sample : samples)
+        {
+            if (boundaries.size() == shards - 1)
+                break;
+
+            weight += sample.right;
+            Token token = sample.left;
+            if (weight >= totalWeight * (boundaries.size() + 1) / shards
+                && !token.isMinimum()
+                && (boundaries.isEmpty() || token.compareTo(boundaries.get(boundaries.size() - 1)) > 0))
+                boundaries.add(token);
+        }
+
+        List<Range<Token>> ranges = new ArrayList<>(boundaries.size() + 1);
+        Token left = partitioner.getMinimumToken();
+        for (Token boundary : boundaries)
+        {
+            ranges.add(new Range<>(left, boundary));
+            left = boundary;
+        }
+        ranges.add(new Range<>(left, partitioner.getMinimumToken()));
+        return ranges;
+    }
+
+    int shards()
+    {
+        return ranges.size();
+    }
+
+    /**
+     * Runs all the shards and commits their output, or aborts the transaction if any of them failed.
+     *
+     * @return the new sstables
+     */
+    @SuppressWarnings("resource")
+    Collection<SSTableReader> execute(CompactionExecutorStatsCollector collector)
+    {
+        List<Shard> shards = new ArrayList<>(ranges.size());
+        List<Future<?>> futures = new ArrayList<>(ranges.size() - 1);
+        try (SSTableRewriter rewriter = new SSTableRewriter(transaction, CompactionTask.getMaxDataAge(actuallyCompact), false, false))
+        {
+            try
+            {
+                for (Range<Token> range : ranges)
+                {
+                    Shard shard = new Shard(range);
+                    shards.add(shard);
+                    shard.open(collector);
+                }
+
+                if (!cfs.getCompactionStrategyManager().isActive)
+                    throw new CompactionInterruptedException(shards.get(0).ci.getCompactionInfo());
+
+                for (Shard shard : shards.subList(1, shards.size()))
+                    futures.add(CompactionManager.instance.submitShard(shard));
+                shards.get(0).run();
+            }
+            catch (Throwable t)
+            {
+                failure.compareAndSet(null, t);
+            }
+
+            // wait for all the shards to stop, whether they completed or were interrupted by a failure
+            for (Future<?> future : futures)
+                FBUtilities.waitOnFuture(future);
+
+            Throwable fail = failure.get();
+            for (Shard shard : shards)
+                fail = shard.close(collector, fail);
+
+            if (fail != null)
+            {
+                for (Shard shard : shards)
+                {
+                    if (shard.writer != null)
+                        fail = shard.writer.abort(fail);
+                }
+                Throwables.maybeFail(fail);
+            }
+
+            // point of no return
+            for (Shard shard : shards)
+                rewriter.switchWriter(shard.writer);
+            return rewriter.finish();
+        }
+    }
+
+    long totalKeysWritten()
+    {
+        return totalKeysWritten;
+    }
+
+    long[] mergedRowCounts()
+    {
+        return mergedRowCounts;
+    }
+
+    private final class Shard implements Runnable
+    {
+        private final Range<Token> range;
+
+        private CompactionController controller;
+        private AbstractCompactionStrategy.ScannerList scanners;
+        private CompactionIterator ci;
+        private SSTableWriter writer;
+        private long keysWritten;
+
+        private Shard(Range<Token> range)
+        {
+            this.range = range;
+        }
+
+        @SuppressWarnings("resource")
+        private void open(CompactionExecutorStatsCollector collector)
+        {
+            controller = task.getCompactionController(transaction.originals());
+            scanners = cfs.getCompactionStrategyManager().getScanners(actuallyCompact, Collections.singleton(range));
+            ci = new CompactionIterator(task.compactionType, scanners.scanners, controller, nowInSec, transaction.opId());
+            if (collector != null)
+                collector.beginCompaction(ci);
+
+            long expectedWriteSize = cfs.getExpectedCompactedFileSize(actuallyCompact, task.compactionType) / ranges.size();
+            Directories directories = task.getDirectories();
+            Directories.DataDirectory directory = directories.getWriteableLocation(expectedWriteSize);
+            if (directory == null)
+                throw new RuntimeException("Insufficient disk space to write " + expectedWriteSize + " bytes");
+
+            writer = SSTableWriter.create(Descriptor.fromFilename(cfs.getSSTablePath(directories.getLocationForDisk(directory))),
+                                          SSTableReader.getApproximateKeyCount(actuallyCompact) / ranges.size(),
+                                          CompactionTask.getMinRepairedAt(actuallyCompact),
+                                          cfs.metadata,
+                                          new MetadataCollector(transaction.originals(), cfs.metadata.comparator, 0),
+                                          SerializationHeader.make(cfs.metadata, actuallyCompact),
+                                          transaction);
+        }
+
+        public void run()
+        {
+            try
+            {
+                long lastCheckObsoletion = System.nanoTime();
+                while (ci.hasNext())
+                {
+                    if (ci.isStopRequested() || failure.get() != null)
+                        throw new CompactionInterruptedException(ci.getCompactionInfo());
+
+                    if (writer.append(ci.next()) != null)
+                        keysWritten++;
+
+                    if (System.nanoTime() - lastCheckObsoletion > TimeUnit.MINUTES.toNanos(1L))
+                    {
+                        controller.maybeRefreshOverlaps();
+                        lastCheckObsoletion = System.nanoTime();
+                    }
+                }
+            }
+            catch (Throwable t)
+            {
+                failure.compareAndSet(null, t);
+            }
+        }
+
+        private Throwable close(CompactionExecutorStatsCollector collector, Throwable accumulate)
+        {
+            if (ci != null)
+            {
+                if (collector != null)
+                    collector.finishCompaction(ci);
+
+                long[] counts = ci.getMergedRowCounts();
+                if (counts.length > mergedRowCounts.length)
+                    mergedRowCounts = Arrays.copyOf(mergedRowCounts, counts.length);
+                for (int i = 0; i < counts.length; i++)
+                    mergedRowCounts[i] += counts[i];
+                totalKeysWritten += keysWritten;
+            }
+            return Throwables.close(accumulate, Iterables.filter(Arrays.<AutoCloseable>asList(ci, scanners, controller), Predicates.notNull()));
+        }
+    }
+}
@@ -349,5 +349,11 @@ public class SizeTieredCompactionStrategy extends AbstractCompactionStrategy
         {
             return new SplittingSizeTieredCompactionWriter(cfs, directories, txn, nonExpiredSSTables);
         }
+
+        @Override
+        protected boolean allowsSharding()
+        {
+            return false;
+        }
     }
 }
@@ -18,9 +18,11 @@
 package org.apache.cassandra.db.partitions;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.filter.ColumnFilter;
 import org.apache.cassandra.db.filter.DataLimits;
 import org.apache.cassandra.db.rows.*;
 import org.apache.cassandra.io.ISerializer;
@@ -125,6 +127,47 @@ public class CachedBTreePartition extends ImmutableBTreePartition implements Cac
                                         nonExpiringLiveCells);
     }
 
+    /**
+     * Creates a copy of a cached partition with an update applied to it, holding what caching the partition
+     * after the update would have.
+     *
+     * A partition only holding its first {@code rowsToCache} live rows is the head of the partition up to its
+     * last row, so the rows of the update past that row are left out. If the update deletes any of the cached
+     * rows however, we don't know the rows which should take their place, and there is no result.
+     *
+     * @param cached the cached partition to update.
+     * @param update the update to apply.
+     * @param rowsToCache the number of live rows cached for the partition.
+     * @param nowInSec the time of the update in seconds.
+     * @return the updated partition, or {@code null} if it cannot be derived from {@code cached}.
+     */
+    public static CachedBTreePartition apply(CachedBTreePartition cached, PartitionUpdate update, int rowsToCache, int nowInSec)
+    {
+        // see ColumnFamilyStore#isFilterFullyCoveredBy
+        boolean isWholePartition = cached.cachedLiveRows() < rowsToCache;
+
+        UnfilteredRowIterator updateIterator;
+        if (isWholePartition)
+        {
+            updateIterator = update.unfilteredIterator();
+        }
+        else
+        {
+            // deletions other than row ones could shadow rows both inside and past the cached head
+            if (!update.deletionInfo().isLive())
+                return null;
+
+            Slice head = Slice.make(Slice.Bound.BOTTOM, Slice.Bound.inclusiveEndOf(cached.lastRow().clustering()));
+            updateIterator = update.unfilteredIterator(ColumnFilter.all(update.metadata()), Slices.with(update.metadata().comparator, head), false);
+        }
+
+        try (UnfilteredRowIterator merged = UnfilteredRowIterators.merge(Arrays.asList(cached.unfilteredIterator(), updateIterator), nowInSec))
+        {
+            CachedBTreePartition updated = create(DataLimits.cqlLimits(rowsToCache).filter(merged, nowInSec), cached.rowCount() + update.rowCount(), nowInSec);
+            return isWholePartition || updated.cachedLiveRows() >= rowsToCache ? updated : null;
+        }
+    }
+
     /**
      * The number of rows that were live at the time the partition was cached.
      *
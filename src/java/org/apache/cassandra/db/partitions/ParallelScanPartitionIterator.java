@@ -0,0 +1,330 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.partitions;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import org.apache.cassandra.concurrent.Stage;
+import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.DeletionTime;
+import org.apache.cassandra.db.PartitionColumns;
+import org.apache.cassandra.db.rows.*;
+
+/**
+ * Concatenates partition iterators over consecutive sub-ranges of a range, each of which is iterated by a
+ * task on the read stage so that the sub-ranges are scanned concurrently.
+ *
+ * The scans only run on the read stage, so they don't read more concurrently than {@code concurrent_reads} allows.
+ * When the consumer reaches a sub-range whose task hasn't started yet, because the read stage is busy, it scans
+ * that sub-range itself instead of waiting for it, which also ensures the consumer never waits for tasks queued
+ * behind it on the stage it runs on.
+ *
+ * Each task buffers at most {@code bufferSize} partitions, and at most {@code bufferBytes} bytes of partitions
+ * (but always at least one partition), ahead of the consumer, so that little is read uselessly if the consumer stops
+ * early, typically when reaching the query limit. Partitions are buffered whole though, so a single very large
+ * partition is still held in memory entirely.
+ *
+ * The iterators are closed by the tasks, and closing this iterator waits for the tasks to be done, so that
+ * the resources the iterators use, like memtables, aren't released by the caller while being read.
+ */
+public class ParallelScanPartitionIterator extends AbstractUnfilteredPartitionIterator
+{
+    private static final Object END_OF_SCAN = new Object();
+
+    private final CFMetaData metadata;
+    private final boolean isForThrift;
+    private final List<Scan> scans;
+    private int current;
+    private Object next;
+
+    /**
+     * @param iterators the iterators over the consecutive sub-ranges, in order.
+     * @param bufferSize the maximum number of partitions to read ahead for each sub-range.
+     * @param bufferBytes the maximum size in bytes of the partitions read ahead for each sub-range.
+     */
+    public ParallelScanPartitionIterator(List<UnfilteredPartitionIterator> iterators, int bufferSize, int bufferBytes)
+    {
+        assert !iterators.isEmpty();
+        this.metadata = iterators.get(0).metadata();
+        this.isForThrift = iterators.get(0).isForThrift();
+
+        // the scans are submitted in order, so that the first ones are never queued behind the last ones
+        this.scans = new ArrayList<>(iterators.size());
+        for (UnfilteredPartitionIterator iterator : iterators)
+            scans.add(new Scan(iterator, bufferSize, bufferBytes));
+        for (Scan scan : scans)
+            scan.future = StageManager.getStage(Stage.READ).submit(scan);
+    }
+
+    public boolean isForThrift()
+    {
+        return isForThrift;
+    }
+
+    public CFMetaData metadata()
+    {
+        return metadata;
+    }
+
+    public boolean hasNext()
+    {
+        while (next == null)
+        {
+            if (current >= scans.size())
+                return false;
+
+            Scan scan = scans.get(current);
+            if (scan.isInline || scan.claimed.compareAndSet(false, true))
+            {
+                // the task hasn't started, so the sub-range is scanned here without buffering
+                scan.isInline = true;
+                if (scan.iterator.hasNext())
+                {
+                    next = scan.iterator.next();
+                }
+                else
+                {
+                    scan.closeInline();
+                    current++;
+                }
+                continue;
+            }
+
+            Object polled = Uninterruptibles.takeUninterruptibly(scan.buffer);
+            if (polled == END_OF_SCAN)
+                current++;
+            else if (polled instanceof Throwable)
+                throw Throwables.propagate((Throwable) polled);
+            else
+                next = polled;
+        }
+        return true;
+    }
+
+    public UnfilteredRowIterator next()
+    {
+        if (!hasNext())
+            throw new IllegalStateException();
+
+        Object partition = next;
+        next = null;
+        if (partition instanceof UnfilteredRowIterator)
+            return (UnfilteredRowIterator) partition;
+
+        scans.get(current).bufferPermits.release(((BufferedPartition) partition).permits);
+        return ((BufferedPartition) partition).unfilteredIterator();
+    }
+
+    @Override
+    public void close()
+    {
+        for (Scan scan : scans)
+            scan.stopped = true;
+
+        Throwable fail = null;
+        for (Scan scan : scans)
+        {
+            try
+            {
+                // the iterator of a scan which never started, or which is scanned here, is closed here
+                if (scan.isInline || scan.claimed.compareAndSet(false, true))
+                    scan.closeInline();
+                else
+                    Uninterruptibles.getUninterruptibly(scan.future);
+            }
+            catch (ExecutionException e)
+            {
+                if (fail == null)
+                    fail = e.getCause();
+                else
+                    fail.addSuppressed(e.getCause());
+            }
+            catch (RuntimeException | Error e)
+            {
+                if (fail == null)
+                    fail = e;
+                else
+                    fail.addSuppressed(e);
+            }
+        }
+        if (fail != null)
+            throw Throwables.propagate(fail);
+    }
+
+    private static class Scan implements Runnable
+    {
+        private final UnfilteredPartitionIterator iterator;
+        // buffered partitions, then END_OF_SCAN or the error the scan failed with
+        private final BlockingQueue<Object> buffer;
+        // the bytes of partitions that can still be buffered
+        private final Semaphore bufferPermits;
+        private final int bufferBytes;
+        // set by whichever of the task and the consumer scans the sub-range, the other one leaving it alone
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        // only accessed by the consumer
+        private boolean isInline;
+        private boolean isClosedInline;
+        private volatile boolean stopped;
+        private Future<?> future;
+
+        private Scan(UnfilteredPartitionIterator iterator, int bufferSize, int bufferBytes)
+        {
+            this.iterator = iterator;
+            // one more slot than partitions for the end of the scan
+            this.buffer = new ArrayBlockingQueue<>(bufferSize + 1);
+            this.bufferPermits = new Semaphore(bufferBytes);
+            this.bufferBytes = bufferBytes;
+        }
+
+        public void run()
+        {
+            if (!claimed.compareAndSet(false, true))
+                return;
+
+            try
+            {
+                while (!stopped && iterator.hasNext())
+                {
+                    try (UnfilteredRowIterator partition = iterator.next())
+                    {
+                        BufferedPartition buffered = new BufferedPartition(partition);
+                        // a partition bigger than the whole buffer waits for the buffer to be empty
+                        buffered.permits = Math.min(buffered.dataSize, bufferBytes);
+                        if (acquire(buffered.permits))
+                            put(buffered);
+                    }
+                }
+                put(END_OF_SCAN);
+            }
+            catch (Throwable t)
+            {
+                put(t);
+            }
+            finally
+            {
+                iterator.close();
+            }
+        }
+
+        private void closeInline()
+        {
+            isInline = true;
+            if (!isClosedInline)
+            {
+                isClosedInline = true;
+                iterator.close();
+            }
+        }
+
+        private boolean acquire(int permits)
+        {
+            try
+            {
+                while (!stopped)
+                {
+                    if (bufferPermits.tryAcquire(permits, 10, TimeUnit.MILLISECONDS))
+                        return true;
+                }
+                return false;
+            }
+            catch (InterruptedException e)
+            {
+                throw new AssertionError(e);
+            }
+        }
+
+        private void put(Object element)
+        {
+            try
+            {
+                while (!stopped)
+                {
+                    if (buffer.offer(element, 10, TimeUnit.MILLISECONDS))
+                        return;
+                }
+            }
+            catch (InterruptedException e)
+            {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    /**
+     * The content of a partition iterator, to be iterated again as is.
+     */
+    private static class BufferedPartition
+    {
+        private final CFMetaData metadata;
+        private final DecoratedKey partitionKey;
+        private final DeletionTime partitionLevelDeletion;
+        private final PartitionColumns columns;
+        private final Row staticRow;
+        private final boolean isReverseOrder;
+        private final EncodingStats stats;
+        private final List<Unfiltered> unfiltereds = new ArrayList<>();
+        private final int dataSize;
+        private int permits;
+
+        private BufferedPartition(UnfilteredRowIterator partition)
+        {
+            this.metadata = partition.metadata();
+            this.partitionKey = partition.partitionKey();
+            this.partitionLevelDeletion = partition.partitionLevelDeletion();
+            this.columns = partition.columns();
+            this.staticRow = partition.staticRow();
+            this.isReverseOrder = partition.isReverseOrder();
+            this.stats = partition.stats();
+            int size = partitionKey.getKey().remaining() + partitionLevelDeletion.dataSize() + staticRow.dataSize();
+            while (partition.hasNext())
+            {
+                Unfiltered unfiltered = partition.next();
+                size += unfiltered.isRow() ? ((Row) unfiltered).dataSize() : ((RangeTombstoneMarker) unfiltered).clustering().dataSize();
+                unfiltereds.add(unfiltered);
+            }
+            this.dataSize = size;
+        }
+
+        private UnfilteredRowIterator unfilteredIterator()
+        {
+            return new AbstractUnfilteredRowIterator(metadata, partitionKey, partitionLevelDeletion, columns, staticRow, isReverseOrder, stats)
+            {
+                private final Iterator<Unfiltered> iterator = unfiltereds.iterator();
+
+                protected Unfiltered computeNext()
+                {
+                    return iterator.hasNext() ? iterator.next() : endOfData();
+                }
+            };
+        }
+    }
+}
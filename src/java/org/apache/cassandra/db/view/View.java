@@ -88,6 +88,8 @@ public class View
     private final boolean viewHasAllPrimaryKeys;
     private final boolean includeAllColumns;
     private ViewBuilder builder;
+    // held by the builders of this view while starting or finishing its build
+    final Object buildLock = new Object();
 
     // Only the raw statement can be final, because the statement cannot always be prepared when the MV is initialized.
     // For example, during startup, this view will be initialized as part of the Keyspace.open() work; preparing a statement
@@ -694,6 +696,15 @@ public class View
         CompactionManager.instance.submitViewBuilder(builder);
     }
 
+    public synchronized void stopBuild()
+    {
+        if (this.builder != null)
+        {
+            this.builder.stop();
+            this.builder = null;
+        }
+    }
+
     @Nullable
     public static CFMetaData findBaseTable(String keyspace, String viewName)
     {
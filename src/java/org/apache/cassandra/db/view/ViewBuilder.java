@@ -18,47 +18,51 @@
 
 package org.apache.cassandra.db.view;
 
-import java.util.Collection;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.annotation.Nullable;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.concurrent.ScheduledExecutors;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
-import org.apache.cassandra.db.compaction.CompactionInfo;
 import org.apache.cassandra.db.compaction.CompactionManager;
-import org.apache.cassandra.db.compaction.OperationType;
 import org.apache.cassandra.db.lifecycle.SSTableSet;
-import org.apache.cassandra.db.partitions.FilteredPartition;
-import org.apache.cassandra.db.partitions.PartitionIterator;
-import org.apache.cassandra.db.rows.RowIterator;
+import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
-import org.apache.cassandra.io.sstable.ReducingKeyIterator;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
-import org.apache.cassandra.service.StorageProxy;
 import org.apache.cassandra.service.StorageService;
-import org.apache.cassandra.service.pager.QueryPager;
-import org.apache.cassandra.transport.Server;
-import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.Pair;
-import org.apache.cassandra.utils.UUIDGen;
 import org.apache.cassandra.utils.concurrent.Refs;
 
-public class ViewBuilder extends CompactionInfo.Holder
+/**
+ * Builds a view from the existing data of its base table.
+ *
+ * The local ranges are split into at least as many ranges as there are compaction threads, and each of them is
+ * built by a distinct {@link ViewBuilderTask}. The tasks run on the view build executor, at most
+ * concurrent_materialized_view_builders of them at once, so that they don't starve compactions. The progress of each
+ * range is recorded, so that a build which is interrupted, by a failure or a restart, only resumes the ranges that
+ * haven't been entirely built.
+ */
+public class ViewBuilder implements Runnable
 {
+    private static final Logger logger = LoggerFactory.getLogger(ViewBuilder.class);
+
     private final ColumnFamilyStore baseCfs;
     private final View view;
-    private final UUID compactionId;
-    private volatile Token prevToken = null;
-
-    private static final Logger logger = LoggerFactory.getLogger(ViewBuilder.class);
+    private final List<ViewBuilderTask> tasks = new ArrayList<>();
 
     private volatile boolean isStopped = false;
 
@@ -66,50 +70,58 @@ public class ViewBuilder extends CompactionInfo.Holder
     {
         this.baseCfs = baseCfs;
         this.view = view;
-        compactionId = UUIDGen.getTimeUUID();
     }
 
-    private void buildKey(DecoratedKey key)
+    /**
+     * Starts the build of the ranges that haven't been built yet, without waiting for them to be built.
+     */
+    public void run()
     {
-        AtomicLong noBase = new AtomicLong(Long.MAX_VALUE);
-        ReadQuery selectQuery = view.getReadQuery();
-        if (!selectQuery.selectsKey(key))
-            return;
+        String ksname = baseCfs.metadata.ksName, viewName = view.name;
 
-        QueryPager pager = view.getSelectStatement().internalReadForView(key, FBUtilities.nowInSeconds()).getPager(null, Server.CURRENT_VERSION);
+        try
+        {
+            // The builders of a view replacing one another, only one at a time starts or finishes its build, so that a
+            // builder never starts a build which another one has just finished.
+            synchronized (view.buildLock)
+            {
+                if (isStopped || SystemKeyspace.isViewBuilt(ksname, viewName))
+                    return;
+
+                // a builder stopped by now leaves the build to the one replacing it
+                if (!createTasks(ksname, viewName))
+                    return;
+
+                if (tasks.isEmpty())
+                {
+                    SystemKeyspace.finishViewBuildStatus(ksname, viewName);
+                    return;
+                }
+            }
 
-        while (!pager.isExhausted())
+            logger.debug("Building view {}.{} for {} ranges", ksname, viewName, tasks.size());
+            AtomicInteger remaining = new AtomicInteger(tasks.size());
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            AtomicBoolean incomplete = new AtomicBoolean(false);
+            for (ViewBuilderTask task : tasks)
+                CompactionManager.instance.submitViewBuilderTask(task, () -> buildRange(task, remaining, failure, incomplete));
+        }
+        catch (Exception e)
         {
-           try (ReadExecutionController executionController = pager.executionController();
-                PartitionIterator partitionIterator = pager.fetchPageInternal(128, executionController))
-           {
-               if (!partitionIterator.hasNext())
-                   return;
-
-               try (RowIterator rowIterator = partitionIterator.next())
-               {
-                   FilteredPartition partition = FilteredPartition.create(rowIterator);
-                   TemporalRow.Set temporalRows = view.getTemporalRowSet(partition, null, true);
-
-                   Collection<Mutation> mutations = view.createMutations(partition, temporalRows, true);
-
-                   if (mutations != null)
-                       StorageProxy.mutateMV(key.getKey(), mutations, true, noBase);
-               }
-           }
+            retryLater(e);
         }
     }
 
-    public void run()
+    /**
+     * Creates the tasks building the ranges of the build in progress which haven't been built yet, or of a new build
+     * if there is no build in progress.
+     *
+     * @return false if this builder has been stopped, in which case the tasks shouldn't be run.
+     */
+    private boolean createTasks(String ksname, String viewName)
     {
-        String ksname = baseCfs.metadata.ksName, viewName = view.name;
-
-        if (SystemKeyspace.isViewBuilt(ksname, viewName))
-            return;
-
-        Iterable<Range<Token>> ranges = StorageService.instance.getLocalRanges(baseCfs.metadata.ksName);
-        final Pair<Integer, Token> buildStatus = SystemKeyspace.getViewBuildStatus(ksname, viewName);
-        Token lastToken;
+        final Pair<Integer, Map<Range<Token>, Token>> buildStatus = SystemKeyspace.getViewBuildStatus(ksname, viewName);
+        Map<Range<Token>, Token> ranges;
         Function<org.apache.cassandra.db.lifecycle.View, Iterable<SSTableReader>> function;
         if (buildStatus == null)
         {
@@ -125,8 +137,13 @@ public class ViewBuilder extends CompactionInfo.Holder
                 }
             }
 
-            SystemKeyspace.beginViewBuild(ksname, viewName, generation);
-            lastToken = null;
+            List<Range<Token>> split = splitRanges(StorageService.instance.getLocalRanges(ksname),
+                                                   DatabaseDescriptor.getConcurrentCompactors(),
+                                                   baseCfs.getPartitioner());
+            SystemKeyspace.beginViewBuild(ksname, viewName, generation, split);
+            ranges = new HashMap<>();
+            for (Range<Token> range : split)
+                ranges.put(range, null);
         }
         else
         {
@@ -141,74 +158,113 @@ public class ViewBuilder extends CompactionInfo.Holder
                     return null;
                 }
             };
-            lastToken = buildStatus.right;
+            ranges = buildStatus.right;
         }
 
-        prevToken = lastToken;
-        try (Refs<SSTableReader> sstables = baseCfs.selectAndReference(function).refs;
-             ReducingKeyIterator iter = new ReducingKeyIterator(sstables))
+        synchronized (tasks)
         {
-            while (!isStopped && iter.hasNext())
+            for (Map.Entry<Range<Token>, Token> entry : ranges.entrySet())
             {
-                DecoratedKey key = iter.next();
-                Token token = key.getToken();
-                if (lastToken == null || lastToken.compareTo(token) < 0)
-                {
-                    for (Range<Token> range : ranges)
-                    {
-                        if (range.contains(token))
-                        {
-                            buildKey(key);
-
-                            if (prevToken == null || prevToken.compareTo(token) != 0)
-                            {
-                                SystemKeyspace.updateViewBuildStatus(ksname, viewName, key.getToken());
-                                prevToken = token;
-                            }
-                        }
-                    }
-                    lastToken = null;
-                }
+                Range<Token> range = entry.getKey();
+                Token lastToken = entry.getValue();
+                if (lastToken == null || !lastToken.equals(range.right))
+                    tasks.add(new ViewBuilderTask(baseCfs, view, range, lastToken, function));
             }
+            return !isStopped;
+        }
+    }
 
-            if (!isStopped)
-            SystemKeyspace.finishViewBuildStatus(ksname, viewName);
-
+    private void buildRange(ViewBuilderTask task, AtomicInteger remaining, AtomicReference<Exception> failure, AtomicBoolean incomplete)
+    {
+        try
+        {
+            if (!task.build())
+                incomplete.set(true);
         }
         catch (Exception e)
         {
-            final ViewBuilder builder = new ViewBuilder(baseCfs, view);
-            ScheduledExecutors.nonPeriodicTasks.schedule(() -> CompactionManager.instance.submitViewBuilder(builder),
-                                                         5,
-                                                         TimeUnit.MINUTES);
-            logger.warn("Materialized View failed to complete, sleeping 5 minutes before restarting", e);
+            if (!failure.compareAndSet(null, e))
+                failure.get().addSuppressed(e);
+        }
+
+        // The last range to be built either finishes the build or, if any range failed to build, retries the ranges
+        // that haven't been built once none of them is being built anymore.
+        if (remaining.decrementAndGet() > 0)
+            return;
+
+        if (failure.get() != null)
+        {
+            retryLater(failure.get());
+        }
+        else if (!incomplete.get())
+        {
+            try
+            {
+                synchronized (view.buildLock)
+                {
+                    // a stopped builder leaves the build to the one replacing it
+                    if (!isStopped)
+                        SystemKeyspace.finishViewBuildStatus(baseCfs.metadata.ksName, view.name);
+                }
+            }
+            catch (Exception e)
+            {
+                retryLater(e);
+            }
         }
     }
 
-    public CompactionInfo getCompactionInfo()
+    private void retryLater(Exception e)
+    {
+        final ViewBuilder builder = new ViewBuilder(baseCfs, view);
+        ScheduledExecutors.nonPeriodicTasks.schedule(() -> CompactionManager.instance.submitViewBuilder(builder),
+                                                     5,
+                                                     TimeUnit.MINUTES);
+        logger.warn("Materialized View failed to complete, sleeping 5 minutes before restarting", e);
+    }
+
+    /**
+     * Splits the given ranges into non-wrapping ranges, halving them until there are at least the requested number
+     * of ranges, or they can't be split any further.
+     */
+    @VisibleForTesting
+    static List<Range<Token>> splitRanges(Iterable<Range<Token>> ranges, int minRanges, IPartitioner partitioner)
     {
-        long rangesLeft = 0, rangesTotal = 0;
-        Token lastToken = prevToken;
-
-        // This approximation is not very accurate, but since we do not have a method which allows us to calculate the
-        // percentage of a range covered by a second range, this is the best approximation that we can calculate.
-        // Instead, we just count the total number of ranges that haven't been seen by the node (we use the order of
-        // the tokens to determine whether they have been seen yet or not), and the total number of ranges that a node
-        // has.
-        for (Range<Token> range : StorageService.instance.getLocalRanges(baseCfs.keyspace.getName()))
+        List<Range<Token>> split = new ArrayList<>();
+        for (Range<Token> range : ranges)
+            split.addAll(range.unwrap());
+
+        while (split.size() < minRanges)
         {
-            rangesLeft++;
-            rangesTotal++;
-            // This will reset rangesLeft, so that the number of ranges left will be less than the total ranges at the
-            // end of the method.
-            if (lastToken == null || range.contains(lastToken))
-                rangesLeft = 0;
+            List<Range<Token>> halves = new ArrayList<>(split.size() * 2);
+            for (Range<Token> range : split)
+            {
+                Token midpoint = partitioner.midpoint(range.left, range.right);
+                if (midpoint.equals(range.left) || midpoint.equals(range.right) || !range.contains(midpoint))
+                {
+                    halves.add(range);
+                }
+                else
+                {
+                    halves.add(new Range<>(range.left, midpoint));
+                    halves.add(new Range<>(midpoint, range.right));
+                }
+            }
+
+            if (halves.size() == split.size())
+                break;
+            split = halves;
         }
-        return new CompactionInfo(baseCfs.metadata, OperationType.VIEW_BUILD, rangesLeft, rangesTotal, "ranges", compactionId);
+        return split;
     }
 
     public void stop()
     {
-        isStopped = true;
+        synchronized (tasks)
+        {
+            isStopped = true;
+            for (ViewBuilderTask task : tasks)
+                task.stop();
+        }
     }
 }
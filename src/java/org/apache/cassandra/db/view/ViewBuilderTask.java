@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db.view;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.compaction.CompactionInfo;
+import org.apache.cassandra.db.compaction.OperationType;
+import org.apache.cassandra.db.partitions.FilteredPartition;
+import org.apache.cassandra.db.partitions.PartitionIterator;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterators;
+import org.apache.cassandra.db.rows.RowIterator;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.service.StorageProxy;
+import org.apache.cassandra.service.pager.QueryPager;
+import org.apache.cassandra.transport.Server;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.UUIDGen;
+import org.apache.cassandra.utils.concurrent.Refs;
+
+/**
+ * Builds a view for the keys of the base table sstables within a single token range, checkpointing its progress
+ * so that an interrupted build can resume where it stopped. The ranges of a build are built concurrently by
+ * distinct tasks, see {@link ViewBuilder}.
+ */
+public class ViewBuilderTask extends CompactionInfo.Holder
+{
+    private static final Logger logger = LoggerFactory.getLogger(ViewBuilderTask.class);
+
+    // The number of keys built between two checkpoints of the progress of the range.
+    private static final int KEYS_BETWEEN_CHECKPOINTS = 1000;
+
+    private final ColumnFamilyStore baseCfs;
+    private final View view;
+    private final Range<Token> range;
+    private final Token startToken;
+    private final Function<org.apache.cassandra.db.lifecycle.View, Iterable<SSTableReader>> sstables;
+    private final UUID compactionId;
+    private volatile long keysBuilt = 0;
+    private volatile long keysTotal = 0;
+
+    private volatile boolean isStopped = false;
+
+    /**
+     * @param range the range to build the view for.
+     * @param lastToken the token up to which the range has already been built, or null if it hasn't been started.
+     * @param sstables the function selecting the sstables of the base table to build the view from.
+     */
+    ViewBuilderTask(ColumnFamilyStore baseCfs,
+                    View view,
+                    Range<Token> range,
+                    Token lastToken,
+                    Function<org.apache.cassandra.db.lifecycle.View, Iterable<SSTableReader>> sstables)
+    {
+        this.baseCfs = baseCfs;
+        this.view = view;
+        this.range = range;
+        this.startToken = lastToken == null ? range.left : lastToken;
+        this.sstables = sstables;
+        this.compactionId = UUIDGen.getTimeUUID();
+    }
+
+    private void buildKey(DecoratedKey key)
+    {
+        AtomicLong noBase = new AtomicLong(Long.MAX_VALUE);
+        ReadQuery selectQuery = view.getReadQuery();
+        if (!selectQuery.selectsKey(key))
+            return;
+
+        QueryPager pager = view.getSelectStatement().internalReadForView(key, FBUtilities.nowInSeconds()).getPager(null, Server.CURRENT_VERSION);
+
+        while (!pager.isExhausted())
+        {
+           try (ReadExecutionController executionController = pager.executionController();
+                PartitionIterator partitionIterator = pager.fetchPageInternal(128, executionController))
+           {
+               if (!partitionIterator.hasNext())
+                   return;
+
+               try (RowIterator rowIterator = partitionIterator.next())
+               {
+                   FilteredPartition partition = FilteredPartition.create(rowIterator);
+                   TemporalRow.Set temporalRows = view.getTemporalRowSet(partition, null, true);
+
+                   Collection<Mutation> mutations = view.createMutations(partition, temporalRows, true);
+
+                   if (mutations != null)
+                       StorageProxy.mutateMV(key.getKey(), mutations, true, noBase);
+               }
+           }
+        }
+    }
+
+    /**
+     * Builds the view for the keys of the range that haven't been built yet.
+     *
+     * @return true if the whole range has been built, false if the task has been stopped before.
+     */
+    public boolean build()
+    {
+        String ksname = baseCfs.metadata.ksName, viewName = view.name;
+        Range<Token> remaining = new Range<>(startToken, range.right);
+
+        try (Refs<SSTableReader> refs = baseCfs.selectAndReference(sstables).refs)
+        {
+            Collection<Range<Token>> ranges = Collections.singleton(remaining);
+            List<SSTableReader> readers = new ArrayList<>();
+            for (SSTableReader reader : refs)
+            {
+                long keys = reader.estimatedKeysForRanges(ranges);
+                if (keys > 0)
+                {
+                    readers.add(reader);
+                    keysTotal += keys;
+                }
+            }
+
+            if (!readers.isEmpty() && !buildKeys(readers, remaining))
+                return false;
+        }
+
+        // the progress of a stopped build is left to the builder replacing it
+        if (isStopped)
+            return false;
+
+        SystemKeyspace.updateViewBuildStatus(ksname, viewName, range, range.right);
+        logger.debug("Built view {}.{} for range {}", ksname, viewName, range);
+        return true;
+    }
+
+    private boolean buildKeys(List<SSTableReader> readers, Range<Token> remaining)
+    {
+        String ksname = baseCfs.metadata.ksName, viewName = view.name;
+
+        List<UnfilteredPartitionIterator> scanners = new ArrayList<>(readers.size());
+        for (SSTableReader reader : readers)
+            scanners.add(reader.getScanner(remaining, null));
+
+        // The partitions are only iterated for their keys, which the scanners return without reading the partitions.
+        try (UnfilteredPartitionIterator keys = UnfilteredPartitionIterators.mergeLazily(scanners, FBUtilities.nowInSeconds()))
+        {
+            Token prevToken = null;
+            long keysSinceCheckpoint = 0;
+            while (keys.hasNext())
+            {
+                if (isStopped)
+                    return false;
+
+                DecoratedKey key;
+                try (UnfilteredRowIterator partition = keys.next())
+                {
+                    key = partition.partitionKey();
+                }
+
+                // Only checkpoint once all the keys of the previous token have been built, as we resume after it.
+                Token token = key.getToken();
+                if (keysSinceCheckpoint >= KEYS_BETWEEN_CHECKPOINTS && !token.equals(prevToken))
+                {
+                    SystemKeyspace.updateViewBuildStatus(ksname, viewName, range, prevToken);
+                    keysSinceCheckpoint = 0;
+                }
+
+                buildKey(key);
+                prevToken = token;
+                keysSinceCheckpoint++;
+                keysBuilt++;
+            }
+        }
+        return true;
+    }
+
+    public CompactionInfo getCompactionInfo()
+    {
+        // The total is an estimate, which the number of keys built may exceed.
+        long total = keysTotal;
+        return new CompactionInfo(baseCfs.metadata, OperationType.VIEW_BUILD, keysBuilt, Math.max(total, keysBuilt), "keys", compactionId);
+    }
+
+    public void stop()
+    {
+        isStopped = true;
+    }
+}
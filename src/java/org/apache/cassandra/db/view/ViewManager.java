@@ -17,32 +17,39 @@
  */
 package org.apache.cassandra.db.view;
 
-import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.google.common.collect.Lists;
-import com.google.common.util.concurrent.Striped;
 
-import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.concurrent.Stage;
+import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.config.ViewDefinition;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.commitlog.ReplayPosition;
 import org.apache.cassandra.db.partitions.PartitionUpdate;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.service.StorageProxy;
+import org.apache.cassandra.utils.JVMStabilityInspector;
 
 /**
  * Manages {@link View}'s for a single {@link ColumnFamilyStore}. All of the views for that table are created when this
  * manager is initialized.
  *
  * The main purposes of the manager are to provide a single location for updates to be vetted to see whether they update
- * any views {@link ViewManager#updatesAffectView(Collection, boolean)}, provide locks to prevent multiple
- * updates from creating incoherent updates in the view {@link ViewManager#acquireLockFor(ByteBuffer)}, and
- * to affect change on the view.
+ * any views {@link ViewManager#updatesAffectView(Collection, boolean)}, order the updates of a partition to prevent
+ * multiple updates from creating incoherent updates in the view {@link ViewManager#applyInOrder(Mutation, long, boolean, Runnable)},
+ * and to affect change on the view.
  */
 public class ViewManager
 {
@@ -100,13 +107,12 @@ public class ViewManager
         }
     }
 
-    private static final Striped<Lock> LOCKS = Striped.lazyWeakLock(DatabaseDescriptor.getConcurrentViewWriters() * 1024);
-
     private static final boolean enableCoordinatorBatchlog = Boolean.getBoolean("cassandra.mv_enable_coordinator_batchlog");
 
     private final ConcurrentNavigableMap<UUID, ForStore> viewManagersByStore;
     private final ConcurrentNavigableMap<String, View> viewsByName;
     private final Keyspace keyspace;
+    private final ConcurrentMap<DecoratedKey, PartitionQueue> queues = new ConcurrentHashMap<>();
 
     public ViewManager(Keyspace keyspace)
     {
@@ -227,6 +233,7 @@ public class ViewManager
         if (view == null)
             return;
 
+        view.stopBuild();
         forTable(view.getDefinition().baseTableId).removeView(name);
         SystemKeyspace.setViewRemoved(keyspace.getName(), view.name);
     }
@@ -250,13 +257,219 @@ public class ViewManager
         return forStore;
     }
 
-    public static Lock acquireLockFor(ByteBuffer key)
+    /**
+     * Applies a mutation updating views once the mutations of the same partition received before it have been applied,
+     * so that the read-before-write of its view updates sees them. The queued mutations of a partition are applied, in
+     * order, by whichever of the threads applying them gets to it first, a batch at a time, after which the mutations
+     * still queued are handed over to the first thread waiting for one of them, or to the mutation stage if they are
+     * all deferred.
+     *
+     * @param mutation the mutation to apply.
+     * @param timeoutNanos how long to wait for the mutation to start being applied.
+     * @param isDeferrable whether the calling thread can return before the mutation is applied, rather than wait for
+     * it to be applied.
+     * @param apply applies the mutation.
+     *
+     * @return a future completed with false if the mutation didn't start being applied in time, in which case it is not
+     * applied, and with true once it has been applied otherwise. The future is already completed on return unless the
+     * mutation is deferrable.
+     */
+    public CompletableFuture<Boolean> applyInOrder(Mutation mutation, long timeoutNanos, boolean isDeferrable, Runnable apply)
     {
-        Lock lock = LOCKS.get(key);
+        DecoratedKey key = mutation.key();
+        PartitionQueue queue = queues.compute(key, (k, q) -> {
+            if (q == null)
+                q = new PartitionQueue();
+            q.references++;
+            return q;
+        });
+
+        PendingMutation pending = new PendingMutation(apply, timeoutNanos, isDeferrable ? null : Thread.currentThread());
+        pending.result.whenComplete((applied, t) -> queues.computeIfPresent(key, (k, q) -> --q.references == 0 ? null : q));
+        keyspace.metric.viewPendingUpdates.inc();
+        queue.pending.add(pending);
+        queue.drain();
+        if (!isDeferrable)
+            pending.await(queue);
+        return pending.result;
+    }
 
-        if (lock.tryLock())
-            return lock;
+    /**
+     * The mutations queued for a partition. Queues are reference counted by the mutations queued on them, so that a
+     * partition never has more than one queue, and discarded once unused.
+     */
+    private final class PartitionQueue
+    {
+        private final Queue<PendingMutation> pending = new ConcurrentLinkedQueue<>();
+        private final Lock lock = new ReentrantLock();
+        // only updated within queues.compute()
+        private int references;
+
+        /**
+         * Applies the mutations queued when getting the lock, unless another thread is already doing it. As the thread
+         * holding the lock checks the queue again after releasing it, and hands the mutations still queued over,
+         * a mutation is never left in the queue with no thread to apply it.
+         */
+        private void drain()
+        {
+            if (pending.isEmpty() || !lock.tryLock())
+                return;
 
-        return null;
+            try
+            {
+                // mutations queued after this point are left to the next batch, so that a hot partition doesn't keep
+                // this thread applying the mutations of other threads indefinitely
+                int count = pending.size();
+                PendingMutation next;
+                while (count-- > 0 && (next = pending.poll()) != null)
+                {
+                    keyspace.metric.viewPendingUpdates.dec();
+                    next.run();
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            handOver();
+        }
+
+        /**
+         * Has the next batch applied by the first thread waiting for a mutation still queued, which applies the
+         * deferred mutations queued before its own in the same batch. The mutation stage only applies the batch if all
+         * of the mutations still queued are deferred, so that waiting writes don't also wait for a stage task.
+         */
+        private void handOver()
+        {
+            boolean deferred = false;
+            for (PendingMutation next : pending)
+            {
+                if (!next.isQueued())
+                    continue;
+
+                if (next.waiter != null)
+                {
+                    LockSupport.unpark(next.waiter);
+                    return;
+                }
+                deferred = true;
+            }
+
+            if (deferred)
+                StageManager.getStage(Stage.MUTATION).execute(this::drain);
+        }
+    }
+
+    private static final class PendingMutation
+    {
+        private static final int QUEUED = 0;
+        private static final int STARTED = 1;
+        private static final int CANCELLED = 2;
+
+        private final Runnable apply;
+        private final long enqueuedAt = System.nanoTime();
+        private final long timeoutNanos;
+        // the thread waiting for the mutation to be applied, or null if it is deferred
+        private final Thread waiter;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private PendingMutation(Runnable apply, long timeoutNanos, Thread waiter)
+        {
+            this.apply = apply;
+            this.timeoutNanos = timeoutNanos;
+            this.waiter = waiter;
+        }
+
+        private boolean isQueued()
+        {
+            return state.get() == QUEUED;
+        }
+
+        private long remainingNanos()
+        {
+            return timeoutNanos - (System.nanoTime() - enqueuedAt);
+        }
+
+        /**
+         * Cancels the mutation if it hasn't started being applied yet.
+         */
+        private boolean cancel()
+        {
+            if (!state.compareAndSet(QUEUED, CANCELLED))
+                return false;
+
+            complete(false);
+            return true;
+        }
+
+        private void run()
+        {
+            // nobody waits for a deferred mutation to time out, so it is cancelled here
+            if (remainingNanos() <= 0 && cancel())
+                return;
+
+            if (!state.compareAndSet(QUEUED, STARTED))
+                return;
+
+            try
+            {
+                apply.run();
+                complete(true);
+            }
+            catch (Throwable t)
+            {
+                JVMStabilityInspector.inspectThrowable(t);
+                result.completeExceptionally(t);
+                if (waiter != null)
+                    LockSupport.unpark(waiter);
+            }
+        }
+
+        private void complete(boolean applied)
+        {
+            result.complete(applied);
+            if (waiter != null)
+                LockSupport.unpark(waiter);
+        }
+
+        /**
+         * Applies batches of the queued mutations, until this one is applied, whenever the queue is handed over to this
+         * thread, and waits for another thread to apply them otherwise. Once started, the mutation gets applied
+         * whatever the time it takes.
+         */
+        private void await(PartitionQueue queue)
+        {
+            boolean interrupted = false;
+            while (!result.isDone())
+            {
+                if (isQueued())
+                    queue.drain();
+                if (result.isDone())
+                    break;
+
+                long remainingNanos = remainingNanos();
+                if (remainingNanos <= 0 || interrupted)
+                {
+                    // we may have been handed the queue over
+                    if (cancel())
+                        queue.handOver();
+                    break;
+                }
+
+                LockSupport.parkNanos(this, remainingNanos);
+                interrupted |= Thread.interrupted();
+            }
+
+            // the mutation has started being applied by another thread, which wakes us up once done
+            while (!result.isDone())
+            {
+                LockSupport.park(this);
+                interrupted |= Thread.interrupted();
+            }
+
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
     }
 }
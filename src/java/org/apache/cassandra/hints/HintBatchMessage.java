@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cassandra.hints;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.io.util.DataInputPlus;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.utils.UUIDSerializer;
+
+/**
+ * The message we use to dispatch a whole page of hints at once, to nodes of version 3.2 or above.
+ *
+ * Encodes the host id the hints are meant for and the hints themselves, each prefixed with its size like in
+ * {@link HintMessage}. It is only ever sent as an {@link EncodedHintBatchMessage}, and each of its hints is received
+ * as a {@link HintMessage}, to be applied or stored as if it had been sent on its own.
+ */
+public final class HintBatchMessage
+{
+    public static final IVersionedSerializer<HintBatchMessage> serializer = new Serializer();
+
+    final UUID hostId;
+    final List<HintMessage> hints;
+
+    private HintBatchMessage(UUID hostId, List<HintMessage> hints)
+    {
+        this.hostId = hostId;
+        this.hints = hints;
+    }
+
+    private static class Serializer implements IVersionedSerializer<HintBatchMessage>
+    {
+        public long serializedSize(HintBatchMessage message, int version)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public void serialize(HintBatchMessage message, DataOutputPlus out, int version)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public HintBatchMessage deserialize(DataInputPlus in, int version) throws IOException
+        {
+            UUID hostId = UUIDSerializer.serializer.deserialize(in, version);
+
+            int count = (int) in.readUnsignedVInt();
+            List<HintMessage> hints = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                hints.add(HintMessage.Serializer.deserializeHint(hostId, in, version));
+            return new HintBatchMessage(hostId, hints);
+        }
+    }
+}
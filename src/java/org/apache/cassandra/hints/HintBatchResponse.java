@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cassandra.hints;
+
+import java.io.IOException;
+
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.io.util.DataInputPlus;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
+
+/**
+ * The response to a HintBatchMessage, listing the positions in the batch of the hints that failed to be applied, if any.
+ */
+public final class HintBatchResponse
+{
+    public static final IVersionedSerializer<HintBatchResponse> serializer = new Serializer();
+
+    private static final int[] NONE = new int[0];
+
+    final int[] failed;
+
+    HintBatchResponse(int[] failed)
+    {
+        this.failed = failed.length == 0 ? NONE : failed;
+    }
+
+    MessageOut<HintBatchResponse> createMessageOut()
+    {
+        return new MessageOut<>(MessagingService.Verb.REQUEST_RESPONSE, this, serializer);
+    }
+
+    private static final class Serializer implements IVersionedSerializer<HintBatchResponse>
+    {
+        public long serializedSize(HintBatchResponse response, int version)
+        {
+            long size = TypeSizes.sizeofUnsignedVInt(response.failed.length);
+            for (int index : response.failed)
+                size += TypeSizes.sizeofUnsignedVInt(index);
+            return size;
+        }
+
+        public void serialize(HintBatchResponse response, DataOutputPlus out, int version) throws IOException
+        {
+            out.writeUnsignedVInt(response.failed.length);
+            for (int index : response.failed)
+                out.writeUnsignedVInt(index);
+        }
+
+        public HintBatchResponse deserialize(DataInputPlus in, int version) throws IOException
+        {
+            int[] failed = new int[(int) in.readUnsignedVInt()];
+            for (int i = 0; i < failed.length; i++)
+                failed[i] = (int) in.readUnsignedVInt();
+            return new HintBatchResponse(failed);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cassandra.hints;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.concurrent.Stage;
+import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.net.IVerbHandler;
+import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.JVMStabilityInspector;
+
+/**
+ * Verb handler for batched hint dispatch.
+ *
+ * Each hint of the batch is handled like a hint received by {@link HintVerbHandler}. A hint failing to apply doesn't
+ * stop the others from being applied: the failure is instead reported in the response, so that the sender only
+ * retries the failed hints.
+ *
+ * Applying a hint waits for the commit log to sync it when syncing in batch or group mode, so the hints are applied
+ * concurrently on the mutation stage, rather than one sync after the other, and the last one to be applied sends the
+ * response.
+ */
+public final class HintBatchVerbHandler implements IVerbHandler<HintBatchMessage>
+{
+    private static final Logger logger = LoggerFactory.getLogger(HintBatchVerbHandler.class);
+
+    public void doVerb(MessageIn<HintBatchMessage> message, int id)
+    {
+        List<HintMessage> hints = message.payload.hints;
+        if (hints.isEmpty())
+        {
+            reply(new boolean[0], id, message.from);
+            return;
+        }
+
+        // the failures are visible to the last hint applied, as each hint is counted after recording its failure
+        boolean[] failed = new boolean[hints.size()];
+        AtomicInteger remaining = new AtomicInteger(hints.size());
+        for (int i = 0; i < hints.size(); i++)
+        {
+            int index = i;
+            StageManager.getStage(Stage.MUTATION).execute(() -> {
+                try
+                {
+                    HintVerbHandler.apply(hints.get(index));
+                }
+                catch (Throwable t)
+                {
+                    JVMStabilityInspector.inspectThrowable(t);
+                    logger.debug("Failed to apply a hint for {}", message.payload.hostId, t);
+                    failed[index] = true;
+                }
+
+                if (remaining.decrementAndGet() == 0)
+                    reply(failed, id, message.from);
+            });
+        }
+    }
+
+    private static void reply(boolean[] failed, int id, InetAddress to)
+    {
+        int[] positions = new int[failed.length];
+        int count = 0;
+        for (int i = 0; i < failed.length; i++)
+        {
+            if (failed[i])
+                positions[count++] = i;
+        }
+
+        HintBatchResponse response = new HintBatchResponse(Arrays.copyOf(positions, count));
+        MessagingService.instance().sendReply(response.createMessageOut(), id, to);
+    }
+}
@@ -115,7 +115,14 @@ public final class HintMessage
         public HintMessage deserialize(DataInputPlus in, int version) throws IOException
         {
             UUID hostId = UUIDSerializer.serializer.deserialize(in, version);
+            return deserializeHint(hostId, in, version);
+        }
 
+        /*
+         * Reads a hint prefixed with its size, as written by serialize(). Also used for each hint of a HintBatchMessage.
+         */
+        static HintMessage deserializeHint(UUID hostId, DataInputPlus in, int version) throws IOException
+        {
             long hintSize = in.readUnsignedVInt();
             BytesReadTracker countingIn = new BytesReadTracker(in);
             try
@@ -44,8 +44,18 @@ public final class HintVerbHandler implements IVerbHandler<HintMessage>
 
     public void doVerb(MessageIn<HintMessage> message, int id)
     {
-        UUID hostId = message.payload.hostId;
-        Hint hint = message.payload.hint;
+        apply(message.payload);
+        reply(id, message.from);
+    }
+
+    /**
+     * Applies the hint if this node is its destination, or stores it otherwise. Hints for dropped tables, or that
+     * fail validation, are skipped.
+     */
+    static void apply(HintMessage message)
+    {
+        UUID hostId = message.hostId;
+        Hint hint = message.hint;
 
         // If we see an unknown table id, it means the table, or one of the tables in the mutation, had been dropped.
         // In that case there is nothing we can really do, or should do, other than log it go on.
@@ -55,8 +65,7 @@ public final class HintVerbHandler implements IVerbHandler<HintMessage>
         {
             logger.trace("Failed to decode and apply a hint for {} - table with id {} is unknown",
                          hostId,
-                         message.payload.unknownTableID);
-            reply(id, message.from);
+                         message.unknownTableID);
             return;
         }
 
@@ -68,7 +77,6 @@ public final class HintVerbHandler implements IVerbHandler<HintMessage>
         catch (MarshalException e)
         {
             logger.warn("Failed to validate a hint for {} (table id {}) - skipped", hostId);
-            reply(id, message.from);
             return;
         }
 
@@ -78,8 +86,6 @@ public final class HintVerbHandler implements IVerbHandler<HintMessage>
             hint.apply();
         else
             HintsService.instance.write(hostId, hint);
-
-        reply(id, message.from);
     }
 
     private static void reply(int id, InetAddress to)
@@ -93,7 +93,9 @@ final class HintsDescriptor
         switch (hintsVersion)
         {
             case VERSION_30:
-                return MessagingService.VERSION_30;
+                // 3.2 only changed the digests exchanged between nodes, so hints are serialized the same way in both
+                // versions, and can be dispatched verbatim to 3.2 nodes
+                return MessagingService.VERSION_32;
             default:
                 throw new AssertionError();
         }
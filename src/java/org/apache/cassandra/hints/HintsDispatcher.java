@@ -25,6 +25,8 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Iterators;
 import com.google.common.util.concurrent.RateLimiter;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
@@ -39,12 +41,22 @@ import org.apache.cassandra.utils.concurrent.SimpleCondition;
  * Dispatches a single hints file to a specified node in a batched manner.
  *
  * Uses either {@link EncodedHintMessage} - when dispatching hints into a node with the same messaging version as the hints file,
- * or {@link HintMessage}, when conversion is required.
+ * or {@link HintMessage}, when conversion is required. Nodes of version 3.2 or above are instead sent the hints of a page
+ * in a few {@link EncodedHintBatchMessage}s.
  */
 final class HintsDispatcher implements AutoCloseable
 {
     private enum Action { CONTINUE, ABORT, RETRY }
 
+    // the maximum size of the hints of a single batch message
+    @VisibleForTesting
+    static final int MAX_BATCH_SIZE = 64 * 1024;
+
+    // the number of times the hints of a page that the receiver failed to apply are sent again, before giving up on
+    // the file until the next dispatch
+    @VisibleForTesting
+    static final int MAX_RESENDS = 3;
+
     private final HintsReader reader;
     private final UUID hostId;
     private final InetAddress address;
@@ -126,6 +138,9 @@ final class HintsDispatcher implements AutoCloseable
 
     private Action sendHintsAndAwait(HintsReader.Page page)
     {
+        if (messagingVersion >= MessagingService.VERSION_32 && reader.descriptor().messagingVersion() == messagingVersion)
+            return sendHintBatchesAndAwait(page);
+
         Collection<Callback> callbacks = new ArrayList<>();
 
         /*
@@ -183,13 +198,78 @@ final class HintsDispatcher implements AutoCloseable
         return callback;
     }
 
+    /*
+     * Sending pages of hints in raw mode, in batches of up to MAX_BATCH_SIZE bytes, so that the receiver can apply each
+     * of them well within the write timeout. Only the hints the receiver failed to apply are sent again, up to
+     * MAX_RESENDS times: hints that keep failing abort the dispatch, which resumes from this page on the next one.
+     */
+    private Action sendHintBatchesAndAwait(HintsReader.Page page)
+    {
+        List<ByteBuffer> hints = new ArrayList<>();
+        Iterators.addAll(hints, page.buffersIterator());
+
+        for (int sends = 0; !hints.isEmpty(); sends++)
+        {
+            if (!isHostAlive() || isPaused() || sends > MAX_RESENDS)
+                return Action.ABORT;
+
+            List<List<ByteBuffer>> batches = split(hints);
+            List<Callback> callbacks = new ArrayList<>(batches.size());
+            for (List<ByteBuffer> batch : batches)
+            {
+                Callback callback = new Callback();
+                EncodedHintBatchMessage message = new EncodedHintBatchMessage(hostId, batch, messagingVersion);
+                MessagingService.instance().sendRRWithFailure(message.createMessageOut(), address, callback);
+                callbacks.add(callback);
+            }
+
+            List<ByteBuffer> remaining = new ArrayList<>();
+            for (int i = 0; i < batches.size(); i++)
+            {
+                Callback callback = callbacks.get(i);
+                if (callback.await() != Callback.Outcome.SUCCESS)
+                    return Action.RETRY;
+
+                for (int index : callback.failedHints())
+                    remaining.add(batches.get(i).get(index));
+            }
+            hints = remaining;
+        }
+
+        return Action.CONTINUE;
+    }
+
+    @VisibleForTesting
+    static List<List<ByteBuffer>> split(List<ByteBuffer> hints)
+    {
+        List<List<ByteBuffer>> batches = new ArrayList<>();
+        List<ByteBuffer> batch = new ArrayList<>();
+        long batchSize = 0;
+        for (ByteBuffer hint : hints)
+        {
+            if (!batch.isEmpty() && batchSize + hint.remaining() > MAX_BATCH_SIZE)
+            {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchSize = 0;
+            }
+            batch.add(hint);
+            batchSize += hint.remaining();
+        }
+        batches.add(batch);
+        return batches;
+    }
+
     private static final class Callback implements IAsyncCallbackWithFailure
     {
         enum Outcome { SUCCESS, TIMEOUT, FAILURE }
 
+        private static final int[] NONE = new int[0];
+
         private final long start = System.nanoTime();
         private final SimpleCondition condition = new SimpleCondition();
         private volatile Outcome outcome;
+        private volatile int[] failedHints = NONE;
 
         Outcome await()
         {
@@ -214,8 +294,18 @@ final class HintsDispatcher implements AutoCloseable
             condition.signalAll();
         }
 
+        /**
+         * @return the positions of the hints of a batch that the receiver failed to apply
+         */
+        int[] failedHints()
+        {
+            return failedHints;
+        }
+
         public void response(MessageIn msg)
         {
+            if (msg.payload instanceof HintBatchResponse)
+                failedHints = ((HintBatchResponse) msg.payload).failed;
             outcome = Outcome.SUCCESS;
             condition.signalAll();
         }
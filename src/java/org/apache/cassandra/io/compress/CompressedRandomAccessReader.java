@@ -19,12 +19,15 @@ package org.apache.cassandra.io.compress;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.zip.Checksum;
 import java.util.function.Supplier;
 
 import com.google.common.primitives.Ints;
 
+import org.apache.cassandra.cache.ChunkCache;
+import org.apache.cassandra.cache.RefCountedMemory;
 import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.util.*;
@@ -33,6 +36,9 @@ import org.apache.cassandra.utils.memory.BufferPool;
 /**
  * CRAR extends RAR to transparently uncompress blocks from the file into RAR.buffer.  Most of the RAR
  * "read bytes from the buffer, rebuffering when necessary" machinery works unchanged after that.
+ *
+ * If the reader has a {@link ChunkCache}, uncompressed chunks are looked up there first, in which case RAR.buffer
+ * points directly to the cached chunk until the next rebuffer, and the chunks we do uncompress are added to it.
  */
 public class CompressedRandomAccessReader extends RandomAccessReader
 {
@@ -48,12 +54,23 @@ public class CompressedRandomAccessReader extends RandomAccessReader
     private ByteBuffer checksumBytes;
     private final Supplier<Double> crcCheckChanceSupplier;
 
+    // the cache of uncompressed chunks shared between readers, or null if we don't use it
+    private final ChunkCache chunkCache;
+
+    // the buffer we uncompress chunks into; super.buffer is either this or a view of cachedChunk
+    private ByteBuffer uncompressed;
+
+    // the cached chunk super.buffer currently points to, which we hold a reference to
+    private RefCountedMemory cachedChunk;
+
     protected CompressedRandomAccessReader(Builder builder)
     {
         super(builder);
         this.metadata = builder.metadata;
         this.checksum = metadata.checksumType.newInstance();
         crcCheckChanceSupplier = builder.crcCheckChanceSupplier;
+        chunkCache = builder.chunkCache;
+        uncompressed = buffer;
 
         if (regions == null)
         {
@@ -67,11 +84,13 @@ public class CompressedRandomAccessReader extends RandomAccessReader
     {
         try
         {
-            if (buffer != null)
+            releaseCachedChunk();
+            if (uncompressed != null)
             {
-                BufferPool.put(buffer);
-                buffer = null;
+                BufferPool.put(uncompressed);
+                uncompressed = null;
             }
+            buffer = null;
         }
         finally
         {
@@ -92,6 +111,9 @@ public class CompressedRandomAccessReader extends RandomAccessReader
             long position = current();
             assert position < metadata.dataLength;
 
+            if (reBufferFromCache(position))
+                return;
+
             CompressionMetadata.Chunk chunk = metadata.chunkFor(position);
 
             if (compressed.capacity() < chunk.length)
@@ -136,13 +158,8 @@ public class CompressedRandomAccessReader extends RandomAccessReader
                 checksum.reset();
             }
 
-            // buffer offset is always aligned
-            bufferOffset = position & ~(buffer.capacity() - 1);
-            buffer.position((int) (position - bufferOffset));
-            // the length() can be provided at construction time, to override the true (uncompressed) length of the file;
-            // this is permitted to occur within a compressed segment, so we truncate validBufferBytes if we cross the imposed length
-            if (bufferOffset + buffer.limit() > length())
-                buffer.limit((int)(length() - bufferOffset));
+            cacheChunk(position);
+            positionBuffer(position);
         }
         catch (CorruptBlockException e)
         {
@@ -162,6 +179,9 @@ public class CompressedRandomAccessReader extends RandomAccessReader
             long position = current();
             assert position < metadata.dataLength;
 
+            if (reBufferFromCache(position))
+                return;
+
             CompressionMetadata.Chunk chunk = metadata.chunkFor(position);
 
             MmappedRegions.Region region = regions.floor(chunk.offset);
@@ -200,13 +220,8 @@ public class CompressedRandomAccessReader extends RandomAccessReader
                 checksum.reset();
             }
 
-            // buffer offset is always aligned
-            bufferOffset = position & ~(buffer.capacity() - 1);
-            buffer.position((int) (position - bufferOffset));
-            // the length() can be provided at construction time, to override the true (uncompressed) length of the file;
-            // this is permitted to occur within a compressed segment, so we truncate validBufferBytes if we cross the imposed length
-            if (bufferOffset + buffer.limit() > length())
-                buffer.limit((int)(length() - bufferOffset));
+            cacheChunk(position);
+            positionBuffer(position);
         }
         catch (CorruptBlockException e)
         {
@@ -215,6 +230,64 @@ public class CompressedRandomAccessReader extends RandomAccessReader
 
     }
 
+    /**
+     * Points the buffer to the cached uncompressed chunk containing position, if there is one, or else back to
+     * our own uncompressed buffer.
+     *
+     * @return true if the chunk was found in the cache
+     */
+    @SuppressWarnings("resource")
+    private boolean reBufferFromCache(long position)
+    {
+        releaseCachedChunk();
+        if (chunkCache == null)
+            return false;
+
+        RefCountedMemory chunk = chunkCache.getChunk(getPath(), chunkStart(position));
+        if (chunk == null)
+            return false;
+
+        cachedChunk = chunk;
+        buffer = chunk.asByteBuffer(0, (int) chunk.size()).order(ByteOrder.BIG_ENDIAN);
+        positionBuffer(position);
+        return true;
+    }
+
+    private void releaseCachedChunk()
+    {
+        if (cachedChunk == null)
+            return;
+
+        cachedChunk.unreference();
+        cachedChunk = null;
+        buffer = uncompressed;
+    }
+
+    /**
+     * Adds the chunk we've just uncompressed, and verified if requested, to the cache.
+     */
+    private void cacheChunk(long position)
+    {
+        if (chunkCache != null)
+            chunkCache.putChunk(getPath(), chunkStart(position), buffer);
+    }
+
+    private long chunkStart(long position)
+    {
+        // chunk offsets are always aligned
+        return position & ~(metadata.chunkLength() - 1);
+    }
+
+    private void positionBuffer(long position)
+    {
+        bufferOffset = chunkStart(position);
+        buffer.position((int) (position - bufferOffset));
+        // the length() can be provided at construction time, to override the true (uncompressed) length of the file;
+        // this is permitted to occur within a compressed segment, so we truncate validBufferBytes if we cross the imposed length
+        if (bufferOffset + buffer.limit() > length())
+            buffer.limit((int)(length() - bufferOffset));
+    }
+
     private int checksum(CompressionMetadata.Chunk chunk) throws IOException
     {
         long position = chunk.offset + chunk.length;
@@ -240,6 +313,7 @@ public class CompressedRandomAccessReader extends RandomAccessReader
     {
         private final CompressionMetadata metadata;
         private final Supplier<Double> crcCheckChanceSupplier;
+        private final ChunkCache chunkCache;
 
         public Builder(ICompressedFile file)
         {
@@ -247,6 +321,7 @@ public class CompressedRandomAccessReader extends RandomAccessReader
             this.metadata = applyMetadata(file.getMetadata());
             this.regions = file.regions();
             this.crcCheckChanceSupplier = file.getCrcCheckChanceSupplier();
+            this.chunkCache = ChunkCache.instance;
         }
 
         public Builder(ChannelProxy channel, CompressionMetadata metadata)
@@ -254,6 +329,7 @@ public class CompressedRandomAccessReader extends RandomAccessReader
             super(channel);
             this.metadata = applyMetadata(metadata);
             this.crcCheckChanceSupplier = (() -> 1.0); //100% crc_check_chance
+            this.chunkCache = null;
         }
 
         private CompressionMetadata applyMetadata(CompressionMetadata metadata)
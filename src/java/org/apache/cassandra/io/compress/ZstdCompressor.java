@@ -0,0 +1,475 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.compress;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.jna.Native;
+import sun.misc.Cleaner;
+import sun.nio.ch.DirectBuffer;
+
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.Hex;
+
+/**
+ * Zstandard compression, through the native libzstd.
+ *
+ * Supports a {@code compression_level} option, and a {@code dictionary} option with a base64 encoded dictionary
+ * (see {@link #trainDictionary}) which much improves the ratio of small chunks of similar data. As compression
+ * options are saved in the CompressionInfo component, each sstable keeps the dictionary it was written with.
+ */
+public class ZstdCompressor implements ICompressor
+{
+    private static final Logger logger = LoggerFactory.getLogger(ZstdCompressor.class);
+
+    public static final String COMPRESSION_LEVEL = "compression_level";
+    public static final String DICTIONARY = "dictionary";
+
+    public static final int DEFAULT_COMPRESSION_LEVEL = 3;
+
+    // options are stored with writeUTF, so the base64 encoded dictionary must fit in 65535 bytes
+    public static final int MAX_DICTIONARY_SIZE = 48 * 1024 - 3;
+
+    private static final Set<String> SUPPORTED_OPTIONS = ImmutableSet.of(COMPRESSION_LEVEL, DICTIONARY);
+
+    private static final boolean available;
+
+    static
+    {
+        boolean registered = false;
+        try
+        {
+            // pointers and size_t are passed as longs
+            if (Native.POINTER_SIZE == 8)
+            {
+                Native.register("zstd");
+                registered = true;
+            }
+        }
+        catch (NoClassDefFoundError | UnsatisfiedLinkError e)
+        {
+            logger.trace("zstd link failure details: {}", e.getMessage());
+        }
+        available = registered;
+        if (!available)
+            logger.warn("Cannot initialize native zstd library. Zstd compression will be unavailable.");
+    }
+
+    private static native long ZSTD_compressBound(long srcSize);
+    private static native int ZSTD_maxCLevel();
+    private static native int ZSTD_isError(long code);
+    private static native String ZSTD_getErrorName(long code);
+    private static native long ZSTD_createCCtx();
+    private static native long ZSTD_createDCtx();
+    private static native long ZSTD_freeCCtx(long cctx);
+    private static native long ZSTD_freeDCtx(long dctx);
+    private static native long ZSTD_compressCCtx(long cctx, long dst, long dstCapacity, long src, long srcSize, int level);
+    private static native long ZSTD_decompressDCtx(long dctx, long dst, long dstCapacity, long src, long srcSize);
+    private static native long ZSTD_createCDict(byte[] dict, long dictSize, int level);
+    private static native long ZSTD_createDDict(byte[] dict, long dictSize);
+    private static native long ZSTD_freeCDict(long cdict);
+    private static native long ZSTD_freeDDict(long ddict);
+    private static native long ZSTD_compress_usingCDict(long cctx, long dst, long dstCapacity, long src, long srcSize, long cdict);
+    private static native long ZSTD_decompress_usingDDict(long dctx, long dst, long dstCapacity, long src, long srcSize, long ddict);
+    private static native long ZDICT_trainFromBuffer(byte[] dictBuffer, long dictBufferCapacity, byte[] samplesBuffer, long[] samplesSizes, int nbSamples);
+    private static native int ZDICT_isError(long code);
+    private static native String ZDICT_getErrorName(long code);
+
+    // Compressors are shared by the CompressionParams with the same level and dictionary, keyed by the digest of the
+    // dictionary. They are only weakly referenced here: once no CompressionParams, and so no caller of compress or
+    // uncompress, uses a compressor anymore, its native dictionaries are freed.
+    private static final ConcurrentMap<String, WeakReference<ZstdCompressor>> instances = new ConcurrentHashMap<>();
+
+    // Native contexts are pooled rather than kept per thread, as the contexts of the threads of the many pools that
+    // compress and uncompress would never be freed when these threads end.
+    private static final int MAX_POOLED_CONTEXTS = FBUtilities.getAvailableProcessors() * 2;
+    private static final Queue<Context> contexts = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooledContexts = new AtomicInteger();
+
+    private final int level;
+    private final long cdict;
+    private final long ddict;
+
+    public static ZstdCompressor create(Map<String, String> options) throws ConfigurationException
+    {
+        if (!isAvailable())
+            throw new ConfigurationException("Cannot initialize native zstd library");
+
+        int level = parseCompressionLevel(options.get(COMPRESSION_LEVEL));
+        String dictionary = options.get(DICTIONARY);
+        byte[] dictionaryBytes = dictionary == null ? null : parseDictionary(dictionary);
+
+        String key = dictionaryBytes == null ? Integer.toString(level) : level + ":" + digest(dictionaryBytes);
+        while (true)
+        {
+            WeakReference<ZstdCompressor> ref = instances.get(key);
+            ZstdCompressor compressor = ref == null ? null : ref.get();
+            if (compressor != null)
+                return compressor;
+
+            // a compressor losing the race is released like any other unused one
+            ZstdCompressor created = new ZstdCompressor(key, level, dictionaryBytes);
+            WeakReference<ZstdCompressor> createdRef = new WeakReference<>(created);
+            if (ref == null ? instances.putIfAbsent(key, createdRef) == null : instances.replace(key, ref, createdRef))
+                return created;
+        }
+    }
+
+    private static String digest(byte[] dictionary)
+    {
+        return Hex.bytesToHex(FBUtilities.newMessageDigest("SHA-256").digest(dictionary));
+    }
+
+    public static boolean isAvailable()
+    {
+        return available;
+    }
+
+    private static int parseCompressionLevel(String level) throws ConfigurationException
+    {
+        if (level == null)
+            return DEFAULT_COMPRESSION_LEVEL;
+
+        int max = ZSTD_maxCLevel();
+        try
+        {
+            int parsed = Integer.parseInt(level);
+            if (parsed >= 1 && parsed <= max)
+                return parsed;
+        }
+        catch (NumberFormatException e)
+        {
+            // fall through
+        }
+        throw new ConfigurationException(String.format("Invalid value '%s' for %s, must be an integer between 1 and %d", level, COMPRESSION_LEVEL, max));
+    }
+
+    private static byte[] parseDictionary(String dictionary) throws ConfigurationException
+    {
+        byte[] bytes;
+        try
+        {
+            bytes = Base64.getDecoder().decode(dictionary);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new ConfigurationException(DICTIONARY + " must be base64 encoded: " + e.getMessage());
+        }
+        if (bytes.length == 0 || bytes.length > MAX_DICTIONARY_SIZE)
+            throw new ConfigurationException(String.format("Invalid %s of %d bytes, must be between 1 and %d bytes", DICTIONARY, bytes.length, MAX_DICTIONARY_SIZE));
+        return bytes;
+    }
+
+    private ZstdCompressor(String key, int level, byte[] dictionary)
+    {
+        this.level = level;
+        if (dictionary == null)
+        {
+            cdict = 0;
+            ddict = 0;
+        }
+        else
+        {
+            cdict = ZSTD_createCDict(dictionary, dictionary.length, level);
+            ddict = ZSTD_createDDict(dictionary, dictionary.length);
+            if (cdict == 0 || ddict == 0)
+            {
+                new Release(key, cdict, ddict).run();
+                throw new IllegalStateException("Failed to load zstd dictionary");
+            }
+        }
+        Cleaner.create(this, new Release(key, cdict, ddict));
+    }
+
+    @VisibleForTesting
+    static int cachedInstances()
+    {
+        return instances.size();
+    }
+
+    /**
+     * Frees the native dictionaries of a compressor and drops its cache entry, once the compressor is unreachable.
+     */
+    private static final class Release implements Runnable
+    {
+        private final String key;
+        private final long cdict;
+        private final long ddict;
+
+        Release(String key, long cdict, long ddict)
+        {
+            this.key = key;
+            this.cdict = cdict;
+            this.ddict = ddict;
+        }
+
+        public void run()
+        {
+            if (cdict != 0)
+                ZSTD_freeCDict(cdict);
+            if (ddict != 0)
+                ZSTD_freeDDict(ddict);
+            // the entry may already belong to a compressor created since with the same options
+            instances.computeIfPresent(key, (k, ref) -> ref.get() == null ? null : ref);
+        }
+    }
+
+    /**
+     * Trains a dictionary on the given samples, which should be representative uncompressed chunks of a table.
+     * The result can be base64 encoded and passed as the {@code dictionary} option.
+     *
+     * @param samples the samples to train on; zstd needs at least a few dozen of them
+     * @param maxSize the maximum size of the dictionary, at most {@link #MAX_DICTIONARY_SIZE}
+     */
+    public static byte[] trainDictionary(List<ByteBuffer> samples, int maxSize)
+    {
+        if (!isAvailable())
+            throw new IllegalStateException("Cannot initialize native zstd library");
+        if (maxSize <= 0 || maxSize > MAX_DICTIONARY_SIZE)
+            throw new IllegalArgumentException("Dictionary size must be between 1 and " + MAX_DICTIONARY_SIZE);
+
+        int total = 0;
+        for (ByteBuffer sample : samples)
+            total += sample.remaining();
+
+        byte[] buffer = new byte[total];
+        long[] sizes = new long[samples.size()];
+        int offset = 0;
+        for (int i = 0; i < sizes.length; i++)
+        {
+            ByteBuffer sample = samples.get(i).duplicate();
+            sizes[i] = sample.remaining();
+            sample.get(buffer, offset, sample.remaining());
+            offset += sizes[i];
+        }
+
+        byte[] dictionary = new byte[maxSize];
+        long size = ZDICT_trainFromBuffer(dictionary, maxSize, buffer, sizes, sizes.length);
+        if (ZDICT_isError(size) != 0)
+            throw new IllegalArgumentException("Failed to train zstd dictionary: " + ZDICT_getErrorName(size));
+        return Arrays.copyOf(dictionary, (int) size);
+    }
+
+    public Set<String> supportedOptions()
+    {
+        return SUPPORTED_OPTIONS;
+    }
+
+    public int initialCompressedBufferLength(int chunkLength)
+    {
+        return (int) ZSTD_compressBound(chunkLength);
+    }
+
+    public void compress(ByteBuffer input, ByteBuffer output) throws IOException
+    {
+        Context ctx = acquireContext();
+        try
+        {
+            ByteBuffer src = input.isDirect() ? input : ctx.input(input);
+            ByteBuffer dst = output.isDirect() ? output : ctx.output(output.remaining());
+
+            long length = cdict == 0
+                          ? ZSTD_compressCCtx(ctx.cctx, address(dst), dst.remaining(), address(src), src.remaining(), level)
+                          : ZSTD_compress_usingCDict(ctx.cctx, address(dst), dst.remaining(), address(src), src.remaining(), cdict);
+            check(length);
+
+            input.position(input.limit());
+            advance(dst, output, (int) length);
+        }
+        finally
+        {
+            releaseContext(ctx);
+        }
+    }
+
+    public void uncompress(ByteBuffer input, ByteBuffer output) throws IOException
+    {
+        Context ctx = acquireContext();
+        try
+        {
+            ByteBuffer src = input.isDirect() ? input : ctx.input(input);
+            ByteBuffer dst = output.isDirect() ? output : ctx.output(output.remaining());
+
+            long length = uncompress(ctx, address(src), src.remaining(), address(dst), dst.remaining());
+
+            input.position(input.limit());
+            advance(dst, output, (int) length);
+        }
+        finally
+        {
+            releaseContext(ctx);
+        }
+    }
+
+    public int uncompress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset) throws IOException
+    {
+        Context ctx = acquireContext();
+        try
+        {
+            ByteBuffer src = ctx.input(ByteBuffer.wrap(input, inputOffset, inputLength));
+            ByteBuffer dst = ctx.output(output.length - outputOffset);
+
+            int length = (int) uncompress(ctx, address(src), src.remaining(), address(dst), dst.remaining());
+            dst.get(output, outputOffset, length);
+            return length;
+        }
+        finally
+        {
+            releaseContext(ctx);
+        }
+    }
+
+    private static Context acquireContext()
+    {
+        Context ctx = contexts.poll();
+        if (ctx == null)
+            return new Context();
+
+        pooledContexts.decrementAndGet();
+        return ctx;
+    }
+
+    /**
+     * Returns the context to the pool, or frees it if there are enough pooled contexts already.
+     */
+    private static void releaseContext(Context ctx)
+    {
+        if (pooledContexts.incrementAndGet() <= MAX_POOLED_CONTEXTS)
+        {
+            contexts.offer(ctx);
+        }
+        else
+        {
+            pooledContexts.decrementAndGet();
+            ctx.free();
+        }
+    }
+
+    @VisibleForTesting
+    static int pooledContexts()
+    {
+        return pooledContexts.get();
+    }
+
+    private long uncompress(Context ctx, long src, int srcLength, long dst, int dstCapacity) throws IOException
+    {
+        long length = ddict == 0
+                      ? ZSTD_decompressDCtx(ctx.dctx, dst, dstCapacity, src, srcLength)
+                      : ZSTD_decompress_usingDDict(ctx.dctx, dst, dstCapacity, src, srcLength, ddict);
+        return check(length);
+    }
+
+    private static long check(long result) throws IOException
+    {
+        if (ZSTD_isError(result) != 0)
+            throw new IOException("zstd error: " + ZSTD_getErrorName(result));
+        return result;
+    }
+
+    private static long address(ByteBuffer buffer)
+    {
+        // not MemoryUtil.getAddress(), as it doesn't accept read-only (e.g. memory-mapped) buffers
+        return ((DirectBuffer) buffer).address() + buffer.position();
+    }
+
+    /**
+     * Moves output past the length bytes just written to dst, copying them over first if dst is our scratch buffer.
+     */
+    private static void advance(ByteBuffer dst, ByteBuffer output, int length)
+    {
+        if (dst == output)
+        {
+            output.position(output.position() + length);
+        }
+        else
+        {
+            dst.limit(length);
+            output.put(dst);
+        }
+    }
+
+    public BufferType preferredBufferType()
+    {
+        return BufferType.OFF_HEAP;
+    }
+
+    public boolean supports(BufferType bufferType)
+    {
+        // on heap buffers are supported by copying through direct ones
+        return true;
+    }
+
+    /**
+     * Native contexts, which zstd reuses between calls, and direct scratch buffers for on-heap data.
+     * A context is used by a single thread at a time.
+     */
+    private static final class Context
+    {
+        final long cctx = ZSTD_createCCtx();
+        final long dctx = ZSTD_createDCtx();
+        ByteBuffer input = ByteBuffer.allocateDirect(0);
+        ByteBuffer output = ByteBuffer.allocateDirect(0);
+
+        ByteBuffer input(ByteBuffer data)
+        {
+            input = ensureCapacity(input, data.remaining());
+            input.put(data.duplicate()).flip();
+            return input;
+        }
+
+        ByteBuffer output(int capacity)
+        {
+            output = ensureCapacity(output, capacity);
+            output.limit(capacity);
+            return output;
+        }
+
+        private static ByteBuffer ensureCapacity(ByteBuffer buffer, int capacity)
+        {
+            if (buffer.capacity() >= capacity)
+            {
+                buffer.clear();
+                return buffer;
+            }
+            FileUtils.clean(buffer);
+            return ByteBuffer.allocateDirect(capacity);
+        }
+
+        void free()
+        {
+            ZSTD_freeCCtx(cctx);
+            ZSTD_freeDCtx(dctx);
+            FileUtils.clean(input);
+            FileUtils.clean(output);
+        }
+    }
+}
@@ -57,6 +57,8 @@ public class Component
         SUMMARY("Summary.db"),
         // table of contents, stores the list of all components for the sstable
         TOC("TOC.txt"),
+        // trie of the partition keys with pointers to their primary index entries (bti format only)
+        PARTITION_INDEX("Partitions.db"),
         // custom component, used by e.g. custom compaction strategy
         CUSTOM(new String[] { null });
         
@@ -96,6 +98,7 @@ public class Component
     public final static Component CRC = new Component(Type.CRC);
     public final static Component SUMMARY = new Component(Type.SUMMARY);
     public final static Component TOC = new Component(Type.TOC);
+    public final static Component PARTITION_INDEX = new Component(Type.PARTITION_INDEX);
 
     public static Component digestFor(ChecksumType checksumType)
     {
@@ -148,7 +151,22 @@ public class Component
         Pair<Descriptor,String> path = Descriptor.fromFilename(directory, name);
 
         // parse the component suffix
-        Type type = Type.fromRepresentation(path.right);
+        return Pair.create(path.left, parse(path.right, true));
+    }
+
+    /**
+     * @return the singleton instance of the known component with the given name
+     * @throws IllegalArgumentException if the name isn't the one of a known component, as custom names can be
+     * arbitrary strings which shouldn't be trusted, e.g. when received from another node, to name files
+     */
+    public static Component parse(String name)
+    {
+        return parse(name, false);
+    }
+
+    private static Component parse(String name, boolean allowCustom)
+    {
+        Type type = Type.fromRepresentation(name);
         // build (or retrieve singleton for) the component object
         Component component;
         switch(type)
@@ -158,23 +176,27 @@ public class Component
             case FILTER:            component = Component.FILTER;                       break;
             case COMPRESSION_INFO:  component = Component.COMPRESSION_INFO;             break;
             case STATS:             component = Component.STATS;                        break;
-            case DIGEST:            switch (path.right)
+            case DIGEST:            switch (name)
                                     {
                                         case digestCrc32:   component = Component.DIGEST_CRC32;     break;
                                         case digestAdler32: component = Component.DIGEST_ADLER32;   break;
                                         case digestSha1:    component = Component.DIGEST_SHA1;      break;
-                                        default:            throw new IllegalArgumentException("Invalid digest component " + path.right);
+                                        default:            throw new IllegalArgumentException("Invalid digest component " + name);
                                     }
                                     break;
             case CRC:               component = Component.CRC;                          break;
             case SUMMARY:           component = Component.SUMMARY;                      break;
             case TOC:               component = Component.TOC;                          break;
-            case CUSTOM:            component = new Component(Type.CUSTOM, path.right); break;
+            case PARTITION_INDEX:   component = Component.PARTITION_INDEX;              break;
+            case CUSTOM:            if (!allowCustom)
+                                        throw new IllegalArgumentException("Unknown component " + name);
+                                    component = new Component(Type.CUSTOM, name);
+                                    break;
             default:
                  throw new IllegalStateException();
         }
 
-        return Pair.create(path.left, component);
+        return component;
     }
 
     @Override
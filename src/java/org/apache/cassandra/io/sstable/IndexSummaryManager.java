@@ -267,6 +267,14 @@ public class IndexSummaryManager implements IndexSummaryManagerMBean
                     // doesn't include the sampling level.  Leave this one as it is.  (See CASSANDRA-8993 for details.)
                     logger.trace("SSTable {} cannot be re-sampled due to old sstable format", sstable);
 
+                    oldFormatSSTables.add(sstable);
+                    txn.cancel(sstable);
+                }
+                else if (!sstable.usesIndexSummaryForLookups())
+                {
+                    // Point lookups don't go through the summary of this one, so don't spend memory on it
+                    logger.trace("SSTable {} is not re-sampled as its index summary is not used for lookups", sstable);
+
                     oldFormatSSTables.add(sstable);
                     txn.cancel(sstable);
                 }
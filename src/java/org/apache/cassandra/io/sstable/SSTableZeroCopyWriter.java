@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.LongConsumer;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.SyncUtil;
+import org.apache.cassandra.utils.concurrent.Transactional;
+
+import static org.apache.cassandra.utils.Throwables.merge;
+
+/**
+ * Writes an sstable whose component files are copied as they are from another node, rather than built from its
+ * partitions.
+ *
+ * Each component is written exactly once through {@link #writeComponent}. The summary, if not written, is rebuilt
+ * from the primary index when the sstable is opened. As the statistics are copied too, the repair time and level of
+ * the sstable are updated on {@link #prepareToCommit}.
+ */
+public class SSTableZeroCopyWriter extends SSTable implements SSTableMultiWriter
+{
+    private final long repairedAt;
+    private final int sstableLevel;
+    private final Set<Component> written = new HashSet<>();
+    private final TransactionalProxy txnProxy = new TransactionalProxy();
+    private long bytesWritten;
+    private boolean openResult;
+    private SSTableReader finalReader;
+
+    public SSTableZeroCopyWriter(Descriptor descriptor,
+                                 Set<Component> components,
+                                 CFMetaData metadata,
+                                 long repairedAt,
+                                 int sstableLevel,
+                                 LifecycleTransaction txn)
+    {
+        super(descriptor, components, metadata);
+        this.repairedAt = repairedAt;
+        this.sstableLevel = sstableLevel;
+        txn.trackNew(this); // must track before any files are created
+    }
+
+    /**
+     * Copies the given number of bytes from {@code in} to the file of {@code component}.
+     *
+     * @param progress called with the number of bytes written to the file after each transfer
+     * @throws EOFException if {@code in} ends before {@code size} bytes are read
+     */
+    public void writeComponent(Component component, ReadableByteChannel in, long size, LongConsumer progress) throws IOException
+    {
+        assert components.contains(component) && !written.contains(component) : component;
+        written.add(component);
+
+        File file = new File(descriptor.filenameFor(component));
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))
+        {
+            long position = 0;
+            while (position < size)
+            {
+                long transferred = out.transferFrom(in, position, size - position);
+                // transferFrom only returns 0 once the source is exhausted, as the streaming channel is blocking
+                if (transferred == 0)
+                    throw new EOFException(String.format("Stream ended after %d of the %d bytes of %s", position, size, file));
+
+                position += transferred;
+                bytesWritten += transferred;
+                progress.accept(position);
+            }
+            SyncUtil.force(out, true);
+        }
+        catch (EOFException e)
+        {
+            throw e;
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, file);
+        }
+    }
+
+    public boolean append(UnfilteredRowIterator partition)
+    {
+        throw new UnsupportedOperationException("Partitions can't be appended to an sstable copied file by file");
+    }
+
+    public Collection<SSTableReader> finish(long repairedAt, long maxDataAge, boolean openResult)
+    {
+        return finish(openResult);
+    }
+
+    public Collection<SSTableReader> finish(boolean openResult)
+    {
+        setOpenResult(openResult);
+        txnProxy.finish();
+        return finished();
+    }
+
+    public Collection<SSTableReader> finished()
+    {
+        return finalReader == null ? Collections.emptyList() : Collections.singleton(finalReader);
+    }
+
+    public SSTableMultiWriter setOpenResult(boolean openResult)
+    {
+        this.openResult = openResult;
+        return this;
+    }
+
+    public long getFilePointer()
+    {
+        return bytesWritten;
+    }
+
+    public UUID getCfId()
+    {
+        return metadata.cfId;
+    }
+
+    public Throwable commit(Throwable accumulate)
+    {
+        return txnProxy.commit(accumulate);
+    }
+
+    public Throwable abort(Throwable accumulate)
+    {
+        return txnProxy.abort(accumulate);
+    }
+
+    public void prepareToCommit()
+    {
+        txnProxy.prepareToCommit();
+    }
+
+    public void close()
+    {
+        txnProxy.close();
+    }
+
+    private class TransactionalProxy extends Transactional.AbstractTransactional
+    {
+        protected void doPrepare()
+        {
+            try
+            {
+                descriptor.getMetadataSerializer().mutateRepairedAt(descriptor, repairedAt);
+                descriptor.getMetadataSerializer().mutateLevel(descriptor, sstableLevel);
+            }
+            catch (IOException e)
+            {
+                throw new FSWriteError(e, descriptor.filenameFor(Component.STATS));
+            }
+
+            if (openResult)
+            {
+                // the summary isn't copied but is rebuilt, so it must be part of the opened components
+                Set<Component> openComponents = new HashSet<>(components);
+                openComponents.add(Component.SUMMARY);
+                try
+                {
+                    finalReader = SSTableReader.open(descriptor, openComponents, metadata, true, false);
+                }
+                catch (IOException e)
+                {
+                    throw new FSWriteError(e, getFilename());
+                }
+            }
+        }
+
+        protected Throwable doCommit(Throwable accumulate)
+        {
+            return accumulate;
+        }
+
+        protected Throwable doAbort(Throwable accumulate)
+        {
+            for (Component component : written)
+            {
+                File file = new File(descriptor.filenameFor(component));
+                if (file.exists())
+                {
+                    try
+                    {
+                        FileUtils.deleteWithConfirm(file);
+                    }
+                    catch (Throwable t)
+                    {
+                        accumulate = merge(accumulate, t);
+                    }
+                }
+            }
+            return accumulate;
+        }
+    }
+}
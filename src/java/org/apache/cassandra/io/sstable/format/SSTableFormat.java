@@ -25,6 +25,7 @@ import org.apache.cassandra.db.RowIndexEntry;
 import org.apache.cassandra.db.SerializationHeader;
 import org.apache.cassandra.db.compaction.CompactionController;
 import org.apache.cassandra.io.sstable.format.big.BigFormat;
+import org.apache.cassandra.io.sstable.format.bti.BtiFormat;
 import org.apache.cassandra.io.util.FileDataInput;
 
 import java.util.Iterator;
@@ -52,7 +53,10 @@ public interface SSTableFormat
         LEGACY("big", BigFormat.instance),
 
         //The original sstable format
-        BIG("big", BigFormat.instance);
+        BIG("big", BigFormat.instance),
+
+        //The original sstable format, with a trie partition index for point lookups
+        BTI("bti", BtiFormat.instance);
 
         public final SSTableFormat info;
         public final String name;
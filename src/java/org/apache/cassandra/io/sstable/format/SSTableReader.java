@@ -1001,6 +1001,14 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
     }
 
     // These runnables must NOT be an anonymous or non-static inner class, nor must it retain a reference chain to this reader
+    /**
+     * Registers a format specific resource, to close once this reader instance is released and no read still uses it.
+     */
+    protected void closeOnTidy(AutoCloseable resource)
+    {
+        tidy.resources.add(resource);
+    }
+
     public void runOnClose(final Runnable runOnClose)
     {
         synchronized (tidy.global)
@@ -1230,6 +1238,15 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         return indexSummary.getOffHeapSize();
     }
 
+    /**
+     * @return whether point lookups go through the index summary, and so whether they would benefit from
+     * {@link IndexSummaryManager} resampling it
+     */
+    public boolean usesIndexSummaryForLookups()
+    {
+        return true;
+    }
+
     public int getMinIndexInterval()
     {
         return indexSummary.getMinIndexInterval();
@@ -2089,6 +2106,7 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
 
         private SegmentedFile dfile;
         private SegmentedFile ifile;
+        private final List<AutoCloseable> resources = new CopyOnWriteArrayList<>();
         private Runnable runOnClose;
         private boolean isReplaced = false;
 
@@ -2151,6 +2169,7 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
                         dfile.close();
                     if (ifile != null)
                         ifile.close();
+                    FileUtils.closeQuietly(resources);
                     globalRef.release();
                 }
             });
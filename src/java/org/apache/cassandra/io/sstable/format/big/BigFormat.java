@@ -109,7 +109,7 @@ public class BigFormat implements SSTableFormat
     //
     // Minor versions were introduced with version "hb" for Cassandra 1.0.3; prior to that,
     // we always incremented the major version.
-    static class BigVersion extends Version
+    public static class BigVersion extends Version
     {
         public static final String current_version = "ma";
         public static final String earliest_supported_version = "jb";
@@ -150,7 +150,15 @@ public class BigFormat implements SSTableFormat
 
         BigVersion(String version)
         {
-            super(instance, version);
+            this(instance, version);
+        }
+
+        /**
+         * A version of the big sstable layout, used by another format.
+         */
+        public BigVersion(SSTableFormat format, String version)
+        {
+            super(format, version);
 
             isLatestVersion = version.compareTo(current_version) == 0;
             hasSamplingLevel = version.compareTo("ka") >= 0;
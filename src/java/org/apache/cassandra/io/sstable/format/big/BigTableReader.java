@@ -52,7 +52,7 @@ public class BigTableReader extends SSTableReader
 {
     private static final Logger logger = LoggerFactory.getLogger(BigTableReader.class);
 
-    BigTableReader(Descriptor desc, Set<Component> components, CFMetaData metadata, Long maxDataAge, StatsMetadata sstableMetadata, OpenReason openReason, SerializationHeader header)
+    protected BigTableReader(Descriptor desc, Set<Component> components, CFMetaData metadata, Long maxDataAge, StatsMetadata sstableMetadata, OpenReason openReason, SerializationHeader header)
     {
         super(desc, components, metadata, maxDataAge, sstableMetadata, openReason, header);
     }
@@ -162,6 +162,15 @@ public class BigTableReader extends SSTableReader
             return null;
         }
 
+        return getPositionInIndex(key, op, updateCacheAndStats);
+    }
+
+    /**
+     * Finds the index entry for the key once the bloom filter, key cache and sstable bounds have been checked,
+     * by scanning the primary index from the nearest sampled position.
+     */
+    protected RowIndexEntry getPositionInIndex(PartitionPosition key, Operator op, boolean updateCacheAndStats)
+    {
         int binarySearchResult = indexSummary.binarySearch(key);
         long sampledPosition = getIndexScanPositionFromBinarySearchResult(binarySearchResult, indexSummary);
         int sampledIndex = getIndexSummaryIndexFromBinarySearchResult(binarySearchResult);
@@ -83,6 +83,15 @@ public class BigTableWriter extends SSTableWriter
         iwriter = new IndexWriter(keyCount, dataFile);
     }
 
+    /**
+     * @return the sampling level of the index summary to build, which must only depend on the table metadata as it is
+     * called by the constructor
+     */
+    protected int indexSummarySamplingLevel()
+    {
+        return Downsampling.BASE_SAMPLING_LEVEL;
+    }
+
     public void mark()
     {
         dataMark = dataFile.mark();
@@ -290,7 +299,7 @@ public class BigTableWriter extends SSTableWriter
         return new TransactionalProxy();
     }
 
-    class TransactionalProxy extends SSTableWriter.TransactionalProxy
+    protected class TransactionalProxy extends SSTableWriter.TransactionalProxy
     {
         // finalise our state on disk, including renaming
         protected void doPrepare()
@@ -351,6 +360,14 @@ public class BigTableWriter extends SSTableWriter
         return dataFile.position();
     }
 
+    /**
+     * @return the position in the primary index of the entry of the next appended partition
+     */
+    protected long getIndexFilePointer()
+    {
+        return iwriter.indexFile.position();
+    }
+
     public long getOnDiskFilePointer()
     {
         return dataFile.getOnDiskFilePointer();
@@ -371,7 +388,7 @@ public class BigTableWriter extends SSTableWriter
         {
             indexFile = SequentialWriter.open(new File(descriptor.filenameFor(Component.PRIMARY_INDEX)));
             builder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode(), false);
-            summary = new IndexSummaryBuilder(keyCount, metadata.params.minIndexInterval, Downsampling.BASE_SAMPLING_LEVEL);
+            summary = new IndexSummaryBuilder(keyCount, metadata.params.minIndexInterval, indexSummarySamplingLevel());
             bf = FilterFactory.getFilter(keyCount, metadata.params.bloomFilterFpChance, true, descriptor.version.hasOldBfHashOrder());
             // register listeners to be alerted when the data files are flushed
             indexFile.setPostFlushListener(new Runnable()
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format.bti;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.PartitionPosition;
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.db.SerializationHeader;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.CorruptSSTableException;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.format.big.BigTableReader;
+import org.apache.cassandra.io.sstable.metadata.StatsMetadata;
+import org.apache.cassandra.io.util.FileDataInput;
+import org.apache.cassandra.tracing.Tracing;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * Reads sstables of the {@link BtiFormat}, finding the index entry of a partition key through the partition index
+ * trie rather than by scanning the primary index from the closest sampled key of the index summary.
+ *
+ * Early opened sstables, and sstables written for a partitioner the trie does not support, have no usable trie and
+ * are read like big format ones.
+ */
+public class BtiTableReader extends BigTableReader
+{
+    private final PartitionIndex partitionIndex;
+
+    BtiTableReader(Descriptor desc, Set<Component> components, CFMetaData metadata, Long maxDataAge, StatsMetadata sstableMetadata, OpenReason openReason, SerializationHeader header)
+    {
+        super(desc, components, metadata, maxDataAge, sstableMetadata, openReason, header);
+
+        // the trie is only written once the sstable is complete
+        if (components.contains(Component.PARTITION_INDEX) && openReason != OpenReason.EARLY)
+        {
+            partitionIndex = PartitionIndex.open(desc.filenameFor(Component.PARTITION_INDEX));
+            closeOnTidy(partitionIndex);
+        }
+        else
+        {
+            partitionIndex = null;
+        }
+    }
+
+    @Override
+    public boolean usesIndexSummaryForLookups()
+    {
+        return partitionIndex == null;
+    }
+
+    @Override
+    protected RowIndexEntry getPositionInIndex(PartitionPosition key, Operator op, boolean updateCacheAndStats)
+    {
+        if (op != Operator.EQ || partitionIndex == null || ifile == null)
+            return super.getPositionInIndex(key, op, updateCacheAndStats);
+
+        DecoratedKey decoratedKey = (DecoratedKey) key;
+        long indexPosition = partitionIndex.get(PartitionIndex.encode(decoratedKey));
+        if (indexPosition == PartitionIndex.NOT_FOUND)
+        {
+            if (updateCacheAndStats)
+                bloomFilterTracker.addFalsePositive();
+            Tracing.trace("Partition index lookup allows skipping sstable {}", descriptor.generation);
+            return null;
+        }
+
+        // the trie only knows a prefix of the key: check the full key stored in the primary index
+        String path = null;
+        try (FileDataInput in = ifile.createReader(indexPosition))
+        {
+            path = in.getPath();
+            ByteBuffer indexKey = ByteBufferUtil.readWithShortLength(in);
+            if (!indexKey.equals(decoratedKey.getKey()))
+            {
+                if (updateCacheAndStats)
+                    bloomFilterTracker.addFalsePositive();
+                Tracing.trace("Partition index lookup complete (bloom filter false positive) for sstable {}", descriptor.generation);
+                return null;
+            }
+
+            RowIndexEntry indexEntry = rowIndexEntrySerializer.deserialize(in);
+            if (updateCacheAndStats)
+            {
+                cacheKey(decoratedKey, indexEntry);
+                bloomFilterTracker.addTruePositive();
+            }
+            Tracing.trace("Partition index with {} entries found for sstable {}", indexEntry.columnsIndex().size(), descriptor.generation);
+            return indexEntry;
+        }
+        catch (IOException e)
+        {
+            markSuspect();
+            throw new CorruptSSTableException(e, path);
+        }
+    }
+}
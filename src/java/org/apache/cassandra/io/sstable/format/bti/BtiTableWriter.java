@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format.bti;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.db.SerializationHeader;
+import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.Downsampling;
+import org.apache.cassandra.io.sstable.format.SSTableWriter;
+import org.apache.cassandra.io.sstable.format.big.BigTableWriter;
+import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
+import org.apache.cassandra.io.util.SequentialWriter;
+
+/**
+ * Writes sstables of the {@link BtiFormat}: a big format sstable, plus the partition index trie built from the
+ * positions of the primary index entries as partitions are appended.
+ */
+public class BtiTableWriter extends BigTableWriter
+{
+    // null if the partitioner can't be used with a trie
+    private final SequentialWriter partitionIndexFile;
+    private final PartitionIndexBuilder partitionIndex;
+
+    public BtiTableWriter(Descriptor descriptor,
+                          Long keyCount,
+                          Long repairedAt,
+                          CFMetaData metadata,
+                          MetadataCollector metadataCollector,
+                          SerializationHeader header,
+                          LifecycleTransaction txn)
+    {
+        super(descriptor, keyCount, repairedAt, metadata, metadataCollector, header, txn);
+
+        if (PartitionIndex.supports(metadata.partitioner))
+        {
+            components.add(Component.PARTITION_INDEX);
+            partitionIndexFile = SequentialWriter.open(new File(descriptor.filenameFor(Component.PARTITION_INDEX)));
+            partitionIndex = new PartitionIndexBuilder(partitionIndexFile);
+        }
+        else
+        {
+            partitionIndexFile = null;
+            partitionIndex = null;
+        }
+    }
+
+    /**
+     * With a trie, the summary is only used by range reads, which don't need the summary to be any denser than what
+     * the index summary manager would leave for the coldest sstables.
+     */
+    @Override
+    protected int indexSummarySamplingLevel()
+    {
+        if (!PartitionIndex.supports(metadata.partitioner))
+            return super.indexSummarySamplingLevel();
+
+        int level = Downsampling.BASE_SAMPLING_LEVEL * metadata.params.minIndexInterval / metadata.params.maxIndexInterval;
+        return Math.max(1, level);
+    }
+
+    @Override
+    public void mark()
+    {
+        super.mark();
+        if (partitionIndex != null)
+            partitionIndex.mark();
+    }
+
+    @Override
+    public void resetAndTruncate()
+    {
+        super.resetAndTruncate();
+        if (partitionIndex != null)
+            partitionIndex.resetToMark();
+    }
+
+    @Override
+    public RowIndexEntry append(UnfilteredRowIterator iterator)
+    {
+        long indexPosition = getIndexFilePointer();
+        RowIndexEntry entry = super.append(iterator);
+        if (entry != null && partitionIndex != null)
+        {
+            try
+            {
+                partitionIndex.add(PartitionIndex.encode(iterator.partitionKey()), indexPosition);
+            }
+            catch (IOException e)
+            {
+                throw new FSWriteError(e, partitionIndexFile.getPath());
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    protected SSTableWriter.TransactionalProxy txnProxy()
+    {
+        return new TransactionalProxy();
+    }
+
+    protected class TransactionalProxy extends BigTableWriter.TransactionalProxy
+    {
+        @Override
+        protected void doPrepare()
+        {
+            // the trie must be complete before the final reader is opened
+            if (partitionIndex != null)
+            {
+                try
+                {
+                    partitionIndex.complete();
+                }
+                catch (IOException e)
+                {
+                    throw new FSWriteError(e, partitionIndexFile.getPath());
+                }
+                partitionIndexFile.setDescriptor(descriptor).prepareToCommit();
+            }
+            super.doPrepare();
+        }
+
+        @Override
+        protected Throwable doCommit(Throwable accumulate)
+        {
+            accumulate = super.doCommit(accumulate);
+            if (partitionIndexFile != null)
+                accumulate = partitionIndexFile.commit(accumulate);
+            return accumulate;
+        }
+
+        @Override
+        protected Throwable doAbort(Throwable accumulate)
+        {
+            if (partitionIndexFile != null)
+                accumulate = partitionIndexFile.abort(accumulate);
+            return super.doAbort(accumulate);
+        }
+    }
+}
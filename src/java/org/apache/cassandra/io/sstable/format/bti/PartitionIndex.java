@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format.bti;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.ByteOrderedPartitioner;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.io.FSReadError;
+import org.apache.cassandra.io.util.FileUtils;
+
+/**
+ * An on-disk trie mapping the partition keys of an sstable to the position of their entry in the primary index,
+ * written by {@link PartitionIndexBuilder} and searched in place through memory-mapping.
+ *
+ * Keys are mapped to byte sequences ordered like the keys themselves (see {@link #encode}), and the trie only
+ * stores the shortest prefix distinguishing each key from the others. A lookup thus returns the only entry that
+ * can match the searched key, which the caller must check against the full key stored in the primary index.
+ *
+ * Each node is serialized as:
+ *   - a flags byte, with the size of the payload in bytes (0 if none) in the lower 4 bits, and the size of the child
+ *     pointers in the upper 4 bits (0 for leaves);
+ *   - for non-leaves, the number of children minus one, the sorted transition bytes of the children, and then the
+ *     distance back from the node to each child, as the children are always written before their parent;
+ *   - the payload, if any, as a big-endian number.
+ * The file ends with the position of the root node.
+ */
+public class PartitionIndex implements AutoCloseable
+{
+    // the largest possible node: flags, child count, 256 transitions and pointers, and an 8-byte payload
+    static final int MAX_NODE_SIZE = 2 + 256 + 256 * 8 + 8;
+
+    // files are mapped in regions overlapping by MAX_NODE_SIZE, so that any node can be read from a single region
+    private static final int REGION_SHIFT = 30;
+    private static final long REGION_SIZE = 1L << REGION_SHIFT;
+
+    public static final long NOT_FOUND = -1;
+
+    private final String path;
+    private final ByteBuffer[] regions;
+    private final long root;
+
+    private PartitionIndex(String path, ByteBuffer[] regions, long root)
+    {
+        this.path = path;
+        this.regions = regions;
+        this.root = root;
+    }
+
+    public static PartitionIndex open(String path)
+    {
+        try (FileChannel channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.READ))
+        {
+            long length = channel.size();
+            ByteBuffer[] regions = new ByteBuffer[(int) ((length - 1) >>> REGION_SHIFT) + 1];
+            for (int i = 0; i < regions.length; i++)
+            {
+                long start = i * REGION_SIZE;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE + MAX_NODE_SIZE, length - start));
+            }
+
+            ByteBuffer last = regions[regions.length - 1];
+            long root = last.getLong(last.limit() - 8);
+            return new PartitionIndex(path, regions, root);
+        }
+        catch (IOException e)
+        {
+            throw new FSReadError(e, path);
+        }
+    }
+
+    /**
+     * @return whether keys of the given partitioner can be mapped to byte-ordered sequences
+     */
+    public static boolean supports(IPartitioner partitioner)
+    {
+        return partitioner instanceof Murmur3Partitioner || partitioner instanceof ByteOrderedPartitioner;
+    }
+
+    /**
+     * Maps a key to a byte sequence, so that the byte order of sequences matches the order of their keys.
+     */
+    public static byte[] encode(DecoratedKey key)
+    {
+        ByteBuffer bytes = key.getKey();
+        if (key.getPartitioner() instanceof ByteOrderedPartitioner)
+        {
+            // the token is the key
+            byte[] encoded = new byte[bytes.remaining()];
+            bytes.duplicate().get(encoded);
+            return encoded;
+        }
+
+        assert key.getPartitioner() instanceof Murmur3Partitioner;
+        // the token, with its sign bit flipped so it compares as unsigned, followed by the key
+        long token = ((Murmur3Partitioner.LongToken) key.getToken()).token ^ Long.MIN_VALUE;
+        byte[] encoded = new byte[8 + bytes.remaining()];
+        for (int i = 0; i < 8; i++)
+            encoded[i] = (byte) (token >>> (56 - 8 * i));
+        bytes.duplicate().get(encoded, 8, bytes.remaining());
+        return encoded;
+    }
+
+    /**
+     * @return the payload of the only key which can be equal to the given encoded key, or {@link #NOT_FOUND}
+     */
+    public long get(byte[] key)
+    {
+        long node = root;
+        int depth = 0;
+        while (true)
+        {
+            ByteBuffer region = regions[(int) (node >>> REGION_SHIFT)];
+            int offset = (int) (node & (REGION_SIZE - 1));
+
+            int flags = region.get(offset) & 0xFF;
+            int payloadBytes = flags & 0xF;
+            int pointerBytes = flags >>> 4;
+            if (pointerBytes == 0)
+                return payloadBytes == 0 ? NOT_FOUND : read(region, offset + 1, payloadBytes);
+
+            int childCount = (region.get(offset + 1) & 0xFF) + 1;
+            if (depth == key.length)
+                return payloadBytes == 0 ? NOT_FOUND : read(region, offset + 2 + childCount * (1 + pointerBytes), payloadBytes);
+
+            int child = search(region, offset + 2, childCount, key[depth] & 0xFF);
+            if (child < 0)
+                return NOT_FOUND;
+
+            node -= read(region, offset + 2 + childCount + child * pointerBytes, pointerBytes);
+            depth++;
+        }
+    }
+
+    private static int search(ByteBuffer region, int start, int count, int transition)
+    {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int value = region.get(start + mid) & 0xFF;
+            if (value < transition)
+                low = mid + 1;
+            else if (value > transition)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    private static long read(ByteBuffer region, int offset, int bytes)
+    {
+        long value = 0;
+        for (int i = 0; i < bytes; i++)
+            value = (value << 8) | (region.get(offset + i) & 0xFF);
+        return value;
+    }
+
+    public String getPath()
+    {
+        return path;
+    }
+
+    public void close()
+    {
+        for (ByteBuffer region : regions)
+            FileUtils.clean(region);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format.bti;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cassandra.io.util.DataOutputPlus;
+
+/**
+ * Writes a {@link PartitionIndex} trie, given its keys in increasing byte order.
+ *
+ * Only the shortest prefix distinguishing each key from its neighbours is stored, so the trie stays small however
+ * long the keys are, at the price of having to check the full key of the entry found by a lookup. As a prefix
+ * length depends on the next key, the last added key is only written when the next one (or {@link #complete})
+ * comes in.
+ *
+ * Nodes are written as soon as they can no longer change, i.e. depth first and children before their parent,
+ * so that only the nodes on the path of the last written prefix are kept in memory.
+ */
+public class PartitionIndexBuilder
+{
+    private final DataOutputPlus out;
+
+    // the nodes on the path of the last written prefix, the root first
+    private final List<Node> path = new ArrayList<>();
+    private int pathDepth;
+    private byte[] lastPrefix = new byte[0];
+    private int lastPrefixLength = -1;
+
+    // the key before the pending one, already written
+    private byte[] previousKey;
+    private byte[] pendingKey;
+    private long pendingPayload;
+    private int pendingCommonPrefix;
+
+    private long count;
+    private long markedCount;
+
+    public PartitionIndexBuilder(DataOutputPlus out)
+    {
+        this.out = out;
+        path.add(new Node());
+    }
+
+    /**
+     * Adds a key, which must be greater than all the previous ones, and its payload, a non-negative number.
+     */
+    public void add(byte[] key, long payload) throws IOException
+    {
+        assert payload >= 0;
+        if (pendingKey != null)
+        {
+            int common = commonPrefix(pendingKey, key);
+            assert common < key.length && (common == pendingKey.length || (pendingKey[common] & 0xFF) < (key[common] & 0xFF)) : "keys must be added in increasing order";
+            writePending(common);
+            previousKey = pendingKey;
+        }
+
+        pendingKey = key;
+        pendingPayload = payload;
+        pendingCommonPrefix = previousKey == null ? 0 : commonPrefix(previousKey, key);
+        count++;
+    }
+
+    public void mark()
+    {
+        markedCount = count;
+    }
+
+    /**
+     * Discards the keys added since the last {@link #mark}. As only the last key is still pending, at most one key
+     * can be discarded.
+     */
+    public void resetToMark()
+    {
+        if (count == markedCount)
+            return;
+
+        if (count != markedCount + 1)
+            throw new IllegalStateException("Cannot discard more than one key from a partition index");
+
+        pendingKey = null;
+        count--;
+    }
+
+    public long count()
+    {
+        return count;
+    }
+
+    /**
+     * Writes the remaining nodes, the root last, and a footer with the position of the root.
+     */
+    public void complete() throws IOException
+    {
+        if (pendingKey != null)
+            writePending(-1);
+        pendingKey = null;
+
+        closePath(0);
+        long rootPosition = writeNode(path.get(0));
+        out.writeLong(rootPosition);
+    }
+
+    private void writePending(int commonWithNext) throws IOException
+    {
+        int length = Math.min(Math.max(pendingCommonPrefix, commonWithNext) + 1, pendingKey.length);
+        addPrefix(pendingKey, length, pendingPayload);
+    }
+
+    private void addPrefix(byte[] key, int length, long payload) throws IOException
+    {
+        int common = 0;
+        int limit = Math.min(length, lastPrefixLength);
+        while (common < limit && lastPrefix[common] == key[common])
+            common++;
+        assert lastPrefixLength < 0 || common < length : "prefixes must be added in increasing order";
+
+        closePath(common);
+        for (int depth = common; depth < length; depth++)
+        {
+            Node child = node(depth + 1);
+            child.reset(key[depth] & 0xFF);
+        }
+        pathDepth = length;
+        path.get(length).payload = payload;
+
+        lastPrefix = key;
+        lastPrefixLength = length;
+    }
+
+    private Node node(int depth)
+    {
+        while (path.size() <= depth)
+            path.add(new Node());
+        return path.get(depth);
+    }
+
+    /**
+     * Writes the nodes of the current path deeper than depth, adding each to its parent.
+     */
+    private void closePath(int depth) throws IOException
+    {
+        while (pathDepth > depth)
+        {
+            Node node = path.get(pathDepth);
+            long position = writeNode(node);
+            path.get(--pathDepth).addChild(node.label, position);
+        }
+    }
+
+    private long writeNode(Node node) throws IOException
+    {
+        long position = out.position();
+        int payloadBytes = node.payload < 0 ? 0 : bytesFor(node.payload);
+        if (node.childCount == 0)
+        {
+            out.writeByte(payloadBytes);
+        }
+        else
+        {
+            // children are written in order, so the first one is the furthest
+            int pointerBytes = bytesFor(position - node.children[0]);
+            out.writeByte(payloadBytes | (pointerBytes << 4));
+            out.writeByte(node.childCount - 1);
+            for (int i = 0; i < node.childCount; i++)
+                out.writeByte(node.labels[i]);
+            for (int i = 0; i < node.childCount; i++)
+                writeBytes(position - node.children[i], pointerBytes);
+        }
+        if (payloadBytes > 0)
+            writeBytes(node.payload, payloadBytes);
+        return position;
+    }
+
+    private void writeBytes(long value, int bytes) throws IOException
+    {
+        for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8)
+            out.writeByte((int) (value >>> shift));
+    }
+
+    static int bytesFor(long value)
+    {
+        return Math.max(1, (64 - Long.numberOfLeadingZeros(value) + 7) / 8);
+    }
+
+    private static int commonPrefix(byte[] a, byte[] b)
+    {
+        int limit = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < limit && a[i] == b[i])
+            i++;
+        return i;
+    }
+
+    private static final class Node
+    {
+        int label;
+        long payload = -1;
+        int childCount;
+        final byte[] labels = new byte[256];
+        final long[] children = new long[256];
+
+        void reset(int label)
+        {
+            this.label = label;
+            payload = -1;
+            childCount = 0;
+        }
+
+        void addChild(int label, long position)
+        {
+            labels[childCount] = (byte) label;
+            children[childCount++] = position;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import com.google.common.util.concurrent.RateLimiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.io.compress.CompressedRandomAccessReader;
@@ -96,6 +97,10 @@ public class CompressedSegmentedFile extends SegmentedFile implements ICompresse
 
             metadata.close();
 
+            // the uncompressed chunks of a file we no longer read are just taking space
+            if (ChunkCache.instance != null)
+                ChunkCache.instance.invalidateFile(name());
+
             super.tidy();
         }
     }
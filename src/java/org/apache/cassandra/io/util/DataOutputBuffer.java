@@ -115,6 +115,14 @@ public class DataOutputBuffer extends BufferedDataOutputStreamPlus
         return buffer.position();
     }
 
+    /**
+     * Discards the written bytes, keeping the allocated buffer for reuse.
+     */
+    public void clear()
+    {
+        buffer.clear();
+    }
+
     public boolean hasPosition()
     {
         return true;
@@ -67,6 +67,14 @@ public class LengthAvailableInputStream extends FilterInputStream
         return length;
     }
 
+    /**
+     * @return the number of bytes left to read, which unlike available() isn't capped to Integer.MAX_VALUE
+     */
+    public long remaining()
+    {
+        return remainingBytes;
+    }
+
     @Override
     public int available() throws IOException
     {
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+
+import static org.apache.cassandra.metrics.CassandraMetricsRegistry.Metrics;
+
+/**
+ * Metrics related to the replay of the batchlog.
+ */
+public class BatchlogMetrics
+{
+    private static final MetricNameFactory factory = new DefaultNameFactory("Batchlog");
+
+    /** Batches replayed, whether delivered to their replicas or hinted */
+    public static final Meter replayedBatches = Metrics.meter(factory.createMetricName("ReplayedBatches"));
+    /** Serialized bytes of the mutations of the replayed batches */
+    public static final Meter replayedBytes = Metrics.meter(factory.createMetricName("ReplayedBytes"));
+    /** Serialized bytes of the replayed mutations waiting for their replicas to acknowledge them */
+    public static final Counter replayBytesInFlight = Metrics.counter(factory.createMetricName("ReplayBytesInFlight"));
+}
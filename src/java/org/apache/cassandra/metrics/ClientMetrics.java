@@ -20,7 +20,9 @@ package org.apache.cassandra.metrics;
 
 import java.util.concurrent.Callable;
 
+import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
 
 import static org.apache.cassandra.metrics.CassandraMetricsRegistry.Metrics;
 
@@ -30,9 +32,19 @@ public class ClientMetrics
     private static final MetricNameFactory factory = new DefaultNameFactory("Client");
     
     public static final ClientMetrics instance = new ClientMetrics();
-    
+
+    /** Bytes of the native transport requests received but not answered yet */
+    public final Counter requestBytesInFlight;
+    /** Number of native transport connections not read from, as they have too many requests in flight */
+    public final Counter pausedConnections;
+    /** Rate at which native transport connections stop being read from */
+    public final Meter connectionPauses;
+
     private ClientMetrics()
     {
+        requestBytesInFlight = Metrics.counter(factory.createMetricName("requestBytesInFlight"));
+        pausedConnections = Metrics.counter(factory.createMetricName("pausedConnections"));
+        connectionPauses = Metrics.meter(factory.createMetricName("connectionPauses"));
     }
 
     public void addCounter(String name, final Callable<Integer> provider)
@@ -19,6 +19,7 @@ package org.apache.cassandra.metrics;
 
 
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Timer;
 import org.apache.cassandra.db.commitlog.AbstractCommitLogService;
 import org.apache.cassandra.db.commitlog.CommitLogSegmentManager;
@@ -40,13 +41,17 @@ public class CommitLogMetrics
     public Gauge<Long> totalCommitLogSize;
     /** Time spent waiting for a CLS to be allocated - under normal conditions this should be zero */
     public final Timer waitingOnSegmentAllocation;
-    /** The time spent waiting on CL sync; for Periodic this is only occurs when the sync is lagging its sync interval */
+    /** The time spent waiting on CL sync; for Periodic this is only occurs when the sync is lagging its sync interval,
+     * for Group this is bounded by the group window plus the sync duration */
     public final Timer waitingOnCommit;
+    /** Number of writes acknowledged by each sync in Group mode */
+    public final Histogram groupCommitSize;
     
     public CommitLogMetrics()
     {
         waitingOnSegmentAllocation = Metrics.timer(factory.createMetricName("WaitingOnSegmentAllocation"));
         waitingOnCommit = Metrics.timer(factory.createMetricName("WaitingOnCommit"));
+        groupCommitSize = Metrics.histogram(factory.createMetricName("GroupCommitSize"));
     }
 
     public void attach(final AbstractCommitLogService service, final CommitLogSegmentManager allocator)
@@ -19,6 +19,7 @@ package org.apache.cassandra.metrics;
 
 import java.util.Set;
 
+import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Timer;
@@ -81,8 +82,10 @@ public class KeyspaceMetrics
     public final Histogram liveScannedHistogram;
     /** Column update time delta on this Keyspace */
     public final Histogram colUpdateTimeDeltaHistogram;
-    /** time taken acquiring the partition lock for materialized view updates on this keyspace */
+    /** time materialized view updates on this keyspace wait for the previous updates of their partition */
     public final Timer viewLockAcquireTime;
+    /** materialized view updates on this keyspace waiting for the previous updates of their partition */
+    public final Counter viewPendingUpdates;
     /** time taken during the local read of a materialized view update */
     public final Timer viewReadTime;
     /** CAS Prepare metric */
@@ -230,6 +233,8 @@ public class KeyspaceMetrics
         colUpdateTimeDeltaHistogram = Metrics.histogram(factory.createMetricName("ColUpdateTimeDeltaHistogram"));
         viewLockAcquireTime =  Metrics.timer(factory.createMetricName("ViewLockAcquireTime"));
         viewReadTime = Metrics.timer(factory.createMetricName("ViewReadTime"));
+        viewPendingUpdates = Metrics.counter(factory.createMetricName("ViewPendingUpdates"));
+        allMetrics.add("ViewPendingUpdates");
         // add manually since histograms do not use createKeyspaceGauge method
         allMetrics.addAll(Lists.newArrayList("SSTablesPerReadHistogram", "TombstoneScannedHistogram", "LiveScannedHistogram"));
 
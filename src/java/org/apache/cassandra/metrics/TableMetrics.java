@@ -114,7 +114,7 @@ public class TableMetrics
     public final TableHistogram liveScannedHistogram;
     /** Column update time delta on this CF */
     public final TableHistogram colUpdateTimeDeltaHistogram;
-    /** time taken acquiring the partition lock for materialized view updates for this table */
+    /** time materialized view updates for this table wait for the previous updates of their partition */
     public final TableTimer viewLockAcquireTime;
     /** time taken during the local read of a materialized view update */
     public final TableTimer viewReadTime;
@@ -883,6 +883,11 @@ public class TableMetrics
 
     public enum Sampler
     {
-        READS, WRITES
+        READS,
+        WRITES,
+        // weighted by the number of tombstone cells and markers scanned by each read of the partition
+        TOMBSTONES,
+        // weighted by the number of live rows scanned by each read of the partition
+        LIVE_ROWS
     }
 }
@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.UnknownColumnFamilyException;
+import org.apache.cassandra.io.util.DataInputBuffer;
+
+/**
+ * Receives the messages of an inbound connection on one of the event loops of {@link MessagingService#eventLoopGroup},
+ * in place of a dedicated {@link IncomingTcpConnection} thread.
+ *
+ * Messages are only deserialized once they have been fully received, so a slow peer never blocks the event loop.
+ */
+final class IncomingMessageHandler
+{
+    private static final Logger logger = LoggerFactory.getLogger(IncomingMessageHandler.class);
+
+    private IncomingMessageHandler()
+    {
+    }
+
+    /**
+     * Hands a connection, whose magic and header have already been read, over to an event loop.
+     */
+    @SuppressWarnings("resource")
+    static void register(SocketChannel socketChannel, int version, boolean compressed, final Set<Closeable> group)
+    {
+        final NioSocketChannel channel = new NioSocketChannel(socketChannel);
+        if (DatabaseDescriptor.getInternodeRecvBufferSize() != null)
+            channel.config().setReceiveBufferSize(DatabaseDescriptor.getInternodeRecvBufferSize());
+        channel.pipeline().addLast(new HandshakeHandler(version, compressed), new ErrorHandler());
+
+        final Closeable closer = new Closeable()
+        {
+            public void close()
+            {
+                channel.close();
+            }
+        };
+        group.add(closer);
+        channel.closeFuture().addListener(new ChannelFutureListener()
+        {
+            public void operationComplete(ChannelFuture future)
+            {
+                group.remove(closer);
+            }
+        });
+
+        MessagingService.eventLoopGroup.register(channel);
+    }
+
+    /**
+     * Exchanges versions with the peer, and then replaces itself with the decoders of its messages.
+     */
+    private static class HandshakeHandler extends ByteToMessageDecoder
+    {
+        private final int version;
+        private final boolean compressed;
+
+        HandshakeHandler(int version, boolean compressed)
+        {
+            this.version = version;
+            this.compressed = compressed;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception
+        {
+            // if this version is < the MS version the other node is trying
+            // to connect with, the other node will disconnect
+            ByteBuf out = ctx.alloc().buffer(4);
+            out.writeInt(MessagingService.current_version);
+            ctx.writeAndFlush(out);
+            super.channelActive(ctx);
+        }
+
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws IOException
+        {
+            // the max version of the peer, and its address
+            if (in.readableBytes() < 5 || in.readableBytes() < 5 + in.getByte(in.readerIndex() + 4))
+                return;
+
+            ByteBufInputStream input = new ByteBufInputStream(in);
+            int maxVersion = input.readInt();
+            InetAddress from = CompactEndpointSerializationHelper.deserialize(input);
+            // record the (true) version of the endpoint
+            MessagingService.instance().setVersion(from, maxVersion);
+            logger.trace("Set version for {} to {} (will use {})", from, maxVersion, MessagingService.instance().getVersion(from));
+
+            ctx.pipeline().addAfter(ctx.name(), "messageDecoder", new MessageDecoder(version));
+            if (compressed)
+            {
+                logger.trace("Upgrading incoming connection to be compressed");
+                ctx.pipeline().addAfter(ctx.name(), "lz4Decoder", new LZ4BlockCodec.Decoder());
+            }
+            ctx.pipeline().remove(this);
+        }
+    }
+
+    /**
+     * Deserializes and delivers each message once all its bytes are received.
+     */
+    private static class MessageDecoder extends ByteToMessageDecoder
+    {
+        private final int version;
+
+        MessageDecoder(int version)
+        {
+            this.version = version;
+        }
+
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws IOException
+        {
+            int length = frameLength(in);
+            if (length < 0)
+                return;
+
+            ByteBuf frame = in.readSlice(length);
+            DataInputBuffer input = new DataInputBuffer(frame.nioBuffer(), false);
+            MessagingService.validateMagic(input.readInt());
+            int id = input.readInt();
+            MessageIn message = MessageIn.read(input, version, id, MessageIn.readTimestamp(input));
+            // a null message means the callback expired; nothing to do
+            if (message != null)
+                MessagingService.instance().receive(message, id);
+        }
+
+        /**
+         * @return the length of the message at the start of the buffer, or -1 if it isn't fully received yet
+         */
+        private static int frameLength(ByteBuf in)
+        {
+            int start = in.readerIndex();
+            int end = in.writerIndex();
+
+            // magic, id and timestamp
+            int position = start + 12;
+            if (position + 1 > end)
+                return -1;
+            // sender address
+            position += 1 + in.getByte(position);
+            // verb and parameter count
+            if (position + 8 > end)
+                return -1;
+            int parameterCount = in.getInt(position + 4);
+            position += 8;
+            for (int i = 0; i < parameterCount; i++)
+            {
+                if (position + 2 > end)
+                    return -1;
+                position += 2 + in.getUnsignedShort(position);
+                if (position + 4 > end)
+                    return -1;
+                position += 4 + in.getInt(position);
+            }
+            // payload
+            if (position + 4 > end)
+                return -1;
+            position += 4 + in.getInt(position);
+            return position > end ? -1 : position - start;
+        }
+    }
+
+    private static class ErrorHandler extends ChannelInboundHandlerAdapter
+    {
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
+        {
+            // decoders wrap their exceptions
+            Throwable t = cause.getCause() != null ? cause.getCause() : cause;
+            if (t instanceof UnknownColumnFamilyException)
+                logger.warn("UnknownColumnFamilyException reading from socket; closing", t);
+            else if (t instanceof IOException)
+                logger.trace("IOException reading from socket; closing", t);
+            else
+                logger.error("Unexpected error reading from socket; closing", t);
+            ctx.close();
+        }
+    }
+}
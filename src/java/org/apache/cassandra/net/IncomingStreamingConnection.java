@@ -56,9 +56,10 @@ public class IncomingStreamingConnection extends Thread implements Closeable
     {
         try
         {
-            // streaming connections are per-session and have a fixed version.  we can't do anything with a wrong-version stream connection, so drop it.
-            if (version != StreamMessage.CURRENT_VERSION)
-                throw new IOException(String.format("Received stream using protocol version %d (my version %d). Terminating connection", version, MessagingService.current_version));
+            // streaming connections are per-session and have a fixed version, picked by the initiator: we accept the
+            // versions since 3.0 so that nodes can stream during rolling upgrades, and drop the others.
+            if (version < StreamMessage.VERSION_30 || version > StreamMessage.CURRENT_VERSION)
+                throw new IOException(String.format("Received stream using protocol version %d (my version %d). Terminating connection", version, StreamMessage.CURRENT_VERSION));
 
             DataInputPlus input = new DataInputStreamPlus(socket.getInputStream());
             StreamInitMessage init = StreamInitMessage.serializer.deserialize(input, version);
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.Checksum;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import net.jpountz.xxhash.XXHashFactory;
+
+/**
+ * Compresses and decompresses internode messages on event loop channels, in the block format of
+ * {@link net.jpountz.lz4.LZ4BlockOutputStream} and {@link net.jpountz.lz4.LZ4BlockInputStream}, so that compressed
+ * connections interoperate with the stream based {@link IncomingTcpConnection}.
+ *
+ * Each block is made of a header, with a magic, the compression method and block size, the compressed and
+ * uncompressed lengths and a checksum of the uncompressed bytes, followed by the (possibly uncompressed) bytes.
+ */
+final class LZ4BlockCodec
+{
+    private static final byte[] MAGIC = new byte[]{ 'L', 'Z', '4', 'B', 'l', 'o', 'c', 'k' };
+    private static final int HEADER_LENGTH = MAGIC.length + 1 + 4 + 4 + 4;
+
+    private static final int COMPRESSION_LEVEL_BASE = 10;
+    private static final int COMPRESSION_METHOD_RAW = 0x10;
+    private static final int COMPRESSION_METHOD_LZ4 = 0x20;
+
+    static final int BLOCK_SIZE = 1 << 16;
+    private static final int COMPRESSION_LEVEL = 32 - Integer.numberOfLeadingZeros(BLOCK_SIZE - 1) - COMPRESSION_LEVEL_BASE;
+
+    private static final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+
+    private LZ4BlockCodec()
+    {
+    }
+
+    private static Checksum newChecksum()
+    {
+        return XXHashFactory.fastestInstance().newStreamingHash32(OutboundTcpConnection.LZ4_HASH_SEED).asChecksum();
+    }
+
+    /**
+     * Compresses the readable bytes of a heap buffer into as many blocks as needed, and releases it.
+     */
+    static ByteBuf compress(ByteBuf in, ByteBufAllocator allocator)
+    {
+        assert in.hasArray();
+        try
+        {
+            int length = in.readableBytes();
+            int blocks = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            ByteBuf out = allocator.heapBuffer(length + blocks * (HEADER_LENGTH + compressor.maxCompressedLength(BLOCK_SIZE) - BLOCK_SIZE));
+            Checksum checksum = newChecksum();
+
+            byte[] src = in.array();
+            int srcOffset = in.arrayOffset() + in.readerIndex();
+            for (int position = 0; position < length; position += BLOCK_SIZE)
+            {
+                int blockLength = Math.min(BLOCK_SIZE, length - position);
+                int maxCompressedLength = compressor.maxCompressedLength(blockLength);
+                out.ensureWritable(HEADER_LENGTH + maxCompressedLength);
+
+                byte[] dest = out.array();
+                int destOffset = out.arrayOffset() + out.writerIndex();
+                int compressedLength = compressor.compress(src, srcOffset + position, blockLength, dest, destOffset + HEADER_LENGTH, maxCompressedLength);
+                int method = COMPRESSION_METHOD_LZ4;
+                if (compressedLength >= blockLength)
+                {
+                    method = COMPRESSION_METHOD_RAW;
+                    compressedLength = blockLength;
+                    System.arraycopy(src, srcOffset + position, dest, destOffset + HEADER_LENGTH, blockLength);
+                }
+
+                checksum.reset();
+                checksum.update(src, srcOffset + position, blockLength);
+
+                out.writeBytes(MAGIC);
+                out.writeByte(method | COMPRESSION_LEVEL);
+                out.writeInt(Integer.reverseBytes(compressedLength));
+                out.writeInt(Integer.reverseBytes(blockLength));
+                out.writeInt(Integer.reverseBytes((int) checksum.getValue()));
+                out.writerIndex(out.writerIndex() + compressedLength);
+            }
+            return out;
+        }
+        finally
+        {
+            in.release();
+        }
+    }
+
+    /**
+     * Decompresses the blocks of a channel as they are complete.
+     */
+    static final class Decoder extends ByteToMessageDecoder
+    {
+        private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+        private final Checksum checksum = newChecksum();
+
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws IOException
+        {
+            if (in.readableBytes() < HEADER_LENGTH)
+                return;
+
+            int start = in.readerIndex();
+            for (int i = 0; i < MAGIC.length; i++)
+            {
+                if (in.getByte(start + i) != MAGIC[i])
+                    throw new IOException("Stream is corrupted");
+            }
+
+            int token = in.getUnsignedByte(start + MAGIC.length);
+            int method = token & 0xF0;
+            int level = COMPRESSION_LEVEL_BASE + (token & 0x0F);
+            int compressedLength = Integer.reverseBytes(in.getInt(start + MAGIC.length + 1));
+            int length = Integer.reverseBytes(in.getInt(start + MAGIC.length + 5));
+            int check = Integer.reverseBytes(in.getInt(start + MAGIC.length + 9));
+            if ((method != COMPRESSION_METHOD_RAW && method != COMPRESSION_METHOD_LZ4)
+                || length > 1 << level || length < 0 || compressedLength < 0
+                || (length == 0) != (compressedLength == 0)
+                || (method == COMPRESSION_METHOD_RAW && length != compressedLength))
+                throw new IOException("Stream is corrupted");
+
+            if (in.readableBytes() < HEADER_LENGTH + compressedLength)
+                return;
+
+            in.skipBytes(HEADER_LENGTH);
+            if (length == 0)
+                return; // end of stream
+
+            byte[] src;
+            int srcOffset;
+            if (in.hasArray())
+            {
+                src = in.array();
+                srcOffset = in.arrayOffset() + in.readerIndex();
+            }
+            else
+            {
+                src = new byte[compressedLength];
+                in.getBytes(in.readerIndex(), src);
+                srcOffset = 0;
+            }
+
+            ByteBuf block = ctx.alloc().heapBuffer(length, length);
+            try
+            {
+                byte[] dest = block.array();
+                int destOffset = block.arrayOffset();
+                if (method == COMPRESSION_METHOD_RAW)
+                    System.arraycopy(src, srcOffset, dest, destOffset, length);
+                else if (decompressor.decompress(src, srcOffset, dest, destOffset, length) != compressedLength)
+                    throw new IOException("Stream is corrupted");
+
+                checksum.reset();
+                checksum.update(dest, destOffset, length);
+                if ((int) checksum.getValue() != check)
+                    throw new IOException("Stream is corrupted");
+            }
+            catch (Throwable t)
+            {
+                block.release();
+                throw t;
+            }
+
+            in.skipBytes(compressedLength);
+            block.writerIndex(length);
+            out.add(block);
+        }
+    }
+}
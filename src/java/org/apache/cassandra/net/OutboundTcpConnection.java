@@ -17,51 +17,56 @@
  */
 package org.apache.cassandra.net;
 
-import java.io.DataInputStream;
-import java.io.DataOutput;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.Socket;
-import java.net.SocketException;
 import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
-import java.nio.channels.WritableByteChannel;
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.zip.Checksum;
+
+import javax.net.ssl.SSLEngine;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import net.jpountz.lz4.LZ4BlockOutputStream;
-import net.jpountz.lz4.LZ4Compressor;
-import net.jpountz.lz4.LZ4Factory;
-import net.jpountz.xxhash.XXHashFactory;
-
-import org.apache.cassandra.io.util.DataOutputStreamPlus;
-import org.apache.cassandra.io.util.BufferedDataOutputStreamPlus;
-import org.apache.cassandra.io.util.WrappedDataOutputStreamPlus;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.*;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.ReferenceCountUtil;
+
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.security.SSLFactory;
 import org.apache.cassandra.tracing.TraceState;
 import org.apache.cassandra.tracing.Tracing;
-import org.apache.cassandra.utils.CoalescingStrategies;
-import org.apache.cassandra.utils.CoalescingStrategies.Coalescable;
-import org.apache.cassandra.utils.CoalescingStrategies.CoalescingStrategy;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.JVMStabilityInspector;
 import org.apache.cassandra.utils.NanoTimeToCurrentTimeMillis;
 import org.apache.cassandra.utils.UUIDGen;
-import org.xerial.snappy.SnappyOutputStream;
 import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
 
-import com.google.common.util.concurrent.Uninterruptibles;
-
-public class OutboundTcpConnection extends Thread
+/**
+ * A connection sending messages to a single peer, driven by one of the event loops of
+ * {@link MessagingService#eventLoopGroup} rather than by a thread of its own.
+ *
+ * Messages are queued by the sending threads, and drained by the event loop of the connection, which owns all its
+ * state. A drain serializes as many queued messages as the channel accepts into batches of at least
+ * {@link #BUFFER_SIZE} bytes, and flushes them once, so that the small messages sent under load share system calls
+ * and compression blocks. Once the socket buffers and the outbound buffer of the channel are full, the channel
+ * becomes unwritable and messages stay queued until it drains, expiring as they would with a slow peer.
+ */
+public class OutboundTcpConnection
 {
     private static final Logger logger = LoggerFactory.getLogger(OutboundTcpConnection.class);
 
@@ -74,71 +79,67 @@ public class OutboundTcpConnection extends Thread
     private static final boolean INTRADC_TCP_NODELAY = Boolean.valueOf(System.getProperty(INTRADC_TCP_NODELAY_PROPERTY, "true"));
 
     /*
-     * Size of buffer in output stream
+     * Size of the batches of messages written to the channel
      */
     private static final String BUFFER_SIZE_PROPERTY = PREFIX + "otc_buffer_size";
     private static final int BUFFER_SIZE = Integer.getInteger(BUFFER_SIZE_PROPERTY, 1024 * 64);
 
-    private static CoalescingStrategy newCoalescingStrategy(String displayName)
-    {
-        return CoalescingStrategies.newCoalescingStrategy(DatabaseDescriptor.getOtcCoalescingStrategy(),
-                                                          DatabaseDescriptor.getOtcCoalescingWindow(),
-                                                          logger,
-                                                          displayName);
-    }
-
-    static
-    {
-        String strategy = DatabaseDescriptor.getOtcCoalescingStrategy();
-        switch (strategy)
-        {
-        case "TIMEHORIZON":
-            break;
-        case "MOVINGAVERAGE":
-        case "FIXED":
-        case "DISABLED":
-            logger.info("OutboundTcpConnection using coalescing strategy {}", strategy);
-            break;
-            default:
-                //Check that it can be loaded
-                newCoalescingStrategy("dummy");
-        }
-
-        int coalescingWindow = DatabaseDescriptor.getOtcCoalescingWindow();
-        if (coalescingWindow != Config.otc_coalescing_window_us_default)
-            logger.info("OutboundTcpConnection coalescing window set to {}μs", coalescingWindow);
-
-        if (coalescingWindow < 0)
-            throw new ExceptionInInitializerError(
-                    "Value provided for coalescing window must be greather than 0: " + coalescingWindow);
-    }
+    /*
+     * Size of the outbound buffer of the channel above which it stops accepting messages
+     */
+    private static final String WRITE_BUFFER_SIZE_PROPERTY = PREFIX + "otc_write_buffer_size";
+    private static final int WRITE_BUFFER_SIZE = Integer.getInteger(WRITE_BUFFER_SIZE_PROPERTY, 1024 * 1024);
 
     private static final MessageOut CLOSE_SENTINEL = new MessageOut(MessagingService.Verb.INTERNAL_RESPONSE);
     private volatile boolean isStopped = false;
 
     private static final int OPEN_RETRY_DELAY = 100; // ms between retries
     public static final int WAIT_FOR_VERSION_MAX_TIME = 5000;
-    private static final int NO_VERSION = Integer.MIN_VALUE;
 
     static final int LZ4_HASH_SEED = 0x9747b28c;
 
-    private final BlockingQueue<QueuedMessage> backlog = new LinkedBlockingQueue<>();
+    private final Queue<QueuedMessage> backlog = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger backlogSize = new AtomicInteger();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
 
     private final OutboundTcpConnectionPool poolReference;
+    private final EventLoop eventLoop;
+
+    private final Runnable drainTask = new Runnable()
+    {
+        public void run()
+        {
+            drainScheduled.set(false);
+            drain();
+        }
+    };
+
+    // messages are serialized by the event loops, so each needs a single buffer, which is reallocated once grown past
+    // this size
+    private static final int MAX_SCRATCH_BUFFER_SIZE = 1024 * 1024;
+    private static final ThreadLocal<DataOutputBuffer> scratchBuffer = new ThreadLocal<DataOutputBuffer>()
+    {
+        protected DataOutputBuffer initialValue()
+        {
+            return new DataOutputBuffer();
+        }
+    };
+
+    // only accessed from the event loop
+    private Channel channel;
+    private boolean handshaken;
+    private boolean compress;
+    private long connectStart;
 
-    private final CoalescingStrategy cs;
-    private DataOutputStreamPlus out;
-    private Socket socket;
     private volatile long completed;
+    private volatile int inFlight;
     private final AtomicLong dropped = new AtomicLong();
-    private volatile int currentMsgBufferCount = 0;
-    private int targetVersion = MessagingService.current_version;
+    private volatile int targetVersion = MessagingService.current_version;
 
     public OutboundTcpConnection(OutboundTcpConnectionPool pool)
     {
-        super("MessagingService-Outgoing-" + pool.endPoint());
         this.poolReference = pool;
-        cs = newCoalescingStrategy(pool.endPoint().getHostAddress());
+        this.eventLoop = MessagingService.eventLoopGroup.next();
     }
 
     private static boolean isLocalDC(InetAddress targetHost)
@@ -150,22 +151,16 @@ public class OutboundTcpConnection extends Thread
 
     public void enqueue(MessageOut<?> message, int id)
     {
-        if (backlog.size() > 1024)
+        if (backlogSize.get() > 1024)
             expireMessages();
-        try
-        {
-            backlog.put(new QueuedMessage(message, id));
-        }
-        catch (InterruptedException e)
-        {
-            throw new AssertionError(e);
-        }
+        offer(new QueuedMessage(message, id));
+        scheduleDrain();
     }
 
     void closeSocket(boolean destroyThread)
     {
-        backlog.clear();
-        isStopped = destroyThread; // Exit loop to stop the thread
+        clearBacklog();
+        isStopped = destroyThread; // stop draining messages
         enqueue(CLOSE_SENTINEL, -1);
     }
 
@@ -179,66 +174,9 @@ public class OutboundTcpConnection extends Thread
         return targetVersion;
     }
 
-    public void run()
-    {
-        final int drainedMessageSize = 128;
-        // keeping list (batch) size small for now; that way we don't have an unbounded array (that we never resize)
-        final List<QueuedMessage> drainedMessages = new ArrayList<>(drainedMessageSize);
-
-        outer:
-        while (true)
-        {
-            try
-            {
-                cs.coalesce(backlog, drainedMessages, drainedMessageSize);
-            }
-            catch (InterruptedException e)
-            {
-                throw new AssertionError(e);
-            }
-
-            currentMsgBufferCount = drainedMessages.size();
-
-            int count = drainedMessages.size();
-            //The timestamp of the first message has already been provided to the coalescing strategy
-            //so skip logging it.
-            for (QueuedMessage qm : drainedMessages)
-            {
-                try
-                {
-                    MessageOut<?> m = qm.message;
-                    if (m == CLOSE_SENTINEL)
-                    {
-                        disconnect();
-                        if (isStopped)
-                            break outer;
-                        continue;
-                    }
-
-                    if (qm.isTimedOut(TimeUnit.MILLISECONDS.toNanos(m.getTimeout()), System.nanoTime()))
-                        dropped.incrementAndGet();
-                    else if (socket != null || connect())
-                        writeConnected(qm, count == 1 && backlog.isEmpty());
-                    else
-                        // clear out the queue, else gossip messages back up.
-                        backlog.clear();
-                }
-                catch (Exception e)
-                {
-                    JVMStabilityInspector.inspectThrowable(e);
-                    // really shouldn't get here, as exception handling in writeConnected() is reasonably robust
-                    // but we want to catch anything bad we don't drop the messages in the current batch
-                    logger.error("error processing a message intended for {}", poolReference.endPoint(), e);
-                }
-                currentMsgBufferCount = --count;
-            }
-            drainedMessages.clear();
-        }
-    }
-
     public int getPendingMessages()
     {
-        return backlog.size() + currentMsgBufferCount;
+        return backlogSize.get() + inFlight;
     }
 
     public long getCompletedMesssages()
@@ -251,76 +189,210 @@ public class OutboundTcpConnection extends Thread
         return dropped.get();
     }
 
-    private boolean shouldCompressConnection()
+    private void offer(QueuedMessage qm)
     {
-        // assumes version >= 1.2
-        return DatabaseDescriptor.internodeCompression() == Config.InternodeCompression.all
-               || (DatabaseDescriptor.internodeCompression() == Config.InternodeCompression.dc && !isLocalDC(poolReference.endPoint()));
+        backlog.offer(qm);
+        backlogSize.incrementAndGet();
     }
 
-    private void writeConnected(QueuedMessage qm, boolean flush)
+    private QueuedMessage poll()
     {
-        try
+        QueuedMessage qm = backlog.poll();
+        if (qm != null)
+            backlogSize.decrementAndGet();
+        return qm;
+    }
+
+    private void clearBacklog()
+    {
+        while (poll() != null);
+    }
+
+    private void scheduleDrain()
+    {
+        if (drainScheduled.compareAndSet(false, true))
+            eventLoop.execute(drainTask);
+    }
+
+    /**
+     * Writes the queued messages for as long as the channel is writable. Must be called from the event loop.
+     */
+    private void drain()
+    {
+        if (isStopped)
+        {
+            disconnect();
+            clearBacklog();
+            return;
+        }
+
+        if (backlog.isEmpty())
+            return;
+
+        if (channel == null)
         {
-            byte[] sessionBytes = qm.message.parameters.get(Tracing.TRACE_HEADER);
-            if (sessionBytes != null)
+            // without a connection, there is nothing for the close requests queued before any message to close
+            QueuedMessage head;
+            while ((head = backlog.peek()) != null && head.message == CLOSE_SENTINEL)
+                poll();
+
+            if (!backlog.isEmpty())
+                connect();
+            return;
+        }
+
+        // messages are written once the handshake completes
+        if (!handshaken)
+            return;
+
+        DataOutputBuffer scratch = scratchBuffer.get();
+        ByteBuf batch = null;
+        List<QueuedMessage> batchMessages = null;
+        boolean written = false;
+        while (channel != null && channel.isWritable())
+        {
+            QueuedMessage qm = poll();
+            if (qm == null)
+                break;
+
+            if (qm.message == CLOSE_SENTINEL)
             {
-                UUID sessionId = UUIDGen.getUUID(ByteBuffer.wrap(sessionBytes));
-                TraceState state = Tracing.instance.get(sessionId);
-                String message = String.format("Sending %s message to %s", qm.message.verb, poolReference.endPoint());
-                // session may have already finished; see CASSANDRA-5668
-                if (state == null)
-                {
-                    byte[] traceTypeBytes = qm.message.parameters.get(Tracing.TRACE_TYPE);
-                    Tracing.TraceType traceType = traceTypeBytes == null ? Tracing.TraceType.QUERY : Tracing.TraceType.deserialize(traceTypeBytes[0]);
-                    TraceState.mutateWithTracing(ByteBuffer.wrap(sessionBytes), message, -1, traceType.getTTL());
-                }
-                else
-                {
-                    state.trace(message);
-                    if (qm.message.verb == MessagingService.Verb.REQUEST_RESPONSE)
-                        Tracing.instance.doneWithNonLocalSession(state);
-                }
+                if (batch != null)
+                    write(batch, batchMessages);
+                batch = null;
+                // close once the messages written so far are flushed, and reconnect for the remaining ones
+                channel.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+                resetChannel();
+                written = false;
+                continue;
+            }
+
+            if (qm.isTimedOut(TimeUnit.MILLISECONDS.toNanos(qm.message.getTimeout()), System.nanoTime()))
+            {
+                dropped.incrementAndGet();
+                continue;
+            }
+
+            try
+            {
+                traceSend(qm);
+                scratch.clear();
+                writeInternal(scratch, qm.message, qm.id, NanoTimeToCurrentTimeMillis.convert(qm.timestampNanos));
+            }
+            catch (Exception e)
+            {
+                JVMStabilityInspector.inspectThrowable(e);
+                // serializing to memory doesn't fail on I/O, so this is likely a programming error
+                logger.error("error writing to {}", poolReference.endPoint(), e);
+                continue;
             }
 
-            long timestampMillis = NanoTimeToCurrentTimeMillis.convert(qm.timestampNanos);
-            writeInternal(qm.message, qm.id, timestampMillis);
+            if (batch == null)
+            {
+                batch = channel.alloc().heapBuffer(Math.max(BUFFER_SIZE, scratch.getLength()));
+                batchMessages = new ArrayList<>();
+            }
+            batch.writeBytes(scratch.getData(), 0, scratch.getLength());
+            batchMessages.add(qm);
+
+            if (batch.readableBytes() >= BUFFER_SIZE)
+            {
+                write(batch, batchMessages);
+                batch = null;
+                written = true;
+            }
+        }
 
-            completed++;
-            if (flush)
-                out.flush();
+        if (batch != null)
+        {
+            write(batch, batchMessages);
+            written = true;
         }
-        catch (Exception e)
+
+        if (written && channel != null)
+            channel.flush();
+
+        // don't hold on to the memory of a huge message for the life of the event loop
+        if (scratch.getData().length > MAX_SCRATCH_BUFFER_SIZE)
+            scratchBuffer.set(new DataOutputBuffer());
+
+        if (channel == null && !backlog.isEmpty())
+            scheduleDrain();
+    }
+
+    private void write(ByteBuf batch, final List<QueuedMessage> messages)
+    {
+        if (compress)
+            batch = LZ4BlockCodec.compress(batch, channel.alloc());
+
+        inFlight += messages.size();
+        final Channel writeChannel = channel;
+        channel.write(batch).addListener(new ChannelFutureListener()
         {
-            disconnect();
-            if (e instanceof IOException || e.getCause() instanceof IOException)
+            public void operationComplete(ChannelFuture future)
             {
+                inFlight -= messages.size();
+                if (future.isSuccess())
+                {
+                    completed += messages.size();
+                    return;
+                }
+
                 if (logger.isTraceEnabled())
-                    logger.trace("error writing to {}", poolReference.endPoint(), e);
+                    logger.trace("error writing to {}", poolReference.endPoint(), future.cause());
 
-                // if the message was important, such as a repair acknowledgement, put it back on the queue
+                if (channel == writeChannel)
+                    disconnect();
+
+                // if a message was important, such as a repair acknowledgement, put it back on the queue
                 // to retry after re-connecting.  See CASSANDRA-5393
-                if (qm.shouldRetry())
+                boolean retried = false;
+                for (QueuedMessage qm : messages)
                 {
-                    try
-                    {
-                        backlog.put(new RetriedQueuedMessage(qm));
-                    }
-                    catch (InterruptedException e1)
+                    if (qm.shouldRetry())
                     {
-                        throw new AssertionError(e1);
+                        offer(new RetriedQueuedMessage(qm));
+                        retried = true;
                     }
                 }
+                if (retried)
+                    scheduleDrain();
+            }
+        });
+    }
+
+    private boolean shouldCompressConnection()
+    {
+        // assumes version >= 1.2
+        return DatabaseDescriptor.internodeCompression() == Config.InternodeCompression.all
+               || (DatabaseDescriptor.internodeCompression() == Config.InternodeCompression.dc && !isLocalDC(poolReference.endPoint()));
+    }
+
+    private void traceSend(QueuedMessage qm)
+    {
+        byte[] sessionBytes = qm.message.parameters.get(Tracing.TRACE_HEADER);
+        if (sessionBytes != null)
+        {
+            UUID sessionId = UUIDGen.getUUID(ByteBuffer.wrap(sessionBytes));
+            TraceState state = Tracing.instance.get(sessionId);
+            String message = String.format("Sending %s message to %s", qm.message.verb, poolReference.endPoint());
+            // session may have already finished; see CASSANDRA-5668
+            if (state == null)
+            {
+                byte[] traceTypeBytes = qm.message.parameters.get(Tracing.TRACE_TYPE);
+                Tracing.TraceType traceType = traceTypeBytes == null ? Tracing.TraceType.QUERY : Tracing.TraceType.deserialize(traceTypeBytes[0]);
+                TraceState.mutateWithTracing(ByteBuffer.wrap(sessionBytes), message, -1, traceType.getTTL());
             }
             else
             {
-                // Non IO exceptions are likely a programming error so let's not silence them
-                logger.error("error writing to {}", poolReference.endPoint(), e);
+                state.trace(message);
+                if (qm.message.verb == MessagingService.Verb.REQUEST_RESPONSE)
+                    Tracing.instance.doneWithNonLocalSession(state);
             }
         }
     }
 
-    private void writeInternal(MessageOut message, int id, long timestamp) throws IOException
+    private void writeInternal(DataOutputPlus out, MessageOut message, int id, long timestamp) throws IOException
     {
         out.writeInt(MessagingService.PROTOCOL_MAGIC);
 
@@ -335,7 +407,7 @@ public class OutboundTcpConnection extends Thread
         message.serialize(out, targetVersion);
     }
 
-    private static void writeHeader(DataOutput out, int version, boolean compressionEnabled) throws IOException
+    private static int connectionHeader(int version, boolean compressionEnabled)
     {
         // 2 bits: unused.  used to be "serializer type," which was always Binary
         // 1 bit: compression
@@ -347,178 +419,220 @@ public class OutboundTcpConnection extends Thread
         if (compressionEnabled)
             header |= 4;
         header |= (version << 8);
-        out.writeInt(header);
+        return header;
+    }
+
+    private void resetChannel()
+    {
+        channel = null;
+        handshaken = false;
     }
 
     private void disconnect()
     {
-        if (socket != null)
+        if (channel != null)
         {
-            try
-            {
-                socket.close();
-            }
-            catch (IOException e)
-            {
-                if (logger.isTraceEnabled())
-                    logger.trace("exception closing connection to " + poolReference.endPoint(), e);
-            }
-            out = null;
-            socket = null;
+            channel.close();
+            resetChannel();
         }
     }
 
-    @SuppressWarnings("resource")
-    private boolean connect()
+    private void connect()
     {
         if (logger.isTraceEnabled())
             logger.trace("attempting to connect to {}", poolReference.endPoint());
 
-        long start = System.nanoTime();
-        long timeout = TimeUnit.MILLISECONDS.toNanos(DatabaseDescriptor.getRpcTimeout());
-        while (System.nanoTime() - start < timeout)
+        if (connectStart == 0)
+            connectStart = System.nanoTime();
+
+        targetVersion = MessagingService.instance().getVersion(poolReference.endPoint());
+        // versions before 2.1 compress with Snappy, so their connections are left uncompressed
+        compress = shouldCompressConnection() && targetVersion >= MessagingService.VERSION_21;
+
+        InetAddress endpoint = poolReference.endPoint();
+        boolean encrypted = OutboundTcpConnectionPool.isEncryptedChannel(endpoint);
+        int port = encrypted ? DatabaseDescriptor.getSSLStoragePort() : DatabaseDescriptor.getStoragePort();
+
+        final SSLEngine engine;
+        try
         {
-            targetVersion = MessagingService.instance().getVersion(poolReference.endPoint());
-            try
+            engine = encrypted ? SSLFactory.getClientEngine(DatabaseDescriptor.getServerEncryptionOptions(), endpoint, port) : null;
+        }
+        catch (IOException e)
+        {
+            logger.error("unable to connect to {}", endpoint, e);
+            retryConnect();
+            return;
+        }
+
+        Bootstrap bootstrap = new Bootstrap().group(eventLoop)
+                                             .channel(NioSocketChannel.class)
+                                             .option(ChannelOption.SO_KEEPALIVE, true)
+                                             .option(ChannelOption.TCP_NODELAY, isLocalDC(endpoint) ? INTRADC_TCP_NODELAY : DatabaseDescriptor.getInterDCTcpNoDelay())
+                                             .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) DatabaseDescriptor.getRpcTimeout())
+                                             .option(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, WRITE_BUFFER_SIZE)
+                                             .option(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, WRITE_BUFFER_SIZE / 2)
+                                             .handler(new ChannelInitializer<SocketChannel>()
+                                             {
+                                                 protected void initChannel(SocketChannel ch)
+                                                 {
+                                                     if (engine != null)
+                                                         ch.pipeline().addLast(new SslHandler(engine));
+                                                     ch.pipeline().addLast(new HandshakeHandler(), new ConnectionHandler());
+                                                 }
+                                             });
+        if (DatabaseDescriptor.getInternodeSendBufferSize() != null)
+            bootstrap.option(ChannelOption.SO_SNDBUF, DatabaseDescriptor.getInternodeSendBufferSize());
+        if (encrypted && !Config.getOutboundBindAny())
+            bootstrap.localAddress(FBUtilities.getLocalAddress(), 0);
+
+        ChannelFuture future = bootstrap.connect(endpoint, port);
+        channel = future.channel();
+        handshaken = false;
+        future.addListener(new ChannelFutureListener()
+        {
+            public void operationComplete(ChannelFuture future)
             {
-                socket = poolReference.newSocket();
-                socket.setKeepAlive(true);
-                if (isLocalDC(poolReference.endPoint()))
-                {
-                    socket.setTcpNoDelay(INTRADC_TCP_NODELAY);
-                }
-                else
-                {
-                    socket.setTcpNoDelay(DatabaseDescriptor.getInterDCTcpNoDelay());
-                }
-                if (DatabaseDescriptor.getInternodeSendBufferSize() != null)
-                {
-                    try
-                    {
-                        socket.setSendBufferSize(DatabaseDescriptor.getInternodeSendBufferSize());
-                    }
-                    catch (SocketException se)
-                    {
-                        logger.warn("Failed to set send buffer size on internode socket.", se);
-                    }
-                }
+                if (future.isSuccess() || channel != future.channel())
+                    return;
+
+                if (logger.isTraceEnabled())
+                    logger.trace("unable to connect to " + poolReference.endPoint(), future.cause());
+                resetChannel();
+                retryConnect();
+            }
+        });
+    }
+
+    /**
+     * Tries to connect again shortly, unless we've been trying for longer than the rpc timeout, in which case the
+     * queued messages are discarded.
+     */
+    private void retryConnect()
+    {
+        if (System.nanoTime() - connectStart < TimeUnit.MILLISECONDS.toNanos(DatabaseDescriptor.getRpcTimeout()))
+        {
+            eventLoop.schedule(drainTask, OPEN_RETRY_DELAY, TimeUnit.MILLISECONDS);
+        }
+        else
+        {
+            connectStart = 0;
+            // clear out the queue, else gossip messages back up.
+            clearBacklog();
+        }
+    }
 
-                // SocketChannel may be null when using SSL
-                WritableByteChannel ch = socket.getChannel();
-                out = new BufferedDataOutputStreamPlus(ch != null ? ch : Channels.newChannel(socket.getOutputStream()), BUFFER_SIZE);
+    /**
+     * Sends our header, and then waits for the version of the peer before sending our own version and address.
+     */
+    private class HandshakeHandler extends ByteToMessageDecoder
+    {
+        private ScheduledFuture<?> timeout;
 
-                out.writeInt(MessagingService.PROTOCOL_MAGIC);
-                writeHeader(out, targetVersion, shouldCompressConnection());
-                out.flush();
+        @Override
+        public void channelActive(final ChannelHandlerContext ctx) throws Exception
+        {
+            ByteBuf header = ctx.alloc().buffer(8);
+            header.writeInt(MessagingService.PROTOCOL_MAGIC);
+            header.writeInt(connectionHeader(targetVersion, compress));
+            ctx.writeAndFlush(header);
 
-                DataInputStream in = new DataInputStream(socket.getInputStream());
-                int maxTargetVersion = handshakeVersion(in);
-                if (maxTargetVersion == NO_VERSION)
-                {
-                    // no version is returned, so disconnect an try again: we will either get
-                    // a different target version (targetVersion < MessagingService.VERSION_12)
-                    // or if the same version the handshake will finally succeed
-                    logger.trace("Target max version is {}; no version information yet, will retry", maxTargetVersion);
-                    if (DatabaseDescriptor.getSeeds().contains(poolReference.endPoint()))
-                        logger.warn("Seed gossip version is {}; will not connect with that version", maxTargetVersion);
-                    disconnect();
-                    continue;
-                }
-                else
+            logger.info("Handshaking version with {}", poolReference.endPoint());
+            timeout = ctx.executor().schedule(new Runnable()
+            {
+                public void run()
                 {
-                    MessagingService.instance().setVersion(poolReference.endPoint(), maxTargetVersion);
+                    logger.info("Cannot handshake version with {}", poolReference.endPoint());
+                    ctx.close();
                 }
+            }, WAIT_FOR_VERSION_MAX_TIME, TimeUnit.MILLISECONDS);
+            super.channelActive(ctx);
+        }
 
-                if (targetVersion > maxTargetVersion)
-                {
-                    logger.trace("Target max version is {}; will reconnect with that version", maxTargetVersion);
-                    disconnect();
-                    return false;
-                }
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws IOException
+        {
+            if (in.readableBytes() < 4)
+                return;
 
-                if (targetVersion < maxTargetVersion && targetVersion < MessagingService.current_version)
-                {
-                    logger.trace("Detected higher max version {} (using {}); will reconnect when queued messages are done",
-                                 maxTargetVersion, targetVersion);
-                    softCloseSocket();
-                }
+            timeout.cancel(false);
+            int maxTargetVersion = in.readInt();
+            MessagingService.instance().setVersion(poolReference.endPoint(), maxTargetVersion);
 
-                out.writeInt(MessagingService.current_version);
-                CompactEndpointSerializationHelper.serialize(FBUtilities.getBroadcastAddress(), out);
-                if (shouldCompressConnection())
-                {
-                    out.flush();
-                    logger.trace("Upgrading OutputStream to be compressed");
-                    if (targetVersion < MessagingService.VERSION_21)
-                    {
-                        // Snappy is buffered, so no need for extra buffering output stream
-                        out = new WrappedDataOutputStreamPlus(new SnappyOutputStream(socket.getOutputStream()));
-                    }
-                    else
-                    {
-                        // TODO: custom LZ4 OS that supports BB write methods
-                        LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
-                        Checksum checksum = XXHashFactory.fastestInstance().newStreamingHash32(LZ4_HASH_SEED).asChecksum();
-                        out = new WrappedDataOutputStreamPlus(new LZ4BlockOutputStream(socket.getOutputStream(),
-                                                                            1 << 14,  // 16k block size
-                                                                            compressor,
-                                                                            checksum,
-                                                                            true)); // no async flushing
-                    }
-                }
+            if (targetVersion > maxTargetVersion)
+            {
+                logger.trace("Target max version is {}; will reconnect with that version", maxTargetVersion);
+                ctx.close();
+                return;
+            }
 
-                return true;
+            if (targetVersion < maxTargetVersion && targetVersion < MessagingService.current_version)
+            {
+                logger.trace("Detected higher max version {} (using {}); will reconnect when queued messages are done",
+                             maxTargetVersion, targetVersion);
+                softCloseSocket();
             }
-            catch (IOException e)
+
+            ByteBuf response = ctx.alloc().buffer(4 + CompactEndpointSerializationHelper.serializedSize(FBUtilities.getBroadcastAddress()));
+            ByteBufOutputStream responseOut = new ByteBufOutputStream(response);
+            responseOut.writeInt(MessagingService.current_version);
+            CompactEndpointSerializationHelper.serialize(FBUtilities.getBroadcastAddress(), responseOut);
+            ctx.write(response);
+            ctx.pipeline().remove(this);
+
+            if (channel == ctx.channel())
             {
-                socket = null;
-                if (logger.isTraceEnabled())
-                    logger.trace("unable to connect to " + poolReference.endPoint(), e);
-                Uninterruptibles.sleepUninterruptibly(OPEN_RETRY_DELAY, TimeUnit.MILLISECONDS);
+                handshaken = true;
+                connectStart = 0;
+                drain();
             }
+            ctx.flush();
         }
-        return false;
     }
 
-    private int handshakeVersion(final DataInputStream inputStream)
+    /**
+     * Reconnects when the channel closes with messages still queued, and resumes writing once the channel can take
+     * more messages.
+     */
+    private class ConnectionHandler extends ChannelInboundHandlerAdapter
     {
-        final AtomicInteger version = new AtomicInteger(NO_VERSION);
-        final CountDownLatch versionLatch = new CountDownLatch(1);
-        new Thread("HANDSHAKE-" + poolReference.endPoint())
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg)
         {
-            @Override
-            public void run()
-            {
-                try
-                {
-                    logger.info("Handshaking version with {}", poolReference.endPoint());
-                    version.set(inputStream.readInt());
-                }
-                catch (IOException ex)
-                {
-                    final String msg = "Cannot handshake version with " + poolReference.endPoint();
-                    if (logger.isTraceEnabled())
-                        logger.trace(msg, ex);
-                    else
-                        logger.info(msg);
-                }
-                finally
-                {
-                    //unblock the waiting thread on either success or fail
-                    versionLatch.countDown();
-                }
-            }
-        }.start();
+            // the peer doesn't send anything past the handshake
+            ReferenceCountUtil.release(msg);
+        }
 
-        try
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx)
         {
-            versionLatch.await(WAIT_FOR_VERSION_MAX_TIME, TimeUnit.MILLISECONDS);
+            if (channel == ctx.channel() && ctx.channel().isWritable())
+                drain();
         }
-        catch (InterruptedException ex)
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx)
+        {
+            if (channel != ctx.channel())
+                return;
+
+            boolean wasHandshaken = handshaken;
+            resetChannel();
+            if (backlog.isEmpty())
+                return;
+
+            if (wasHandshaken)
+                scheduleDrain();
+            else
+                retryConnect();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
         {
-            throw new AssertionError(ex);
+            if (logger.isTraceEnabled())
+                logger.trace("error writing to {}", poolReference.endPoint(), cause);
+            ctx.close();
         }
-        return version.get();
     }
 
     private void expireMessages()
@@ -529,15 +643,18 @@ public class OutboundTcpConnection extends Thread
             QueuedMessage qm = iter.next();
             if (!qm.droppable)
                 continue;
-            if (qm.timestampNanos >= System.nanoTime() - qm.message.getTimeout())
+            if (!qm.isTimedOut(TimeUnit.MILLISECONDS.toNanos(qm.message.getTimeout()), System.nanoTime()))
                 return;
-            iter.remove();
-            dropped.incrementAndGet();
+            if (backlog.remove(qm))
+            {
+                backlogSize.decrementAndGet();
+                dropped.incrementAndGet();
+            }
         }
     }
 
     /** messages that have not been retried yet */
-    private static class QueuedMessage implements Coalescable
+    private static class QueuedMessage
     {
         final MessageOut<?> message;
         final int id;
@@ -562,11 +679,6 @@ public class OutboundTcpConnection extends Thread
         {
             return !droppable;
         }
-
-        public long timestampNanos()
-        {
-            return timestampNanos;
-        }
     }
 
     private static class RetriedQueuedMessage extends QueuedMessage
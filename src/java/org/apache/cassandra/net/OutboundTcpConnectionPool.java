@@ -173,10 +173,7 @@ public class OutboundTcpConnectionPool
 
     public void start()
     {
-        smallMessages.start();
-        largeMessages.start();
-        gossipMessages.start();
-
+        // connections are established by their event loop as soon as they have messages to send
         metrics = new ConnectionMetrics(id, this);
 
         started.countDown();
@@ -22,6 +22,7 @@ import java.io.IOException;
 import org.apache.cassandra.db.TypeSizes;
 import org.apache.cassandra.io.util.DataInputPlus;
 import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.repair.RepairJobDesc;
 
 /**
@@ -34,11 +35,19 @@ public class ValidationRequest extends RepairMessage
     public static MessageSerializer serializer = new ValidationRequestSerializer();
 
     public final int gcBefore;
+    // the messaging version whose digest all the replicas must hash their rows with
+    public final int digestVersion;
 
     public ValidationRequest(RepairJobDesc desc, int gcBefore)
+    {
+        this(desc, gcBefore, MessagingService.current_version);
+    }
+
+    public ValidationRequest(RepairJobDesc desc, int gcBefore, int digestVersion)
     {
         super(Type.VALIDATION_REQUEST, desc);
         this.gcBefore = gcBefore;
+        this.digestVersion = digestVersion;
     }
 
     @Override
@@ -46,6 +55,7 @@ public class ValidationRequest extends RepairMessage
     {
         return "ValidationRequest{" +
                 "gcBefore=" + gcBefore +
+                ", digestVersion=" + digestVersion +
                 "} " + super.toString();
     }
 
@@ -56,13 +66,13 @@ public class ValidationRequest extends RepairMessage
         if (o == null || getClass() != o.getClass()) return false;
 
         ValidationRequest that = (ValidationRequest) o;
-        return gcBefore == that.gcBefore;
+        return gcBefore == that.gcBefore && digestVersion == that.digestVersion;
     }
 
     @Override
     public int hashCode()
     {
-        return gcBefore;
+        return 31 * gcBefore + digestVersion;
     }
 
     public static class ValidationRequestSerializer implements MessageSerializer<ValidationRequest>
@@ -71,18 +81,25 @@ public class ValidationRequest extends RepairMessage
         {
             RepairJobDesc.serializer.serialize(message.desc, out, version);
             out.writeInt(message.gcBefore);
+            if (version >= MessagingService.VERSION_32)
+                out.writeInt(message.digestVersion);
         }
 
         public ValidationRequest deserialize(DataInputPlus dis, int version) throws IOException
         {
             RepairJobDesc desc = RepairJobDesc.serializer.deserialize(dis, version);
-            return new ValidationRequest(desc, dis.readInt());
+            int gcBefore = dis.readInt();
+            // older coordinators expect the digest of their own version
+            int digestVersion = version >= MessagingService.VERSION_32 ? dis.readInt() : version;
+            return new ValidationRequest(desc, gcBefore, digestVersion);
         }
 
         public long serializedSize(ValidationRequest message, int version)
         {
             long size = RepairJobDesc.serializer.serializedSize(message.desc, version);
             size += TypeSizes.sizeof(message.gcBefore);
+            if (version >= MessagingService.VERSION_32)
+                size += TypeSizes.sizeof(message.digestVersion);
             return size;
         }
     }
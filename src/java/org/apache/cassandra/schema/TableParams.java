@@ -18,13 +18,17 @@
 package org.apache.cassandra.schema;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Map;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableMap;
 
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.db.MemtablePartitions;
 import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.utils.ByteBufferUtil;
 import static java.lang.String.format;
 
 public final class TableParams
@@ -180,6 +184,15 @@ public final class TableParams
 
         if (memtableFlushPeriodInMs < 0)
             fail("%s must be greater than or equal to 0 (got %s)", Option.MEMTABLE_FLUSH_PERIOD_IN_MS, memtableFlushPeriodInMs);
+
+        ByteBuffer memtablePartitionMap = extensions.get(MemtablePartitions.EXTENSION_KEY);
+        if (memtablePartitionMap != null && MemtablePartitions.parseType(memtablePartitionMap) == null)
+        {
+            fail("%s extension must be one of %s (got 0x%s)",
+                 MemtablePartitions.EXTENSION_KEY,
+                 Arrays.toString(Config.MemtablePartitionMapType.values()),
+                 ByteBufferUtil.bytesToHex(memtablePartitionMap));
+        }
     }
 
     private static void fail(String format, Object... args)
@@ -30,6 +30,7 @@ import java.util.Set;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.TrustManager;
@@ -99,6 +100,18 @@ public final class SSLFactory
         return socket;
     }
 
+    /** Create an engine for the client side of a connection to the given peer */
+    public static SSLEngine getClientEngine(EncryptionOptions options, InetAddress address, int port) throws IOException
+    {
+        SSLContext ctx = createSSLContext(options, true);
+        SSLEngine engine = ctx.createSSLEngine(address.getHostAddress(), port);
+        engine.setUseClientMode(true);
+        String[] suits = filterCipherSuites(engine.getSupportedCipherSuites(), options.cipher_suites);
+        engine.setEnabledCipherSuites(suits);
+        engine.setEnabledProtocols(ACCEPTED_PROTOCOLS);
+        return engine;
+    }
+
     @SuppressWarnings("resource")
     public static SSLContext createSSLContext(EncryptionOptions options, boolean buildTruststore) throws IOException
     {
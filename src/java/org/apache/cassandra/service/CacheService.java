@@ -21,11 +21,15 @@ import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
@@ -33,11 +37,13 @@ import javax.management.ObjectName;
 import com.google.common.util.concurrent.Futures;
 
 import org.apache.cassandra.db.lifecycle.SSTableSet;
+import org.apache.cassandra.db.lifecycle.View;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.cassandra.cache.*;
 import org.apache.cassandra.cache.AutoSavingCache.CacheSerializer;
+import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
 import org.apache.cassandra.concurrent.Stage;
 import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.config.CFMetaData;
@@ -57,6 +63,7 @@ import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.Pair;
 import org.apache.cassandra.utils.concurrent.OpOrder;
+import org.apache.cassandra.utils.concurrent.Refs;
 
 public class CacheService implements CacheServiceMBean
 {
@@ -119,7 +126,26 @@ public class CacheService implements CacheServiceMBean
         // as values are constant size we can use singleton weigher
         // where 48 = 40 bytes (average size of the key) + 8 bytes (size of value)
         ICache<KeyCacheKey, RowIndexEntry> kc;
-        kc = ConcurrentLinkedHashCache.create(keyCacheInMemoryCapacity);
+        String cacheProviderClassName = DatabaseDescriptor.getKeyCacheClassName();
+        if (cacheProviderClassName == null || keyCacheInMemoryCapacity == 0)
+        {
+            kc = ConcurrentLinkedHashCache.create(keyCacheInMemoryCapacity);
+        }
+        else
+        {
+            CacheProvider<KeyCacheKey, RowIndexEntry> cacheProvider;
+            try
+            {
+                Class<CacheProvider<KeyCacheKey, RowIndexEntry>> cacheProviderClass =
+                    (Class<CacheProvider<KeyCacheKey, RowIndexEntry>>) Class.forName(cacheProviderClassName);
+                cacheProvider = cacheProviderClass.newInstance();
+            }
+            catch (Exception e)
+            {
+                throw new RuntimeException("Cannot find configured key cache provider class " + cacheProviderClassName);
+            }
+            kc = cacheProvider.create();
+        }
         AutoSavingCache<KeyCacheKey, RowIndexEntry> keyCache = new AutoSavingCache<>(kc, CacheType.KEY_CACHE, new KeyCacheSerializer());
 
         int keyCacheKeysToSave = DatabaseDescriptor.getKeyCacheKeysToSave();
@@ -418,6 +444,11 @@ public class CacheService implements CacheServiceMBean
 
     public static class RowCacheSerializer implements CacheSerializer<RowCacheKey, IRowCacheEntry>
     {
+        // Saved row caches are loaded in the background while the node serves requests, so the partition reads are
+        // done on their own, smaller, pool rather than on the read stage
+        private static final int LOAD_THREADS = Integer.getInteger("cassandra.row_cache_load_threads", Math.max(1, DatabaseDescriptor.getConcurrentReaders() / 4));
+        private static final ExecutorService rowCacheLoadExecutor = DebuggableThreadPoolExecutor.createWithMaximumPoolSize("RowCacheLoad", LOAD_THREADS, 60, TimeUnit.SECONDS);
+
         public void serialize(RowCacheKey key, DataOutputPlus out, ColumnFamilyStore cfs) throws IOException
         {
             assert(!cfs.isIndex());//Shouldn't have row cache entries for indexes
@@ -435,17 +466,40 @@ public class CacheService implements CacheServiceMBean
                 return null;
             assert(!cfs.isIndex());//Shouldn't have row cache entries for indexes
 
-            return StageManager.getStage(Stage.READ).submit(new Callable<Pair<RowCacheKey, IRowCacheEntry>>()
+            return rowCacheLoadExecutor.submit(new Callable<Pair<RowCacheKey, IRowCacheEntry>>()
             {
                 public Pair<RowCacheKey, IRowCacheEntry> call() throws Exception
                 {
                     DecoratedKey key = cfs.decorateKey(buffer);
-                    int nowInSec = FBUtilities.nowInSeconds();
-                    try (OpOrder.Group op = cfs.readOrdering.start(); UnfilteredRowIterator iter = SinglePartitionReadCommand.fullPartitionRead(cfs.metadata, nowInSec, key).queryMemtableAndDisk(cfs, op))
+                    RowCacheKey cacheKey = new RowCacheKey(cfs.metadata.ksAndCFName, key);
+
+                    // The cache is loaded while we accept writes, so like reads (see SinglePartitionReadCommand.getThroughCache),
+                    // we put a sentinel first, which a write to the partition invalidates, and only replace it by the
+                    // partition if it is still there. As the entry is cached here, there's nothing left for the caller to put.
+                    RowCacheSentinel sentinel = new RowCacheSentinel();
+                    if (!CacheService.instance.rowCache.putIfAbsent(cacheKey, sentinel))
+                        return null;
+
+                    boolean sentinelReplaced = false;
+                    try
+                    {
+                        int nowInSec = FBUtilities.nowInSeconds();
+                        try (OpOrder.Group op = cfs.readOrdering.start(); UnfilteredRowIterator iter = SinglePartitionReadCommand.fullPartitionRead(cfs.metadata, nowInSec, key).queryMemtableAndDisk(cfs, op))
+                        {
+                            CachedPartition toCache = CachedBTreePartition.create(DataLimits.cqlLimits(rowsToCache).filter(iter, nowInSec), nowInSec);
+                            if (!toCache.isEmpty())
+                            {
+                                CacheService.instance.rowCache.replace(cacheKey, sentinel, toCache);
+                                sentinelReplaced = true;
+                            }
+                        }
+                    }
+                    finally
                     {
-                        CachedPartition toCache = CachedBTreePartition.create(DataLimits.cqlLimits(rowsToCache).filter(iter, nowInSec), nowInSec);
-                        return Pair.create(new RowCacheKey(cfs.metadata.ksAndCFName, key), (IRowCacheEntry)toCache);
+                        if (!sentinelReplaced)
+                            cfs.invalidateCachedPartition(cacheKey);
                     }
+                    return null;
                 }
             });
         }
@@ -453,6 +507,12 @@ public class CacheService implements CacheServiceMBean
 
     public static class KeyCacheSerializer implements CacheSerializer<KeyCacheKey, RowIndexEntry>
     {
+        // Looking up the sstable of each entry amongst all the sstables of its table made loading tables with many
+        // sstables very slow, so they are indexed by generation once per table for the duration of a load. They are
+        // also referenced for that duration, as the node may compact them away while the cache loads in the background.
+        private final Map<Pair<String, String>, Map<Integer, SSTableReader>> cachedSSTableReaders = new HashMap<>();
+        private final List<Refs<SSTableReader>> cachedSSTableRefs = new ArrayList<>();
+
         public void serialize(KeyCacheKey key, DataOutputPlus out, ColumnFamilyStore cfs) throws IOException
         {
             RowIndexEntry entry = CacheService.instance.keyCache.getInternal(key);
@@ -480,7 +540,7 @@ public class CacheService implements CacheServiceMBean
             int generation = input.readInt();
             input.readBoolean(); // backwards compatibility for "promoted indexes" boolean
             SSTableReader reader = null;
-            if (cfs == null || !cfs.isKeyCacheEnabled() || (reader = findDesc(generation, cfs.getSSTables(SSTableSet.CANONICAL))) == null)
+            if (cfs == null || !cfs.isKeyCacheEnabled() || (reader = findDesc(generation, cfs)) == null)
             {
                 // The sstable doesn't exist anymore, so we can't be sure of the exact version and assume its the current version. The only case where we'll be
                 // wrong is during upgrade, in which case we fail at deserialization. This is not a huge deal however since 1) this is unlikely enough that
@@ -496,14 +556,28 @@ public class CacheService implements CacheServiceMBean
             return Futures.immediateFuture(Pair.create(new KeyCacheKey(cfs.metadata.ksAndCFName, reader.descriptor, key), entry));
         }
 
-        private SSTableReader findDesc(int generation, Iterable<SSTableReader> collection)
+        private SSTableReader findDesc(int generation, ColumnFamilyStore cfs)
         {
-            for (SSTableReader sstable : collection)
+            Map<Integer, SSTableReader> sstables = cachedSSTableReaders.get(cfs.metadata.ksAndCFName);
+            if (sstables == null)
             {
-                if (sstable.descriptor.generation == generation)
-                    return sstable;
+                sstables = new HashMap<>();
+                ColumnFamilyStore.RefViewFragment view = cfs.selectAndReference(View.select(SSTableSet.CANONICAL));
+                cachedSSTableRefs.add(view.refs);
+                for (SSTableReader sstable : view.sstables)
+                    sstables.put(sstable.descriptor.generation, sstable);
+                cachedSSTableReaders.put(cfs.metadata.ksAndCFName, sstables);
             }
-            return null;
+            return sstables.get(generation);
+        }
+
+        @Override
+        public void cleanupAfterDeserialize()
+        {
+            cachedSSTableReaders.clear();
+            for (Refs<SSTableReader> refs : cachedSSTableRefs)
+                refs.release();
+            cachedSSTableRefs.clear();
         }
     }
 }
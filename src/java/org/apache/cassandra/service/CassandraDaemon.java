@@ -256,16 +256,6 @@ public class CassandraDaemon
         }
 
 
-        try
-        {
-            loadRowAndKeyCacheAsync().get();
-        }
-        catch (Throwable t)
-        {
-            JVMStabilityInspector.inspectThrowable(t);
-            logger.warn("Error loading key or row cache", t);
-        }
-
         try
         {
             GCInspector.register();
@@ -353,6 +343,9 @@ public class CassandraDaemon
             exitOrFail(1, "Fatal configuration error", e);
         }
 
+        // warm the key and row caches in the background, while serving requests
+        loadRowAndKeyCacheAsync();
+
         Mx4jTool.maybeLoad();
 
         if (!FBUtilities.getBroadcastAddress().equals(InetAddress.getLoopbackAddress()))
@@ -383,6 +376,7 @@ public class CassandraDaemon
     /*
      * Asynchronously load the row and key cache in one off threads and return a compound future of the result.
      * Error handling is pushed into the cache load since cache loads are allowed to fail and are handled by logging.
+     * The progress of the loads is reported, and they can be stopped, like compactions.
      */
     private ListenableFuture<?> loadRowAndKeyCacheAsync()
     {
@@ -142,10 +142,18 @@ public class MigrationManager
          * Don't request schema from fat clients
          */
         return MessagingService.instance().knowsVersion(endpoint)
-                && MessagingService.instance().getRawVersion(endpoint) == MessagingService.current_version
+                && hasCompatibleSchema(MessagingService.instance().getRawVersion(endpoint))
                 && !Gossiper.instance.isGossipOnlyMember(endpoint);
     }
 
+    /**
+     * 3.2 nodes only differ from 3.0 ones by the digests they exchange, so they can share their schema.
+     */
+    private static boolean hasCompatibleSchema(int version)
+    {
+        return version >= MessagingService.VERSION_30 && version <= MessagingService.current_version;
+    }
+
     public static boolean isReadyForBootstrap()
     {
         return ((ThreadPoolExecutor) StageManager.getStage(Stage.MIGRATION)).getActiveCount() == 0;
@@ -508,7 +516,7 @@ public class MigrationManager
             // only push schema to nodes with known and equal versions
             if (!endpoint.equals(FBUtilities.getBroadcastAddress()) &&
                     MessagingService.instance().knowsVersion(endpoint) &&
-                    MessagingService.instance().getRawVersion(endpoint) == MessagingService.current_version)
+                    hasCompatibleSchema(MessagingService.instance().getRawVersion(endpoint)))
                 pushSchemaMutation(endpoint, schema);
         }
 
@@ -39,8 +39,10 @@ import org.slf4j.LoggerFactory;
 import org.apache.cassandra.batchlog.Batch;
 import org.apache.cassandra.batchlog.BatchlogManager;
 import org.apache.cassandra.batchlog.LegacyBatchlogMigrator;
+import org.apache.cassandra.concurrent.SEPExecutor;
 import org.apache.cassandra.concurrent.Stage;
 import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.concurrent.TracingAwareExecutorService;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
@@ -1671,6 +1673,38 @@ public class StorageProxy implements StorageProxyMBean
         }
     }
 
+    /**
+     * Reads locally for the given handler.
+     *
+     * Single partition reads are cheap enough to run on the calling thread when inline_local_reads is enabled,
+     * saving the hand-off to (and the wake-up of) a read stage worker. They take a work permit of the read stage to
+     * do so, and are only run inline while the stage has no queued work, so that the stage still bounds the reads
+     * running concurrently, and we fall back to it under load.
+     */
+    static void executeLocalRead(ReadCommand command, ReadCallback handler)
+    {
+        TracingAwareExecutorService stage = StageManager.getStage(Stage.READ);
+        if (DatabaseDescriptor.getInlineLocalReads()
+            && command instanceof SinglePartitionReadCommand
+            && stage instanceof SEPExecutor)
+        {
+            try
+            {
+                if (((SEPExecutor) stage).tryExecuteInline(new LocalReadRunnable(command, handler)))
+                    return;
+            }
+            catch (Throwable t)
+            {
+                // as the read stage would, since the handler has already been notified of the failure
+                JVMStabilityInspector.inspectThrowable(t);
+                logger.warn("Uncaught exception on thread {}: {}", Thread.currentThread(), t);
+                return;
+            }
+        }
+
+        stage.maybeExecuteImmediately(new LocalReadRunnable(command, handler));
+    }
+
     static class LocalReadRunnable extends DroppableRunnable
     {
         private final ReadCommand command;
@@ -20,21 +20,37 @@
  */
 package org.apache.cassandra.service.paxos;
 
-import java.nio.ByteBuffer;
+import java.util.UUID;
 import java.util.concurrent.locks.Lock;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.Striped;
 
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.tracing.Tracing;
+import org.apache.cassandra.utils.Pair;
 import org.apache.cassandra.utils.UUIDGen;
 
 public class PaxosState
 {
     private static final Striped<Lock> LOCKS = Striped.lazyWeakLock(DatabaseDescriptor.getConcurrentWriters() * 1024);
 
+    /*
+     * The states of the partitions with recent paxos rounds, so that rounds don't have to read system.paxos.
+     * The cache is write-through: it is only updated, under the partition lock, once the state has been persisted,
+     * and it mirrors how the persisted state gets reconciled, so that evicting an entry never changes the state.
+     */
+    private static final Cache<Pair<UUID, DecoratedKey>, PaxosState> CACHE = DatabaseDescriptor.getPaxosStateCacheSizeInMB() > 0
+                                                                            ? CacheBuilder.newBuilder()
+                                                                                          .maximumWeight(DatabaseDescriptor.getPaxosStateCacheSizeInMB() * 1024 * 1024)
+                                                                                          .weigher((Pair<UUID, DecoratedKey> key, PaxosState state) -> state.weight())
+                                                                                          .build()
+                                                                            : null;
+
     private final Commit promised;
     private final Commit accepted;
     private final Commit mostRecentCommit;
@@ -54,6 +70,65 @@ public class PaxosState
         this.mostRecentCommit = mostRecentCommit;
     }
 
+    private static PaxosState load(DecoratedKey key, CFMetaData metadata)
+    {
+        if (CACHE == null)
+            return SystemKeyspace.loadPaxosState(key, metadata);
+
+        PaxosState state = CACHE.getIfPresent(Pair.create(metadata.cfId, key));
+        if (state == null)
+        {
+            state = SystemKeyspace.loadPaxosState(key, metadata);
+            CACHE.put(Pair.create(metadata.cfId, key), state);
+        }
+        return state;
+    }
+
+    private static void cache(PaxosState state)
+    {
+        if (CACHE != null)
+            CACHE.put(Pair.create(state.promised.update.metadata().cfId, state.promised.update.partitionKey()), state);
+    }
+
+    @VisibleForTesting
+    public static void invalidateCache()
+    {
+        if (CACHE != null)
+            CACHE.invalidateAll();
+    }
+
+    private PaxosState withPromise(Commit promise)
+    {
+        // we only keep the ballot of promises, like system.paxos does
+        return new PaxosState(Commit.newPrepare(promise.update.partitionKey(), promise.update.metadata(), promise.ballot), accepted, mostRecentCommit);
+    }
+
+    private PaxosState withProposal(Commit proposal)
+    {
+        // system.paxos cells are reconciled on the microseconds timestamp of their ballot, and the proposal is
+        // erased by each commit
+        Commit newAccepted = isBefore(proposal, accepted) || !isBefore(mostRecentCommit, proposal) ? accepted : proposal;
+        return new PaxosState(promised, newAccepted, mostRecentCommit);
+    }
+
+    private PaxosState withCommit(Commit commit)
+    {
+        Commit newMostRecentCommit = isBefore(commit, mostRecentCommit) ? mostRecentCommit : commit;
+        Commit newAccepted = isBefore(commit, accepted) ? accepted : Commit.emptyCommit(commit.update.partitionKey(), commit.update.metadata());
+        return new PaxosState(promised, newAccepted, newMostRecentCommit);
+    }
+
+    private static boolean isBefore(Commit commit, Commit other)
+    {
+        return UUIDGen.microsTimestamp(commit.ballot) < UUIDGen.microsTimestamp(other.ballot);
+    }
+
+    private int weight()
+    {
+        // a rough estimate of the overhead of the commits and of the cache entry
+        return 256 + promised.update.partitionKey().getKey().remaining() + accepted.update.dataSize() + mostRecentCommit.update.dataSize();
+    }
+
     public static PrepareResponse prepare(Commit toPrepare)
     {
         long start = System.nanoTime();
@@ -63,11 +138,12 @@ public class PaxosState
             lock.lock();
             try
             {
-                PaxosState state = SystemKeyspace.loadPaxosState(toPrepare.update.partitionKey(), toPrepare.update.metadata());
+                PaxosState state = load(toPrepare.update.partitionKey(), toPrepare.update.metadata());
                 if (toPrepare.isAfter(state.promised))
                 {
                     Tracing.trace("Promising ballot {}", toPrepare.ballot);
                     SystemKeyspace.savePaxosPromise(toPrepare);
+                    cache(state.withPromise(toPrepare));
                     return new PrepareResponse(true, state.accepted, state.mostRecentCommit);
                 }
                 else
@@ -98,11 +174,12 @@ public class PaxosState
             lock.lock();
             try
             {
-                PaxosState state = SystemKeyspace.loadPaxosState(proposal.update.partitionKey(), proposal.update.metadata());
+                PaxosState state = load(proposal.update.partitionKey(), proposal.update.metadata());
                 if (proposal.hasBallot(state.promised.ballot) || proposal.isAfter(state.promised))
                 {
                     Tracing.trace("Accepting proposal {}", proposal);
                     SystemKeyspace.savePaxosProposal(proposal);
+                    cache(state.withProposal(proposal));
                     return true;
                 }
                 else
@@ -144,8 +221,28 @@ public class PaxosState
             {
                 Tracing.trace("Not committing proposal {} as ballot timestamp predates last truncation time", proposal);
             }
-            // We don't need to lock, we're just blindly updating
-            SystemKeyspace.savePaxosCommit(proposal);
+            // We don't need to lock for the persisted state, we're just blindly updating, but the cached state has to be
+            // updated atomically. We only update it if present though, as reading the state here would defeat the point.
+            if (CACHE == null)
+            {
+                SystemKeyspace.savePaxosCommit(proposal);
+                return;
+            }
+
+            Lock lock = LOCKS.get(proposal.update.partitionKey());
+            lock.lock();
+            try
+            {
+                SystemKeyspace.savePaxosCommit(proposal);
+                Pair<UUID, DecoratedKey> key = Pair.create(proposal.update.metadata().cfId, proposal.update.partitionKey());
+                PaxosState state = CACHE.getIfPresent(key);
+                if (state != null)
+                    CACHE.put(key, state.withCommit(proposal));
+            }
+            finally
+            {
+                lock.unlock();
+            }
         }
         finally
         {
@@ -81,12 +81,12 @@ public class ConnectionHandler
     {
         logger.debug("[Stream #{}] Sending stream init for incoming stream", session.planId());
         Socket incomingSocket = session.createConnection();
-        incoming.start(incomingSocket, StreamMessage.CURRENT_VERSION);
+        incoming.start(incomingSocket, session.protocolVersion());
         incoming.sendInitMessage(incomingSocket, true);
 
         logger.debug("[Stream #{}] Sending stream init for outgoing stream", session.planId());
         Socket outgoingSocket = session.createConnection();
-        outgoing.start(outgoingSocket, StreamMessage.CURRENT_VERSION);
+        outgoing.start(outgoingSocket, session.protocolVersion());
         outgoing.sendInitMessage(outgoingSocket, false);
     }
 
@@ -99,6 +99,7 @@ public class ConnectionHandler
      */
     public void initiateOnReceivingSide(Socket socket, boolean isForOutgoing, int version) throws IOException
     {
+        session.setProtocolVersion(version);
         if (isForOutgoing)
             outgoing.start(socket, version);
         else
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.streaming;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Map;
+
+import com.google.common.base.Throwables;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Directories;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.SSTableMultiWriter;
+import org.apache.cassandra.io.sstable.SSTableZeroCopyWriter;
+import org.apache.cassandra.streaming.messages.FileMessageHeader;
+import org.apache.cassandra.utils.Pair;
+
+/**
+ * Receives the component files of a whole sstable sent by {@link EntireSSTableStreamWriter}, and writes them
+ * straight to disk.
+ */
+public class EntireSSTableStreamReader
+{
+    private static final Logger logger = LoggerFactory.getLogger(EntireSSTableStreamReader.class);
+
+    private final FileMessageHeader header;
+    private final StreamSession session;
+
+    public EntireSSTableStreamReader(FileMessageHeader header, StreamSession session)
+    {
+        assert header.isEntireSSTable();
+        this.header = header;
+        this.session = session;
+    }
+
+    /**
+     * @param channel where this reads data from
+     * @return the writer of the received sstable, to finish once all the files of the session are received
+     * @throws IOException if reading the remote sstable fails. Will throw an RTE if local write fails.
+     */
+    @SuppressWarnings("resource") // the writer is returned, or aborted on failure
+    public SSTableMultiWriter read(ReadableByteChannel channel) throws IOException
+    {
+        long totalSize = header.size();
+
+        Pair<String, String> kscf = Schema.instance.getCF(header.cfId);
+        if (kscf == null)
+        {
+            // schema was dropped during streaming
+            throw new IOException("CF " + header.cfId + " was dropped during streaming");
+        }
+        ColumnFamilyStore cfs = Keyspace.open(kscf.left).getColumnFamilyStore(kscf.right);
+
+        Directories.DataDirectory localDir = cfs.getDirectories().getWriteableLocation(totalSize);
+        if (localDir == null)
+            throw new IOException("Insufficient disk space to store " + totalSize + " bytes");
+
+        Descriptor desc = Descriptor.fromFilename(cfs.getSSTablePath(cfs.getDirectories().getLocationForDisk(localDir), header.version, header.format));
+        logger.debug("[Stream #{}] Receiving entire sstable {} ({} bytes) from {}, repairedAt = {}, level = {}",
+                     session.planId(), desc, totalSize, session.peer, header.repairedAt, header.sstableLevel);
+
+        SSTableZeroCopyWriter writer = new SSTableZeroCopyWriter(desc, header.components.keySet(), cfs.metadata, header.repairedAt, header.sstableLevel, session.getTransaction(header.cfId));
+        try
+        {
+            long received = 0;
+            for (Map.Entry<Component, Long> entry : header.components.entrySet())
+            {
+                final long componentStart = received;
+                writer.writeComponent(entry.getKey(), channel, entry.getValue(),
+                                      (written) -> session.progress(desc, ProgressInfo.Direction.IN, componentStart + written, totalSize));
+                received += entry.getValue();
+            }
+            return writer;
+        }
+        catch (Throwable e)
+        {
+            long received = writer.getFilePointer();
+            SSTableMultiWriter.abortOrDie(writer);
+
+            drain(channel, totalSize - received);
+            if (e instanceof IOException)
+                throw (IOException) e;
+            else
+                throw Throwables.propagate(e);
+        }
+    }
+
+    private static void drain(ReadableByteChannel channel, long toSkip) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(64 * 1024, Math.max(toSkip, 1)));
+        while (toSkip > 0)
+        {
+            buffer.clear();
+            if (toSkip < buffer.capacity())
+                buffer.limit((int) toSkip);
+            int read = channel.read(buffer);
+            if (read < 0)
+                return;
+            toSkip -= read;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.streaming;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.util.ChannelProxy;
+import org.apache.cassandra.io.util.DataOutputStreamPlus;
+import org.apache.cassandra.streaming.StreamManager.StreamRateLimiter;
+
+/**
+ * Sends the component files of a whole sstable as they are on disk, using zero-copy transfers from the files to
+ * the streaming socket.
+ */
+public class EntireSSTableStreamWriter
+{
+    private static final Logger logger = LoggerFactory.getLogger(EntireSSTableStreamWriter.class);
+
+    private static final int CHUNK_SIZE = 10 * 1024 * 1024;
+
+    private final SSTableReader sstable;
+    private final Map<Component, Long> components;
+    private final StreamSession session;
+    private final StreamRateLimiter limiter;
+
+    public EntireSSTableStreamWriter(SSTableReader sstable, Map<Component, Long> components, StreamSession session)
+    {
+        this.sstable = sstable;
+        this.components = components;
+        this.session = session;
+        this.limiter = StreamManager.getRateLimiter(session.peer);
+    }
+
+    /**
+     * Sends each component, in the order and with the sizes announced in the file message header.
+     *
+     * @param out where this writes data to
+     * @throws IOException on any I/O error, or if a component got shorter than announced
+     */
+    public void write(DataOutputStreamPlus out) throws IOException
+    {
+        long totalSize = 0;
+        for (long size : components.values())
+            totalSize += size;
+
+        logger.debug("[Stream #{}] Streaming entire sstable {} ({} bytes) to {}", session.planId(), sstable.getFilename(), totalSize, session.peer);
+
+        long progress = 0;
+        for (Map.Entry<Component, Long> entry : components.entrySet())
+        {
+            long size = entry.getValue();
+            try (ChannelProxy channel = new ChannelProxy(sstable.descriptor.filenameFor(entry.getKey())))
+            {
+                // components other than Statistics.db are immutable, and rewrites of Statistics.db don't change its size
+                if (channel.size() < size)
+                    throw new IOException(String.format("%s is %d bytes long, but %d bytes were announced", channel.filePath(), channel.size(), size));
+
+                long position = 0;
+                while (position < size)
+                {
+                    final long start = position;
+                    final int toTransfer = (int) Math.min(CHUNK_SIZE, size - position);
+                    limiter.acquire(toTransfer);
+                    long transferred = out.applyToChannel((wbc) -> channel.transferTo(start, toTransfer, wbc));
+                    position += transferred;
+                    progress += transferred;
+                    session.progress(sstable.descriptor, ProgressInfo.Direction.OUT, progress, totalSize);
+                }
+            }
+        }
+    }
+}
@@ -35,6 +35,8 @@ import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
 import org.apache.cassandra.db.partitions.PartitionUpdate;
 import org.apache.cassandra.db.rows.UnfilteredRowIterator;
 import org.apache.cassandra.db.view.View;
+import org.apache.cassandra.dht.Bounds;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.ISSTableScanner;
 import org.apache.cassandra.io.sstable.SSTableMultiWriter;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
@@ -172,6 +174,19 @@ public class StreamReceiveTask extends StreamTask
                         // add sstables and build secondary indexes
                         cfs.addSSTables(readers);
                         cfs.indexManager.buildAllIndexesBlocking(readers);
+
+                        // entire sstables are received as files, without invalidating the cached partitions they
+                        // contain one by one
+                        if (cfs.isRowCacheEnabled())
+                        {
+                            List<Bounds<Token>> boundsToInvalidate = new ArrayList<>(readers.size());
+                            for (SSTableReader reader : readers)
+                                boundsToInvalidate.add(new Bounds<>(reader.first.getToken(), reader.last.getToken()));
+                            int invalidatedKeys = cfs.invalidateRowCache(boundsToInvalidate);
+                            if (invalidatedKeys > 0)
+                                logger.debug("[Stream #{}] Invalidated {} row cache entries on table {}.{} after stream receive task completed.",
+                                             task.session.planId(), invalidatedKeys, cfs.keyspace.getName(), cfs.getTableName());
+                        }
                     }
                 }
                 catch (Throwable t)
@@ -42,6 +42,7 @@ import org.apache.cassandra.gms.*;
 import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.metrics.StreamingMetrics;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.service.ActiveRepairService;
 import org.apache.cassandra.streaming.messages.*;
 import org.apache.cassandra.utils.FBUtilities;
@@ -148,6 +149,8 @@ public class StreamSession implements IEndpointStateChangeSubscriber
     private AtomicBoolean isAborted = new AtomicBoolean(false);
     private final boolean keepSSTableLevel;
     private final boolean isIncremental;
+    // the version of the streaming protocol, picked by the initiator from the messaging version of the peer
+    private volatile int protocolVersion;
 
     public static enum State
     {
@@ -179,6 +182,9 @@ public class StreamSession implements IEndpointStateChangeSubscriber
         this.metrics = StreamingMetrics.get(connecting);
         this.keepSSTableLevel = keepSSTableLevel;
         this.isIncremental = isIncremental;
+        this.protocolVersion = MessagingService.instance().getVersion(peer) >= MessagingService.VERSION_32
+                             ? StreamMessage.CURRENT_VERSION
+                             : StreamMessage.VERSION_30;
     }
 
     public UUID planId()
@@ -201,6 +207,19 @@ public class StreamSession implements IEndpointStateChangeSubscriber
         return keepSSTableLevel;
     }
 
+    public int protocolVersion()
+    {
+        return protocolVersion;
+    }
+
+    /**
+     * Sets the version of the streaming protocol the initiator of the session connected with.
+     */
+    void setProtocolVersion(int protocolVersion)
+    {
+        this.protocolVersion = protocolVersion;
+    }
+
     public boolean isIncremental()
     {
         return isIncremental;
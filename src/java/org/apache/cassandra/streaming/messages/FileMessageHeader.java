@@ -19,14 +19,16 @@ package org.apache.cassandra.streaming.messages;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
-import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.SerializationHeader;
 import org.apache.cassandra.db.TypeSizes;
 import org.apache.cassandra.io.IVersionedSerializer;
 import org.apache.cassandra.io.compress.CompressionMetadata;
+import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.format.SSTableFormat;
 import org.apache.cassandra.io.util.DataInputPlus;
 import org.apache.cassandra.io.util.DataOutputPlus;
@@ -56,6 +58,11 @@ public class FileMessageHeader
     public final long repairedAt;
     public final int sstableLevel;
     public final SerializationHeader.Component header;
+    /**
+     * The component files of the sstable and their sizes, in the order they are sent, if the whole sstable is sent
+     * as raw files rather than as a stream of partitions; null otherwise.
+     */
+    public final Map<Component, Long> components;
 
     public FileMessageHeader(UUID cfId,
                              int sequenceNumber,
@@ -67,6 +74,21 @@ public class FileMessageHeader
                              long repairedAt,
                              int sstableLevel,
                              SerializationHeader.Component header)
+    {
+        this(cfId, sequenceNumber, version, format, estimatedKeys, sections, compressionInfo, repairedAt, sstableLevel, header, null);
+    }
+
+    public FileMessageHeader(UUID cfId,
+                             int sequenceNumber,
+                             Version version,
+                             SSTableFormat.Type format,
+                             long estimatedKeys,
+                             List<Pair<Long, Long>> sections,
+                             CompressionInfo compressionInfo,
+                             long repairedAt,
+                             int sstableLevel,
+                             SerializationHeader.Component header,
+                             Map<Component, Long> components)
     {
         this.cfId = cfId;
         this.sequenceNumber = sequenceNumber;
@@ -78,6 +100,12 @@ public class FileMessageHeader
         this.repairedAt = repairedAt;
         this.sstableLevel = sstableLevel;
         this.header = header;
+        this.components = components;
+    }
+
+    public boolean isEntireSSTable()
+    {
+        return components != null;
     }
 
     /**
@@ -86,7 +114,12 @@ public class FileMessageHeader
     public long size()
     {
         long size = 0;
-        if (compressionInfo != null)
+        if (components != null)
+        {
+            for (long componentSize : components.values())
+                size += componentSize;
+        }
+        else if (compressionInfo != null)
         {
             // calculate total length of transferring chunks
             for (CompressionMetadata.Chunk chunk : compressionInfo.chunks)
@@ -111,6 +144,7 @@ public class FileMessageHeader
         sb.append(", estimated keys: ").append(estimatedKeys);
         sb.append(", transfer size: ").append(size());
         sb.append(", compressed?: ").append(compressionInfo != null);
+        sb.append(", entire sstable?: ").append(components != null);
         sb.append(", repairedAt: ").append(repairedAt);
         sb.append(", level: ").append(sstableLevel);
         sb.append(')');
@@ -162,17 +196,35 @@ public class FileMessageHeader
 
             if (version >= StreamMessage.VERSION_30)
                 SerializationHeader.serializer.serialize(header.version, header.header, out);
+
+            if (version < StreamMessage.VERSION_32 && header.isEntireSSTable())
+                throw new UnsupportedOperationException("Can't stream entire sstables to nodes < 3.2");
+
+            if (version >= StreamMessage.VERSION_32)
+            {
+                out.writeBoolean(header.components != null);
+                if (header.components != null)
+                {
+                    out.writeInt(header.components.size());
+                    for (Map.Entry<Component, Long> entry : header.components.entrySet())
+                    {
+                        out.writeUTF(entry.getKey().name);
+                        out.writeLong(entry.getValue());
+                    }
+                }
+            }
         }
 
         public FileMessageHeader deserialize(DataInputPlus in, int version) throws IOException
         {
             UUID cfId = UUIDSerializer.serializer.deserialize(in, MessagingService.current_version);
             int sequenceNumber = in.readInt();
-            Version sstableVersion = DatabaseDescriptor.getSSTableFormat().info.getVersion(in.readUTF());
+            String sstableVersionString = in.readUTF();
 
             SSTableFormat.Type format = SSTableFormat.Type.LEGACY;
             if (version >= StreamMessage.VERSION_22)
                 format = SSTableFormat.Type.validate(in.readUTF());
+            Version sstableVersion = format.info.getVersion(sstableVersionString);
 
             long estimatedKeys = in.readLong();
             int count = in.readInt();
@@ -186,7 +238,16 @@ public class FileMessageHeader
                                                  ? SerializationHeader.serializer.deserialize(sstableVersion, in)
                                                  : null;
 
-            return new FileMessageHeader(cfId, sequenceNumber, sstableVersion, format, estimatedKeys, sections, compressionInfo, repairedAt, sstableLevel, header);
+            Map<Component, Long> components = null;
+            if (version >= StreamMessage.VERSION_32 && in.readBoolean())
+            {
+                int componentCount = in.readInt();
+                components = new LinkedHashMap<>(componentCount);
+                for (int i = 0; i < componentCount; i++)
+                    components.put(Component.parse(in.readUTF()), in.readLong());
+            }
+
+            return new FileMessageHeader(cfId, sequenceNumber, sstableVersion, format, estimatedKeys, sections, compressionInfo, repairedAt, sstableLevel, header, components);
         }
 
         public long serializedSize(FileMessageHeader header, int version)
@@ -212,6 +273,20 @@ public class FileMessageHeader
             if (version >= StreamMessage.VERSION_30)
                 size += SerializationHeader.serializer.serializedSize(header.version, header.header);
 
+            if (version >= StreamMessage.VERSION_32)
+            {
+                size += TypeSizes.sizeof(header.components != null);
+                if (header.components != null)
+                {
+                    size += TypeSizes.sizeof(header.components.size());
+                    for (Map.Entry<Component, Long> entry : header.components.entrySet())
+                    {
+                        size += TypeSizes.sizeof(entry.getKey().name);
+                        size += TypeSizes.sizeof(entry.getValue());
+                    }
+                }
+            }
+
             return size;
         }
     }
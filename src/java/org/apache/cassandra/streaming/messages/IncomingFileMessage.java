@@ -25,6 +25,7 @@ import org.apache.cassandra.io.sstable.SSTableMultiWriter;
 import org.apache.cassandra.io.util.DataInputPlus;
 import org.apache.cassandra.io.util.DataInputPlus.DataInputStreamPlus;
 import org.apache.cassandra.io.util.DataOutputStreamPlus;
+import org.apache.cassandra.streaming.EntireSSTableStreamReader;
 import org.apache.cassandra.streaming.StreamReader;
 import org.apache.cassandra.streaming.StreamSession;
 import org.apache.cassandra.streaming.compress.CompressedStreamReader;
@@ -42,11 +43,13 @@ public class IncomingFileMessage extends StreamMessage
         {
             DataInputPlus input = new DataInputStreamPlus(Channels.newInputStream(in));
             FileMessageHeader header = FileMessageHeader.serializer.deserialize(input, version);
-            StreamReader reader = header.compressionInfo == null ? new StreamReader(header, session)
-                    : new CompressedStreamReader(header, session);
-
             try
             {
+                if (header.isEntireSSTable())
+                    return new IncomingFileMessage(new EntireSSTableStreamReader(header, session).read(in), header);
+
+                StreamReader reader = header.compressionInfo == null ? new StreamReader(header, session)
+                        : new CompressedStreamReader(header, session);
                 return new IncomingFileMessage(reader.read(in), header);
             }
             catch (IOException eof)
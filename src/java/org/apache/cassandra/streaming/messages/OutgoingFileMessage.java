@@ -17,13 +17,21 @@
  */
 package org.apache.cassandra.streaming.messages;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.channels.ReadableByteChannel;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import com.google.common.collect.Iterables;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.io.compress.CompressionMetadata;
+import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.util.DataOutputStreamPlus;
+import org.apache.cassandra.streaming.EntireSSTableStreamWriter;
 import org.apache.cassandra.streaming.StreamSession;
 import org.apache.cassandra.streaming.StreamWriter;
 import org.apache.cassandra.streaming.compress.CompressedStreamWriter;
@@ -55,15 +63,19 @@ public class OutgoingFileMessage extends StreamMessage
     private final String filename;
     private boolean completed = false;
 
-    public OutgoingFileMessage(Ref<SSTableReader> ref, int sequenceNumber, long estimatedKeys, List<Pair<Long, Long>> sections, long repairedAt, boolean keepSSTableLevel)
+    /**
+     * @param protocolVersion the version of the streaming protocol of the session the file is sent by
+     */
+    public OutgoingFileMessage(Ref<SSTableReader> ref, int sequenceNumber, long estimatedKeys, List<Pair<Long, Long>> sections, long repairedAt, boolean keepSSTableLevel, int protocolVersion)
     {
         super(Type.FILE);
         this.ref = ref;
 
         SSTableReader sstable = ref.get();
         filename = sstable.getFilename();
+        Map<Component, Long> components = isEntireSSTable(sstable, sections, protocolVersion) ? componentsToStream(sstable) : null;
         CompressionInfo compressionInfo = null;
-        if (sstable.compression)
+        if (sstable.compression && components == null)
         {
             CompressionMetadata meta = sstable.getCompressionMetadata();
             compressionInfo = new CompressionInfo(meta.getChunksForSections(sections), meta.parameters);
@@ -77,7 +89,42 @@ public class OutgoingFileMessage extends StreamMessage
                                             compressionInfo,
                                             repairedAt,
                                             keepSSTableLevel ? sstable.getSSTableLevel() : 0,
-                                            sstable.header == null ? null : sstable.header.toComponent());
+                                            sstable.header == null ? null : sstable.header.toComponent(),
+                                            components);
+    }
+
+    /**
+     * Whether the given sections cover the whole sstable, which can then be sent as is rather than rewritten by the
+     * receiver. This requires the receiver to be able to use the files as they are: they must be of the current
+     * version, with no custom component, and counter shards must not need to be cleared. Peers on versions before
+     * the streaming protocol supported it only get partitions.
+     */
+    private static boolean isEntireSSTable(SSTableReader sstable, List<Pair<Long, Long>> sections, int protocolVersion)
+    {
+        return DatabaseDescriptor.streamEntireSSTables()
+               && protocolVersion >= StreamMessage.VERSION_32
+               && !sstable.metadata.isCounter()
+               && sstable.descriptor.version.isLatestVersion()
+               && sstable.openReason != SSTableReader.OpenReason.EARLY
+               && sections.size() == 1
+               && sections.get(0).left == 0
+               && sections.get(0).right == sstable.uncompressedLength()
+               && Iterables.all(SSTableReader.componentsFor(sstable.descriptor), c -> c.type != Component.Type.CUSTOM);
+    }
+
+    /**
+     * The summary is left out as it can be rewritten in place by index summary redistribution, and is rebuilt by
+     * the receiver from the primary index.
+     */
+    private static Map<Component, Long> componentsToStream(SSTableReader sstable)
+    {
+        Map<Component, Long> components = new LinkedHashMap<>();
+        for (Component component : SSTableReader.componentsFor(sstable.descriptor))
+        {
+            if (component.type != Component.Type.SUMMARY)
+                components.put(component, new File(sstable.descriptor.filenameFor(component)).length());
+        }
+        return components;
     }
 
     public synchronized void serialize(DataOutputStreamPlus out, int version, StreamSession session) throws IOException
@@ -90,6 +137,12 @@ public class OutgoingFileMessage extends StreamMessage
         FileMessageHeader.serializer.serialize(header, out, version);
 
         final SSTableReader reader = ref.get();
+        if (header.isEntireSSTable())
+        {
+            new EntireSSTableStreamWriter(reader, header.components, session).write(out);
+            return;
+        }
+
         StreamWriter writer = header.compressionInfo == null ?
                                       new StreamWriter(reader, header.sections, session) :
                                       new CompressedStreamWriter(reader, header.sections,
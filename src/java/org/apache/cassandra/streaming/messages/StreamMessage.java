@@ -36,7 +36,8 @@ public abstract class StreamMessage
     public static final int VERSION_20 = 2;
     public static final int VERSION_22 = 3;
     public static final int VERSION_30 = 4;
-    public static final int CURRENT_VERSION = VERSION_30;
+    public static final int VERSION_32 = 5;
+    public static final int CURRENT_VERSION = VERSION_32;
 
     public static void serialize(StreamMessage message, DataOutputStreamPlus out, int version, StreamSession session) throws IOException
     {
@@ -33,7 +33,6 @@ import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.OpenDataException;
 import javax.management.openmbean.TabularDataSupport;
 
-import org.apache.cassandra.metrics.TableMetrics;
 import org.apache.cassandra.metrics.TableMetrics.Sampler;
 import org.apache.cassandra.tools.NodeProbe;
 import org.apache.cassandra.tools.NodeTool.NodeToolCmd;
@@ -41,7 +40,7 @@ import org.apache.cassandra.tools.NodeTool.NodeToolCmd;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
 
-@Command(name = "toppartitions", description = "Sample and print the most active partitions for a given column family")
+@Command(name = "toppartitions", description = "Sample and print the most active partitions for a given column family, or those whose reads scan the most tombstones or live rows")
 public class TopPartitions extends NodeToolCmd
 {
     @Arguments(usage = "<keyspace> <cfname> <duration>", description = "The keyspace, column family name, and duration in milliseconds")
@@ -50,8 +49,9 @@ public class TopPartitions extends NodeToolCmd
     private int size = 256;
     @Option(name = "-k", description = "Number of the top partitions to list (Default: 10)")
     private int topCount = 10;
-    @Option(name = "-a", description = "Comma separated list of samplers to use (Default: all)")
-    private String samplers = join(TableMetrics.Sampler.values(), ',');
+    // the TOMBSTONES and LIVE_ROWS samplers are unknown to older nodes, so they are only used when requested
+    @Option(name = "-a", description = "Comma separated list of samplers to use, among READS, WRITES, TOMBSTONES and LIVE_ROWS (Default: READS,WRITES)")
+    private String samplers = join(new Sampler[]{ Sampler.READS, Sampler.WRITES }, ',');
     @Override
     public void execute(NodeProbe probe)
     {
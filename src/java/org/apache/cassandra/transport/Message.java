@@ -454,7 +454,10 @@ public abstract class Message
                     for (ChannelHandlerContext channel : channels)
                         channel.flush();
                     for (FlushItem item : flushed)
+                    {
+                        RequestBytesLimitHandler.release(item.ctx.channel(), item.sourceFrame);
                         item.sourceFrame.release();
+                    }
 
                     channels.clear();
                     flushed.clear();
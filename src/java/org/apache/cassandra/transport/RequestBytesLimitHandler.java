@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.transport;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.metrics.ClientMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ChannelInboundHandlerAdapter} implementation which limits the bytes of the requests in flight, that is
+ * received but not answered yet, per connection and per client address. Once a limit is exceeded, we stop reading
+ * from the connection, so that clients sending more than we can process get slowed down by TCP flow control
+ * rather than piling requests up in memory, and resume reading once enough of the requests have been answered.
+ *
+ * Requests are accounted for when they have been decoded, before being handed to the request executor, and
+ * released by the {@link Message.Dispatcher} once their response has been flushed.
+ * Be aware this <strong>MUST</strong> be shared between all child channels.
+ */
+@ChannelHandler.Sharable
+final class RequestBytesLimitHandler extends ChannelInboundHandlerAdapter
+{
+    private static final Logger logger = LoggerFactory.getLogger(RequestBytesLimitHandler.class);
+
+    private static final AttributeKey<ConnectionBytes> attributeKey = AttributeKey.valueOf("REQUEST_BYTES");
+
+    private final ConcurrentMap<InetAddress, EndpointBytes> bytesPerClient = new ConcurrentHashMap<>();
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception
+    {
+        InetAddress address = ((InetSocketAddress) ctx.channel().remoteAddress()).getAddress();
+        while (true)
+        {
+            EndpointBytes endpoint = bytesPerClient.get(address);
+            if (endpoint == null)
+            {
+                endpoint = new EndpointBytes();
+                EndpointBytes old = bytesPerClient.putIfAbsent(address, endpoint);
+                if (old != null)
+                    endpoint = old;
+            }
+
+            // the endpoint may have been removed by the last of its other connections closing concurrently
+            if (endpoint.connect())
+            {
+                ctx.channel().attr(attributeKey).set(new ConnectionBytes(ctx.channel(), address, endpoint));
+                break;
+            }
+        }
+        ctx.fireChannelActive();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception
+    {
+        ConnectionBytes connection = ctx.channel().attr(attributeKey).get();
+        if (connection != null)
+        {
+            // requests still in flight are released when answered, even though the connection is closed
+            connection.resume();
+            if (connection.endpoint.disconnect())
+                bytesPerClient.remove(connection.address, connection.endpoint);
+        }
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception
+    {
+        ConnectionBytes connection = ctx.channel().attr(attributeKey).get();
+        if (connection != null && msg instanceof Message.Request)
+            connection.acquire(size(((Message.Request) msg).getSourceFrame()));
+        ctx.fireChannelRead(msg);
+    }
+
+    /**
+     * Releases the bytes of a request once it has been answered, resuming reads from the connections it was
+     * holding back.
+     */
+    static void release(Channel channel, Frame sourceFrame)
+    {
+        ConnectionBytes connection = channel.attr(attributeKey).get();
+        if (connection != null)
+            connection.release(size(sourceFrame));
+    }
+
+    private static long size(Frame frame)
+    {
+        return Frame.Header.LENGTH + frame.body.capacity();
+    }
+
+    private static long limit(long configured)
+    {
+        // Setting the limit to -1 disables it.
+        return configured < 0 ? Long.MAX_VALUE : configured * 1024 * 1024;
+    }
+
+    private static final class EndpointBytes
+    {
+        private final AtomicLong bytes = new AtomicLong();
+        private final Set<ConnectionBytes> paused = ConcurrentHashMap.newKeySet();
+        // the number of connections, or -1 once there is none left and the endpoint has been discarded
+        private final AtomicLong connections = new AtomicLong();
+
+        private boolean connect()
+        {
+            while (true)
+            {
+                long current = connections.get();
+                if (current < 0)
+                    return false;
+                if (connections.compareAndSet(current, current + 1))
+                    return true;
+            }
+        }
+
+        private boolean disconnect()
+        {
+            return connections.decrementAndGet() == 0 && connections.compareAndSet(0, -1);
+        }
+
+        private boolean isOverLimit()
+        {
+            return bytes.get() > limit(DatabaseDescriptor.getNativeTransportMaxConcurrentRequestsInMbPerIp());
+        }
+    }
+
+    private static final class ConnectionBytes
+    {
+        private final Channel channel;
+        private final InetAddress address;
+        private final EndpointBytes endpoint;
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicBoolean isPaused = new AtomicBoolean();
+
+        private ConnectionBytes(Channel channel, InetAddress address, EndpointBytes endpoint)
+        {
+            this.channel = channel;
+            this.address = address;
+            this.endpoint = endpoint;
+        }
+
+        private boolean isOverLimit()
+        {
+            return bytes.get() > limit(DatabaseDescriptor.getNativeTransportMaxConcurrentRequestsInMbPerConnection());
+        }
+
+        private void acquire(long size)
+        {
+            bytes.addAndGet(size);
+            endpoint.bytes.addAndGet(size);
+            ClientMetrics.instance.requestBytesInFlight.inc(size);
+
+            if ((isOverLimit() || endpoint.isOverLimit()) && isPaused.compareAndSet(false, true))
+            {
+                logger.trace("Pausing reads from {}, with {} bytes of requests in flight and {} from its address", channel, bytes, endpoint.bytes);
+                channel.config().setAutoRead(false);
+                ClientMetrics.instance.pausedConnections.inc();
+                ClientMetrics.instance.connectionPauses.mark();
+                // only registered once paused, so that it can only be resumed afterwards
+                endpoint.paused.add(this);
+            }
+        }
+
+        private void release(long size)
+        {
+            bytes.addAndGet(-size);
+            endpoint.bytes.addAndGet(-size);
+            ClientMetrics.instance.requestBytesInFlight.dec(size);
+
+            if (endpoint.paused.isEmpty() || endpoint.isOverLimit())
+                return;
+
+            // a connection may be held back by the requests of the other connections from the same address
+            for (ConnectionBytes connection : endpoint.paused)
+            {
+                if (!connection.isOverLimit())
+                    connection.resume();
+            }
+        }
+
+        private void resume()
+        {
+            if (endpoint.paused.remove(this) && isPaused.compareAndSet(true, false))
+            {
+                logger.trace("Resuming reads from {}, with {} bytes of requests in flight", channel, bytes);
+                ClientMetrics.instance.pausedConnections.dec();
+                channel.config().setAutoRead(true);
+            }
+        }
+    }
+}
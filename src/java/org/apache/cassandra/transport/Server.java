@@ -288,6 +288,7 @@ public class Server implements CassandraDaemon.Server
         private static final Frame.Encoder frameEncoder = new Frame.Encoder();
         private static final Message.Dispatcher dispatcher = new Message.Dispatcher();
         private static final ConnectionLimitHandler connectionLimitHandler = new ConnectionLimitHandler();
+        private static final RequestBytesLimitHandler requestBytesLimitHandler = new RequestBytesLimitHandler();
 
         private final Server server;
 
@@ -319,6 +320,11 @@ public class Server implements CassandraDaemon.Server
             pipeline.addLast("messageDecoder", messageDecoder);
             pipeline.addLast("messageEncoder", messageEncoder);
 
+            // Account for the requests before they are queued up for execution, if configured to limit them.
+            if (DatabaseDescriptor.getNativeTransportMaxConcurrentRequestsInMbPerConnection() >= 0
+                    || DatabaseDescriptor.getNativeTransportMaxConcurrentRequestsInMbPerIp() >= 0)
+                pipeline.addLast("requestBytesLimitHandler", requestBytesLimitHandler);
+
             if (server.eventExecutorGroup != null)
                 pipeline.addLast(server.eventExecutorGroup, "executor", dispatcher);
             else
@@ -19,7 +19,7 @@ package org.apache.cassandra.utils;
 
 import java.io.DataInput;
 import java.io.IOException;
-import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import com.google.common.base.Preconditions;
@@ -27,13 +27,13 @@ import com.google.common.collect.PeekingIterator;
 
 import org.apache.cassandra.db.TypeSizes;
 import org.apache.cassandra.dht.IPartitioner;
-import org.apache.cassandra.dht.IPartitionerDependentSerializer;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.IVersionedSerializer;
 import org.apache.cassandra.io.util.DataInputPlus;
 import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.net.MessagingService;
 
 /**
@@ -43,9 +43,8 @@ import org.apache.cassandra.net.MessagingService;
  * depth 'hashdepth'. In a perfect binary tree, each leaf contains a
  * sequentially hashed range, and each inner node contains the binary hash of
  * its two children. In the MerkleTree, many ranges will not be split to the
- * full depth of the perfect binary tree: the leaves of this tree are Leaf objects,
- * which contain the computed values of the nodes that would be below them if
- * the tree were perfect.
+ * full depth of the perfect binary tree: the leaves of this tree contain the
+ * computed values of the nodes that would be below them if the tree were perfect.
  *
  * The hash values of the inner nodes of the MerkleTree are calculated lazily based
  * on their children when the hash of a range is requested with hash(range).
@@ -55,11 +54,13 @@ import org.apache.cassandra.net.MessagingService;
  *
  * If two MerkleTrees have the same hashdepth, they represent a perfect tree
  * of the same depth, and can always be compared, regardless of size or splits.
+ *
+ * The nodes are not objects: they are fixed size records packed into a direct buffer (see {@link Nodes}), so that
+ * validating at a high depth does not put millions of small, long lived objects on heap.
  */
-public class MerkleTree implements Serializable
+public class MerkleTree
 {
     public static final MerkleTreeSerializer serializer = new MerkleTreeSerializer();
-    private static final long serialVersionUID = 2L;
 
     public static final byte RECOMMENDED_DEPTH = Byte.MAX_VALUE - 1;
 
@@ -67,6 +68,12 @@ public class MerkleTree implements Serializable
     public static final int FULLY_INCONSISTENT = 1;
     public static final int PARTIALLY_INCONSISTENT = 2;
     private static final byte[] EMPTY_HASH = new byte[0];
+    // the nodes of a tree of the maximum depth validations build (20): a larger tree grows as its nodes are read
+    private static final long MAX_PREALLOCATED_NODES = (1L << 21) - 1;
+
+    // serialized node types
+    private static final byte LEAF = 1;
+    private static final byte INNER = 2;
 
     public final byte hashdepth;
 
@@ -76,7 +83,8 @@ public class MerkleTree implements Serializable
 
     private long maxsize;
     private long size;
-    private Hashable root;
+    private final Nodes nodes;
+    private int root;
 
     public static class MerkleTreeSerializer implements IVersionedSerializer<MerkleTree>
     {
@@ -89,7 +97,48 @@ public class MerkleTree implements Serializable
             // full range
             Token.serializer.serialize(mt.fullRange.left, out, version);
             Token.serializer.serialize(mt.fullRange.right, out, version);
-            Hashable.serializer.serialize(mt.root, out, version);
+            serializeNode(mt, mt.root, mt.fullRange.left, mt.fullRange.right, out, version);
+        }
+
+        private static void serializeNode(MerkleTree mt, int node, Token left, Token right, DataOutputPlus out, int version) throws IOException
+        {
+            byte[] hash = mt.nodes.hash(node);
+            if (mt.nodes.isLeaf(node))
+            {
+                out.writeByte(LEAF);
+                if (hash == null)
+                {
+                    if (version < MessagingService.VERSION_30)
+                        out.writeInt(-1);
+                    else
+                        out.writeByte(-1);
+                }
+                else
+                {
+                    if (version < MessagingService.VERSION_30)
+                        out.writeInt(hash.length);
+                    else
+                        out.writeByte(hash.length);
+                    out.write(hash);
+                }
+                return;
+            }
+
+            out.writeByte(INNER);
+            if (version < MessagingService.VERSION_30)
+            {
+                if (hash == null)
+                    out.writeInt(-1);
+                else
+                {
+                    out.writeInt(hash.length);
+                    out.write(hash);
+                }
+            }
+            Token midpoint = mt.partitioner.midpoint(left, right);
+            Token.serializer.serialize(midpoint, out, version);
+            serializeNode(mt, mt.nodes.lchild(node), left, midpoint, out, version);
+            serializeNode(mt, mt.nodes.rchild(node), midpoint, right, out, version);
         }
 
         public MerkleTree deserialize(DataInputPlus in, int version) throws IOException
@@ -112,10 +161,66 @@ public class MerkleTree implements Serializable
             Token right = Token.serializer.deserialize(in, partitioner, version);
             Range<Token> fullRange = new Range<>(left, right);
 
-            MerkleTree mt = new MerkleTree(partitioner, fullRange, hashdepth, maxsize);
-            mt.size = size;
-            mt.root = Hashable.serializer.deserialize(in, partitioner, version);
-            return mt;
+            // a tree can't be split deeper than its hashdepth, nor in more than maxsize ranges, which we check before
+            // allocating the nodes of the tree
+            if (hashdepth < 0 || hashdepth >= Byte.MAX_VALUE)
+                throw new IOException("Invalid merkle tree depth " + hashdepth);
+            if (size < 1 || size > maxsize || (hashdepth < Long.SIZE - 1 && size > 1L << hashdepth))
+                throw new IOException(String.format("Invalid merkle tree size %d for a depth of %d and a maximum size of %d",
+                                                    size, hashdepth, maxsize));
+
+            // a tree with size leaves has size - 1 inner nodes
+            long nodeCount = 2 * size - 1;
+            MerkleTree mt = new MerkleTree(partitioner, fullRange, hashdepth, maxsize, Math.min(nodeCount, MAX_PREALLOCATED_NODES));
+            try
+            {
+                mt.size = size;
+                mt.root = deserializeNode(mt.nodes, nodeCount, in, partitioner, version);
+                return mt;
+            }
+            catch (Throwable t)
+            {
+                mt.release();
+                throw t;
+            }
+        }
+
+        private static int deserializeNode(Nodes nodes, long nodeCount, DataInput in, IPartitioner p, int version) throws IOException
+        {
+            if (nodes.count() >= nodeCount)
+                throw new IOException("Merkle tree has more than the " + nodeCount + " nodes its size allows");
+
+            byte type = in.readByte();
+            if (type == INNER)
+            {
+                if (version < MessagingService.VERSION_30)
+                {
+                    // the hash of an inner node is recalculated from its children
+                    int hashLen = in.readInt();
+                    if (hashLen > 0)
+                        in.readFully(new byte[hashLen]);
+                }
+                // the token of an inner node is always the midpoint of its range, which we recompute when needed
+                Token.serializer.deserialize(in, p, version);
+                int node = nodes.allocate();
+                int lchild = deserializeNode(nodes, nodeCount, in, p, version);
+                int rchild = deserializeNode(nodes, nodeCount, in, p, version);
+                nodes.children(node, lchild, rchild);
+                return node;
+            }
+            else if (type == LEAF)
+            {
+                int node = nodes.allocate();
+                int hashLen = version < MessagingService.VERSION_30 ? in.readInt() : in.readByte();
+                if (hashLen >= 0)
+                {
+                    byte[] hash = new byte[hashLen];
+                    in.readFully(hash);
+                    nodes.hash(node, hash);
+                }
+                return node;
+            }
+            throw new IOException("Unexpected node type: " + type);
         }
 
         public long serializedSize(MerkleTree mt, int version)
@@ -129,7 +234,26 @@ public class MerkleTree implements Serializable
             size += Token.serializer.serializedSize(mt.fullRange.left, version);
             size += Token.serializer.serializedSize(mt.fullRange.right, version);
 
-            size += Hashable.serializer.serializedSize(mt.root, version);
+            size += serializedSize(mt, mt.root, mt.fullRange.left, mt.fullRange.right, version);
+            return size;
+        }
+
+        private static long serializedSize(MerkleTree mt, int node, Token left, Token right, int version)
+        {
+            long size = 1; // node type
+            int hashLength = mt.nodes.hashLength(node);
+            if (mt.nodes.isLeaf(node))
+            {
+                size += version < MessagingService.VERSION_30 ? TypeSizes.sizeof(1) : 1;
+                return size + Math.max(hashLength, 0);
+            }
+
+            if (version < MessagingService.VERSION_30)
+                size += TypeSizes.sizeof(1) + Math.max(hashLength, 0);
+            Token midpoint = mt.partitioner.midpoint(left, right);
+            size += Token.serializer.serializedSize(midpoint, version);
+            size += serializedSize(mt, mt.nodes.lchild(node), left, midpoint, version);
+            size += serializedSize(mt, mt.nodes.rchild(node), midpoint, right, version);
             return size;
         }
     }
@@ -142,18 +266,22 @@ public class MerkleTree implements Serializable
      * @param maxsize The maximum number of subranges in the tree.
      */
     public MerkleTree(IPartitioner partitioner, Range<Token> range, byte hashdepth, long maxsize)
+    {
+        this(partitioner, range, hashdepth, maxsize, 1);
+        size = 1;
+        root = nodes.allocate();
+    }
+
+    private MerkleTree(IPartitioner partitioner, Range<Token> range, byte hashdepth, long maxsize, long capacity)
     {
         assert hashdepth < Byte.MAX_VALUE;
         this.fullRange = Preconditions.checkNotNull(range);
         this.partitioner = Preconditions.checkNotNull(partitioner);
         this.hashdepth = hashdepth;
         this.maxsize = maxsize;
-
-        size = 1;
-        root = new Leaf(null);
+        this.nodes = new Nodes(capacity);
     }
 
-
     static byte inc(byte in)
     {
         assert in < Byte.MAX_VALUE;
@@ -172,28 +300,26 @@ public class MerkleTree implements Serializable
         byte sizedepth = (byte)(Math.log10(maxsize) / Math.log10(2));
         byte depth = (byte)Math.min(sizedepth, hashdepth);
 
+        nodes.clear((1L << Math.min(depth + 1, 62)) - 1);
         root = initHelper(fullRange.left, fullRange.right, (byte)0, depth);
         size = (long)Math.pow(2, depth);
     }
 
-    private Hashable initHelper(Token left, Token right, byte depth, byte max)
+    private int initHelper(Token left, Token right, byte depth, byte max)
     {
+        int node = nodes.allocate();
         if (depth == max)
             // we've reached the leaves
-            return new Leaf();
+            return node;
         Token midpoint = partitioner.midpoint(left, right);
 
         if (midpoint.equals(left) || midpoint.equals(right))
-            return new Leaf();
-
-        Hashable lchild =  initHelper(left, midpoint, inc(depth), max);
-        Hashable rchild =  initHelper(midpoint, right, inc(depth), max);
-        return new Inner(midpoint, lchild, rchild);
-    }
+            return node;
 
-    Hashable root()
-    {
-        return root;
+        int lchild = initHelper(left, midpoint, inc(depth), max);
+        int rchild = initHelper(midpoint, right, inc(depth), max);
+        nodes.children(node, lchild, rchild);
+        return node;
     }
 
     public IPartitioner partitioner()
@@ -220,6 +346,15 @@ public class MerkleTree implements Serializable
         this.maxsize = maxsize;
     }
 
+    /**
+     * Frees the memory of the nodes of this tree, which can't be used anymore. Trees which aren't released are freed
+     * when they are collected.
+     */
+    public void release()
+    {
+        nodes.free();
+    }
+
     /**
      * @param ltree First tree.
      * @param rtree Second tree.
@@ -233,15 +368,15 @@ public class MerkleTree implements Serializable
         List<TreeRange> diff = new ArrayList<>();
         TreeDifference active = new TreeDifference(ltree.fullRange.left, ltree.fullRange.right, (byte)0);
 
-        Hashable lnode = ltree.find(active);
-        Hashable rnode = rtree.find(active);
-        byte[] lhash = lnode.hash();
-        byte[] rhash = rnode.hash();
-        active.setSize(lnode.sizeOfRange(), rnode.sizeOfRange());
+        int lnode = ltree.find(active);
+        int rnode = rtree.find(active);
+        byte[] lhash = ltree.nodes.hash(lnode);
+        byte[] rhash = rtree.nodes.hash(rnode);
+        active.setSize(ltree.nodes.sizeOfRange(lnode), rtree.nodes.sizeOfRange(rnode));
 
         if (lhash != null && rhash != null && !Arrays.equals(lhash, rhash))
         {
-            if (FULLY_INCONSISTENT == differenceHelper(ltree, rtree, diff, active))
+            if (FULLY_INCONSISTENT == differenceHelper(ltree, rtree, diff, active, lnode, rnode))
                 diff.add(active);
         }
         else if (lhash == null || rhash == null)
@@ -250,13 +385,14 @@ public class MerkleTree implements Serializable
     }
 
     /**
-     * TODO: This function could be optimized into a depth first traversal of
-     * the two trees in parallel.
+     * Takes two trees and a range for which they have hashes, but are inconsistent, and walks both trees
+     * below the nodes matching that range in parallel.
      *
-     * Takes two trees and a range for which they have hashes, but are inconsistent.
+     * @param lactive the node of ltree matching active
+     * @param ractive the node of rtree matching active
      * @return FULLY_INCONSISTENT if active is inconsistent, PARTIALLY_INCONSISTENT if only a subrange is inconsistent.
      */
-    static int differenceHelper(MerkleTree ltree, MerkleTree rtree, List<TreeRange> diff, TreeRange active)
+    static int differenceHelper(MerkleTree ltree, MerkleTree rtree, List<TreeRange> diff, TreeRange active, int lactive, int ractive)
     {
         if (active.depth == Byte.MAX_VALUE)
             return CONSISTENT;
@@ -265,35 +401,35 @@ public class MerkleTree implements Serializable
         TreeDifference left = new TreeDifference(active.left, midpoint, inc(active.depth));
         TreeDifference right = new TreeDifference(midpoint, active.right, inc(active.depth));
         byte[] lhash, rhash;
-        Hashable lnode, rnode;
+        int lnode, rnode;
 
         // see if we should recurse left
-        lnode = ltree.find(left);
-        rnode = rtree.find(left);
-        lhash = lnode.hash();
-        rhash = rnode.hash();
-        left.setSize(lnode.sizeOfRange(), rnode.sizeOfRange());
-        left.setRows(lnode.rowsInRange(), rnode.rowsInRange());
+        lnode = ltree.child(lactive, true);
+        rnode = rtree.child(ractive, true);
+        lhash = ltree.nodes.hash(lnode);
+        rhash = rtree.nodes.hash(rnode);
+        left.setSize(ltree.nodes.sizeOfRange(lnode), rtree.nodes.sizeOfRange(rnode));
+        left.setRows(ltree.nodes.rowsInRange(lnode), rtree.nodes.rowsInRange(rnode));
 
         int ldiff = CONSISTENT;
         boolean lreso = lhash != null && rhash != null;
         if (lreso && !Arrays.equals(lhash, rhash))
-            ldiff = differenceHelper(ltree, rtree, diff, left);
+            ldiff = differenceHelper(ltree, rtree, diff, left, lnode, rnode);
         else if (!lreso)
             ldiff = FULLY_INCONSISTENT;
 
         // see if we should recurse right
-        lnode = ltree.find(right);
-        rnode = rtree.find(right);
-        lhash = lnode.hash();
-        rhash = rnode.hash();
-        right.setSize(lnode.sizeOfRange(), rnode.sizeOfRange());
-        right.setRows(lnode.rowsInRange(), rnode.rowsInRange());
+        lnode = ltree.child(lactive, false);
+        rnode = rtree.child(ractive, false);
+        lhash = ltree.nodes.hash(lnode);
+        rhash = rtree.nodes.hash(rnode);
+        right.setSize(ltree.nodes.sizeOfRange(lnode), rtree.nodes.sizeOfRange(rnode));
+        right.setRows(ltree.nodes.rowsInRange(lnode), rtree.nodes.rowsInRange(rnode));
 
         int rdiff = CONSISTENT;
         boolean rreso = lhash != null && rhash != null;
         if (rreso && !Arrays.equals(lhash, rhash))
-            rdiff = differenceHelper(ltree, rtree, diff, right);
+            rdiff = differenceHelper(ltree, rtree, diff, right, lnode, rnode);
         else if (!rreso)
             rdiff = FULLY_INCONSISTENT;
 
@@ -315,6 +451,19 @@ public class MerkleTree implements Serializable
         return PARTIALLY_INCONSISTENT;
     }
 
+    /**
+     * The node matching one half of the range matched by the given node, with its hash calculated,
+     * or -1 if this tree has no node matching exactly that half.
+     */
+    private int child(int node, boolean left)
+    {
+        if (node < 0 || nodes.isLeaf(node))
+            return -1;
+        int child = left ? nodes.lchild(node) : nodes.rchild(node);
+        nodes.calc(child);
+        return child;
+    }
+
     /**
      * For testing purposes.
      * Gets the smallest range containing the token.
@@ -324,21 +473,21 @@ public class MerkleTree implements Serializable
         return getHelper(root, fullRange.left, fullRange.right, (byte)0, t);
     }
 
-    TreeRange getHelper(Hashable hashable, Token pleft, Token pright, byte depth, Token t)
+    TreeRange getHelper(int node, Token pleft, Token pright, byte depth, Token t)
     {
-        if (hashable instanceof Leaf)
+        if (nodes.isLeaf(node))
         {
             // we've reached a hash: wrap it up and deliver it
-            return new TreeRange(this, pleft, pright, depth, hashable);
+            return new TreeRange(this, pleft, pright, depth, node);
         }
         // else: node.
 
-        Inner node = (Inner)hashable;
-        if (Range.contains(pleft, node.token, t))
+        Token midpoint = partitioner.midpoint(pleft, pright);
+        if (Range.contains(pleft, midpoint, t))
             // left child contains token
-            return getHelper(node.lchild, pleft, node.token, inc(depth), t);
+            return getHelper(nodes.lchild(node), pleft, midpoint, inc(depth), t);
         // else: right child contains token
-        return getHelper(node.rchild, node.token, pright, inc(depth), t);
+        return getHelper(nodes.rchild(node), midpoint, pright, inc(depth), t);
     }
 
     /**
@@ -347,23 +496,23 @@ public class MerkleTree implements Serializable
      */
     public void invalidate(Token t)
     {
-        invalidateHelper(root, fullRange.left, t);
+        invalidateHelper(root, fullRange.left, fullRange.right, t);
     }
 
-    private void invalidateHelper(Hashable hashable, Token pleft, Token t)
+    private void invalidateHelper(int node, Token pleft, Token pright, Token t)
     {
-        hashable.hash(null);
-        if (hashable instanceof Leaf)
+        nodes.hash(node, null);
+        if (nodes.isLeaf(node))
             return;
         // else: node.
 
-        Inner node = (Inner)hashable;
-        if (Range.contains(pleft, node.token, t))
+        Token midpoint = partitioner.midpoint(pleft, pright);
+        if (Range.contains(pleft, midpoint, t))
             // left child contains token
-            invalidateHelper(node.lchild, pleft, t);
+            invalidateHelper(nodes.lchild(node), pleft, midpoint, t);
         else
             // right child contains token
-            invalidateHelper(node.rchild, node.token, t);
+            invalidateHelper(nodes.rchild(node), midpoint, pright, t);
     }
 
     /**
@@ -378,16 +527,16 @@ public class MerkleTree implements Serializable
      */
     public byte[] hash(Range<Token> range)
     {
-        return find(range).hash();
+        return nodes.hash(find(range));
     }
 
     /**
-     * Find the {@link Hashable} node that matches the given {@code range}.
+     * Find the node that matches the given {@code range}, with its hash calculated.
      *
      * @param range Range to find
-     * @return {@link Hashable} found. If nothing found, return {@link Leaf} with null hash.
+     * @return the node found, or -1 if there is none.
      */
-    private Hashable find(Range<Token> range)
+    private int find(Range<Token> range)
     {
         try
         {
@@ -395,40 +544,43 @@ public class MerkleTree implements Serializable
         }
         catch (StopRecursion e)
         {
-            return new Leaf();
+            return -1;
         }
     }
 
     /**
      * @throws StopRecursion If no match could be found for the range.
      */
-    private Hashable findHelper(Hashable current, Range<Token> activeRange, Range<Token> find) throws StopRecursion
+    private int findHelper(int node, Range<Token> activeRange, Range<Token> find) throws StopRecursion
     {
-        if (current instanceof Leaf)
+        if (nodes.isLeaf(node))
         {
             if (!find.contains(activeRange))
                 // we are not fully contained in this range!
                 throw new StopRecursion.BadRange();
-            return current;
+            return node;
         }
         // else: node.
 
-        Inner node = (Inner)current;
-        Range<Token> leftRange = new Range<Token>(activeRange.left, node.token);
-        Range<Token> rightRange = new Range<Token>(node.token, activeRange.right);
-
         if (find.contains(activeRange))
+        {
             // this node is fully contained in the range
-            return node.calc();
+            nodes.calc(node);
+            return node;
+        }
 
         // else: one of our children contains the range
 
+        Token midpoint = partitioner.midpoint(activeRange.left, activeRange.right);
+        Range<Token> leftRange = new Range<Token>(activeRange.left, midpoint);
+        Range<Token> rightRange = new Range<Token>(midpoint, activeRange.right);
+
         if (leftRange.contains(find))
             // left child contains/matches the range
-            return findHelper(node.lchild, leftRange, find);
+            return findHelper(nodes.lchild(node), leftRange, find);
         else if (rightRange.contains(find))
             // right child contains/matches the range
-            return findHelper(node.rchild, rightRange, find);
+            return findHelper(nodes.rchild(node), rightRange, find);
         else
             throw new StopRecursion.BadRange();
     }
@@ -447,7 +599,7 @@ public class MerkleTree implements Serializable
 
         try
         {
-            root = splitHelper(root, fullRange.left, fullRange.right, (byte)0, t);
+            splitHelper(root, fullRange.left, fullRange.right, (byte)0, t);
         }
         catch (StopRecursion.TooDeep e)
         {
@@ -456,15 +608,15 @@ public class MerkleTree implements Serializable
         return true;
     }
 
-    private Hashable splitHelper(Hashable hashable, Token pleft, Token pright, byte depth, Token t) throws StopRecursion.TooDeep
+    private void splitHelper(int node, Token pleft, Token pright, byte depth, Token t) throws StopRecursion.TooDeep
     {
         if (depth >= hashdepth)
             throw new StopRecursion.TooDeep();
 
-        if (hashable instanceof Leaf)
-        {
-            Token midpoint = partitioner.midpoint(pleft, pright);
+        Token midpoint = partitioner.midpoint(pleft, pright);
 
+        if (nodes.isLeaf(node))
+        {
             // We should not create a non-sensical range where start and end are the same token (this is non-sensical because range are
             // start exclusive). Note that we shouldn't hit that unless the full range is very small or we are fairly deep
             if (midpoint.equals(pleft) || midpoint.equals(pright))
@@ -472,20 +624,18 @@ public class MerkleTree implements Serializable
 
             // split
             size++;
-            return new Inner(midpoint, new Leaf(), new Leaf());
+            nodes.split(node);
+            return;
         }
         // else: node.
 
         // recurse on the matching child
-        Inner node = (Inner)hashable;
-
-        if (Range.contains(pleft, node.token, t))
+        if (Range.contains(pleft, midpoint, t))
             // left child contains token
-            node.lchild(splitHelper(node.lchild, pleft, node.token, inc(depth), t));
+            splitHelper(nodes.lchild(node), pleft, midpoint, inc(depth), t);
         else
             // else: right child contains token
-            node.rchild(splitHelper(node.rchild, node.token, pright, inc(depth), t));
-        return node;
+            splitHelper(nodes.rchild(node), midpoint, pright, inc(depth), t);
     }
 
     /**
@@ -502,7 +652,7 @@ public class MerkleTree implements Serializable
         HistogramBuilder histbuild = new HistogramBuilder();
         for (TreeRange range : new TreeRangeIterator(this))
         {
-            histbuild.add(range.hashable.sizeOfRange);
+            histbuild.add(nodes.sizeOfRange(range.node));
         }
         return histbuild.buildWithStdevRangesAroundMean();
     }
@@ -512,7 +662,7 @@ public class MerkleTree implements Serializable
         HistogramBuilder histbuild = new HistogramBuilder();
         for (TreeRange range : new TreeRangeIterator(this))
         {
-            histbuild.add(range.hashable.rowsInRange);
+            histbuild.add(nodes.rowsInRange(range.node));
         }
         return histbuild.buildWithStdevRangesAroundMean();
     }
@@ -522,11 +672,56 @@ public class MerkleTree implements Serializable
     {
         StringBuilder buff = new StringBuilder();
         buff.append("#<MerkleTree root=");
-        root.toString(buff, 8);
+        toString(buff, root, fullRange.left, fullRange.right, 8);
         buff.append(">");
         return buff.toString();
     }
 
+    /**
+     * Recursive toString.
+     */
+    private void toString(StringBuilder buff, int node, Token left, Token right, int maxdepth)
+    {
+        if (nodes.isLeaf(node))
+        {
+            buff.append("#<Leaf ").append(hashToString(nodes.hash(node))).append(">");
+            return;
+        }
+
+        Token midpoint = partitioner.midpoint(left, right);
+        buff.append("#<Inner");
+        buff.append(" ").append(midpoint);
+        buff.append(" hash=").append(hashToString(nodes.hash(node)));
+        buff.append(" children=[");
+        if (maxdepth < 1)
+        {
+            buff.append("#");
+        }
+        else
+        {
+            toString(buff, nodes.lchild(node), left, midpoint, maxdepth - 1);
+            buff.append(" ");
+            toString(buff, nodes.rchild(node), midpoint, right, maxdepth - 1);
+        }
+        buff.append("]>");
+    }
+
+    static String hashToString(byte[] hash)
+    {
+        if (hash == null)
+            return "null";
+        return "[" + Hex.bytesToHex(hash) + "]";
+    }
+
+    /**
+     * The primitive with which all hashing should be accomplished: hashes
+     * a left and right value together.
+     */
+    static byte[] binaryHash(final byte[] left, final byte[] right)
+    {
+        return FBUtilities.xor(left, right);
+    }
+
     public static class TreeDifference extends TreeRange
     {
         private static final long serialVersionUID = 6363654174549968183L;
@@ -570,7 +765,7 @@ public class MerkleTree implements Serializable
 
         public TreeDifference(Token left, Token right, byte depth)
         {
-            super(null, left, right, depth, null);
+            super(null, left, right, depth, -1);
         }
 
         public long totalRows()
@@ -593,25 +788,25 @@ public class MerkleTree implements Serializable
         public static final long serialVersionUID = 1L;
         private final MerkleTree tree;
         public final byte depth;
-        private final Hashable hashable;
+        private final int node;
 
-        TreeRange(MerkleTree tree, Token left, Token right, byte depth, Hashable hashable)
+        TreeRange(MerkleTree tree, Token left, Token right, byte depth, int node)
         {
             super(left, right);
             this.tree = tree;
             this.depth = depth;
-            this.hashable = hashable;
+            this.node = node;
         }
 
         public void hash(byte[] hash)
         {
             assert tree != null : "Not intended for modification!";
-            hashable.hash(hash);
+            tree.nodes.hash(node, hash);
         }
 
         public byte[] hash()
         {
-            return hashable.hash();
+            return tree.nodes.hash(node);
         }
 
         /**
@@ -620,18 +815,18 @@ public class MerkleTree implements Serializable
         public void addHash(RowHash entry)
         {
             assert tree != null : "Not intended for modification!";
-            assert hashable instanceof Leaf;
+            assert tree.nodes.isLeaf(node);
 
-            hashable.addHash(entry.hash, entry.size);
+            tree.nodes.addHash(node, entry.hash, entry.size);
         }
 
         public void ensureHashInitialised()
         {
             assert tree != null : "Not intended for modification!";
-            assert hashable instanceof Leaf;
+            assert tree.nodes.isLeaf(node);
 
-            if (hashable.hash == null)
-                hashable.hash = EMPTY_HASH;
+            if (tree.nodes.hashLength(node) < 0)
+                tree.nodes.hash(node, EMPTY_HASH);
         }
 
         public void addAll(Iterator<RowHash> entries)
@@ -682,7 +877,7 @@ public class MerkleTree implements Serializable
             {
                 TreeRange active = tovisit.pop();
 
-                if (active.hashable instanceof Leaf)
+                if (tree.nodes.isLeaf(active.node))
                 {
                     // found a leaf invalid range
                     if (active.isWrapAround() && !tovisit.isEmpty())
@@ -691,9 +886,9 @@ public class MerkleTree implements Serializable
                     return active;
                 }
 
-                Inner node = (Inner)active.hashable;
-                TreeRange left = new TreeRange(tree, active.left, node.token, inc(active.depth), node.lchild);
-                TreeRange right = new TreeRange(tree, node.token, active.right, inc(active.depth), node.rchild);
+                Token midpoint = tree.partitioner.midpoint(active.left, active.right);
+                TreeRange left = new TreeRange(tree, active.left, midpoint, inc(active.depth), tree.nodes.lchild(active.node));
+                TreeRange right = new TreeRange(tree, midpoint, active.right, inc(active.depth), tree.nodes.rchild(active.node));
 
                 if (right.isWrapAround())
                 {
@@ -718,379 +913,299 @@ public class MerkleTree implements Serializable
     }
 
     /**
-     * An inner node in the MerkleTree. Inners can contain cached hash values, which
-     * are the binary hash of their two children.
+     * The nodes of a tree, packed into fixed size records in a direct buffer and referred to by their position.
+     *
+     * Each record holds the positions of the node's children (-1 for a leaf), the size of and number of rows in its
+     * range, the length of its hash (-1 for a null hash) and a slot for the hash itself. The slots are wide enough for
+     * the SHA-256 digests the Validator computes, and are widened if a longer hash is ever set.
+     *
+     * Inner nodes do not store their token: it is always the midpoint of their range, so it is recomputed when needed.
+     * The hash of an inner node caches the binary hash of its children once calculated by {@link #calc(int)}.
+     *
+     * The buffer is released by {@link #free()}, or when the tree is collected, or as soon as it is replaced when the
+     * tree grows.
      */
-    static class Inner extends Hashable
+    static final class Nodes
     {
-        public static final long serialVersionUID = 1L;
-        static final byte IDENT = 2;
-        public final Token token;
-        private Hashable lchild;
-        private Hashable rchild;
+        private static final int LCHILD = 0;
+        private static final int RCHILD = 4;
+        private static final int SIZE_OF_RANGE = 8;
+        private static final int ROWS_IN_RANGE = 16;
+        private static final int HASH_LENGTH = 24;
+        private static final int HASH = 25;
 
-        private static final InnerSerializer serializer = new InnerSerializer();
+        private static final int DEFAULT_HASH_WIDTH = 32;
 
-        /**
-         * Constructs an Inner with the given token and children, and a null hash.
-         */
-        public Inner(Token token, Hashable lchild, Hashable rchild)
+        private ByteBuffer buffer;
+        private int hashWidth = DEFAULT_HASH_WIDTH;
+        private int recordSize = HASH + DEFAULT_HASH_WIDTH;
+        private int count;
+
+        Nodes(long capacity)
         {
-            super(null);
-            this.token = token;
-            this.lchild = lchild;
-            this.rchild = rchild;
+            buffer = allocate(capacity, recordSize);
         }
 
-        public Hashable lchild()
+        private static ByteBuffer allocate(long capacity, int recordSize)
         {
-            return lchild;
+            // the capacity is only a hint, so don't fail before we actually need that many nodes
+            capacity = Math.max(1, Math.min(capacity, maxCapacity(recordSize)));
+            return ByteBuffer.allocateDirect((int) capacity * recordSize);
         }
 
-        public Hashable rchild()
+        private static int maxCapacity(int recordSize)
         {
-            return rchild;
+            return Integer.MAX_VALUE / recordSize;
         }
 
-        public void lchild(Hashable child)
+        int count()
         {
-            lchild = child;
+            return count;
         }
 
-        public void rchild(Hashable child)
+        void free()
         {
-            rchild = child;
+            if (buffer == null)
+                return;
+            FileUtils.clean(buffer);
+            buffer = null;
         }
 
-        Hashable calc()
+        private int offset(int node)
         {
-            if (hash == null)
-            {
-                // hash and size haven't been calculated; calc children then compute
-                Hashable lnode = lchild.calc();
-                Hashable rnode = rchild.calc();
-                // cache the computed value
-                hash(lnode.hash, rnode.hash);
-                sizeOfRange = lnode.sizeOfRange + rnode.sizeOfRange;
-                rowsInRange = lnode.rowsInRange + rnode.rowsInRange;
-            }
-            return this;
+            return node * recordSize;
         }
 
         /**
-         * Recursive toString.
+         * Discards all the nodes, making room for capacity new ones.
          */
-        public void toString(StringBuilder buff, int maxdepth)
+        void clear(long capacity)
         {
-            buff.append("#<").append(getClass().getSimpleName());
-            buff.append(" ").append(token);
-            buff.append(" hash=").append(Hashable.toString(hash()));
-            buff.append(" children=[");
-            if (maxdepth < 1)
-            {
-                buff.append("#");
-            }
-            else
+            count = 0;
+            if (Math.min(capacity, maxCapacity(recordSize)) * recordSize > buffer.capacity())
             {
-                if (lchild == null)
-                    buff.append("null");
-                else
-                    lchild.toString(buff, maxdepth-1);
-                buff.append(" ");
-                if (rchild == null)
-                    buff.append("null");
-                else
-                    rchild.toString(buff, maxdepth-1);
+                FileUtils.clean(buffer);
+                buffer = allocate(capacity, recordSize);
             }
-            buff.append("]>");
         }
 
-        @Override
-        public String toString()
+        /**
+         * @return a new leaf, with a null hash.
+         */
+        int allocate()
         {
-            StringBuilder buff = new StringBuilder();
-            toString(buff, 1);
-            return buff.toString();
+            if (offset(count) + recordSize > buffer.capacity() || count == maxCapacity(recordSize))
+                resize(hashWidth);
+
+            int node = count++;
+            int offset = offset(node);
+            buffer.putInt(offset + LCHILD, -1);
+            buffer.putInt(offset + RCHILD, -1);
+            buffer.putLong(offset + SIZE_OF_RANGE, 0);
+            buffer.putLong(offset + ROWS_IN_RANGE, 0);
+            buffer.put(offset + HASH_LENGTH, (byte) -1);
+            return node;
         }
 
-        private static class InnerSerializer implements IPartitionerDependentSerializer<Inner>
+        /**
+         * Copies the nodes into a new buffer, with room for twice as many nodes if the hash slots do not change.
+         */
+        private void resize(int newHashWidth)
         {
-            public void serialize(Inner inner, DataOutputPlus out, int version) throws IOException
-            {
-                if (version < MessagingService.VERSION_30)
-                {
-                    if (inner.hash == null)
-                        out.writeInt(-1);
-                    else
-                    {
-                        out.writeInt(inner.hash.length);
-                        out.write(inner.hash);
-                    }
-                }
-                Token.serializer.serialize(inner.token, out, version);
-                Hashable.serializer.serialize(inner.lchild, out, version);
-                Hashable.serializer.serialize(inner.rchild, out, version);
-            }
+            int newRecordSize = HASH + newHashWidth;
+            long capacity = newHashWidth == hashWidth ? 2L * count : buffer.capacity() / recordSize;
+            if (count >= maxCapacity(newRecordSize))
+                throw new IllegalStateException("Merkle tree cannot hold more than " + count + " nodes");
 
-            public Inner deserialize(DataInput in, IPartitioner p, int version) throws IOException
+            ByteBuffer newBuffer = allocate(capacity, newRecordSize);
+            ByteBuffer records = buffer.duplicate();
+            if (newRecordSize == recordSize)
             {
-                if (version < MessagingService.VERSION_30)
-                {
-                    int hashLen = in.readInt();
-                    byte[] hash = hashLen >= 0 ? new byte[hashLen] : null;
-                    if (hash != null)
-                        in.readFully(hash);
-                }
-                Token token = Token.serializer.deserialize(in, p, version);
-                Hashable lchild = Hashable.serializer.deserialize(in, p, version);
-                Hashable rchild = Hashable.serializer.deserialize(in, p, version);
-                return new Inner(token, lchild, rchild);
+                records.limit(offset(count));
+                newBuffer.put(records);
             }
-
-            public long serializedSize(Inner inner, int version)
+            else
             {
-                long size = 0;
-                if (version < MessagingService.VERSION_30)
+                for (int node = 0; node < count; node++)
                 {
-                    size += inner.hash == null
-                                       ? TypeSizes.sizeof(-1)
-                                       : TypeSizes.sizeof(inner.hash().length) + inner.hash().length;
+                    records.limit(offset(node) + recordSize);
+                    records.position(offset(node));
+                    newBuffer.position(node * newRecordSize);
+                    newBuffer.put(records);
                 }
-
-                size += Token.serializer.serializedSize(inner.token, version)
-                + Hashable.serializer.serializedSize(inner.lchild, version)
-                + Hashable.serializer.serializedSize(inner.rchild, version);
-                return size;
             }
-        }
-    }
+            newBuffer.clear();
 
-    /**
-     * A leaf node in the MerkleTree. Because the MerkleTree represents a much
-     * larger perfect binary tree of depth hashdepth, a Leaf object contains
-     * the value that would be contained in the perfect tree at its position.
-     *
-     * When rows are added to the MerkleTree using TreeRange.validate(), the
-     * tree extending below the Leaf is generated in memory, but only the root
-     * is stored in the Leaf.
-     */
-    static class Leaf extends Hashable
-    {
-        public static final long serialVersionUID = 1L;
-        static final byte IDENT = 1;
-        private static final LeafSerializer serializer = new LeafSerializer();
-
-        /**
-         * Constructs a null hash.
-         */
-        public Leaf()
-        {
-            super(null);
+            FileUtils.clean(buffer);
+            buffer = newBuffer;
+            hashWidth = newHashWidth;
+            recordSize = newRecordSize;
         }
 
-        public Leaf(byte[] hash)
+        boolean isLeaf(int node)
         {
-            super(hash);
+            return buffer.getInt(offset(node) + LCHILD) < 0;
         }
 
-        public void toString(StringBuilder buff, int maxdepth)
+        int lchild(int node)
         {
-            buff.append(toString());
+            return buffer.getInt(offset(node) + LCHILD);
         }
 
-        @Override
-        public String toString()
+        int rchild(int node)
         {
-            return "#<Leaf " + Hashable.toString(hash()) + ">";
+            return buffer.getInt(offset(node) + RCHILD);
         }
 
-        private static class LeafSerializer implements IPartitionerDependentSerializer<Leaf>
+        void children(int node, int lchild, int rchild)
         {
-            public void serialize(Leaf leaf, DataOutputPlus out, int version) throws IOException
-            {
-                if (leaf.hash == null)
-                {
-                    if (version < MessagingService.VERSION_30)
-                        out.writeInt(-1);
-                    else
-                        out.writeByte(-1);
-                }
-                else
-                {
-                    if (version < MessagingService.VERSION_30)
-                        out.writeInt(leaf.hash.length);
-                    else
-                        out.writeByte(leaf.hash.length);
-                    out.write(leaf.hash);
-                }
-            }
-
-            public Leaf deserialize(DataInput in, IPartitioner p, int version) throws IOException
-            {
-                int hashLen = version < MessagingService.VERSION_30 ? in.readInt() : in.readByte();
-                byte[] hash = hashLen < 0 ? null : new byte[hashLen];
-                if (hash != null)
-                    in.readFully(hash);
-                return new Leaf(hash);
-            }
-
-            public long serializedSize(Leaf leaf, int version)
-            {
-                long size = version < MessagingService.VERSION_30 ? TypeSizes.sizeof(1) : 1;
-                if (leaf.hash != null)
-                {
-                    size += leaf.hash().length;
-                }
-                return size;
-            }
+            buffer.putInt(offset(node) + LCHILD, lchild);
+            buffer.putInt(offset(node) + RCHILD, rchild);
         }
-    }
 
-    /**
-     * Hash value representing a row, to be used to pass hashes to the MerkleTree.
-     * The byte[] hash value should contain a digest of the key and value of the row
-     * created using a very strong hash function.
-     */
-    public static class RowHash
-    {
-        public final Token token;
-        public final byte[] hash;
-        public final long size;
-        public RowHash(Token token, byte[] hash, long size)
+        /**
+         * Turns the given leaf into an inner node with two new leaves, discarding its hash.
+         */
+        void split(int node)
         {
-            this.token = token;
-            this.hash  = hash;
-            this.size = size;
+            int lchild = allocate();
+            int rchild = allocate();
+            int offset = offset(node);
+            children(node, lchild, rchild);
+            buffer.putLong(offset + SIZE_OF_RANGE, 0);
+            buffer.putLong(offset + ROWS_IN_RANGE, 0);
+            buffer.put(offset + HASH_LENGTH, (byte) -1);
         }
 
-        @Override
-        public String toString()
+        long sizeOfRange(int node)
         {
-            return "#<RowHash " + token + " " + Hashable.toString(hash) + " @ " + size + " bytes>";
+            return node < 0 ? 0 : buffer.getLong(offset(node) + SIZE_OF_RANGE);
         }
-    }
 
-    /**
-     * Abstract class containing hashing logic, and containing a single hash field.
-     */
-    static abstract class Hashable implements Serializable
-    {
-        private static final long serialVersionUID = 1L;
-        private static final IPartitionerDependentSerializer<Hashable> serializer = new HashableSerializer();
-
-        protected byte[] hash;
-        protected long sizeOfRange;
-        protected long rowsInRange;
-
-        protected Hashable(byte[] hash)
+        long rowsInRange(int node)
         {
-            this.hash = hash;
+            return node < 0 ? 0 : buffer.getLong(offset(node) + ROWS_IN_RANGE);
         }
 
-        public byte[] hash()
+        int hashLength(int node)
         {
-            return hash;
+            return node < 0 ? -1 : buffer.get(offset(node) + HASH_LENGTH);
         }
 
-        public long sizeOfRange()
+        /**
+         * @return a copy of the hash of the given node, or null if it has none.
+         */
+        byte[] hash(int node)
         {
-            return sizeOfRange;
-        }
+            int length = hashLength(node);
+            if (length < 0)
+                return null;
 
-        public long rowsInRange()
-        {
-            return rowsInRange;
+            byte[] hash = new byte[length];
+            int offset = offset(node) + HASH;
+            for (int i = 0; i < length; i++)
+                hash[i] = buffer.get(offset + i);
+            return hash;
         }
 
-        void hash(byte[] hash)
+        void hash(int node, byte[] hash)
         {
-            this.hash = hash;
-        }
+            if (hash == null)
+            {
+                buffer.put(offset(node) + HASH_LENGTH, (byte) -1);
+                return;
+            }
 
-        Hashable calc()
-        {
-            return this;
+            ensureHashWidth(hash.length);
+            int offset = offset(node);
+            for (int i = 0; i < hash.length; i++)
+                buffer.put(offset + HASH + i, hash[i]);
+            buffer.put(offset + HASH_LENGTH, (byte) hash.length);
         }
 
         /**
-         * Sets the value of this hash to binaryHash of its children.
-         * @param lefthash Hash of left child.
-         * @param righthash Hash of right child.
+         * Mixes the given value into the hash of the given node, in place. If the node
+         * has no hash, its hash will become the given value.
          */
-        void hash(byte[] lefthash, byte[] righthash)
+        void addHash(int node, byte[] hash, long sizeOfRow)
         {
-            hash = binaryHash(lefthash, righthash);
+            int length = hashLength(node);
+            ensureHashWidth(hash.length);
+            int offset = offset(node);
+            for (int i = 0; i < hash.length; i++)
+            {
+                byte current = i < length ? buffer.get(offset + HASH + i) : 0;
+                buffer.put(offset + HASH + i, (byte) (current ^ hash[i]));
+            }
+            buffer.put(offset + HASH_LENGTH, (byte) Math.max(length, hash.length));
+            buffer.putLong(offset + SIZE_OF_RANGE, buffer.getLong(offset + SIZE_OF_RANGE) + sizeOfRow);
+            buffer.putLong(offset + ROWS_IN_RANGE, buffer.getLong(offset + ROWS_IN_RANGE) + 1);
         }
 
         /**
-         * Mixes the given value into our hash. If our hash is null,
-         * our hash will become the given value.
+         * Calculates the hash, size and row count of the given inner node from its children, unless its hash was
+         * already calculated. Its hash will remain null if the hash of either child is null.
          */
-        void addHash(byte[] righthash, long sizeOfRow)
+        void calc(int node)
         {
-            if (hash == null)
-                hash = righthash;
-            else
-                hash = binaryHash(hash, righthash);
-            this.sizeOfRange += sizeOfRow;
-            this.rowsInRange += 1;
+            if (isLeaf(node) || hashLength(node) >= 0)
+                return;
+
+            int lchild = lchild(node);
+            int rchild = rchild(node);
+            calc(lchild);
+            calc(rchild);
+
+            int offset = offset(node);
+            int llength = hashLength(lchild);
+            int rlength = hashLength(rchild);
+            if (llength >= 0 && rlength >= 0)
+            {
+                int loffset = offset(lchild) + HASH;
+                int roffset = offset(rchild) + HASH;
+                int length = Math.max(llength, rlength);
+                for (int i = 0; i < length; i++)
+                {
+                    byte l = i < llength ? buffer.get(loffset + i) : 0;
+                    byte r = i < rlength ? buffer.get(roffset + i) : 0;
+                    buffer.put(offset + HASH + i, (byte) (l ^ r));
+                }
+                buffer.put(offset + HASH_LENGTH, (byte) length);
+            }
+            buffer.putLong(offset + SIZE_OF_RANGE, sizeOfRange(lchild) + sizeOfRange(rchild));
+            buffer.putLong(offset + ROWS_IN_RANGE, rowsInRange(lchild) + rowsInRange(rchild));
         }
 
-        /**
-         * The primitive with which all hashing should be accomplished: hashes
-         * a left and right value together.
-         */
-        static byte[] binaryHash(final byte[] left, final byte[] right)
+        private void ensureHashWidth(int length)
         {
-            return FBUtilities.xor(left, right);
+            if (length > Byte.MAX_VALUE)
+                throw new IllegalArgumentException("Merkle tree hashes cannot be longer than " + Byte.MAX_VALUE + " bytes");
+            if (length > hashWidth)
+                resize(length);
         }
+    }
 
-        public abstract void toString(StringBuilder buff, int maxdepth);
-
-        public static String toString(byte[] hash)
+    /**
+     * Hash value representing a row, to be used to pass hashes to the MerkleTree.
+     * The byte[] hash value should contain a digest of the key and value of the row
+     * created using a very strong hash function.
+     */
+    public static class RowHash
+    {
+        public final Token token;
+        public final byte[] hash;
+        public final long size;
+        public RowHash(Token token, byte[] hash, long size)
         {
-            if (hash == null)
-                return "null";
-            return "[" + Hex.bytesToHex(hash) + "]";
+            this.token = token;
+            this.hash  = hash;
+            this.size = size;
         }
 
-        private static class HashableSerializer implements IPartitionerDependentSerializer<Hashable>
+        @Override
+        public String toString()
         {
-            public void serialize(Hashable h, DataOutputPlus out, int version) throws IOException
-            {
-                if (h instanceof Inner)
-                {
-                    out.writeByte(Inner.IDENT);
-                    Inner.serializer.serialize((Inner)h, out, version);
-                }
-                else if (h instanceof Leaf)
-                {
-                    out.writeByte(Leaf.IDENT);
-                    Leaf.serializer.serialize((Leaf) h, out, version);
-                }
-                else
-                    throw new IOException("Unexpected Hashable: " + h.getClass().getCanonicalName());
-            }
-
-            public Hashable deserialize(DataInput in, IPartitioner p, int version) throws IOException
-            {
-                byte ident = in.readByte();
-                if (Inner.IDENT == ident)
-                    return Inner.serializer.deserialize(in, p, version);
-                else if (Leaf.IDENT == ident)
-                    return Leaf.serializer.deserialize(in, p, version);
-                else
-                    throw new IOException("Unexpected Hashable: " + ident);
-            }
-
-            public long serializedSize(Hashable h, int version)
-            {
-                if (h instanceof Inner)
-                    return 1 + Inner.serializer.serializedSize((Inner) h, version);
-                else if (h instanceof Leaf)
-                    return 1 + Leaf.serializer.serializedSize((Leaf) h, version);
-                throw new AssertionError(h.getClass());
-            }
+            return "#<RowHash " + token + " " + hashToString(hash) + " @ " + size + " bytes>";
         }
     }
 
@@ -197,6 +197,15 @@ public class MerkleTrees implements Iterable<Map.Entry<Range<Token>, MerkleTree>
         return size;
     }
 
+    /**
+     * Frees the memory of all the trees, see {@link MerkleTree#release()}.
+     */
+    public void release()
+    {
+        for (MerkleTree tree : merkleTrees.values())
+            tree.release();
+    }
+
     @VisibleForTesting
     public void maxsize(Range<Token> range, int maxsize)
     {
@@ -393,15 +402,24 @@ public class MerkleTrees implements Iterable<Map.Entry<Range<Token>, MerkleTree>
             Collection<MerkleTree> trees = new ArrayList<>(nTrees);
             if (nTrees > 0)
             {
-                for (int i = 0; i < nTrees; i++)
+                try
                 {
-                    MerkleTree tree = MerkleTree.serializer.deserialize(in, version);
-                    trees.add(tree);
+                    for (int i = 0; i < nTrees; i++)
+                    {
+                        MerkleTree tree = MerkleTree.serializer.deserialize(in, version);
+                        trees.add(tree);
 
-                    if (partitioner == null)
-                        partitioner = tree.partitioner();
-                    else
-                        assert tree.partitioner() == partitioner;
+                        if (partitioner == null)
+                            partitioner = tree.partitioner();
+                        else
+                            assert tree.partitioner() == partitioner;
+                    }
+                }
+                catch (Throwable t)
+                {
+                    for (MerkleTree tree : trees)
+                        tree.release();
+                    throw t;
                 }
             }
 
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+
+/**
+ * A streaming, non cryptographic, 128 bits MurmurHash3 (x64 variant, seed 0) exposed as a {@link MessageDigest}, so
+ * that it can be used wherever data is digested for comparison between replicas. Its output is the same as
+ * Guava's {@code Hashing.murmur3_128()}, and unlike {@link MurmurHash#hash3_x64_128}, it doesn't sign-extend the tail bytes.
+ *
+ * Instances are not thread safe, and are meant to be reused through {@link FBUtilities#threadLocalMurmur3Digest()}.
+ */
+public class Murmur3Digest extends MessageDigest
+{
+    public static final String ALGORITHM = "MurmurHash3-128";
+    private static final int DIGEST_LENGTH = 16;
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private long h1;
+    private long h2;
+
+    // the bytes of the current, incomplete, block, little endian
+    private long k1;
+    private long k2;
+    private int pending;
+
+    private long length;
+
+    public Murmur3Digest()
+    {
+        super(ALGORITHM);
+    }
+
+    protected int engineGetDigestLength()
+    {
+        return DIGEST_LENGTH;
+    }
+
+    protected void engineUpdate(byte input)
+    {
+        add(input);
+        length++;
+    }
+
+    protected void engineUpdate(byte[] input, int offset, int len)
+    {
+        length += len;
+        int end = offset + len;
+        while (pending != 0 && offset < end)
+            add(input[offset++]);
+
+        for (; end - offset >= DIGEST_LENGTH; offset += DIGEST_LENGTH)
+            mix(getLong(input, offset), getLong(input, offset + 8));
+
+        while (offset < end)
+            add(input[offset++]);
+    }
+
+    @Override
+    protected void engineUpdate(ByteBuffer input)
+    {
+        if (input.hasArray())
+        {
+            super.engineUpdate(input);
+            return;
+        }
+
+        // MessageDigestSpi would copy direct buffers to a temporary array
+        int position = input.position();
+        int limit = input.limit();
+        length += limit - position;
+        while (pending != 0 && position < limit)
+            add(input.get(position++));
+
+        if (limit - position >= DIGEST_LENGTH)
+        {
+            ByteBuffer littleEndian = input.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            for (; limit - position >= DIGEST_LENGTH; position += DIGEST_LENGTH)
+                mix(littleEndian.getLong(position), littleEndian.getLong(position + 8));
+        }
+
+        while (position < limit)
+            add(input.get(position++));
+        input.position(limit);
+    }
+
+    protected byte[] engineDigest()
+    {
+        long h1 = this.h1;
+        long h2 = this.h2;
+        if (pending > 8)
+            h2 ^= mixK2(k2);
+        if (pending > 0)
+            h1 ^= mixK1(k1);
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+
+        byte[] digest = new byte[DIGEST_LENGTH];
+        for (int i = 0; i < 8; i++)
+        {
+            digest[i] = (byte) (h1 >>> (i * 8));
+            digest[i + 8] = (byte) (h2 >>> (i * 8));
+        }
+        engineReset();
+        return digest;
+    }
+
+    protected void engineReset()
+    {
+        h1 = 0;
+        h2 = 0;
+        k1 = 0;
+        k2 = 0;
+        pending = 0;
+        length = 0;
+    }
+
+    private void add(byte b)
+    {
+        long value = b & 0xFFL;
+        if (pending < 8)
+            k1 |= value << (pending << 3);
+        else
+            k2 |= value << ((pending - 8) << 3);
+
+        if (++pending == DIGEST_LENGTH)
+        {
+            mix(k1, k2);
+            k1 = 0;
+            k2 = 0;
+            pending = 0;
+        }
+    }
+
+    private void mix(long k1, long k2)
+    {
+        h1 ^= mixK1(k1);
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        h2 ^= mixK2(k2);
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private static long mixK1(long k1)
+    {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2)
+    {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix(long k)
+    {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long getLong(byte[] bytes, int offset)
+    {
+        return (bytes[offset] & 0xFFL)
+             | (bytes[offset + 1] & 0xFFL) << 8
+             | (bytes[offset + 2] & 0xFFL) << 16
+             | (bytes[offset + 3] & 0xFFL) << 24
+             | (bytes[offset + 4] & 0xFFL) << 32
+             | (bytes[offset + 5] & 0xFFL) << 40
+             | (bytes[offset + 6] & 0xFFL) << 48
+             | (bytes[offset + 7] & 0xFFL) << 56;
+    }
+}
@@ -73,7 +73,18 @@ public class TopKSampler<T>
         if (enabled)
         {
             enabled = false;
-            results = summary.topK(count);
+            // StreamSummary doesn't keep its counters sorted when they are incremented by more than one, so sort
+            // all of them rather than trusting its top k
+            results = new ArrayList<>(summary.topK(summary.getCapacity()));
+            Collections.sort(results, new Comparator<Counter<T>>()
+            {
+                public int compare(Counter<T> left, Counter<T> right)
+                {
+                    return Long.compare(right.getCount(), left.getCount());
+                }
+            });
+            if (results.size() > count)
+                results = results.subList(0, count);
             cardinality = hll.cardinality();
         }
         return new SamplerResult<T>(results, cardinality);
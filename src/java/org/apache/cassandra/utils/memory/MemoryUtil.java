@@ -118,6 +118,11 @@ public abstract class MemoryUtil
             putIntByByte(address, l);
     }
 
+    public static void setIntVolatile(long address, int l)
+    {
+        unsafe.putIntVolatile(null, address, l);
+    }
+
     public static void setLong(long address, long l)
     {
         if (UNALIGNED)
@@ -141,6 +146,11 @@ public abstract class MemoryUtil
         return UNALIGNED ? unsafe.getInt(address) : getIntByByte(address);
     }
 
+    public static int getIntVolatile(long address)
+    {
+        return unsafe.getIntVolatile(null, address);
+    }
+
     public static long getLong(long address)
     {
         return UNALIGNED ? unsafe.getLong(address) : getLongByByte(address);
@@ -315,6 +325,11 @@ public abstract class MemoryUtil
         }
     }
 
+    public static void setMemory(long address, long count, byte b)
+    {
+        unsafe.setMemory(address, count, b);
+    }
+
     public static void setBytes(long address, ByteBuffer buffer)
     {
         int start = buffer.position();
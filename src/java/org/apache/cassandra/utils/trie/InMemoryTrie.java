@@ -0,0 +1,640 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils.trie;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.cassandra.utils.AbstractIterator;
+import org.apache.cassandra.utils.memory.MemoryUtil;
+
+/**
+ * A trie mapping byte-comparable keys to values, whose nodes are kept in off-heap memory.
+ *
+ * Values are visited in unsigned lexicographic order of their keys, with a key that is a prefix of another
+ * sorting first. The trie supports a single writer and any number of concurrent readers; readers never block and
+ * see either the state before or after any given insertion. Callers are responsible for serializing writes.
+ *
+ * Nodes are addressed by int pointers into a list of off-heap chunks: the top bits select the chunk, the low
+ * {@link #CHUNK_SHIFT} bits the offset within it. A zero pointer means "no node", and a negative pointer refers
+ * directly to a value, stored on heap at index ~pointer. There are three node types, each starting with an int
+ * header whose low byte is the node type:
+ *
+ * SPARSE: [header: type | count << 8 | capacity << 16][value pointer][transition bytes * capacity][child pointers * capacity]
+ * DENSE:  [header: type][value pointer][child pointers * 256]
+ * CHAIN:  [header: type | length << 8][child pointer][transition bytes * length]
+ *
+ * Sparse nodes keep their transitions unsorted, so that a child can be added in place by writing it after the
+ * existing ones and then publishing the incremented count. Chains are single-child paths compressed into one node;
+ * they are what keeps the memory per key low once the keys have diverged.
+ *
+ * Memory is never reused: a node that is replaced by a larger or split copy is simply abandoned, which is what
+ * lets readers keep traversing it safely. All the memory is released at once by {@link #release()}, which must
+ * only be called once no reader can access the trie anymore.
+ */
+public class InMemoryTrie<T>
+{
+    private static final int NONE = 0;
+
+    private static final int SPARSE = 1;
+    private static final int DENSE = 2;
+    private static final int CHAIN = 3;
+
+    private static final int HEADER_OFFSET = 0;
+    private static final int CONTENT_OFFSET = 4;
+    private static final int CHAIN_CHILD_OFFSET = 4;
+    private static final int BODY_OFFSET = 8;
+
+    static final int SMALL_SPARSE_CAPACITY = 4;
+    static final int LARGE_SPARSE_CAPACITY = 24;
+    private static final int DENSE_SIZE = BODY_OFFSET + 256 * 4;
+    static final int MAX_CHAIN_LENGTH = 1024;
+
+    private static final int CHUNK_SHIFT = 16;
+    private static final int MAX_CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int OFFSET_MASK = MAX_CHUNK_SIZE - 1;
+    private static final int INITIAL_CHUNK_SIZE = 2048;
+    private static final int MAX_CHUNKS = 1 << (31 - CHUNK_SHIFT);
+
+    private static final int CONTENT_CHUNK_SHIFT = 8;
+    private static final int CONTENT_CHUNK_SIZE = 1 << CONTENT_CHUNK_SHIFT;
+    private static final int CONTENT_CHUNK_MASK = CONTENT_CHUNK_SIZE - 1;
+
+    private static final long ROOT_SLOT = -1;
+
+    // addresses of the off-heap chunks; only ever replaced by a longer copy
+    private volatile long[] chunks = new long[0];
+    private volatile Object[][] contents = new Object[0][];
+    private volatile int root = NONE;
+    private volatile int size;
+
+    // writer-only state
+    private int chunkCapacity;
+    private int allocationOffset;
+    private int contentCount;
+    private volatile long allocatedBytes;
+
+    /**
+     * @return the value mapped to {@code key}, or null if there is none
+     */
+    public T get(byte[] key)
+    {
+        int ptr = root;
+        int depth = 0;
+        while (true)
+        {
+            if (ptr == NONE)
+                return null;
+
+            if (isContent(ptr))
+                return depth == key.length ? content(ptr) : null;
+
+            long address = address(ptr);
+            int header = MemoryUtil.getIntVolatile(address + HEADER_OFFSET);
+            if (type(header) == CHAIN)
+            {
+                int length = chainLength(header);
+                if (depth + length > key.length)
+                    return null;
+                for (int i = 0; i < length; i++)
+                    if (MemoryUtil.getByte(address + BODY_OFFSET + i) != key[depth + i])
+                        return null;
+                depth += length;
+                ptr = MemoryUtil.getIntVolatile(address + CHAIN_CHILD_OFFSET);
+            }
+            else
+            {
+                if (depth == key.length)
+                    return content(MemoryUtil.getIntVolatile(address + CONTENT_OFFSET));
+                long slot = childSlot(address, header, key[depth] & 0xFF);
+                ptr = slot == 0 ? NONE : MemoryUtil.getIntVolatile(slot);
+                ++depth;
+            }
+        }
+    }
+
+    /**
+     * Maps {@code key} to {@code value} unless the key is already mapped. Must not be called concurrently with
+     * another write.
+     *
+     * @return the value already mapped to {@code key}, or null if {@code value} was inserted
+     */
+    public T putIfAbsent(byte[] key, T value)
+    {
+        assert value != null;
+        long slot = ROOT_SLOT;
+        int ptr = root;
+        int depth = 0;
+        while (true)
+        {
+            if (ptr == NONE)
+            {
+                attach(slot, createTail(key, depth, addContent(value)));
+                break;
+            }
+
+            if (isContent(ptr))
+            {
+                if (depth == key.length)
+                    return content(ptr);
+
+                // the existing key is a prefix of ours: turn it into a node with both a value and a child
+                int node = newSparse(SMALL_SPARSE_CAPACITY);
+                long nodeAddress = address(node);
+                MemoryUtil.setInt(nodeAddress + CONTENT_OFFSET, ptr);
+                addChild(node, nodeAddress, key[depth] & 0xFF, createTail(key, depth + 1, addContent(value)));
+                attach(slot, node);
+                break;
+            }
+
+            long address = address(ptr);
+            int header = MemoryUtil.getInt(address + HEADER_OFFSET);
+            if (type(header) == CHAIN)
+            {
+                int length = chainLength(header);
+                int matched = 0;
+                while (matched < length
+                       && depth + matched < key.length
+                       && MemoryUtil.getByte(address + BODY_OFFSET + matched) == key[depth + matched])
+                    ++matched;
+
+                if (matched == length)
+                {
+                    slot = address + CHAIN_CHILD_OFFSET;
+                    ptr = MemoryUtil.getInt(slot);
+                    depth += length;
+                    continue;
+                }
+
+                attach(slot, splitChain(address, length, matched, key, depth, value));
+                break;
+            }
+
+            if (depth == key.length)
+            {
+                int existing = MemoryUtil.getInt(address + CONTENT_OFFSET);
+                if (existing != NONE)
+                    return content(existing);
+                MemoryUtil.setIntVolatile(address + CONTENT_OFFSET, addContent(value));
+                break;
+            }
+
+            int transition = key[depth] & 0xFF;
+            long childSlot = childSlot(address, header, transition);
+            if (childSlot != 0)
+            {
+                slot = childSlot;
+                ptr = MemoryUtil.getInt(childSlot);
+                ++depth;
+                continue;
+            }
+
+            int updated = addChild(ptr, address, transition, createTail(key, depth + 1, addContent(value)));
+            if (updated != ptr)
+                attach(slot, updated);
+            break;
+        }
+        size = size + 1;
+        return null;
+    }
+
+    /**
+     * @return the number of values in the trie
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * @return the total off-heap memory allocated by this trie, in bytes
+     */
+    public long allocatedBytes()
+    {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return an iterator over all the values of the trie, in key order
+     */
+    public Iterator<T> values()
+    {
+        return new ValueIterator(null);
+    }
+
+    /**
+     * @return an iterator over the values whose key is greater than or equal to {@code from}, in key order
+     */
+    public Iterator<T> valuesFrom(byte[] from)
+    {
+        return new ValueIterator(from);
+    }
+
+    /**
+     * Frees all the off-heap memory of this trie. No reader or writer may access the trie after this is called.
+     */
+    public void release()
+    {
+        long[] current = chunks;
+        chunks = new long[0];
+        root = NONE;
+        for (long chunk : current)
+            MemoryUtil.free(chunk);
+    }
+
+    private static boolean isContent(int ptr)
+    {
+        return ptr < 0;
+    }
+
+    private static int type(int header)
+    {
+        return header & 0xFF;
+    }
+
+    private static int chainLength(int header)
+    {
+        return header >>> 8;
+    }
+
+    private static int sparseCount(int header)
+    {
+        return (header >>> 8) & 0xFF;
+    }
+
+    private static int sparseCapacity(int header)
+    {
+        return header >>> 16;
+    }
+
+    private static int sparseSize(int capacity)
+    {
+        return BODY_OFFSET + capacity * 5;
+    }
+
+    private static int chainSize(int length)
+    {
+        return BODY_OFFSET + ((length + 3) & ~3);
+    }
+
+    private long address(int ptr)
+    {
+        return chunks[ptr >>> CHUNK_SHIFT] + (ptr & OFFSET_MASK);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T content(int ptr)
+    {
+        if (ptr == NONE)
+            return null;
+        int index = ~ptr;
+        return (T) contents[index >>> CONTENT_CHUNK_SHIFT][index & CONTENT_CHUNK_MASK];
+    }
+
+    /**
+     * @return the address of the slot holding the child for {@code transition}, or 0 if the node has no such slot
+     */
+    private static long childSlot(long address, int header, int transition)
+    {
+        if (type(header) == DENSE)
+            return address + BODY_OFFSET + transition * 4;
+
+        int count = sparseCount(header);
+        int capacity = sparseCapacity(header);
+        for (int i = 0; i < count; i++)
+        {
+            if ((MemoryUtil.getByte(address + BODY_OFFSET + i) & 0xFF) == transition)
+                return address + BODY_OFFSET + capacity + i * 4;
+        }
+        return 0;
+    }
+
+    private void attach(long slot, int ptr)
+    {
+        if (slot == ROOT_SLOT)
+            root = ptr;
+        else
+            MemoryUtil.setIntVolatile(slot, ptr);
+    }
+
+    private int addContent(T value)
+    {
+        int index = contentCount++;
+        int chunk = index >>> CONTENT_CHUNK_SHIFT;
+        Object[][] current = contents;
+        if (chunk == current.length)
+        {
+            current = Arrays.copyOf(current, chunk + 1);
+            current[chunk] = new Object[CONTENT_CHUNK_SIZE];
+            contents = current;
+        }
+        current[chunk][index & CONTENT_CHUNK_MASK] = value;
+        return ~index;
+    }
+
+    /**
+     * Creates the chain of nodes leading from {@code key[from]} to the end of the key, and then to {@code contentPtr}.
+     */
+    private int createTail(byte[] key, int from, int contentPtr)
+    {
+        int child = contentPtr;
+        int end = key.length;
+        while (end > from)
+        {
+            int start = Math.max(from, end - MAX_CHAIN_LENGTH);
+            int chain = allocate(chainSize(end - start));
+            long address = address(chain);
+            MemoryUtil.setInt(address + HEADER_OFFSET, CHAIN | ((end - start) << 8));
+            MemoryUtil.setInt(address + CHAIN_CHILD_OFFSET, child);
+            MemoryUtil.setBytes(key, start, address + BODY_OFFSET, end - start);
+            child = chain;
+            end = start;
+        }
+        return child;
+    }
+
+    private int copyChain(long address, int start, int end, int child)
+    {
+        int chain = allocate(chainSize(end - start));
+        long chainAddress = address(chain);
+        MemoryUtil.setInt(chainAddress + HEADER_OFFSET, CHAIN | ((end - start) << 8));
+        MemoryUtil.setInt(chainAddress + CHAIN_CHILD_OFFSET, child);
+        MemoryUtil.setBytes(address + BODY_OFFSET + start, chainAddress + BODY_OFFSET, end - start);
+        return chain;
+    }
+
+    /**
+     * Splits the chain at {@code address} where {@code key} diverges from it, after {@code matched} bytes, returning
+     * the (unpublished) replacement for the chain.
+     */
+    private int splitChain(long address, int length, int matched, byte[] key, int depth, T value)
+    {
+        int child = MemoryUtil.getInt(address + CHAIN_CHILD_OFFSET);
+        int rest = matched + 1 < length ? copyChain(address, matched + 1, length, child) : child;
+
+        int branch = newSparse(SMALL_SPARSE_CAPACITY);
+        long branchAddress = address(branch);
+        addChild(branch, branchAddress, MemoryUtil.getByte(address + BODY_OFFSET + matched) & 0xFF, rest);
+
+        if (depth + matched == key.length)
+            MemoryUtil.setInt(branchAddress + CONTENT_OFFSET, addContent(value));
+        else
+            addChild(branch, branchAddress, key[depth + matched] & 0xFF, createTail(key, depth + matched + 1, addContent(value)));
+
+        return matched > 0 ? copyChain(address, 0, matched, branch) : branch;
+    }
+
+    private int newSparse(int capacity)
+    {
+        int node = allocate(sparseSize(capacity));
+        long address = address(node);
+        MemoryUtil.setMemory(address, sparseSize(capacity), (byte) 0);
+        MemoryUtil.setInt(address + HEADER_OFFSET, SPARSE | (capacity << 16));
+        return node;
+    }
+
+    /**
+     * Adds a child to the given sparse node, in place if it has room, or to a larger copy of it otherwise.
+     *
+     * @return the pointer to the node holding the new child, i.e. {@code ptr} if the child was added in place
+     */
+    private int addChild(int ptr, long address, int transition, int child)
+    {
+        int header = MemoryUtil.getInt(address + HEADER_OFFSET);
+        int count = sparseCount(header);
+        int capacity = sparseCapacity(header);
+        if (count < capacity)
+        {
+            MemoryUtil.setByte(address + BODY_OFFSET + count, (byte) transition);
+            MemoryUtil.setIntVolatile(address + BODY_OFFSET + capacity + count * 4, child);
+            // publishing the count makes the new child visible to readers
+            MemoryUtil.setIntVolatile(address + HEADER_OFFSET, SPARSE | ((count + 1) << 8) | (capacity << 16));
+            return ptr;
+        }
+
+        int content = MemoryUtil.getInt(address + CONTENT_OFFSET);
+        if (capacity < LARGE_SPARSE_CAPACITY)
+        {
+            int copy = newSparse(LARGE_SPARSE_CAPACITY);
+            long copyAddress = address(copy);
+            MemoryUtil.setInt(copyAddress + CONTENT_OFFSET, content);
+            for (int i = 0; i < count; i++)
+                addChild(copy, copyAddress, MemoryUtil.getByte(address + BODY_OFFSET + i) & 0xFF, MemoryUtil.getInt(address + BODY_OFFSET + capacity + i * 4));
+            addChild(copy, copyAddress, transition, child);
+            return copy;
+        }
+
+        int dense = allocate(DENSE_SIZE);
+        long denseAddress = address(dense);
+        MemoryUtil.setMemory(denseAddress, DENSE_SIZE, (byte) 0);
+        MemoryUtil.setInt(denseAddress + HEADER_OFFSET, DENSE);
+        MemoryUtil.setInt(denseAddress + CONTENT_OFFSET, content);
+        for (int i = 0; i < count; i++)
+        {
+            int t = MemoryUtil.getByte(address + BODY_OFFSET + i) & 0xFF;
+            MemoryUtil.setInt(denseAddress + BODY_OFFSET + t * 4, MemoryUtil.getInt(address + BODY_OFFSET + capacity + i * 4));
+        }
+        MemoryUtil.setInt(denseAddress + BODY_OFFSET + transition * 4, child);
+        return dense;
+    }
+
+    private int allocate(int size)
+    {
+        assert size <= MAX_CHUNK_SIZE && (size & 3) == 0;
+        if (allocationOffset + size > chunkCapacity)
+            newChunk();
+        int ptr = ((chunks.length - 1) << CHUNK_SHIFT) | allocationOffset;
+        allocationOffset += size;
+        return ptr;
+    }
+
+    private void newChunk()
+    {
+        long[] current = chunks;
+        if (current.length == MAX_CHUNKS)
+            throw new IllegalStateException("Trie has reached its maximum size of " + ((long) MAX_CHUNKS << CHUNK_SHIFT) + " bytes");
+
+        int capacity = current.length >= 3 ? MAX_CHUNK_SIZE : INITIAL_CHUNK_SIZE << (2 * current.length);
+        long[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = MemoryUtil.allocate(capacity);
+        chunks = updated;
+        chunkCapacity = capacity;
+        // pointer 0 is reserved to mean "no node", so the very first chunk starts at a non-zero offset
+        allocationOffset = current.length == 0 ? 4 : 0;
+        allocatedBytes = allocatedBytes + capacity;
+    }
+
+    /**
+     * Depth-first iterator over the values of the trie. The nodes still to visit are kept on an explicit stack,
+     * along with their depth and whether their path still equals the prefix of the lower bound ("bounded"), in
+     * which case the transitions below the bound are skipped.
+     */
+    private class ValueIterator extends AbstractIterator<T>
+    {
+        private final byte[] from;
+
+        private int[] ptrs = new int[32];
+        private int[] depths = new int[32];
+        private boolean[] bounded = new boolean[32];
+        private int top;
+
+        private final int[] sortedTransitions = new int[LARGE_SPARSE_CAPACITY];
+        private final int[] sortedChildren = new int[LARGE_SPARSE_CAPACITY];
+
+        ValueIterator(byte[] from)
+        {
+            this.from = from;
+            push(root, 0, from != null);
+        }
+
+        protected T computeNext()
+        {
+            while (top > 0)
+            {
+                --top;
+                int ptr = ptrs[top];
+                int depth = depths[top];
+                boolean isBounded = bounded[top];
+
+                if (ptr == NONE)
+                    continue;
+
+                if (isContent(ptr))
+                {
+                    if (accepts(depth, isBounded))
+                        return content(ptr);
+                    continue;
+                }
+
+                long address = address(ptr);
+                int header = MemoryUtil.getIntVolatile(address + HEADER_OFFSET);
+                switch (type(header))
+                {
+                    case CHAIN:
+                        pushChainChild(address, header, depth, isBounded);
+                        continue;
+                    case DENSE:
+                        pushDenseChildren(address, depth, isBounded);
+                        break;
+                    default:
+                        pushSparseChildren(address, header, depth, isBounded);
+                }
+
+                // the node's own value sorts before any of its children, which we've just pushed
+                int content = MemoryUtil.getIntVolatile(address + CONTENT_OFFSET);
+                if (content != NONE && accepts(depth, isBounded))
+                    return content(content);
+            }
+            return endOfData();
+        }
+
+        private boolean accepts(int depth, boolean isBounded)
+        {
+            // a bounded path shorter than the bound is a strict prefix of it, so sorts before it
+            return !isBounded || depth >= from.length;
+        }
+
+        private void pushChainChild(long address, int header, int depth, boolean isBounded)
+        {
+            int length = chainLength(header);
+            int child = MemoryUtil.getIntVolatile(address + CHAIN_CHILD_OFFSET);
+            if (isBounded)
+            {
+                for (int i = 0; i < length && depth + i < from.length; i++)
+                {
+                    int c = MemoryUtil.getByte(address + BODY_OFFSET + i) & 0xFF;
+                    int b = from[depth + i] & 0xFF;
+                    if (c < b)
+                        return;
+                    if (c > b)
+                    {
+                        isBounded = false;
+                        break;
+                    }
+                }
+            }
+            push(child, depth + length, isBounded);
+        }
+
+        private void pushDenseChildren(long address, int depth, boolean isBounded)
+        {
+            int lowest = 0;
+            int boundTransition = -1;
+            if (isBounded && depth < from.length)
+            {
+                boundTransition = from[depth] & 0xFF;
+                lowest = boundTransition;
+            }
+
+            for (int transition = 255; transition >= lowest; transition--)
+            {
+                int child = MemoryUtil.getIntVolatile(address + BODY_OFFSET + transition * 4);
+                if (child != NONE)
+                    push(child, depth + 1, transition == boundTransition);
+            }
+        }
+
+        private void pushSparseChildren(long address, int header, int depth, boolean isBounded)
+        {
+            int count = sparseCount(header);
+            int capacity = sparseCapacity(header);
+            int boundTransition = isBounded && depth < from.length ? from[depth] & 0xFF : -1;
+
+            // insertion sort of the (few) transitions, in descending order so that the smallest is pushed last
+            int sorted = 0;
+            for (int i = 0; i < count; i++)
+            {
+                int transition = MemoryUtil.getByte(address + BODY_OFFSET + i) & 0xFF;
+                if (transition < boundTransition)
+                    continue;
+                int child = MemoryUtil.getIntVolatile(address + BODY_OFFSET + capacity + i * 4);
+                int j = sorted++;
+                while (j > 0 && sortedTransitions[j - 1] < transition)
+                {
+                    sortedTransitions[j] = sortedTransitions[j - 1];
+                    sortedChildren[j] = sortedChildren[j - 1];
+                    --j;
+                }
+                sortedTransitions[j] = transition;
+                sortedChildren[j] = child;
+            }
+
+            for (int i = 0; i < sorted; i++)
+                push(sortedChildren[i], depth + 1, sortedTransitions[i] == boundTransition);
+        }
+
+        private void push(int ptr, int depth, boolean isBounded)
+        {
+            if (top == ptrs.length)
+            {
+                ptrs = Arrays.copyOf(ptrs, top * 2);
+                depths = Arrays.copyOf(depths, top * 2);
+                bounded = Arrays.copyOf(bounded, top * 2);
+            }
+            ptrs[top] = ptr;
+            depths[top] = depth;
+            bounded[top] = isBounded;
+            ++top;
+        }
+    }
+}
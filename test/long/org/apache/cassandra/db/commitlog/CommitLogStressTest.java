@@ -54,11 +54,8 @@ import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.Mutation;
 import org.apache.cassandra.db.rows.Cell;
 import org.apache.cassandra.db.rows.Row;
-import org.apache.cassandra.db.rows.SerializationHelper;
 import org.apache.cassandra.db.partitions.PartitionUpdate;
 import org.apache.cassandra.db.marshal.UTF8Type;
-import org.apache.cassandra.io.util.DataInputBuffer;
-import org.apache.cassandra.io.util.DataInputPlus;
 
 public class CommitLogStressTest
 {
@@ -196,6 +193,7 @@ public class CommitLogStressTest
     {
         failed = false;
         DatabaseDescriptor.setCommitLogSyncBatchWindow(1);
+        DatabaseDescriptor.setCommitLogSyncGroupWindow(10);
         DatabaseDescriptor.setCommitLogSyncPeriod(30);
         DatabaseDescriptor.setCommitLogSegmentSize(32);
         for (ParameterizedClass compressor : new ParameterizedClass[] {
@@ -452,7 +450,7 @@ public class CommitLogStressTest
         int cells = 0;
 
         @Override
-        void replayMutation(byte[] inputBuffer, int size, final long entryLocation, final CommitLogDescriptor desc)
+        void handleMutation(Mutation mutation, long entryLocation, CommitLogDescriptor desc)
         {
             if (desc.id < discardedPos.segment)
             {
@@ -463,20 +461,6 @@ public class CommitLogStressTest
                 // Skip over this mutation.
                 return;
 
-            DataInputPlus bufIn = new DataInputBuffer(inputBuffer, 0, size);
-            Mutation mutation;
-            try
-            {
-                mutation = Mutation.serializer.deserialize(bufIn,
-                                                           desc.getMessagingVersion(),
-                                                           SerializationHelper.Flag.LOCAL);
-            }
-            catch (IOException e)
-            {
-                // Test fails.
-                throw new AssertionError(e);
-            }
-
             for (PartitionUpdate cf : mutation.getPartitionUpdates())
             {
 
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.RowUpdateBuilder;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.db.partitions.AtomicBTreePartition;
+import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.index.transactions.UpdateTransaction;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.concurrent.OpOrder;
+import org.apache.cassandra.utils.memory.MemtableAllocator;
+import org.apache.cassandra.utils.memory.SlabPool;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Merges updates into memtable partitions, as done for every write.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1,jvmArgsAppend = "-Xmx512M")
+@Threads(1)
+@State(Scope.Benchmark)
+public class AtomicBTreePartitionBench
+{
+    @Param({"1", "16", "256"})
+    private int rowsPerUpdate;
+
+    private CFMetaData metadata;
+    private DecoratedKey key;
+    private PartitionUpdate update;
+    private PartitionUpdate overwrite;
+
+    // on-heap slabs with no limit, so that allocations never block and are reclaimed by GC with their partition
+    private final MemtableAllocator allocator = new SlabPool(Long.MAX_VALUE, 0, 1.0f, null).newAllocator();
+    private final OpOrder order = new OpOrder();
+    private OpOrder.Group writeOp;
+
+    private AtomicBTreePartition existing;
+
+    @Setup
+    public void setup()
+    {
+        metadata = CFMetaData.Builder.create("microbench", "partition")
+                                     .addPartitionKey("key", UTF8Type.instance)
+                                     .addClusteringColumn("col", Int32Type.instance)
+                                     .addRegularColumn("value", UTF8Type.instance)
+                                     .withPartitioner(Murmur3Partitioner.instance)
+                                     .build();
+        key = metadata.decorateKey(ByteBufferUtil.bytes("key"));
+        update = makeUpdate(1);
+        overwrite = makeUpdate(2);
+        writeOp = order.start();
+    }
+
+    @Setup(Level.Iteration)
+    public void setupPartition()
+    {
+        existing = new AtomicBTreePartition(metadata, key, allocator);
+        existing.addAllWithSizeDelta(update, writeOp, UpdateTransaction.NO_OP);
+    }
+
+    @TearDown
+    public void teardown()
+    {
+        writeOp.close();
+    }
+
+    private PartitionUpdate makeUpdate(long timestamp)
+    {
+        PartitionUpdate update = new PartitionUpdate(metadata, key, metadata.partitionColumns(), rowsPerUpdate);
+        for (int i = 0; i < rowsPerUpdate; i++)
+            new RowUpdateBuilder(update, timestamp, 0).clustering(i).add("value", "value" + i).build();
+        return update;
+    }
+
+    @Benchmark
+    public long[] addToEmptyPartition()
+    {
+        AtomicBTreePartition partition = new AtomicBTreePartition(metadata, key, allocator);
+        return partition.addAllWithSizeDelta(update, writeOp, UpdateTransaction.NO_OP);
+    }
+
+    @Benchmark
+    public long[] mergeIntoExistingRows()
+    {
+        return existing.addAllWithSizeDelta(overwrite, writeOp, UpdateTransaction.NO_OP);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.utils.btree.BTree;
+import org.apache.cassandra.utils.btree.UpdateFunction;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1,jvmArgsAppend = "-Xmx512M")
+@Threads(1)
+@State(Scope.Benchmark)
+public class BTreeBench
+{
+    private static final Comparator<Integer> CMP = Integer::compare;
+
+    @Param({"16", "1024", "65536"})
+    private int treeSize;
+
+    @Param({"16"})
+    private int updateSize;
+
+    private List<Integer> sorted;
+    private Object[] tree;
+    private List<List<Integer>> updates;
+    private Integer[] lookups;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(0);
+        TreeSet<Integer> values = new TreeSet<>();
+        while (values.size() < treeSize)
+            values.add(random.nextInt());
+        sorted = new ArrayList<>(values);
+        tree = BTree.build(sorted, UpdateFunction.<Integer>noOp());
+
+        // sorted batches, each mixing values already in the tree with new ones
+        updates = new ArrayList<>();
+        for (int i = 0; i < 64; i++)
+        {
+            TreeSet<Integer> update = new TreeSet<>();
+            while (update.size() < updateSize)
+                update.add(random.nextBoolean() ? sorted.get(random.nextInt(treeSize)) : random.nextInt());
+            updates.add(new ArrayList<>(update));
+        }
+
+        lookups = new Integer[1024];
+        for (int i = 0; i < lookups.length; i++)
+            lookups[i] = random.nextBoolean() ? sorted.get(random.nextInt(treeSize)) : random.nextInt();
+    }
+
+    @Benchmark
+    public Object[] build()
+    {
+        return BTree.build(sorted, UpdateFunction.<Integer>noOp());
+    }
+
+    @Benchmark
+    public Object[] update()
+    {
+        List<Integer> update = updates.get(ThreadLocalRandom.current().nextInt(updates.size()));
+        return BTree.update(tree, CMP, update, UpdateFunction.<Integer>noOp());
+    }
+
+    @Benchmark
+    public Integer find()
+    {
+        return BTree.find(tree, CMP, lookups[ThreadLocalRandom.current().nextInt(lookups.length)]);
+    }
+
+    @Benchmark
+    public int findIndex()
+    {
+        return BTree.findIndex(tree, CMP, lookups[ThreadLocalRandom.current().nextInt(lookups.length)]);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.utils.FilterFactory;
+import org.apache.cassandra.utils.IFilter;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Looks keys up in an sstable bloom filter, as done for every sstable a partition read may have to touch.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1,jvmArgsAppend = "-Xmx512M")
+@Threads(1)
+@State(Scope.Benchmark)
+public class BloomFilterBench
+{
+    @Param({"1000000"})
+    private int keyCount;
+
+    @Param({"0.01", "0.1"})
+    private double fpChance;
+
+    private IFilter filter;
+    private DecoratedKey[] present;
+    private DecoratedKey[] absent;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(0);
+        filter = FilterFactory.getFilter(keyCount, fpChance, true, false);
+        present = new DecoratedKey[keyCount];
+        for (int i = 0; i < keyCount; i++)
+        {
+            present[i] = randomKey(random);
+            filter.add(present[i]);
+        }
+
+        absent = new DecoratedKey[1024];
+        for (int i = 0; i < absent.length; i++)
+            absent[i] = randomKey(random);
+    }
+
+    private static DecoratedKey randomKey(Random random)
+    {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        return Murmur3Partitioner.instance.decorateKey(ByteBuffer.wrap(bytes));
+    }
+
+    @TearDown
+    public void teardown()
+    {
+        filter.close();
+    }
+
+    @Benchmark
+    public boolean lookupPresent()
+    {
+        return filter.isPresent(present[ThreadLocalRandom.current().nextInt(present.length)]);
+    }
+
+    @Benchmark
+    public boolean lookupAbsent()
+    {
+        return filter.isPresent(absent[ThreadLocalRandom.current().nextInt(absent.length)]);
+    }
+}
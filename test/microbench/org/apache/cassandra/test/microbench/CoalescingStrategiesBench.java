@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.utils.CoalescingStrategies;
+import org.apache.cassandra.utils.CoalescingStrategies.Coalescable;
+import org.apache.cassandra.utils.CoalescingStrategies.CoalescingStrategy;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Drains batches of messages with the outbound message coalescing strategies, while another thread enqueues
+ * messages at a fixed pace, like an outbound connection does. The time per batch includes the time spent
+ * waiting for messages, be it blocked on the queue or parked by the strategy to coalesce more of them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1,jvmArgsAppend = "-Xmx512M")
+@Threads(1)
+@State(Scope.Benchmark)
+public class CoalescingStrategiesBench
+{
+    private static final Logger logger = LoggerFactory.getLogger(CoalescingStrategiesBench.class);
+
+    @Param({"DISABLED", "FIXED", "MOVINGAVERAGE", "TIMEHORIZON"})
+    private String strategyName;
+
+    @Param({"200"})
+    private int coalesceWindowMicros;
+
+    // the pause between two enqueued messages, 0 to enqueue them as fast as they are consumed
+    @Param({"0", "20", "100"})
+    private int messageGapMicros;
+
+    @Param({"128"})
+    private int maxItems;
+
+    private CoalescingStrategy strategy;
+    private final BlockingQueue<Message> queue = new LinkedBlockingQueue<>(1024);
+    private final List<Message> out = new ArrayList<>();
+    private Thread producer;
+
+    private static final class Message implements Coalescable
+    {
+        final long timestampNanos = System.nanoTime();
+
+        public long timestampNanos()
+        {
+            return timestampNanos;
+        }
+    }
+
+    @Setup
+    public void setup()
+    {
+        strategy = CoalescingStrategies.newCoalescingStrategy(strategyName, coalesceWindowMicros, logger, "microbench");
+        long gapNanos = TimeUnit.MICROSECONDS.toNanos(messageGapMicros);
+        producer = new Thread(() -> {
+            try
+            {
+                while (!Thread.currentThread().isInterrupted())
+                {
+                    queue.put(new Message());
+                    if (gapNanos > 0)
+                        LockSupport.parkNanos(gapNanos);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                // done
+            }
+        }, "microbench-producer");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    @TearDown
+    public void teardown() throws InterruptedException
+    {
+        producer.interrupt();
+        producer.join();
+    }
+
+    @Benchmark
+    public int coalesce() throws InterruptedException
+    {
+        out.clear();
+        strategy.coalesce(queue, out, maxItems);
+        return out.size();
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.apache.cassandra.db.ClusteringComparator;
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.io.compress.CompressedRandomAccessReader;
+import org.apache.cassandra.io.compress.CompressedSequentialWriter;
+import org.apache.cassandra.io.compress.CompressionMetadata;
+import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
+import org.apache.cassandra.io.util.ChannelProxy;
+import org.apache.cassandra.io.util.MmappedRegions;
+import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.schema.CompressionParams;
+import org.apache.cassandra.utils.ChecksumType;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Reads from a compressed file through {@link CompressedRandomAccessReader}, as done for sstable data.
+ *
+ * The readers are built directly on the file rather than through a segmented file, so they don't use the chunk
+ * cache: every read decompresses its chunk, which is what this measures.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1,jvmArgsAppend = "-Xmx512M")
+@Threads(1)
+@State(Scope.Benchmark)
+public class CompressedReaderBench
+{
+    @Param({"LZ4Compressor", "SnappyCompressor", "DeflateCompressor"})
+    private String compressor;
+
+    @Param({"64"})
+    private int chunkLengthInKb;
+
+    @Param({"false", "true"})
+    private boolean mmap;
+
+    @Param({"67108864"})
+    private int fileSize;
+
+    @Param({"128"})
+    private int readSize;
+
+    private File file;
+    private File offsets;
+    private ChannelProxy channel;
+    private CompressionMetadata metadata;
+    private MmappedRegions regions;
+    private byte[] buffer;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        file = File.createTempFile("microbench", "-Data.db");
+        offsets = new File(file.getPath() + ".metadata");
+        CompressionParams params = CompressionParams.fromMap(ImmutableMap.of(CompressionParams.CLASS, compressor,
+                                                                             CompressionParams.CHUNK_LENGTH_IN_KB, String.valueOf(chunkLengthInKb)));
+
+        // compressible data: random runs repeated a few times
+        Random random = new Random(0);
+        byte[] run = new byte[256];
+        MetadataCollector collector = new MetadataCollector(new ClusteringComparator(BytesType.instance)).replayPosition(null);
+        try (CompressedSequentialWriter writer = new CompressedSequentialWriter(file, offsets.getPath(), params, collector))
+        {
+            for (long written = 0; written < fileSize; written += run.length)
+            {
+                if (random.nextInt(4) == 0)
+                    random.nextBytes(run);
+                writer.write(run);
+            }
+            writer.finish();
+        }
+
+        channel = new ChannelProxy(file);
+        metadata = new CompressionMetadata(offsets.getPath(), file.length(), ChecksumType.CRC32);
+        if (mmap)
+            regions = MmappedRegions.map(channel, metadata);
+        buffer = new byte[readSize];
+    }
+
+    @TearDown
+    public void teardown()
+    {
+        if (regions != null)
+            regions.close();
+        metadata.close();
+        channel.close();
+        file.delete();
+        offsets.delete();
+    }
+
+    private RandomAccessReader open()
+    {
+        CompressedRandomAccessReader.Builder builder = new CompressedRandomAccessReader.Builder(channel, metadata);
+        if (regions != null)
+            builder.regions(regions);
+        return builder.build();
+    }
+
+    @Benchmark
+    public byte[] randomRead() throws IOException
+    {
+        try (RandomAccessReader reader = open())
+        {
+            reader.seek(ThreadLocalRandom.current().nextLong(fileSize - readSize));
+            reader.readFully(buffer);
+            return buffer;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public long sequentialScan() throws IOException
+    {
+        long sum = 0;
+        try (RandomAccessReader reader = open())
+        {
+            while (!reader.isEOF())
+            {
+                reader.readFully(buffer);
+                sum += buffer[0];
+            }
+        }
+        return sum;
+    }
+}
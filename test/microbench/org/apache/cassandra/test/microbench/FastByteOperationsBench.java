@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.utils.FastByteOperations;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares byte sequences which only differ in their last byte, so that they are compared in full.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1,jvmArgsAppend = "-Xmx512M")
+@Threads(1)
+@State(Scope.Benchmark)
+public class FastByteOperationsBench
+{
+    @Param({"8", "64", "1024"})
+    private int length;
+
+    private byte[] array1;
+    private byte[] array2;
+    private ByteBuffer heap1;
+    private ByteBuffer heap2;
+    private ByteBuffer direct1;
+    private ByteBuffer direct2;
+
+    @Setup
+    public void setup()
+    {
+        array1 = new byte[length];
+        new Random(0).nextBytes(array1);
+        array2 = array1.clone();
+        array2[length - 1]++;
+
+        heap1 = ByteBuffer.wrap(array1);
+        heap2 = ByteBuffer.wrap(array2);
+        direct1 = ByteBuffer.allocateDirect(length);
+        direct1.put(array1).flip();
+        direct2 = ByteBuffer.allocateDirect(length);
+        direct2.put(array2).flip();
+    }
+
+    @Benchmark
+    public int compareArrays()
+    {
+        return FastByteOperations.compareUnsigned(array1, 0, length, array2, 0, length);
+    }
+
+    @Benchmark
+    public int compareHeapBuffers()
+    {
+        return FastByteOperations.compareUnsigned(heap1, heap2);
+    }
+
+    @Benchmark
+    public int compareDirectBuffers()
+    {
+        return FastByteOperations.compareUnsigned(direct1, direct2);
+    }
+
+    @Benchmark
+    public int compareHeapToDirectBuffer()
+    {
+        return FastByteOperations.compareUnsigned(heap1, direct2);
+    }
+}
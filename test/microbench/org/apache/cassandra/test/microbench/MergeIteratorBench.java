@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.utils.MergeIterator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Merges many sorted sources, as done when reading from many sstables or compacting them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1,jvmArgsAppend = "-Xmx512M")
+@Threads(1)
+@State(Scope.Benchmark)
+public class MergeIteratorBench
+{
+    private static final Comparator<Integer> CMP = Integer::compare;
+
+    @Param({"2", "16", "128"})
+    private int sourceCount;
+
+    @Param({"16384"})
+    private int totalSize;
+
+    // the probability for a value to be in more than one source, like an overwritten partition or row
+    @Param({"0", "0.5"})
+    private double overlap;
+
+    private Integer[][] sources;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(0);
+        List<List<Integer>> lists = new ArrayList<>();
+        for (int i = 0; i < sourceCount; i++)
+            lists.add(new ArrayList<>());
+
+        for (int value = 0; value < totalSize; value++)
+        {
+            lists.get(random.nextInt(sourceCount)).add(value);
+            if (random.nextDouble() < overlap)
+                lists.get(random.nextInt(sourceCount)).add(value);
+        }
+
+        sources = new Integer[sourceCount][];
+        for (int i = 0; i < sourceCount; i++)
+            sources[i] = lists.get(i).stream().distinct().toArray(Integer[]::new);
+    }
+
+    @Benchmark
+    public void merge(Blackhole bh)
+    {
+        List<Iterator<Integer>> iterators = new ArrayList<>(sourceCount);
+        for (Integer[] source : sources)
+            iterators.add(Arrays.asList(source).iterator());
+
+        MergeIterator<Integer, Integer> merged = MergeIterator.get(iterators, CMP, new MergeIterator.Reducer<Integer, Integer>()
+        {
+            Integer reduced;
+
+            public void reduce(int idx, Integer current)
+            {
+                reduced = current;
+            }
+
+            protected Integer getReduced()
+            {
+                return reduced;
+            }
+        });
+
+        while (merged.hasNext())
+            bh.consume(merged.next());
+    }
+}
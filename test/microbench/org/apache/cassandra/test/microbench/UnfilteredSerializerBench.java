@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.RowUpdateBuilder;
+import org.apache.cassandra.db.SerializationHeader;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.db.rows.BTreeRow;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.db.rows.SerializationHelper;
+import org.apache.cassandra.db.rows.Unfiltered;
+import org.apache.cassandra.db.rows.UnfilteredSerializer;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.io.util.DataInputBuffer;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Serializes and deserializes the rows of a partition, as done when writing and reading sstables and messages.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1,jvmArgsAppend = "-Xmx512M")
+@Threads(1)
+@State(Scope.Benchmark)
+public class UnfilteredSerializerBench
+{
+    private static final int ROWS = 64;
+    private static final int VERSION = MessagingService.current_version;
+
+    @Param({"1", "8"})
+    private int columnCount;
+
+    @Param({"16", "256"})
+    private int valueSize;
+
+    private List<Row> rows;
+    private SerializationHeader header;
+    private SerializationHelper helper;
+    private int serializedSize;
+    private ByteBuffer serialized;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        CFMetaData.Builder builder = CFMetaData.Builder.create("microbench", "serializer")
+                                                       .addPartitionKey("key", UTF8Type.instance)
+                                                       .addClusteringColumn("col", Int32Type.instance)
+                                                       .withPartitioner(Murmur3Partitioner.instance);
+        for (int i = 0; i < columnCount; i++)
+            builder.addRegularColumn("value" + i, UTF8Type.instance);
+        CFMetaData metadata = builder.build();
+
+        StringBuilder value = new StringBuilder();
+        while (value.length() < valueSize)
+            value.append('v');
+
+        PartitionUpdate update = new PartitionUpdate(metadata, ByteBufferUtil.bytes("key"), metadata.partitionColumns(), ROWS);
+        for (int i = 0; i < ROWS; i++)
+        {
+            RowUpdateBuilder rowBuilder = new RowUpdateBuilder(update, 1000L + i, 0).clustering(i);
+            for (int j = 0; j < columnCount; j++)
+                rowBuilder.add("value" + j, value.toString());
+            rowBuilder.build();
+        }
+
+        rows = new ArrayList<>();
+        update.iterator().forEachRemaining(rows::add);
+        header = new SerializationHeader(metadata, metadata.partitionColumns(), update.stats());
+        helper = new SerializationHelper(metadata, VERSION, SerializationHelper.Flag.LOCAL);
+        serializedSize = (int) serializedSize() + 1;
+        serialized = serialize().buffer();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public DataOutputBuffer serialize() throws IOException
+    {
+        DataOutputBuffer out = new DataOutputBuffer(serializedSize);
+        for (Row row : rows)
+            UnfilteredSerializer.serializer.serialize(row, header, out, VERSION);
+        UnfilteredSerializer.serializer.writeEndOfPartition(out);
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long serializedSize()
+    {
+        long size = 0;
+        for (Row row : rows)
+            size += UnfilteredSerializer.serializer.serializedSize(row, header, VERSION);
+        return size;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void deserialize(Blackhole bh) throws IOException
+    {
+        DataInputBuffer in = new DataInputBuffer(serialized, true);
+        Row.Builder builder = BTreeRow.sortedBuilder();
+        Unfiltered unfiltered;
+        while ((unfiltered = UnfilteredSerializer.serializer.deserialize(in, header, helper, builder)) != null)
+            bh.consume(unfiltered);
+    }
+}
@@ -20,9 +20,11 @@ package org.apache.cassandra.batchlog;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import org.junit.*;
 
@@ -30,13 +32,17 @@ import org.apache.cassandra.SchemaLoader;
 import org.apache.cassandra.Util;
 import org.apache.cassandra.Util.PartitionerSwitcher;
 import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.cql3.statements.IndexTarget;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.DeletionTime;
 import org.apache.cassandra.db.Keyspace;
 import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.RangeTombstone;
 import org.apache.cassandra.db.RowUpdateBuilder;
 import org.apache.cassandra.db.SystemKeyspace;
 import org.apache.cassandra.db.commitlog.ReplayPosition;
@@ -46,13 +52,18 @@ import org.apache.cassandra.db.partitions.PartitionUpdate;
 import org.apache.cassandra.db.rows.Row;
 import org.apache.cassandra.dht.Murmur3Partitioner;
 import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.index.StubIndex;
+import org.apache.cassandra.index.transactions.IndexTransaction;
 import org.apache.cassandra.locator.TokenMetadata;
+import org.apache.cassandra.metrics.BatchlogMetrics;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.schema.IndexMetadata;
 import org.apache.cassandra.schema.KeyspaceParams;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.UUIDGen;
+import org.apache.cassandra.utils.concurrent.OpOrder;
 
 import static org.apache.cassandra.cql3.QueryProcessor.executeInternal;
 import static org.junit.Assert.*;
@@ -65,6 +76,7 @@ public class BatchlogManagerTest
     private static final String CF_STANDARD3 = "Standard3";
     private static final String CF_STANDARD4 = "Standard4";
     private static final String CF_STANDARD5 = "Standard5";
+    private static final String CF_INDEXED = "Indexed";
 
     static PartitionerSwitcher sw;
 
@@ -79,7 +91,71 @@ public class BatchlogManagerTest
                                     SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD2, 1, BytesType.instance),
                                     SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD3, 1, BytesType.instance),
                                     SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD4, 1, BytesType.instance),
-                                    SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD5, 1, BytesType.instance));
+                                    SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD5, 1, BytesType.instance),
+                                    batchCountingCFMD(KEYSPACE1, CF_INDEXED));
+    }
+
+    private static CFMetaData batchCountingCFMD(String ksName, String cfName)
+    {
+        CFMetaData cfm = SchemaLoader.standardCFMD(ksName, cfName, 1, BytesType.instance);
+        ColumnDefinition indexedColumn = cfm.getColumnDefinition(ByteBufferUtil.bytes("val"));
+        return cfm.indexes(cfm.getIndexes()
+                              .with(IndexMetadata.fromIndexTargets(cfm,
+                                                                   Collections.singletonList(new IndexTarget(indexedColumn.name,
+                                                                                                             IndexTarget.Type.VALUES)),
+                                                                   "batch_counting_index",
+                                                                   IndexMetadata.Kind.CUSTOM,
+                                                                   Collections.singletonMap(IndexTarget.CUSTOM_INDEX_OPTION_NAME,
+                                                                                            BatchCountingIndex.class.getName()))));
+    }
+
+    /**
+     * Records the number of batches left in the batchlog whenever a row is written to the indexed table, to check
+     * how far a replay has removed the replayed batches by the time it delivers each of them.
+     */
+    public static class BatchCountingIndex extends StubIndex
+    {
+        static final Queue<Integer> batchesLeft = new ConcurrentLinkedQueue<>();
+
+        public BatchCountingIndex(ColumnFamilyStore baseCfs, IndexMetadata metadata)
+        {
+            super(baseCfs, metadata);
+        }
+
+        public Indexer indexerFor(DecoratedKey key, int nowInSec, OpOrder.Group opGroup, IndexTransaction.Type transactionType)
+        {
+            return new Indexer()
+            {
+                public void begin()
+                {
+                }
+
+                public void partitionDelete(DeletionTime deletionTime)
+                {
+                }
+
+                public void rangeTombstone(RangeTombstone tombstone)
+                {
+                }
+
+                public void insertRow(Row row)
+                {
+                    batchesLeft.add(BatchlogManager.instance.countAllBatches());
+                }
+
+                public void removeRow(Row row)
+                {
+                }
+
+                public void updateRow(Row oldRowData, Row newRowData)
+                {
+                }
+
+                public void finish()
+                {
+                }
+            };
+        }
     }
 
     @AfterClass
@@ -142,6 +218,7 @@ public class BatchlogManagerTest
     {
         long initialAllBatches = BatchlogManager.instance.countAllBatches();
         long initialReplayedBatches = BatchlogManager.instance.getTotalBatchesReplayed();
+        long initialReplayedBatchesMetric = BatchlogMetrics.replayedBatches.getCount();
 
         CFMetaData cfm = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF_STANDARD1).metadata;
 
@@ -186,6 +263,8 @@ public class BatchlogManagerTest
         // Ensure that the first half, and only the first half, got replayed.
         assertEquals(50, BatchlogManager.instance.countAllBatches() - initialAllBatches);
         assertEquals(50, BatchlogManager.instance.getTotalBatchesReplayed() - initialReplayedBatches);
+        assertEquals(50, BatchlogMetrics.replayedBatches.getCount() - initialReplayedBatchesMetric);
+        assertEquals(0, BatchlogMetrics.replayBytesInFlight.getCount());
 
         for (int i = 0; i < 100; i++)
         {
@@ -220,6 +299,51 @@ public class BatchlogManagerTest
         assertEquals(500, result.one().getLong("count"));
     }
 
+    @Test
+    public void testReplayManyBytes() throws Exception
+    {
+        long initialReplayedBytesMetric = BatchlogMetrics.replayedBytes.getCount();
+        CFMetaData cfm = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF_INDEXED).metadata;
+
+        // 40 batches of 256KB, so that replaying them needs more than MAX_REPLAY_BYTES_IN_FLIGHT and several pages
+        int batches = 40;
+        String value = Strings.repeat("x", 256 * 1024);
+        for (int i = 0; i < batches; i++)
+        {
+            Mutation mutation = new RowUpdateBuilder(cfm, FBUtilities.timestampMicros(), ByteBufferUtil.bytes(i))
+                                .clustering("name" + i)
+                                .add("val", value)
+                                .build();
+            long timestamp = System.currentTimeMillis() - BatchlogManager.getBatchlogTimeout();
+            BatchlogManager.store(Batch.createLocal(UUIDGen.getTimeUUID(timestamp, i), timestamp * 1000, Collections.singletonList(mutation)));
+        }
+
+        ColumnFamilyStore batchlog = Keyspace.open(SystemKeyspace.NAME).getColumnFamilyStore(SystemKeyspace.BATCHES);
+        batchlog.forceBlockingFlush();
+        int pageSize = BatchlogManager.calculatePageSize(batchlog);
+        assertTrue(pageSize < batches);
+
+        BatchCountingIndex.batchesLeft.clear();
+        BatchlogManager.instance.startBatchlogReplay().get();
+
+        // every batch is delivered and removed
+        assertTrue(BatchlogMetrics.replayedBytes.getCount() - initialReplayedBytesMetric > BatchlogManager.MAX_REPLAY_BYTES_IN_FLIGHT);
+        assertEquals(0, BatchlogMetrics.replayBytesInFlight.getCount());
+        assertEquals(0, BatchlogManager.instance.countAllBatches());
+        for (int i = 0; i < batches; i++)
+        {
+            UntypedResultSet result = executeInternal(String.format("SELECT * FROM \"%s\".\"%s\" WHERE key = intAsBlob(%d)", KEYSPACE1, CF_INDEXED, i));
+            assertEquals("name" + i, result.one().getString("name"));
+        }
+
+        // the batches are removed once a page of them has been replayed, before the remaining ones are delivered
+        List<Integer> batchesLeft = new ArrayList<>(BatchCountingIndex.batchesLeft);
+        assertEquals(batches, batchesLeft.size());
+        assertEquals(batches, (int) batchesLeft.get(0));
+        assertTrue("Expected a page of batches to be removed during the replay, but saw " + batchesLeft,
+                   Collections.min(batchesLeft) <= batches - pageSize);
+    }
+
     @Test
     public void testTruncatedReplay() throws InterruptedException, ExecutionException
     {
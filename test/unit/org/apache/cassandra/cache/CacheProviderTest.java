@@ -18,6 +18,7 @@
  */
 package org.apache.cassandra.cache;
 
+import java.io.File;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -28,7 +29,12 @@ import static org.junit.Assert.*;
 
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Sets;
 
 
 import org.apache.cassandra.SchemaLoader;
@@ -42,8 +48,10 @@ import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.rows.*;
 import org.apache.cassandra.db.marshal.AsciiType;
 import org.apache.cassandra.db.partitions.*;
+import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.schema.KeyspaceParams;
+import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 
 public class CacheProviderTest
@@ -152,6 +160,35 @@ public class CacheProviderTest
         concurrentCase(partition, cache);
     }
 
+    @Test
+    public void testOHCKeyCache()
+    {
+        ICache<KeyCacheKey, RowIndexEntry> cache = new OHCKeyCacheProvider().create();
+        Pair<String, String> ksAndCFName = Pair.create(KEYSPACE1, CF_STANDARD1);
+        Descriptor desc = new Descriptor(new File("data", KEYSPACE1), KEYSPACE1, CF_STANDARD1, 1);
+        KeyCacheKey key1 = new KeyCacheKey(ksAndCFName, desc, ByteBufferUtil.bytes("key1"));
+        KeyCacheKey key2 = new KeyCacheKey(ksAndCFName, desc, ByteBufferUtil.bytes("key2"));
+        KeyCacheKey key3 = new KeyCacheKey(ksAndCFName, desc.withGeneration(2), ByteBufferUtil.bytes("key1"));
+
+        cache.put(key1, new RowIndexEntry(42));
+        assertEquals(42, cache.get(key1).position);
+        assertNull(cache.get(key2));
+        assertNull(cache.get(key3));
+
+        assertTrue(cache.putIfAbsent(key2, new RowIndexEntry(1L << 40)));
+        assertFalse(cache.putIfAbsent(key2, new RowIndexEntry(1)));
+        assertEquals(1L << 40, cache.get(key2).position);
+
+        // keys are read back from off-heap memory, and must be equal to the original ones
+        Set<KeyCacheKey> keys = new HashSet<>();
+        Iterators.addAll(keys, cache.keyIterator());
+        assertEquals(Sets.newHashSet(key1, key2), keys);
+
+        cache.remove(key1);
+        assertNull(cache.get(key1));
+        assertEquals(1, cache.size());
+    }
+
     @Test
     public void testKeys()
     {
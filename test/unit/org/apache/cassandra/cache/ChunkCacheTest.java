@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkCacheTest extends CQLTester
+{
+    @Test
+    public void testPutGetAndInvalidate()
+    {
+        ChunkCache cache = ChunkCache.instance;
+        assertNotNull(cache);
+
+        ByteBuffer chunk = ByteBuffer.allocate(1024);
+        for (int i = 0; i < chunk.capacity(); i++)
+            chunk.put(i, (byte) i);
+
+        cache.putChunk("test-file", 0, chunk);
+        cache.putChunk("test-file", 1024, chunk);
+        cache.putChunk("other-file", 0, chunk);
+        assertEquals(0, chunk.position());
+
+        RefCountedMemory mem = cache.getChunk("test-file", 1024);
+        assertNotNull(mem);
+        assertEquals(1024, mem.size());
+        assertEquals(chunk, mem.asByteBuffer(0, 1024));
+        assertNull(cache.getChunk("test-file", 2048));
+
+        cache.invalidateFile("test-file");
+        assertNull(cache.getChunk("test-file", 0));
+        assertNull(cache.getChunk("test-file", 1024));
+        // a chunk that is still referenced stays readable after it's removed from the cache
+        assertEquals(chunk, mem.asByteBuffer(0, 1024));
+        mem.unreference();
+
+        mem = cache.getChunk("other-file", 0);
+        assertNotNull(mem);
+        mem.unreference();
+        cache.invalidateFile("other-file");
+    }
+
+    @Test
+    public void testInvalidateAfterEvictionAndReplacement()
+    {
+        ChunkCache cache = ChunkCache.instance;
+        long capacity = cache.capacity();
+        ByteBuffer chunk = ByteBuffer.allocate(1024);
+        try
+        {
+            // chunks cached again after being evicted, removed or replaced are still invalidated with their file
+            cache.setCapacity(2048);
+            for (int i = 0; i < 4; i++)
+                cache.putChunk("evicted-file", i * 1024, chunk);
+            assertTrue(cache.size() <= 2);
+            cache.setCapacity(capacity);
+            for (int i = 0; i < 4; i++)
+                cache.putChunk("evicted-file", i * 1024, chunk);
+            cache.remove(new ChunkCache.Key("evicted-file", 0));
+            cache.putChunk("evicted-file", 0, chunk);
+            cache.putChunk("evicted-file", 1024, chunk);
+            cache.putChunk("other-file", 0, chunk);
+
+            cache.invalidateFile("evicted-file");
+            for (int i = 0; i < 4; i++)
+                assertNull(cache.get(new ChunkCache.Key("evicted-file", i * 1024)));
+            assertNotNull(cache.get(new ChunkCache.Key("other-file", 0)));
+        }
+        finally
+        {
+            cache.setCapacity(capacity);
+            cache.invalidateFile("other-file");
+        }
+    }
+
+    @Test
+    public void testSSTableReadsUseCache() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, v text, PRIMARY KEY (k, c)) WITH compression = {'class' : 'LZ4Compressor', 'chunk_length_in_kb' : '4'}");
+        for (int k = 0; k < 10; k++)
+            for (int c = 0; c < 100; c++)
+                execute("INSERT INTO %s (k, c, v) VALUES (?, ?, ?)", k, c, "value" + c);
+        flush();
+
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        SSTableReader sstable = cfs.getLiveSSTables().iterator().next();
+        String path = sstable.getFilename();
+
+        assertEquals(1000, execute("SELECT * FROM %s").size());
+        long hits = ChunkCache.instance.metrics.hits.getCount();
+        assertEquals(1000, execute("SELECT * FROM %s").size());
+        assertTrue(ChunkCache.instance.metrics.hits.getCount() > hits);
+        assertTrue(ChunkCache.instance.get(new ChunkCache.Key(path, 0)) != null);
+
+        // once the sstable is released its chunks must be gone
+        cfs.truncateBlocking();
+        assertNull(ChunkCache.instance.get(new ChunkCache.Key(path, 0)));
+    }
+}
@@ -28,6 +28,10 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import junit.framework.Assert;
@@ -39,6 +43,7 @@ import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.RowUpdateBuilder;
 import org.apache.cassandra.db.SystemKeyspace;
 import org.apache.cassandra.serializers.SimpleDateSerializer;
 import org.apache.cassandra.serializers.TimeSerializer;
@@ -50,6 +55,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.exceptions.InvalidQueryException;
 
@@ -529,6 +535,77 @@ public class ViewTest extends CQLTester
         assertRows(execute("SELECT count(*) from mv WHERE intval = ?", 0), row(1024L));
     }
 
+    @Test
+    public void testBuilderManyPartitions() throws Throwable
+    {
+        createTable("CREATE TABLE %s (" +
+                    "k int, " +
+                    "c int, " +
+                    "intval int, " +
+                    "PRIMARY KEY (k, c))");
+
+        execute("USE " + keyspace());
+        executeNet(protocolVersion, "USE " + keyspace());
+
+        // the keys are spread over several sstables, and over the ranges the build is split into
+        for (int i = 0; i < 3000; i++)
+        {
+            execute("INSERT INTO %s (k, c, intval) VALUES (?, ?, ?)", i, 0, i % 10);
+            if (i % 1000 == 999)
+                flush();
+        }
+
+        createView("mv", "CREATE MATERIALIZED VIEW %s AS SELECT * FROM %%s WHERE k IS NOT NULL AND c IS NOT NULL AND intval IS NOT NULL PRIMARY KEY (intval, c, k)");
+
+        while (!SystemKeyspace.isViewBuilt(keyspace(), "mv"))
+            Thread.sleep(1000);
+
+        for (int i = 0; i < 10; i++)
+            assertRows(execute("SELECT count(*) from mv WHERE intval = ?", i), row(300L));
+
+        assertEmpty(execute(String.format("SELECT * FROM %s.%s WHERE keyspace_name = ?",
+                                          SystemKeyspace.NAME,
+                                          SystemKeyspace.VIEWS_BUILDS_RANGES_IN_PROGRESS),
+                            keyspace()));
+    }
+
+    @Test
+    public void testResumeBuildStartedBeforeUpgrade() throws Throwable
+    {
+        createTable("CREATE TABLE %s (" +
+                    "k int, " +
+                    "c int, " +
+                    "intval int, " +
+                    "PRIMARY KEY (k, c))");
+
+        execute("USE " + keyspace());
+        executeNet(protocolVersion, "USE " + keyspace());
+
+        for (int i = 0; i < 1000; i++)
+            execute("INSERT INTO %s (k, c, intval) VALUES (?, ?, ?)", i, 0, i % 10);
+        flush();
+
+        createView("mv", "CREATE MATERIALIZED VIEW %s AS SELECT * FROM %%s WHERE k IS NOT NULL AND c IS NOT NULL AND intval IS NOT NULL PRIMARY KEY (intval, c, k)");
+
+        while (!SystemKeyspace.isViewBuilt(keyspace(), "mv"))
+            Thread.sleep(100);
+
+        // a build in progress as recorded by previous versions, with a last token but no ranges, is restarted
+        SystemKeyspace.setViewRemoved(keyspace(), "mv");
+        execute(String.format("INSERT INTO %s.%s (keyspace_name, view_name, generation_number, last_token) VALUES (?, ?, ?, ?)",
+                              SystemKeyspace.NAME,
+                              SystemKeyspace.VIEWS_BUILDS_IN_PROGRESS),
+                keyspace(), "mv", Integer.MAX_VALUE, "00");
+        Keyspace.open(keyspace()).getColumnFamilyStore("mv").truncateBlocking();
+
+        Keyspace.open(keyspace()).viewManager.buildAllViews();
+        while (!SystemKeyspace.isViewBuilt(keyspace(), "mv"))
+            Thread.sleep(100);
+
+        for (int i = 0; i < 10; i++)
+            assertRows(execute("SELECT count(*) from mv WHERE intval = ?", i), row(100L));
+    }
+
     @Test
     public void testRangeTombstone() throws Throwable
     {
@@ -810,6 +887,73 @@ public class ViewTest extends CQLTester
         assertRows(execute("SELECT k, intval from mv WHERE intval = ?", 1), row(0, 1));
     }
 
+    @Test
+    public void testConcurrentUpdatesOfPartition() throws Throwable
+    {
+        createTable("CREATE TABLE %s (" +
+                    "k int, " +
+                    "c int, " +
+                    "v int, " +
+                    "PRIMARY KEY (k, c))");
+
+        execute("USE " + keyspace());
+        executeNet(protocolVersion, "USE " + keyspace());
+
+        createView("mv", "CREATE MATERIALIZED VIEW %s AS SELECT * FROM %%s WHERE k IS NOT NULL AND c IS NOT NULL AND v IS NOT NULL PRIMARY KEY (v, k, c)");
+
+        // the updates of a same partition are applied one after the other, so the view never misses an update
+        List<ResultSetFuture> futures = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+            futures.add(sessionNet(protocolVersion).executeAsync(String.format("INSERT INTO %s.%s (k, c, v) VALUES (0, %d, %d)", keyspace(), currentTable(), i % 10, i)));
+        for (ResultSetFuture future : futures)
+            future.getUninterruptibly();
+        updateView("INSERT INTO %s (k, c, v) VALUES (?, ?, ?)", 1, 0, 0);
+
+        for (int c = 0; c < 10; c++)
+        {
+            int v = execute("SELECT v FROM %s WHERE k = 0 AND c = ?", c).one().getInt("v");
+            assertRows(execute("SELECT k, c FROM mv WHERE v = ?", v), row(0, c));
+        }
+        Assert.assertEquals(11, execute("SELECT * FROM mv").size());
+        Assert.assertEquals(0, Keyspace.open(keyspace()).metric.viewPendingUpdates.getCount());
+    }
+
+    @Test
+    public void testDeferredUpdatesOfPartition() throws Throwable
+    {
+        createTable("CREATE TABLE %s (" +
+                    "k int, " +
+                    "c int, " +
+                    "v int, " +
+                    "PRIMARY KEY (k, c))");
+
+        execute("USE " + keyspace());
+        executeNet(protocolVersion, "USE " + keyspace());
+
+        createView("mv", "CREATE MATERIALIZED VIEW %s AS SELECT * FROM %%s WHERE k IS NOT NULL AND c IS NOT NULL AND v IS NOT NULL PRIMARY KEY (v, k, c)");
+
+        // the mutations waiting for the previous ones of their partition are applied after returning, still in order
+        CFMetaData metadata = currentTableMetadata();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<CompletableFuture<?>>> submitted = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+        {
+            final int c = i % 10, v = i;
+            submitted.add(executor.submit(() -> new RowUpdateBuilder(metadata, FBUtilities.timestampMicros(), 0).clustering(c).add("v", v).build().applyFuture()));
+        }
+        for (Future<CompletableFuture<?>> future : submitted)
+            future.get().get(1, TimeUnit.MINUTES);
+        executor.shutdown();
+
+        for (int c = 0; c < 10; c++)
+        {
+            int v = execute("SELECT v FROM %s WHERE k = 0 AND c = ?", c).one().getInt("v");
+            assertRows(execute("SELECT k, c FROM mv WHERE v = ?", v), row(0, c));
+        }
+        Assert.assertEquals(10, execute("SELECT * FROM mv").size());
+        Assert.assertEquals(0, Keyspace.open(keyspace()).metric.viewPendingUpdates.getCount());
+    }
+
     @Test
     public void testDecimalUpdate() throws Throwable
     {
@@ -17,6 +17,12 @@
  */
 package org.apache.cassandra.db;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -28,6 +34,7 @@ import org.apache.cassandra.db.context.CounterContext;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.exceptions.WriteTimeoutException;
 import org.apache.cassandra.schema.KeyspaceParams;
+import org.apache.cassandra.service.CacheService;
 import org.apache.cassandra.utils.ByteBufferUtil;
 
 import static org.junit.Assert.assertEquals;
@@ -65,6 +72,37 @@ public class CounterMutationTest
         addAndCheck(cfs, -3, 0);
     }
 
+    @Test
+    public void testConcurrentIncrements() throws Exception
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF1);
+        cfs.truncateBlocking();
+        ColumnDefinition cDef = cfs.metadata.getColumnDefinition(ByteBufferUtil.bytes("val"));
+
+        // concurrent mutations of the same partition get applied in batches, some of which update a same counter
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+        {
+            final String clustering = i % 2 == 0 ? "cc" : "dd";
+            futures.add(executor.submit(() -> {
+                Mutation m = new RowUpdateBuilder(cfs.metadata, 5, "key1").clustering(clustering).add("val", 1L).build();
+                new CounterMutation(m, ConsistencyLevel.ONE).apply();
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+
+        CacheService.instance.invalidateCounterCache();
+        Row row = Util.getOnlyRow(Util.cmd(cfs).includeRow("cc").columns("val").build());
+        assertEquals(500L, CounterContext.instance().total(row.getCell(cDef).value()));
+        row = Util.getOnlyRow(Util.cmd(cfs).includeRow("dd").columns("val").build());
+        assertEquals(500L, CounterContext.instance().total(row.getCell(cDef).value()));
+
+        addAndCheck(cfs, 1, 501);
+    }
+
     private void addAndCheck(ColumnFamilyStore cfs, long toAdd, long expected)
     {
         ColumnDefinition cDef = cfs.metadata.getColumnDefinition(ByteBufferUtil.bytes("val"));
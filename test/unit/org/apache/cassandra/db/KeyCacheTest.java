@@ -17,13 +17,16 @@
  */
 package org.apache.cassandra.db;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.Uninterruptibles;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -31,25 +34,33 @@ import org.junit.Test;
 
 import org.apache.cassandra.SchemaLoader;
 import org.apache.cassandra.Util;
+import org.apache.cassandra.cache.AutoSavingCache;
+import org.apache.cassandra.cache.ConcurrentLinkedHashCache;
 import org.apache.cassandra.cache.KeyCacheKey;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.compaction.CompactionManager;
+import org.apache.cassandra.db.compaction.OperationType;
 import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.util.DataInputPlus;
 import org.apache.cassandra.schema.KeyspaceParams;
 import org.apache.cassandra.service.CacheService;
+import org.apache.cassandra.utils.Pair;
 import org.apache.cassandra.utils.concurrent.Refs;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class KeyCacheTest
 {
     private static final String KEYSPACE1 = "KeyCacheTest1";
     private static final String COLUMN_FAMILY1 = "Standard1";
     private static final String COLUMN_FAMILY2 = "Standard2";
+    private static final String COLUMN_FAMILY3 = "Standard3";
+    private static final String COLUMN_FAMILY4 = "Standard4";
 
     @BeforeClass
     public static void defineSchema() throws ConfigurationException
@@ -58,7 +69,9 @@ public class KeyCacheTest
         SchemaLoader.createKeyspace(KEYSPACE1,
                                     KeyspaceParams.simple(1),
                                     SchemaLoader.standardCFMD(KEYSPACE1, COLUMN_FAMILY1),
-                                    SchemaLoader.standardCFMD(KEYSPACE1, COLUMN_FAMILY2));
+                                    SchemaLoader.standardCFMD(KEYSPACE1, COLUMN_FAMILY2),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, COLUMN_FAMILY3),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, COLUMN_FAMILY4));
     }
 
     @AfterClass
@@ -119,6 +132,62 @@ public class KeyCacheTest
         }
     }
 
+    @Test
+    public void testKeyCacheLoadWhileReading() throws Exception
+    {
+        CompactionManager.instance.disableAutoCompaction();
+
+        ColumnFamilyStore store = Keyspace.open(KEYSPACE1).getColumnFamilyStore(COLUMN_FAMILY3);
+        saveKeyCache(store, 100);
+        Map<SSTableReader, Integer> refCounts = refCounts(store);
+
+        // the load is done in the background, so the table must be readable while it goes on
+        ListenableFuture<Integer> load = CacheService.instance.keyCache.loadSavedAsync();
+        do
+        {
+            for (int i = 0; i < 100; i++)
+                assertEquals(1, Util.getAll(Util.cmd(store, "key" + i).includeRow("col" + i).build()).size());
+        }
+        while (!load.isDone());
+        load.get();
+
+        assertKeyCacheSize(100, KEYSPACE1, COLUMN_FAMILY3);
+        // the sstables the load looked entries up in are released once it is done
+        assertEquals(refCounts, refCounts(store));
+    }
+
+    @Test
+    public void testKeyCacheLoadStopped() throws Exception
+    {
+        CompactionManager.instance.disableAutoCompaction();
+
+        ColumnFamilyStore store = Keyspace.open(KEYSPACE1).getColumnFamilyStore(COLUMN_FAMILY4);
+        saveKeyCache(store, 100);
+        Map<SSTableReader, Integer> refCounts = refCounts(store);
+
+        // stop the load like nodetool stop would, after it has referenced the sstables and loaded a few entries
+        CacheService.KeyCacheSerializer serializer = new CacheService.KeyCacheSerializer()
+        {
+            private int deserialized;
+
+            public Future<Pair<KeyCacheKey, RowIndexEntry>> deserialize(DataInputPlus input, ColumnFamilyStore cfs) throws IOException
+            {
+                if (++deserialized == 10)
+                    CompactionManager.instance.stopCompaction(OperationType.KEY_CACHE_LOAD.name());
+                return super.deserialize(input, cfs);
+            }
+        };
+        AutoSavingCache<KeyCacheKey, RowIndexEntry> keyCache = new AutoSavingCache<>(ConcurrentLinkedHashCache.<KeyCacheKey, RowIndexEntry>create(1 << 20),
+                                                                                     CacheService.CacheType.KEY_CACHE,
+                                                                                     serializer);
+        int loaded = keyCache.loadSaved();
+        assertTrue("Expected a partial load, but loaded " + loaded + " entries", loaded > 0 && loaded <= 10);
+        assertEquals(loaded, keyCache.size());
+
+        // stopping the load doesn't leak the references it took
+        assertEquals(refCounts, refCounts(store));
+    }
+
     @Test
     public void testKeyCache() throws ExecutionException, InterruptedException
     {
@@ -175,6 +244,31 @@ public class KeyCacheTest
         assertKeyCacheSize(noEarlyOpen ? 4 : 2, KEYSPACE1, COLUMN_FAMILY1);
     }
 
+    /**
+     * Caches the position of the given number of keys written to a single sstable, saves the key cache and empties it.
+     */
+    private static void saveKeyCache(ColumnFamilyStore store, int numberOfRows) throws Exception
+    {
+        String keyspace = store.keyspace.getName();
+        CacheService.instance.invalidateKeyCache();
+        SchemaLoader.insertData(keyspace, store.name, 0, numberOfRows);
+        store.forceBlockingFlush();
+
+        readData(keyspace, store.name, numberOfRows);
+        CacheService.instance.keyCache.submitWrite(Integer.MAX_VALUE).get();
+
+        CacheService.instance.invalidateKeyCache();
+        assertKeyCacheSize(0, keyspace, store.name);
+    }
+
+    private static Map<SSTableReader, Integer> refCounts(ColumnFamilyStore store)
+    {
+        Map<SSTableReader, Integer> refCounts = new HashMap<>();
+        for (SSTableReader sstable : store.getLiveSSTables())
+            refCounts.put(sstable, sstable.selfRef().globalCount());
+        return refCounts;
+    }
+
     private static void readData(String keyspace, String columnFamily, int numberOfRows)
     {
         ColumnFamilyStore store = Keyspace.open(keyspace).getColumnFamilyStore(columnFamily);
@@ -185,7 +279,7 @@ public class KeyCacheTest
     }
 
 
-    private void assertKeyCacheSize(int expected, String keyspace, String columnFamily)
+    private static void assertKeyCacheSize(int expected, String keyspace, String columnFamily)
     {
         int size = 0;
         for (Iterator<KeyCacheKey> iter = CacheService.instance.keyCache.keyIterator();
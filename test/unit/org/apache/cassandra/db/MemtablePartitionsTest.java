@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import org.apache.cassandra.MockSchema;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.db.partitions.AtomicBTreePartition;
+import org.apache.cassandra.dht.*;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.schema.TableParams;
+import org.apache.cassandra.utils.memory.MemtableAllocator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class MemtablePartitionsTest
+{
+    private static final IPartitioner partitioner = Murmur3Partitioner.instance;
+
+    @Test
+    public void testTrieMatchesSkipList()
+    {
+        Random random = new Random();
+        long seed = random.nextLong();
+        random.setSeed(seed);
+
+        CFMetaData metadata = MockSchema.newCFMetaData("mockks", "triepartitions");
+        MemtableAllocator allocator = Memtable.MEMORY_POOL.newAllocator();
+        MemtablePartitions skipList = new MemtablePartitions.SkipListPartitions();
+        MemtablePartitions trie = new MemtablePartitions.TriePartitions();
+
+        List<DecoratedKey> keys = new ArrayList<>();
+        for (int i = 0; i < 5000; i++)
+        {
+            byte[] bytes = new byte[random.nextInt(8)];
+            random.nextBytes(bytes);
+            DecoratedKey key = partitioner.decorateKey(ByteBuffer.wrap(bytes));
+            keys.add(key);
+            AtomicBTreePartition partition = new AtomicBTreePartition(metadata, key, allocator);
+            AtomicBTreePartition previous = skipList.putIfAbsent(key, partition);
+            assertSame("seed " + seed, previous, trie.putIfAbsent(key, partition));
+        }
+
+        assertEquals(skipList.size(), trie.size());
+        assertEquals(Lists.newArrayList(skipList.iterator()), Lists.newArrayList(trie.iterator()));
+        for (DecoratedKey key : keys)
+            assertSame(skipList.get(key), trie.get(key));
+        assertNull(trie.get(partitioner.decorateKey(ByteBuffer.wrap(new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9 }))));
+
+        for (int i = 0; i < 1000; i++)
+        {
+            PartitionPosition left = randomPosition(random, keys);
+            PartitionPosition right = randomPosition(random, keys);
+            if (left.compareTo(right) > 0)
+            {
+                PartitionPosition tmp = left;
+                left = right;
+                right = tmp;
+            }
+
+            List<AbstractBounds<PartitionPosition>> ranges = new ArrayList<>();
+            ranges.add(new Bounds<>(left, right));
+            ranges.add(new IncludingExcludingBounds<>(left, right));
+            if (!left.equals(right))
+            {
+                ranges.add(new Range<>(left, right));
+                ranges.add(new ExcludingBounds<>(left, right));
+            }
+            ranges.add(new Range<>(left, partitioner.getMinimumToken().minKeyBound()));
+            ranges.add(new Range<>(partitioner.getMinimumToken().minKeyBound(), right));
+
+            for (AbstractBounds<PartitionPosition> range : ranges)
+                assertEquals("seed " + seed + ", " + range, Lists.newArrayList(skipList.iterator(range)), Lists.newArrayList(trie.iterator(range)));
+        }
+
+        trie.release();
+        allocator.setDiscarding();
+        allocator.setDiscarded();
+    }
+
+    @Test
+    public void testInvalidExtension()
+    {
+        CFMetaData metadata = MockSchema.newCFMetaData("mockks", "invalidpartitionmap");
+        TableParams invalid = withPartitionMap(metadata.params, "tire");
+        try
+        {
+            invalid.validate();
+            fail("Expected an invalid memtable_partition_map extension to be rejected");
+        }
+        catch (ConfigurationException e)
+        {
+            // expected
+        }
+
+        // a table whose schema wasn't validated falls back to the configured partition map
+        metadata.params(invalid);
+        assertEquals(DatabaseDescriptor.getMemtablePartitionMapType(), MemtablePartitions.type(metadata));
+
+        TableParams valid = withPartitionMap(metadata.params, "trie");
+        valid.validate();
+        metadata.params(valid);
+        assertEquals(Config.MemtablePartitionMapType.trie, MemtablePartitions.type(metadata));
+    }
+
+    private static TableParams withPartitionMap(TableParams params, String type)
+    {
+        return TableParams.builder(params)
+                          .extensions(ImmutableMap.of(MemtablePartitions.EXTENSION_KEY, UTF8Type.instance.decompose(type)))
+                          .build();
+    }
+
+    private static PartitionPosition randomPosition(Random random, List<DecoratedKey> keys)
+    {
+        DecoratedKey key = keys.get(random.nextInt(keys.size()));
+        switch (random.nextInt(4))
+        {
+            case 0:
+                return key.getToken().minKeyBound();
+            case 1:
+                return key.getToken().maxKeyBound();
+            case 2:
+                return new Murmur3Partitioner.LongToken(random.nextLong()).minKeyBound();
+            default:
+                return key;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.filter.DataLimits;
+import org.apache.cassandra.db.lifecycle.SSTableSet;
+import org.apache.cassandra.dht.AbstractBounds;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelRangeReadTest extends CQLTester
+{
+    @After
+    public void resetParallelism()
+    {
+        DatabaseDescriptor.setRangeReadParallelism(1);
+    }
+
+    @Test
+    public void testSplitRange() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, v int) WITH min_index_interval = 4");
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        PartitionRangeReadCommand command = PartitionRangeReadCommand.allDataRead(cfs.metadata, FBUtilities.nowInSeconds());
+
+        // too few partitions to bother splitting
+        for (int k = 0; k < 10; k++)
+            execute("INSERT INTO %s (k, v) VALUES (?, ?)", k, k);
+        flush();
+        assertEquals(1, command.splitRange(cfs.getSSTables(SSTableSet.LIVE), 4).size());
+
+        for (int k = 10; k < 1000; k++)
+            execute("INSERT INTO %s (k, v) VALUES (?, ?)", k, k);
+        flush();
+        List<AbstractBounds<PartitionPosition>> subRanges = command.splitRange(cfs.getSSTables(SSTableSet.LIVE), 4);
+        assertEquals(4, subRanges.size());
+
+        // the sub-ranges cover the range of the command
+        assertEquals(command.dataRange().keyRange().left, subRanges.get(0).left);
+        for (int i = 1; i < subRanges.size(); i++)
+            assertEquals(subRanges.get(i - 1).right, subRanges.get(i).left);
+        assertEquals(command.dataRange().keyRange().right, subRanges.get(subRanges.size() - 1).right);
+
+        // a limit likely to be reached within the first sub-range prevents the split
+        assertEquals(1, command.withUpdatedLimit(DataLimits.cqlLimits(100)).splitRange(cfs.getSSTables(SSTableSet.LIVE), 4).size());
+        assertEquals(4, command.withUpdatedLimit(DataLimits.cqlLimits(500)).splitRange(cfs.getSSTables(SSTableSet.LIVE), 4).size());
+    }
+
+    @Test
+    public void testParallelRangeRead() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, v int, PRIMARY KEY (k, c)) WITH min_index_interval = 4");
+
+        for (int k = 0; k < 1000; k++)
+        {
+            for (int c = 0; c < 3; c++)
+                execute("INSERT INTO %s (k, c, v) VALUES (?, ?, ?)", k, c, k + c);
+        }
+        flush();
+        for (int k = 0; k < 1000; k += 7)
+            execute("DELETE FROM %s WHERE k = ?", k);
+        for (int k = 0; k < 1000; k += 5)
+            execute("DELETE FROM %s WHERE k = ? AND c = 1", k);
+        flush();
+        for (int k = 1000; k < 1200; k++)
+            execute("INSERT INTO %s (k, c, v) VALUES (?, 0, ?)", k, k);
+
+        List<String> expected = rows(execute("SELECT * FROM %s"));
+        List<String> expectedLimit = rows(execute("SELECT * FROM %s LIMIT 100"));
+        List<String> expectedRange = rows(execute("SELECT * FROM %s WHERE token(k) > 0"));
+        List<String> expectedPaged = pagedRows("SELECT * FROM %s", 500);
+
+        DatabaseDescriptor.setRangeReadParallelism(4);
+        assertEquals(expected, rows(execute("SELECT * FROM %s")));
+        assertEquals(expectedLimit, rows(execute("SELECT * FROM %s LIMIT 100")));
+        assertEquals(expectedRange, rows(execute("SELECT * FROM %s WHERE token(k) > 0")));
+        assertEquals(expectedPaged, pagedRows("SELECT * FROM %s", 500));
+        assertEquals(expected, expectedPaged);
+    }
+
+    private static List<String> rows(UntypedResultSet result)
+    {
+        List<String> rows = new ArrayList<>();
+        for (UntypedResultSet.Row row : result)
+            rows.add(row.getInt("k") + ":" + row.getInt("c") + ":" + row.getInt("v"));
+        return rows;
+    }
+
+    private List<String> pagedRows(String query, int pageSize) throws Throwable
+    {
+        List<String> rows = new ArrayList<>();
+        Session session = sessionNet();
+        Statement statement = session.newSimpleStatement(String.format(query, KEYSPACE + '.' + currentTable()));
+        statement.setFetchSize(pageSize);
+        for (com.datastax.driver.core.Row row : session.execute(statement))
+            rows.add(row.getInt("k") + ":" + row.getInt("c") + ":" + row.getInt("v"));
+        return rows;
+    }
+}
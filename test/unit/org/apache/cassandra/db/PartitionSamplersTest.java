@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularDataSupport;
+
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.metrics.TableMetrics.Sampler;
+import org.apache.cassandra.metrics.ThreadPoolMetrics;
+
+import static org.junit.Assert.assertEquals;
+
+public class PartitionSamplersTest extends CQLTester
+{
+    @Test
+    public void testTombstoneAndLiveRowSamplers() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, v int, PRIMARY KEY (k, c))");
+        for (int k = 0; k < 10; k++)
+        {
+            for (int c = 0; c < 10; c++)
+                execute("INSERT INTO %s (k, c, v) VALUES (?, ?, ?)", k, c, c);
+        }
+        // partition 3 has the most tombstones, and partition 7 the most live rows
+        for (int c = 0; c < 8; c++)
+            execute("DELETE v FROM %s WHERE k = 3 AND c = ?", c);
+        for (int c = 0; c < 2; c++)
+            execute("DELETE v FROM %s WHERE k = 5 AND c = ?", c);
+        for (int c = 10; c < 50; c++)
+            execute("INSERT INTO %s (k, c, v) VALUES (7, ?, ?)", c, c);
+        flush();
+
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        cfs.beginLocalSampling(Sampler.TOMBSTONES.toString(), 16);
+        cfs.beginLocalSampling(Sampler.LIVE_ROWS.toString(), 16);
+
+        for (int i = 0; i < 3; i++)
+        {
+            for (int k = 0; k < 10; k++)
+                execute("SELECT * FROM %s WHERE k = ?", k);
+        }
+        execute("SELECT * FROM %s");
+
+        // the samples are recorded asynchronously by the sampler executor
+        while (((Number) samplerMetric("PendingTasks")).longValue() > 0 || ((Number) samplerMetric("ActiveTasks")).intValue() > 0)
+            Thread.sleep(10);
+
+        List<CompositeData> tombstones = topK(cfs.finishLocalSampling(Sampler.TOMBSTONES.toString(), 2));
+        assertEquals(2, tombstones.size());
+        assertEquals("3", tombstones.get(0).get("string"));
+        // 3 single partition reads, and a range read, of 8 cell tombstones
+        assertEquals(32L, tombstones.get(0).get("count"));
+        assertEquals("5", tombstones.get(1).get("string"));
+        assertEquals(8L, tombstones.get(1).get("count"));
+
+        List<CompositeData> liveRows = topK(cfs.finishLocalSampling(Sampler.LIVE_ROWS.toString(), 1));
+        assertEquals(1, liveRows.size());
+        assertEquals("7", liveRows.get(0).get("string"));
+        assertEquals(200L, liveRows.get(0).get("count"));
+    }
+
+    private static Object samplerMetric(String name)
+    {
+        return ThreadPoolMetrics.getJmxMetric(ManagementFactory.getPlatformMBeanServer(), "internal", "Sampler", name);
+    }
+
+    private static List<CompositeData> topK(CompositeData result)
+    {
+        List<CompositeData> topK = new ArrayList<>();
+        for (Object value : ((TabularDataSupport) result.get("partitions")).values())
+            topK.add((CompositeData) value);
+        topK.sort((left, right) -> Long.compare((long) right.get("count"), (long) left.get("count")));
+        return topK;
+    }
+}
@@ -133,6 +133,38 @@ public class RecoveryManagerTest
         assertEquals(10L, CounterContext.instance().total(row.getCell(counterCol).value()));
     }
 
+    @Test
+    public void testRecoverMultipleSegments() throws IOException
+    {
+        CommitLog.instance.resetUnsafe(true);
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF_STANDARD1);
+
+        // large enough values to spread the updates of each partition over several segments, replayed in parallel
+        String padding = new String(new char[1024 * 1024]).replace('\0', 'x');
+        for (int version = 0; version < 4; ++version)
+        {
+            for (int i = 0; i < 4; ++i)
+            {
+                new RowUpdateBuilder(cfs.metadata, version, "key" + i)
+                    .clustering("cc")
+                    .add("val", version + padding)
+                    .build()
+                    .apply();
+            }
+        }
+        Assert.assertTrue(CommitLog.instance.activeSegments() > 2);
+
+        cfs.clearUnsafe();
+        CommitLog.instance.resetUnsafe(false);
+
+        ColumnDefinition valCol = cfs.metadata.getColumnDefinition(ByteBufferUtil.bytes("val"));
+        for (int i = 0; i < 4; ++i)
+        {
+            Row row = Util.getOnlyRow(Util.cmd(cfs, "key" + i).includeRow("cc").build());
+            assertEquals(3 + padding, ByteBufferUtil.string(row.getCell(valCol).value()));
+        }
+    }
+
     @Test
     public void testRecoverPIT() throws Exception
     {
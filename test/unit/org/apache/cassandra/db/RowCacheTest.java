@@ -29,6 +29,7 @@ import org.junit.Test;
 import org.apache.cassandra.SchemaLoader;
 import org.apache.cassandra.Util;
 import org.apache.cassandra.cache.RowCacheKey;
+import org.apache.cassandra.cache.RowCacheSentinel;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.rows.*;
@@ -237,6 +238,33 @@ public class RowCacheTest
         CacheService.instance.setRowCacheCapacityInMB(0);
     }
 
+    @Test
+    public void testRowCacheLoadSkipsCachedEntries() throws Exception
+    {
+        CacheService.instance.setRowCacheCapacityInMB(1);
+        CompactionManager.instance.disableAutoCompaction();
+        ColumnFamilyStore store = Keyspace.open(KEYSPACE_CACHED).getColumnFamilyStore(CF_CACHED);
+
+        CacheService.instance.invalidateRowCache();
+        SchemaLoader.insertData(KEYSPACE_CACHED, CF_CACHED, 0, 10);
+        readData(KEYSPACE_CACHED, CF_CACHED, 0, 10);
+        CacheService.instance.rowCache.submitWrite(Integer.MAX_VALUE).get();
+        CacheService.instance.invalidateRowCache();
+
+        // a read that started before the load already put its sentinel, so the load must leave the entry to it
+        RowCacheKey readKey = new RowCacheKey(store.metadata.ksAndCFName, Util.dk("key0"));
+        RowCacheSentinel sentinel = new RowCacheSentinel();
+        assertTrue(CacheService.instance.rowCache.putIfAbsent(readKey, sentinel));
+
+        assertEquals(10, CacheService.instance.rowCache.loadSaved());
+        assertEquals(10, CacheService.instance.rowCache.size());
+        assertEquals(sentinel, CacheService.instance.rowCache.get(readKey));
+        for (int i = 1; i < 10; i++)
+            assertNotNull(store.getRawCachedPartition(Util.dk("key" + i)));
+
+        CacheService.instance.setRowCacheCapacityInMB(0);
+    }
+
     @Test
     public void testRowCacheDropSaveLoad() throws Exception
     {
@@ -349,6 +377,69 @@ public class RowCacheTest
         cachedStore.truncateBlocking();
     }
 
+    @Test
+    public void testRowCacheUpdate() throws Exception
+    {
+        CompactionManager.instance.disableAutoCompaction();
+
+        Keyspace keyspace = Keyspace.open(KEYSPACE_CACHED);
+        ColumnFamilyStore cachedStore  = keyspace.getColumnFamilyStore(CF_CACHEDINT);
+        CacheService.instance.invalidateRowCache();
+        CacheService.instance.setRowCacheCapacityInMB(1);
+
+        // a partition smaller than the 100 rows we cache is cached whole
+        ByteBuffer key = ByteBufferUtil.bytes("rowcacheupdatekey");
+        DecoratedKey dk = cachedStore.decorateKey(key);
+        for (int i = 0; i < 5; i++)
+            writeRow(cachedStore, key, String.valueOf(i));
+        Util.getAll(Util.cmd(cachedStore, dk).withLimit(10).build());
+        assertEquals(5, cachedStore.getRawCachedPartition(dk).rowCount());
+
+        // writes are applied to it, deletions included
+        writeRow(cachedStore, key, "5");
+        assertEquals(6, cachedStore.getRawCachedPartition(dk).rowCount());
+        RowUpdateBuilder.deleteRow(cachedStore.metadata, System.currentTimeMillis(), key, "0").applyUnsafe();
+        assertEquals(5, cachedStore.getRawCachedPartition(dk).cachedLiveRows());
+
+        long startRowCacheHits = cachedStore.metric.rowCacheHit.getCount();
+        assertEquals(5, Util.getOnlyPartition(Util.cmd(cachedStore, dk).withLimit(10).build()).rowCount());
+        assertEquals(startRowCacheHits + 1, cachedStore.metric.rowCacheHit.getCount());
+
+        // only the head of a bigger partition is cached
+        key = ByteBufferUtil.bytes("rowcacheupdateheadkey");
+        dk = cachedStore.decorateKey(key);
+        for (int i = 0; i < 150; i++)
+            writeRow(cachedStore, key, String.format("%03d", i));
+        Util.getAll(Util.cmd(cachedStore, dk).withLimit(10).build());
+        assertEquals("099", lastCachedName(cachedStore, dk));
+
+        // writes past the head leave it untouched, and writes to it move rows out of it
+        writeRow(cachedStore, key, "200");
+        assertEquals("099", lastCachedName(cachedStore, dk));
+        writeRow(cachedStore, key, "000a");
+        assertEquals(100, cachedStore.getRawCachedPartition(dk).rowCount());
+        assertEquals("098", lastCachedName(cachedStore, dk));
+
+        // but a deletion in the head invalidates it, as we don't know the row following it
+        RowUpdateBuilder.deleteRow(cachedStore.metadata, System.currentTimeMillis(), key, "050").applyUnsafe();
+        assertNull(cachedStore.getRawCachedPartition(dk));
+
+        cachedStore.truncateBlocking();
+    }
+
+    private static void writeRow(ColumnFamilyStore cfs, ByteBuffer key, String name)
+    {
+        new RowUpdateBuilder(cfs.metadata, System.currentTimeMillis(), key).clustering(name)
+                                                                           .add("val", ByteBufferUtil.bytes("val" + name))
+                                                                           .build()
+                                                                           .applyUnsafe();
+    }
+
+    private static String lastCachedName(ColumnFamilyStore cfs, DecoratedKey dk) throws Exception
+    {
+        return ByteBufferUtil.string(cfs.getRawCachedPartition(dk).lastRow().clustering().get(0));
+    }
+
     public void rowCacheLoad(int totalKeys, int keysToSave, int offset) throws Exception
     {
         CompactionManager.instance.disableAutoCompaction();
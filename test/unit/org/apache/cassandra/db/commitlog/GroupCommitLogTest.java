@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.RowUpdateBuilder;
+import org.apache.cassandra.db.marshal.AsciiType;
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.schema.KeyspaceParams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GroupCommitLogTest
+{
+    private static final String KEYSPACE = "GroupCommitLogTest";
+    private static final String TABLE = "Standard1";
+
+    @BeforeClass
+    public static void defineSchema()
+    {
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE,
+                                    KeyspaceParams.simple(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE, TABLE, 0, AsciiType.instance, BytesType.instance));
+    }
+
+    @Test
+    public void testSubMillisecondWindow() throws Exception
+    {
+        // a window under a millisecond used to be truncated to 0, which the sync thread refused to start with
+        testGroupCommitLog(0.5, commitLog -> {
+            long groups = commitLog.metrics.groupCommitSize.getCount();
+            List<Mutation> mutations = write(commitLog, 100, 4, false);
+
+            // every write is only acknowledged once synced, by syncs that each acknowledge at least one of them
+            long syncs = commitLog.metrics.groupCommitSize.getCount() - groups;
+            assertTrue(syncs > 0 && syncs <= mutations.size());
+            assertEquals(0, commitLog.executor.getPendingTasks());
+        });
+    }
+
+    @Test
+    public void testWritersShareSync() throws Exception
+    {
+        // with a window long enough for all of them to start, the writers wait on the same syncs
+        testGroupCommitLog(200, commitLog -> {
+            long groups = commitLog.metrics.groupCommitSize.getCount();
+            List<Mutation> mutations = write(commitLog, 8, 8, true);
+
+            long syncs = commitLog.metrics.groupCommitSize.getCount() - groups;
+            assertTrue("Expected fewer syncs than the " + mutations.size() + " writes, but got " + syncs,
+                       syncs > 0 && syncs < mutations.size());
+            assertEquals(0, commitLog.executor.getPendingTasks());
+        });
+    }
+
+    @Test
+    public void testReplayAfterGroupSync() throws Exception
+    {
+        testGroupCommitLog(1, commitLog -> {
+            List<Mutation> mutations = write(commitLog, 50, 4, false);
+
+            // the acknowledged writes are replayable without waiting for the sync of the log shutdown
+            Set<DecoratedKey> replayed = ConcurrentHashMap.newKeySet();
+            CommitLogTestReplayer replayer = new CommitLogTestReplayer(commitLog, mutation -> replayed.add(mutation.key()));
+            replayer.recover(new File(commitLog.location).listFiles());
+            for (Mutation mutation : mutations)
+                assertTrue("Write to " + mutation.key() + " wasn't replayed", replayed.contains(mutation.key()));
+        });
+    }
+
+    private interface GroupCommitLogCheck
+    {
+        void check(CommitLog commitLog) throws Exception;
+    }
+
+    private static void testGroupCommitLog(double windowMillis, GroupCommitLogCheck check) throws Exception
+    {
+        Config.CommitLogSync sync = DatabaseDescriptor.getCommitLogSync();
+        File location = Files.createTempDirectory("group-commitlog").toFile();
+        DatabaseDescriptor.setCommitLogSync(Config.CommitLogSync.group);
+        DatabaseDescriptor.setCommitLogSyncGroupWindow(windowMillis);
+        try
+        {
+            CommitLog commitLog = new CommitLog(location.getPath(), CommitLogArchiver.disabled()).start();
+            try
+            {
+                check.check(commitLog);
+            }
+            finally
+            {
+                commitLog.shutdownBlocking();
+            }
+        }
+        finally
+        {
+            DatabaseDescriptor.setCommitLogSync(sync);
+            FileUtils.deleteRecursive(location);
+        }
+    }
+
+    /**
+     * Adds the given number of mutations to the commit log from the given number of threads, and waits for all of
+     * them to be acknowledged.
+     */
+    private static List<Mutation> write(CommitLog commitLog, int count, int threads, boolean startTogether) throws Exception
+    {
+        CFMetaData metadata = Schema.instance.getCFMetaData(KEYSPACE, TABLE);
+        ExecutorService writers = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(startTogether ? count : 0);
+        try
+        {
+            List<Mutation> mutations = new ArrayList<>();
+            List<Future<?>> writes = new ArrayList<>();
+            for (int i = 0; i < count; i++)
+            {
+                Mutation mutation = new RowUpdateBuilder(metadata, 0, "k" + i)
+                                    .clustering("c")
+                                    .add("val", ByteBuffer.allocate(16))
+                                    .build();
+                mutations.add(mutation);
+                writes.add(writers.submit(() -> {
+                    start.countDown();
+                    start.await();
+                    return commitLog.add(mutation);
+                }));
+            }
+
+            for (Future<?> write : writes)
+                write.get();
+            return mutations;
+        }
+        finally
+        {
+            writers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedCompactionTest extends CQLTester
+{
+    @After
+    public void resetMinShardSize()
+    {
+        DatabaseDescriptor.setCompactionMinShardSizeInMB(1024);
+    }
+
+    @Test
+    public void testSplitRanges() throws Throwable
+    {
+        ColumnFamilyStore cfs = populate();
+
+        for (int shards = 1; shards <= 8; shards++)
+        {
+            List<Range<Token>> ranges = ShardedCompaction.splitRanges(cfs.getLiveSSTables(), shards);
+            assertEquals(shards, ranges.size());
+
+            // contiguous ranges covering the whole ring
+            Token min = cfs.getPartitioner().getMinimumToken();
+            assertEquals(min, ranges.get(0).left);
+            assertEquals(min, ranges.get(ranges.size() - 1).right);
+            for (int i = 1; i < ranges.size(); i++)
+            {
+                assertEquals(ranges.get(i - 1).right, ranges.get(i).left);
+                assertTrue(ranges.get(i).left.compareTo(ranges.get(i - 1).left) > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testShardedMajorCompaction() throws Throwable
+    {
+        ColumnFamilyStore cfs = populate();
+        DatabaseDescriptor.setCompactionMinShardSizeInMB(1);
+
+        CompactionManager.instance.performMaximal(cfs, false);
+
+        // one sstable per shard, with disjoint key ranges
+        List<SSTableReader> sstables = new ArrayList<>(cfs.getLiveSSTables());
+        assertTrue(sstables.size() > 1 && sstables.size() <= 4);
+        Collections.sort(sstables, SSTableReader.sstableComparator);
+        for (int i = 1; i < sstables.size(); i++)
+            assertTrue(sstables.get(i - 1).last.compareTo(sstables.get(i).first) < 0);
+
+        assertEquals(1750, execute("SELECT * FROM %s").size());
+        for (int k = 0; k < 1750; k++)
+        {
+            UntypedResultSet.Row row = execute("SELECT * FROM %s WHERE k = ?", k).one();
+            assertEquals(Math.min(3, k / 250), row.getInt("i"));
+        }
+    }
+
+    /**
+     * Writes four overlapping sstables of about 1MB, each overwriting the last 750 keys of the previous one.
+     */
+    private ColumnFamilyStore populate() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, i int, v blob) WITH compression = {'enabled' : false}");
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        cfs.disableAutoCompaction();
+
+        Random random = new Random(0);
+        for (int i = 0; i < 4; i++)
+        {
+            for (int k = i * 250; k < i * 250 + 1000; k++)
+            {
+                byte[] value = new byte[1024];
+                random.nextBytes(value);
+                execute("INSERT INTO %s (k, i, v) VALUES (?, ?, ?)", k, i, ByteBuffer.wrap(value));
+            }
+            flush();
+        }
+        assertEquals(4, cfs.getLiveSSTables().size());
+        return cfs;
+    }
+}
@@ -17,24 +17,51 @@
  */
 package org.apache.cassandra.hints;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.google.common.util.concurrent.RateLimiter;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
 import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
 import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Keyspace;
 import org.apache.cassandra.db.Mutation;
 import org.apache.cassandra.db.RowUpdateBuilder;
+import org.apache.cassandra.db.SystemKeyspace;
 import org.apache.cassandra.io.util.DataInputBuffer;
 import org.apache.cassandra.io.util.DataInputPlus;
 import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.net.IMessageSink;
+import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessageOut;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.schema.KeyspaceParams;
+import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.FBUtilities;
 
 import static junit.framework.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import static org.apache.cassandra.hints.HintsTestUtil.assertHintsEqual;
 import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
@@ -44,22 +71,18 @@ public class HintMessageTest
     private static final String KEYSPACE = "hint_message_test";
     private static final String TABLE = "table";
 
-    @Test
-    public void testSerializer() throws IOException
+    @BeforeClass
+    public static void defineSchema()
     {
         SchemaLoader.prepareServer();
         SchemaLoader.createKeyspace(KEYSPACE, KeyspaceParams.simple(1), SchemaLoader.standardCFMD(KEYSPACE, TABLE));
+    }
 
+    @Test
+    public void testSerializer() throws IOException
+    {
         UUID hostId = UUID.randomUUID();
-        long now = FBUtilities.timestampMicros();
-
-        CFMetaData table = Schema.instance.getCFMetaData(KEYSPACE, TABLE);
-        Mutation mutation =
-            new RowUpdateBuilder(table, now, bytes("key"))
-                .clustering("column")
-                .add("val", "val" + 1234)
-                .build();
-        Hint hint = Hint.create(mutation, now / 1000);
+        Hint hint = createHint(1234);
         HintMessage message = new HintMessage(hostId, hint);
 
         // serialize
@@ -76,4 +99,222 @@ public class HintMessageTest
         assertEquals(hostId, deserializedMessage.hostId);
         assertHintsEqual(message.hint, deserializedMessage.hint);
     }
+
+    @Test
+    public void testBatchSerializer() throws IOException
+    {
+        int version = MessagingService.current_version;
+        UUID hostId = UUID.randomUUID();
+
+        List<Hint> hints = new ArrayList<>();
+        List<ByteBuffer> encodedHints = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            Hint hint = createHint(i);
+            hints.add(hint);
+
+            DataOutputBuffer dob = new DataOutputBuffer();
+            Hint.serializer.serialize(hint, dob, version);
+            encodedHints.add(dob.buffer());
+        }
+
+        // serialize the encoded hints
+        MessageOut<EncodedHintBatchMessage> message = new EncodedHintBatchMessage(hostId, encodedHints, version).createMessageOut();
+        DataOutputBuffer dob = new DataOutputBuffer();
+        message.serializer.serialize(message.payload, dob, version);
+        assertEquals(message.payloadSize(version), dob.getLength());
+
+        // deserialize them as hint messages
+        DataInputPlus di = new DataInputBuffer(dob.buffer(), true);
+        HintBatchMessage deserializedMessage = HintBatchMessage.serializer.deserialize(di, version);
+
+        assertEquals(hostId, deserializedMessage.hostId);
+        assertEquals(hints.size(), deserializedMessage.hints.size());
+        for (int i = 0; i < hints.size(); i++)
+        {
+            assertEquals(hostId, deserializedMessage.hints.get(i).hostId);
+            assertHintsEqual(hints.get(i), deserializedMessage.hints.get(i).hint);
+        }
+    }
+
+    @Test
+    public void testBatchResponseSerializer() throws IOException
+    {
+        int version = MessagingService.current_version;
+        for (int[] failed : new int[][]{ {}, { 0 }, { 1, 5, 300 } })
+        {
+            HintBatchResponse response = new HintBatchResponse(failed);
+            DataOutputBuffer dob = new DataOutputBuffer();
+            HintBatchResponse.serializer.serialize(response, dob, version);
+            assertEquals(HintBatchResponse.serializer.serializedSize(response, version), dob.getLength());
+
+            DataInputPlus di = new DataInputBuffer(dob.buffer(), true);
+            assertArrayEquals(failed, HintBatchResponse.serializer.deserialize(di, version).failed);
+        }
+    }
+
+    @Test
+    public void testBatchVerbHandler() throws Exception
+    {
+        // with a batch commit log, each hint waits for its own sync, so a batch is only applied within the timeout
+        // if its hints are applied concurrently
+        assertEquals(Config.CommitLogSync.batch, DatabaseDescriptor.getCommitLogSync());
+        UUID localHostId = SystemKeyspace.getLocalHostId();
+        StorageService.instance.getTokenMetadata().updateHostId(localHostId, FBUtilities.getBroadcastAddress());
+
+        List<ByteBuffer> encodedHints = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+        {
+            DataOutputBuffer dob = new DataOutputBuffer();
+            Hint.serializer.serialize(createHint(i), dob, MessagingService.current_version);
+            encodedHints.add(dob.buffer());
+        }
+        MessageOut<EncodedHintBatchMessage> out = new EncodedHintBatchMessage(localHostId, encodedHints, MessagingService.current_version).createMessageOut();
+        DataOutputBuffer dob = new DataOutputBuffer();
+        out.serializer.serialize(out.payload, dob, MessagingService.current_version);
+        HintBatchMessage batch = HintBatchMessage.serializer.deserialize(new DataInputBuffer(dob.buffer(), true), MessagingService.current_version);
+
+        CompletableFuture<HintBatchResponse> reply = new CompletableFuture<>();
+        MessagingService.instance().addMessageSink(new IMessageSink()
+        {
+            public boolean allowOutgoingMessage(MessageOut message, int id, InetAddress to)
+            {
+                if (message.payload instanceof HintBatchResponse)
+                    reply.complete((HintBatchResponse) message.payload);
+                return false;
+            }
+
+            public boolean allowIncomingMessage(MessageIn message, int id)
+            {
+                return false;
+            }
+        });
+
+        try
+        {
+            long start = System.nanoTime();
+            new HintBatchVerbHandler().doVerb(MessageIn.create(FBUtilities.getBroadcastAddress(),
+                                                               batch,
+                                                               Collections.emptyMap(),
+                                                               MessagingService.Verb.HINT_BATCH,
+                                                               MessagingService.current_version,
+                                                               MessageIn.createTimestamp()),
+                                              0);
+            HintBatchResponse response = reply.get(DatabaseDescriptor.getWriteRpcTimeout(), TimeUnit.MILLISECONDS);
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(DatabaseDescriptor.getWriteRpcTimeout()));
+            assertEquals(0, response.failed.length);
+        }
+        finally
+        {
+            MessagingService.instance().clearMessageSinks();
+        }
+
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE).getColumnFamilyStore(TABLE);
+        for (int i = 0; i < 500; i++)
+            assertEquals(bytes("val" + i), Util.getOnlyRow(Util.cmd(cfs, "key" + i).build()).getCell(cfs.metadata.getColumnDefinition(bytes("val"))).value());
+    }
+
+    @Test
+    public void testSplitBatches()
+    {
+        List<ByteBuffer> hints = new ArrayList<>();
+        for (int size : new int[]{ 10, HintsDispatcher.MAX_BATCH_SIZE - 10, 1, HintsDispatcher.MAX_BATCH_SIZE * 2, 5 })
+            hints.add(ByteBuffer.allocate(size));
+
+        // every batch holds at least a hint, and no more than MAX_BATCH_SIZE bytes of hints otherwise
+        List<List<ByteBuffer>> batches = HintsDispatcher.split(hints);
+        assertEquals(4, batches.size());
+        assertEquals(hints.subList(0, 2), batches.get(0));
+        assertEquals(hints.subList(2, 3), batches.get(1));
+        assertEquals(hints.subList(3, 4), batches.get(2));
+        assertEquals(hints.subList(4, 5), batches.get(3));
+    }
+
+    @Test
+    public void testFailingHintsAreResentBoundedTimes() throws Exception
+    {
+        UUID localHostId = SystemKeyspace.getLocalHostId();
+        StorageService.instance.getTokenMetadata().updateHostId(localHostId, FBUtilities.getBroadcastAddress());
+        File directory = Files.createTempDirectory("hint-dispatch").toFile();
+        try
+        {
+            HintsDescriptor descriptor = new HintsDescriptor(localHostId, System.currentTimeMillis());
+            try (HintsWriter writer = HintsWriter.create(directory, descriptor);
+                 HintsWriter.Session session = writer.newSession(ByteBuffer.allocateDirect(64 * 1024)))
+            {
+                for (int i = 0; i < 3; i++)
+                    session.append(createHint(i));
+            }
+            File file = new File(directory, descriptor.fileName());
+
+            // a hint failing once is sent again on its own, and the dispatch completes
+            assertEquals(2, dispatch(file, localHostId, 1, true));
+
+            // a hint that always fails is only sent again a bounded number of times before the dispatch is aborted
+            assertEquals(HintsDispatcher.MAX_RESENDS + 1, dispatch(file, localHostId, Integer.MAX_VALUE, false));
+        }
+        finally
+        {
+            FileUtils.deleteRecursive(directory);
+        }
+    }
+
+    /**
+     * Dispatches the given hints file to this node, replying to the first {@code failures} batches that their first
+     * hint failed to apply.
+     *
+     * @return the number of batches sent
+     */
+    private static int dispatch(File file, UUID hostId, int failures, boolean expectCompleted)
+    {
+        AtomicInteger sent = new AtomicInteger();
+        MessagingService.instance().addMessageSink(new IMessageSink()
+        {
+            public boolean allowOutgoingMessage(MessageOut message, int id, InetAddress to)
+            {
+                if (message.payload instanceof EncodedHintBatchMessage)
+                {
+                    int[] failed = sent.incrementAndGet() <= failures ? new int[]{ 0 } : new int[0];
+                    MessagingService.instance().receive(MessageIn.create(to,
+                                                                         new HintBatchResponse(failed),
+                                                                         Collections.emptyMap(),
+                                                                         MessagingService.Verb.REQUEST_RESPONSE,
+                                                                         MessagingService.current_version,
+                                                                         MessageIn.createTimestamp()),
+                                                        id);
+                }
+                return false;
+            }
+
+            public boolean allowIncomingMessage(MessageIn message, int id)
+            {
+                return true;
+            }
+        });
+
+        try (HintsDispatcher dispatcher = HintsDispatcher.create(file, RateLimiter.create(Double.MAX_VALUE), hostId, hostId, new AtomicBoolean()))
+        {
+            if (expectCompleted)
+                assertTrue(dispatcher.dispatch());
+            else
+                assertFalse(dispatcher.dispatch());
+            return sent.get();
+        }
+        finally
+        {
+            MessagingService.instance().clearMessageSinks();
+        }
+    }
+
+    private static Hint createHint(int value)
+    {
+        long now = FBUtilities.timestampMicros();
+        CFMetaData table = Schema.instance.getCFMetaData(KEYSPACE, TABLE);
+        Mutation mutation =
+            new RowUpdateBuilder(table, now, bytes("key" + value))
+                .clustering("column")
+                .add("val", "val" + value)
+                .build();
+        return Hint.create(mutation, now / 1000);
+    }
 }
@@ -18,20 +18,26 @@
 package org.apache.cassandra.io.compress;
 
 import java.io.*;
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.StandardOpenOption;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Random;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 
 import com.google.common.io.Files;
 import static org.junit.Assert.*;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.util.DataInputBuffer;
+import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.schema.CompressionParams;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.memory.BufferPool;
 
@@ -52,13 +58,26 @@ public class CompressorTest
         {
             this.compressor = compressor;
 
-            testEmptyArray();
-            testLongArray();
-            testShortArray();
-            testMappedFile();
+            testArrays();
         }
     }
 
+    @Test
+    public void testZstd() throws IOException
+    {
+        Assume.assumeTrue(ZstdCompressor.isAvailable());
+        compressor = ZstdCompressor.create(Collections.<String, String>emptyMap());
+        testArrays();
+    }
+
+    private void testArrays() throws IOException
+    {
+        testEmptyArray();
+        testLongArray();
+        testShortArray();
+        testMappedFile();
+    }
+
     public void testArrayUncompress(byte[] data, int off, int len) throws IOException
     {
         final int inOffset = 2;
@@ -177,6 +196,144 @@ public class CompressorTest
         testByteBuffers();
     }
 
+    @Test
+    public void testZstdByteBuffers() throws IOException
+    {
+        Assume.assumeTrue(ZstdCompressor.isAvailable());
+        compressor = ZstdCompressor.create(Collections.singletonMap(ZstdCompressor.COMPRESSION_LEVEL, "9"));
+        testByteBuffers();
+    }
+
+    @Test
+    public void testZstdDictionary() throws IOException
+    {
+        Assume.assumeTrue(ZstdCompressor.isAvailable());
+        // small chunks of similar text, as found in tables with json-like values
+        Random random = new Random(0);
+        List<ByteBuffer> samples = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+            samples.add(ByteBuffer.wrap(jsonChunk(random, 512)));
+
+        byte[] dictionary = ZstdCompressor.trainDictionary(samples, 16 * 1024);
+        assertTrue(dictionary.length > 0);
+
+        ICompressor plain = ZstdCompressor.create(Collections.<String, String>emptyMap());
+        compressor = ZstdCompressor.create(Collections.singletonMap(ZstdCompressor.DICTIONARY, Base64.getEncoder().encodeToString(dictionary)));
+        assertSame(compressor, ZstdCompressor.create(Collections.singletonMap(ZstdCompressor.DICTIONARY, Base64.getEncoder().encodeToString(dictionary))));
+
+        byte[] data = jsonChunk(random, 512);
+        int plainLength = compressedLength(plain, data);
+        int dictionaryLength = compressedLength(compressor, data);
+        assertTrue(dictionaryLength + " should be smaller than " + plainLength, dictionaryLength < plainLength);
+
+        testArrayUncompress(data);
+        testByteBuffers();
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testZstdInvalidLevel() throws ConfigurationException
+    {
+        Assume.assumeTrue(ZstdCompressor.isAvailable());
+        ZstdCompressor.create(Collections.singletonMap(ZstdCompressor.COMPRESSION_LEVEL, "0"));
+    }
+
+    @Test
+    public void testZstdLargestDictionary() throws IOException
+    {
+        Assume.assumeTrue(ZstdCompressor.isAvailable());
+
+        // a raw content dictionary of the largest size allowed must survive the serialization of the options
+        byte[] dictionary = new byte[ZstdCompressor.MAX_DICTIONARY_SIZE];
+        new Random(0).nextBytes(dictionary);
+        Map<String, String> options = new HashMap<>();
+        options.put(CompressionParams.CLASS, ZstdCompressor.class.getName());
+        options.put(ZstdCompressor.DICTIONARY, Base64.getEncoder().encodeToString(dictionary));
+        CompressionParams params = CompressionParams.fromMap(options);
+
+        try (DataOutputBuffer out = new DataOutputBuffer())
+        {
+            CompressionParams.serializer.serialize(params, out, MessagingService.current_version);
+            try (DataInputBuffer in = new DataInputBuffer(out.buffer(), false))
+            {
+                assertEquals(params, CompressionParams.serializer.deserialize(in, MessagingService.current_version));
+            }
+        }
+
+        compressor = params.getSstableCompressor();
+        testArrayUncompress(jsonChunk(new Random(0), 512));
+    }
+
+    @Test
+    public void testZstdContextsArePooled() throws Exception
+    {
+        Assume.assumeTrue(ZstdCompressor.isAvailable());
+        compressor = ZstdCompressor.create(Collections.<String, String>emptyMap());
+
+        // the contexts of threads that are done are reused rather than leaked
+        int pooled = Math.max(1, ZstdCompressor.pooledContexts());
+        for (int i = 0; i < 10; i++)
+        {
+            Thread thread = new Thread(() -> {
+                try
+                {
+                    testShortArray();
+                }
+                catch (IOException e)
+                {
+                    throw new AssertionError(e);
+                }
+            });
+            thread.start();
+            thread.join();
+            assertTrue(ZstdCompressor.pooledContexts() <= pooled);
+        }
+    }
+
+    @Test
+    public void testZstdUnusedDictionariesAreReleased() throws Exception
+    {
+        Assume.assumeTrue(ZstdCompressor.isAvailable());
+        int cached = ZstdCompressor.cachedInstances();
+
+        byte[] dictionary = new byte[1024];
+        new Random(1).nextBytes(dictionary);
+        String encoded = Base64.getEncoder().encodeToString(dictionary);
+        WeakReference<ICompressor> ref = new WeakReference<>(ZstdCompressor.create(Collections.singletonMap(ZstdCompressor.DICTIONARY, encoded)));
+
+        // once nothing uses it, the compressor is dropped from the cache along with its native dictionaries
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while ((ref.get() != null || ZstdCompressor.cachedInstances() > cached) && System.nanoTime() < deadline)
+        {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+        assertTrue(ZstdCompressor.cachedInstances() <= cached);
+
+        // and a new one is created when the dictionary is used again
+        compressor = ZstdCompressor.create(Collections.singletonMap(ZstdCompressor.DICTIONARY, encoded));
+        testArrayUncompress(jsonChunk(new Random(0), 512));
+    }
+
+    private static byte[] jsonChunk(Random random, int entries)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < entries && sb.length() < 4096; i++)
+            sb.append("{\"id\":").append(random.nextInt(100000))
+              .append(",\"name\":\"user").append(random.nextInt(1000))
+              .append("\",\"active\":").append(random.nextBoolean()).append("}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int compressedLength(ICompressor compressor, byte[] data) throws IOException
+    {
+        ByteBuffer src = BufferType.OFF_HEAP.allocate(data.length);
+        src.put(data).flip();
+        ByteBuffer dest = BufferType.OFF_HEAP.allocate(compressor.initialCompressedBufferLength(data.length));
+        compressor.compress(src, dest);
+        return dest.position();
+    }
+
     private void testByteBuffers() throws IOException
     {
         assert compressor.supports(BufferType.OFF_HEAP);
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format.bti;
+
+import java.io.File;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.format.SSTableFormat;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BtiFormatTest extends CQLTester
+{
+    @BeforeClass
+    public static void setFormat()
+    {
+        DatabaseDescriptor.setSSTableFormat(SSTableFormat.Type.BTI);
+    }
+
+    @AfterClass
+    public static void resetFormat()
+    {
+        DatabaseDescriptor.setSSTableFormat(SSTableFormat.Type.BIG);
+    }
+
+    @Test
+    public void testPointAndRangeReads() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k text, c int, v int, PRIMARY KEY (k, c)) WITH caching = {'keys' : 'NONE'}");
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        cfs.disableAutoCompaction();
+
+        for (int i = 0; i < 2; i++)
+        {
+            for (int k = i; k < 1000; k += 2)
+                for (int c = 0; c < 3; c++)
+                    execute("INSERT INTO %s (k, c, v) VALUES (?, ?, ?)", "key" + k, c, k + c);
+            flush();
+        }
+
+        assertEquals(2, cfs.getLiveSSTables().size());
+        for (SSTableReader sstable : cfs.getLiveSSTables())
+            assertUsesPartitionIndex(sstable);
+
+        checkReads();
+
+        compact();
+        assertEquals(1, cfs.getLiveSSTables().size());
+        SSTableReader sstable = cfs.getLiveSSTables().iterator().next();
+        assertUsesPartitionIndex(sstable);
+
+        long truePositives = sstable.getBloomFilterTruePositiveCount();
+        checkReads();
+        assertEquals(truePositives + 1000, sstable.getBloomFilterTruePositiveCount());
+    }
+
+    private void checkReads() throws Throwable
+    {
+        for (int k = 0; k < 1000; k++)
+            assertRows(execute("SELECT v FROM %s WHERE k = ? AND c = 1", "key" + k), row(k + 1));
+        for (int k = 1000; k < 1100; k++)
+            assertEmpty(execute("SELECT v FROM %s WHERE k = ?", "key" + k));
+        assertEquals(3000, execute("SELECT * FROM %s").size());
+    }
+
+    private static void assertUsesPartitionIndex(SSTableReader sstable)
+    {
+        assertEquals(SSTableFormat.Type.BTI, sstable.descriptor.formatType);
+        assertTrue(SSTableReader.componentsFor(sstable.descriptor).contains(Component.PARTITION_INDEX));
+        assertTrue(new File(sstable.descriptor.filenameFor(Component.PARTITION_INDEX)).exists());
+        assertFalse(sstable.usesIndexSummaryForLookups());
+    }
+}
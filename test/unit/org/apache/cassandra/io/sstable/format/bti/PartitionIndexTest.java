@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format.bti;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import org.junit.Test;
+
+import org.apache.cassandra.io.util.SequentialWriter;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PartitionIndexTest
+{
+    private static final Comparator<byte[]> comparator = new Comparator<byte[]>()
+    {
+        public int compare(byte[] a, byte[] b)
+        {
+            return FBUtilities.compareUnsigned(a, b);
+        }
+    };
+
+    @Test
+    public void testRandomKeys() throws IOException
+    {
+        Random random = new Random();
+        long seed = random.nextLong();
+        random.setSeed(seed);
+
+        TreeSet<byte[]> keys = new TreeSet<>(comparator);
+        while (keys.size() < 10000)
+        {
+            // short keys over a small alphabet, to get many shared prefixes and keys prefix of others
+            byte[] key = new byte[1 + random.nextInt(6)];
+            for (int i = 0; i < key.length; i++)
+                key[i] = (byte) (random.nextInt(8) * 36);
+            keys.add(key);
+        }
+
+        List<byte[]> added = new ArrayList<>();
+        List<byte[]> absent = new ArrayList<>();
+        for (byte[] key : keys)
+            (random.nextInt(4) == 0 ? absent : added).add(key);
+
+        try (PartitionIndex index = write(added))
+        {
+            for (int i = 0; i < added.size(); i++)
+                assertEquals("seed " + seed, i, index.get(added.get(i)));
+
+            // an absent key either isn't found or maps to a different key sharing its stored prefix, which readers
+            // reject by comparing the full keys
+            for (byte[] key : absent)
+            {
+                long found = index.get(key);
+                if (found != PartitionIndex.NOT_FOUND)
+                    assertTrue("seed " + seed, found < added.size() && comparator.compare(key, added.get((int) found)) != 0);
+            }
+        }
+    }
+
+    @Test
+    public void testPrefixes() throws IOException
+    {
+        List<byte[]> keys = Arrays.asList(new byte[]{ 1 },
+                                          new byte[]{ 1, 0 },
+                                          new byte[]{ 1, 0, 0, 0, 5 },
+                                          new byte[]{ 1, 0, 0, 0, 6 },
+                                          new byte[]{ 2 },
+                                          new byte[]{ (byte) 0xFF, 3, 4 });
+        try (PartitionIndex index = write(keys))
+        {
+            for (int i = 0; i < keys.size(); i++)
+                assertEquals(i, index.get(keys.get(i)));
+
+            assertEquals(PartitionIndex.NOT_FOUND, index.get(new byte[]{ 0 }));
+            assertEquals(PartitionIndex.NOT_FOUND, index.get(new byte[]{ 1, 0, 0 }));
+            assertEquals(PartitionIndex.NOT_FOUND, index.get(new byte[]{ 1, 0, 0, 0, 7 }));
+            assertEquals(PartitionIndex.NOT_FOUND, index.get(new byte[]{ 3 }));
+            // only the distinguishing prefix of the last key is stored
+            assertEquals(5, index.get(new byte[]{ (byte) 0xFF, 9 }));
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        try (PartitionIndex index = write(Collections.<byte[]>emptyList()))
+        {
+            assertEquals(PartitionIndex.NOT_FOUND, index.get(new byte[]{ 1 }));
+            assertEquals(PartitionIndex.NOT_FOUND, index.get(new byte[0]));
+        }
+    }
+
+    @Test
+    public void testResetToMark() throws IOException
+    {
+        File file = File.createTempFile("partitions", ".db");
+        file.deleteOnExit();
+        try (SequentialWriter writer = SequentialWriter.open(file))
+        {
+            PartitionIndexBuilder builder = new PartitionIndexBuilder(writer);
+            builder.add(new byte[]{ 1 }, 1);
+            builder.mark();
+            builder.add(new byte[]{ 2 }, 2);
+            builder.resetToMark();
+            builder.add(new byte[]{ 3 }, 3);
+            assertEquals(2, builder.count());
+            builder.complete();
+            writer.finish();
+        }
+
+        try (PartitionIndex index = PartitionIndex.open(file.getPath()))
+        {
+            assertEquals(1, index.get(new byte[]{ 1 }));
+            assertEquals(PartitionIndex.NOT_FOUND, index.get(new byte[]{ 2 }));
+            assertEquals(3, index.get(new byte[]{ 3 }));
+        }
+    }
+
+    private static PartitionIndex write(List<byte[]> keys) throws IOException
+    {
+        File file = File.createTempFile("partitions", ".db");
+        file.deleteOnExit();
+        try (SequentialWriter writer = SequentialWriter.open(file))
+        {
+            PartitionIndexBuilder builder = new PartitionIndexBuilder(writer);
+            for (int i = 0; i < keys.size(); i++)
+                builder.add(keys.get(i), i);
+            builder.complete();
+            writer.finish();
+        }
+        return PartitionIndex.open(file.getPath());
+    }
+}
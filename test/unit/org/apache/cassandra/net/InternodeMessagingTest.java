@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.gms.EchoMessage;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sends messages to this node through its own internode connections.
+ */
+public class InternodeMessagingTest
+{
+    private static final String PAYLOAD_PARAM = "PAYLOAD";
+    private static final AtomicInteger received = new AtomicInteger();
+    private static final AtomicInteger corrupted = new AtomicInteger();
+
+    @BeforeClass
+    public static void setUp() throws Exception
+    {
+        SchemaLoader.prepareServer();
+        // the echo and response verb handlers are registered by the storage service
+        Class.forName(StorageService.class.getName());
+        MessagingService.instance().addMessageSink(new IMessageSink()
+        {
+            public boolean allowOutgoingMessage(MessageOut message, int id, InetAddress to)
+            {
+                return true;
+            }
+
+            public boolean allowIncomingMessage(MessageIn message, int id)
+            {
+                if (message.verb != MessagingService.Verb.ECHO)
+                    return true;
+
+                byte[] payload = (byte[]) message.parameters.get(PAYLOAD_PARAM);
+                if (payload == null || !Arrays.equals(payload, payload(payload.length)))
+                    corrupted.incrementAndGet();
+                received.incrementAndGet();
+                return true;
+            }
+        });
+        MessagingService.instance().listen(FBUtilities.getLocalAddress());
+    }
+
+    @After
+    public void resetConnections()
+    {
+        DatabaseDescriptor.setInternodeCompression(Config.InternodeCompression.none);
+        MessagingService.instance().destroyConnectionPool(FBUtilities.getBroadcastAddress());
+    }
+
+    private static byte[] payload(int size)
+    {
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; i++)
+            payload[i] = (byte) (i % 251 + size);
+        return payload;
+    }
+
+    private static void sendAndWait(int count)
+    {
+        received.set(0);
+        corrupted.set(0);
+
+        final CountDownLatch responses = new CountDownLatch(count);
+        IAsyncCallback callback = new IAsyncCallback()
+        {
+            public void response(MessageIn msg)
+            {
+                responses.countDown();
+            }
+
+            public boolean isLatencyForSnitch()
+            {
+                return false;
+            }
+        };
+
+        InetAddress self = FBUtilities.getBroadcastAddress();
+        for (int i = 0; i < count; i++)
+        {
+            MessageOut<EchoMessage> message = new MessageOut<>(MessagingService.Verb.ECHO, EchoMessage.instance, EchoMessage.serializer);
+            // mostly small messages, with a few spanning several batches and compression blocks
+            message = message.withParameter(PAYLOAD_PARAM, payload(i % 100 == 0 ? 200 * 1024 + i : i % 1000));
+            MessagingService.instance().sendRR(message, self, callback);
+        }
+
+        try
+        {
+            assertTrue(responses.await(1, TimeUnit.MINUTES));
+        }
+        catch (InterruptedException e)
+        {
+            throw new AssertionError(e);
+        }
+        assertEquals(count, received.get());
+        assertEquals(0, corrupted.get());
+    }
+
+    @Test
+    public void testMessages()
+    {
+        sendAndWait(10000);
+    }
+
+    @Test
+    public void testCompressedMessages()
+    {
+        DatabaseDescriptor.setInternodeCompression(Config.InternodeCompression.all);
+        sendAndWait(10000);
+    }
+
+    @Test
+    public void testReconnect()
+    {
+        sendAndWait(100);
+        MessagingService.instance().getConnectionPool(FBUtilities.getBroadcastAddress()).reset();
+        sendAndWait(100);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.datastax.driver.core.Row;
+import org.apache.cassandra.concurrent.SEPExecutor;
+import org.apache.cassandra.concurrent.Stage;
+import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.CQLTester;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InlineLocalReadTest extends CQLTester
+{
+    private static final int READS = 200;
+
+    @BeforeClass
+    public static void setUp()
+    {
+        requireNetwork();
+    }
+
+    @After
+    public void resetInlineLocalReads()
+    {
+        DatabaseDescriptor.setInlineLocalReads(false);
+    }
+
+    private static long completedReadStageTasks()
+    {
+        return ((SEPExecutor) StageManager.getStage(Stage.READ)).getCompletedTasks();
+    }
+
+    private long readAll() throws Throwable
+    {
+        long before = completedReadStageTasks();
+        for (int i = 0; i < READS; i++)
+        {
+            Row row = executeNet(PROTOCOL_VERSIONS.get(PROTOCOL_VERSIONS.size() - 1), "SELECT v FROM %s WHERE k = ?", i % 10).one();
+            assertEquals(i % 10 * 2, row.getInt("v"));
+        }
+        return completedReadStageTasks() - before;
+    }
+
+    @Test
+    public void testInlineLocalReads() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, v int)");
+        for (int i = 0; i < 10; i++)
+            execute("INSERT INTO %s (k, v) VALUES (?, ?)", i, i * 2);
+        flush();
+
+        // every read goes through the read stage, even when it runs on the calling thread
+        assertTrue(readAll() >= READS);
+
+        // the reads no longer go through the read stage (but the driver may still issue a few reads of its own)
+        DatabaseDescriptor.setInlineLocalReads(true);
+        assertTrue(readAll() < READS / 2);
+    }
+
+    @Test
+    public void testInlineReadsAreBoundedByReadStage() throws Throwable
+    {
+        SEPExecutor stage = (SEPExecutor) StageManager.getStage(Stage.READ);
+        int concurrentReads = DatabaseDescriptor.getConcurrentReaders();
+        CountDownLatch running = new CountDownLatch(concurrentReads);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+
+        // take every work permit of the read stage with inline tasks
+        Thread[] threads = new Thread[concurrentReads];
+        for (int i = 0; i < threads.length; i++)
+        {
+            threads[i] = new Thread(() -> {
+                while (!stage.tryExecuteInline(() -> {
+                    ran.incrementAndGet();
+                    running.countDown();
+                    awaitUninterruptibly(release);
+                }))
+                    Thread.yield();
+            });
+            threads[i].start();
+        }
+
+        try
+        {
+            assertTrue(running.await(1, TimeUnit.MINUTES));
+            assertEquals(concurrentReads, stage.getActiveCount());
+
+            // no more reads run, inline or not, until one of them finishes
+            assertFalse(stage.tryExecuteInline(ran::incrementAndGet));
+            assertEquals(concurrentReads, ran.get());
+        }
+        finally
+        {
+            release.countDown();
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(0, stage.getActiveCount());
+        assertTrue(stage.tryExecuteInline(ran::incrementAndGet));
+        assertEquals(concurrentReads + 1, ran.get());
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+}
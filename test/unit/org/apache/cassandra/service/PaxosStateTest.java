@@ -33,6 +33,7 @@ import org.apache.cassandra.db.partitions.PartitionUpdate;
 import org.apache.cassandra.gms.Gossiper;
 import org.apache.cassandra.service.paxos.Commit;
 import org.apache.cassandra.service.paxos.PaxosState;
+import org.apache.cassandra.service.paxos.PrepareResponse;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.UUIDGen;
@@ -85,6 +86,59 @@ public class PaxosStateTest
         assertDataPresent(cfs, Util.dk(key), "val", value);
     }
 
+    @Test
+    public void testCachedStateMatchesPersistedState() throws Exception
+    {
+        ColumnFamilyStore cfs = Keyspace.open("PaxosStateTestKeyspace1").getColumnFamilyStore("Standard1");
+        String key = "key" + System.nanoTime();
+        RowUpdateBuilder builder = new RowUpdateBuilder(cfs.metadata, FBUtilities.timestampMicros(), key);
+        builder.clustering("a").add("val", ByteBufferUtil.bytes(0));
+        PartitionUpdate update = Iterables.getOnlyElement(builder.build().getPartitionUpdates());
+        long now = System.currentTimeMillis();
+
+        Commit older = newProposal(now, update);
+        Commit proposal = newProposal(now + 1, update);
+        assertTrue(PaxosState.prepare(proposal).promised);
+        assertTrue(PaxosState.propose(proposal));
+        PrepareResponse response = assertSameStateOnceEvicted(Commit.newPrepare(Util.dk(key), cfs.metadata, UUIDGen.getTimeUUID(now + 2)));
+        assertEquals(proposal.ballot, response.inProgressCommit.ballot);
+
+        // committing an older proposal doesn't erase the newer accepted one
+        PaxosState.commit(older);
+        response = assertSameStateOnceEvicted(Commit.newPrepare(Util.dk(key), cfs.metadata, UUIDGen.getTimeUUID(now + 4)));
+        assertEquals(proposal.ballot, response.inProgressCommit.ballot);
+        assertEquals(older.ballot, response.mostRecentCommit.ballot);
+
+        // committing the accepted proposal does
+        PaxosState.commit(proposal);
+        response = assertSameStateOnceEvicted(Commit.newPrepare(Util.dk(key), cfs.metadata, UUIDGen.getTimeUUID(now + 6)));
+        assertEquals(UUIDGen.minTimeUUID(0), response.inProgressCommit.ballot);
+        assertEquals(proposal.ballot, response.mostRecentCommit.ballot);
+
+        // a rejected promise returns the promised ballot
+        response = PaxosState.prepare(older);
+        assertFalse(response.promised);
+        assertEquals(UUIDGen.microsTimestamp(UUIDGen.getTimeUUID(now + 7)), UUIDGen.microsTimestamp(response.inProgressCommit.ballot));
+    }
+
+    /**
+     * Prepares the provided ballot, and a ballot 1ms newer once the cached state is evicted, checking the state
+     * returned from the cache and from system.paxos are the same.
+     */
+    private PrepareResponse assertSameStateOnceEvicted(Commit prepare)
+    {
+        PrepareResponse cached = PaxosState.prepare(prepare);
+        PaxosState.invalidateCache();
+        Commit newer = Commit.newPrepare(prepare.update.partitionKey(), prepare.update.metadata(), UUIDGen.getTimeUUID(UUIDGen.unixTimestamp(prepare.ballot) + 1));
+        PrepareResponse persisted = PaxosState.prepare(newer);
+
+        assertTrue(cached.promised);
+        assertTrue(persisted.promised);
+        assertEquals(cached.inProgressCommit.ballot, persisted.inProgressCommit.ballot);
+        assertEquals(cached.mostRecentCommit.ballot, persisted.mostRecentCommit.ballot);
+        return persisted;
+    }
+
     private Commit newProposal(long ballotMillis, PartitionUpdate update)
     {
         return Commit.newProposal(UUIDGen.getTimeUUID(ballotMillis), update);
@@ -17,6 +17,7 @@
  */
 package org.apache.cassandra.streaming;
 
+import java.io.File;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.util.*;
@@ -46,9 +47,12 @@ import org.apache.cassandra.db.partitions.*;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.schema.KeyspaceParams;
 import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.streaming.messages.OutgoingFileMessage;
+import org.apache.cassandra.streaming.messages.StreamMessage;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.concurrent.Refs;
@@ -346,6 +350,85 @@ public class StreamingTransferTest
         doTransferTable(true);
     }
 
+    @Test
+    public void testTransferEntireSSTable() throws Exception
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(CF_STANDARD);
+        cfs.truncateBlocking();
+
+        for (int i = 0; i < 10; i++)
+        {
+            new RowUpdateBuilder(cfs.metadata, FBUtilities.timestampMicros(), "key" + i)
+                .clustering("col")
+                .add("val", "val" + i)
+                .build()
+                .applyUnsafe();
+        }
+        cfs.forceBlockingFlush();
+
+        SSTableReader sstable = cfs.getLiveSSTables().iterator().next();
+        IPartitioner p = sstable.getPartitioner();
+        List<Range<Token>> allRanges = Collections.singletonList(new Range<>(p.getMinimumToken(), p.getMinimumToken()));
+        List<Range<Token>> someRanges = Collections.singletonList(new Range<>(p.getMinimumToken(), p.getToken(ByteBufferUtil.bytes("key5"))));
+
+        // only the transfers of all the ranges of an sstable send its files as they are
+        try (Refs<SSTableReader> refs = Refs.tryRef(Arrays.asList(sstable)))
+        {
+            assert newFileMessage(refs, sstable, allRanges).header.isEntireSSTable();
+            assert !newFileMessage(refs, sstable, someRanges).header.isEntireSSTable();
+            // peers on 3.0 don't know of entire sstables
+            assert !newFileMessage(refs, sstable, allRanges, StreamMessage.VERSION_30).header.isEntireSSTable();
+
+            DatabaseDescriptor.setStreamEntireSSTables(false);
+            try
+            {
+                assert !newFileMessage(refs, sstable, allRanges).header.isEntireSSTable();
+            }
+            finally
+            {
+                DatabaseDescriptor.setStreamEntireSSTables(true);
+            }
+        }
+
+        long dataLength = sstable.onDiskLength();
+        cfs.clearUnsafe();
+        transfer(sstable, allRanges);
+
+        // the received sstable is a copy of the sent one, with a rebuilt summary
+        assertEquals(1, cfs.getLiveSSTables().size());
+        SSTableReader received = cfs.getLiveSSTables().iterator().next();
+        assertEquals(dataLength, received.onDiskLength());
+        assert new File(received.descriptor.filenameFor(Component.SUMMARY)).exists();
+        assertEquals(10, Util.getAll(Util.cmd(cfs).build()).size());
+    }
+
+    private static OutgoingFileMessage newFileMessage(Refs<SSTableReader> refs, SSTableReader sstable, List<Range<Token>> ranges)
+    {
+        return newFileMessage(refs, sstable, ranges, StreamMessage.CURRENT_VERSION);
+    }
+
+    private static OutgoingFileMessage newFileMessage(Refs<SSTableReader> refs, SSTableReader sstable, List<Range<Token>> ranges, int protocolVersion)
+    {
+        return new OutgoingFileMessage(refs.get(sstable), 0, sstable.estimatedKeysForRanges(ranges), sstable.getPositionsForRanges(ranges), 0, false, protocolVersion);
+    }
+
+    @Test
+    public void testReceivedComponentNames()
+    {
+        assertEquals(Component.DATA, Component.parse(Component.DATA.name));
+        // custom names would be used as is to name the received files
+        try
+        {
+            Component.parse("../../../some-file");
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
     /*
     @Test
     public void testTransferTableCounter() throws Exception
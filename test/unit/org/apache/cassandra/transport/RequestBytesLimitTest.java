@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.transport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.metrics.ClientMetrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestBytesLimitTest extends CQLTester
+{
+    @After
+    public void resetLimits()
+    {
+        DatabaseDescriptor.setNativeTransportMaxConcurrentRequestsInMbPerConnection(-1);
+    }
+
+    @Test
+    public void testPausedConnectionsResume() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, v text)");
+        String table = KEYSPACE + '.' + currentTable();
+        Session session = sessionNet();
+
+        // with no bytes allowed in flight, connections get paused after each request until it is answered
+        DatabaseDescriptor.setNativeTransportMaxConcurrentRequestsInMbPerConnection(0);
+        long pauses = ClientMetrics.instance.connectionPauses.getCount();
+
+        List<ResultSetFuture> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            futures.add(session.executeAsync("INSERT INTO " + table + " (k, v) VALUES (" + i + ", 'v')"));
+        for (ResultSetFuture future : futures)
+            future.getUninterruptibly();
+
+        assertEquals(100, session.execute("SELECT * FROM " + table).all().size());
+        assertTrue(ClientMetrics.instance.connectionPauses.getCount() > pauses);
+
+        // everything is released once answered
+        Util.spinAssertEquals(0L, () -> ClientMetrics.instance.requestBytesInFlight.getCount(), 10);
+        Util.spinAssertEquals(0L, () -> ClientMetrics.instance.pausedConnections.getCount(), 10);
+    }
+}
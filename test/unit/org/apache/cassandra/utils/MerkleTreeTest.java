@@ -18,7 +18,9 @@
 */
 package org.apache.cassandra.utils;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import org.apache.cassandra.utils.AbstractIterator;
@@ -35,7 +37,6 @@ import org.apache.cassandra.io.util.DataInputBuffer;
 import org.apache.cassandra.io.util.DataInputPlus;
 import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.apache.cassandra.net.MessagingService;
-import org.apache.cassandra.utils.MerkleTree.Hashable;
 import org.apache.cassandra.utils.MerkleTree.RowHash;
 import org.apache.cassandra.utils.MerkleTree.TreeRange;
 import org.apache.cassandra.utils.MerkleTree.TreeRangeIterator;
@@ -406,6 +407,89 @@ public class MerkleTreeTest
         assertHashEquals(initialhash, restored.hash(full));
     }
 
+    @Test
+    public void testDeserializeInvalidSize() throws Exception
+    {
+        mt.maxsize(256);
+        mt.init();
+        for (TreeRange range : mt.invalids())
+            range.addAll(new HIterator(range.right));
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        MerkleTree.serializer.serialize(mt, out, MessagingService.current_version);
+
+        // the size follows the depth and the maximum size
+        assertInvalidSize(out.toByteArray(), Long.MAX_VALUE / 2);
+        assertInvalidSize(out.toByteArray(), 257);
+        assertInvalidSize(out.toByteArray(), 0);
+        // more nodes than the size allows
+        assertInvalidSize(out.toByteArray(), 128);
+
+        MerkleTree restored = MerkleTree.serializer.deserialize(new DataInputBuffer(out.toByteArray()), MessagingService.current_version);
+        assertEquals(256, restored.size());
+        restored.release();
+        restored.release();
+    }
+
+    private static void assertInvalidSize(byte[] serialized, long size)
+    {
+        ByteBuffer.wrap(serialized).putLong(1 + 8, size);
+        try
+        {
+            MerkleTree.serializer.deserialize(new DataInputBuffer(serialized), MessagingService.current_version);
+            fail("Expected a merkle tree of size " + size + " to be rejected");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testHashesLongerThanSlots()
+    {
+        Range<Token> full = new Range<>(tok(-1), tok(-1));
+        byte[] longhash = new byte[100];
+        for (int i = 0; i < longhash.length; i++)
+            longhash[i] = (byte) i;
+
+        mt.split(tok(4));
+        mt.split(tok(2));
+        Iterator<TreeRange> ranges = mt.invalids();
+        ranges.next().hash(DUMMY); // (4,-1]
+        ranges.next().hash(longhash); // (-1,2]
+        ranges.next().hash(DUMMY); // (2,4]
+
+        // widening the slots must keep the hashes already set
+        assertHashEquals(MerkleTree.binaryHash(MerkleTree.binaryHash(DUMMY, longhash), DUMMY), mt.hash(full));
+        assertHashEquals(longhash, mt.get(tok(1)).hash());
+        assertHashEquals(DUMMY, mt.get(tok(3)).hash());
+        assertHashEquals(DUMMY, mt.get(tok(5)).hash());
+    }
+
+    @Test
+    public void testSplitBeyondInitialCapacity() throws Exception
+    {
+        Range<Token> full = new Range<>(tok(-1), tok(-1));
+        TOKEN_SCALE = new BigInteger("1024");
+        for (int i = 1; i < 1024; i++)
+            assertTrue(mt.split(tok(i)));
+        assertEquals(1024, mt.size());
+
+        for (TreeRange range : mt.invalids())
+            range.addAll(new HIterator(range.right));
+        byte[] hash = mt.hash(full);
+        assertNotNull(hash);
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        MerkleTree.serializer.serialize(mt, out, MessagingService.current_version);
+        assertEquals(MerkleTree.serializer.serializedSize(mt, MessagingService.current_version), out.getLength());
+        MerkleTree restored = MerkleTree.serializer.deserialize(new DataInputBuffer(out.toByteArray()), MessagingService.current_version);
+        assertEquals(1024, restored.size());
+        assertHashEquals(hash, restored.hash(full));
+        assertTrue(MerkleTree.difference(mt, restored).isEmpty());
+    }
+
     @Test
     public void testDifference()
     {
@@ -463,7 +547,7 @@ public class MerkleTreeTest
             while (depth.equals(dstack.peek()))
             {
                 // consume the stack
-                hash = Hashable.binaryHash(hstack.pop(), hash);
+                hash = MerkleTree.binaryHash(hstack.pop(), hash);
                 depth = dstack.pop()-1;
             }
             dstack.push(depth);
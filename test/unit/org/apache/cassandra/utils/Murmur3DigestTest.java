@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import com.google.common.hash.Hashing;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class Murmur3DigestTest
+{
+    private static final Random rand = new Random(0);
+
+    @Test
+    public void testSameAsGuava()
+    {
+        Murmur3Digest digest = new Murmur3Digest();
+        for (int length = 0; length < 100; length++)
+        {
+            byte[] bytes = new byte[length];
+            rand.nextBytes(bytes);
+            digest.update(bytes);
+            assertArrayEquals("length " + length, guava(bytes), digest.digest());
+        }
+    }
+
+    @Test
+    public void testUpdatesInPieces()
+    {
+        Murmur3Digest digest = new Murmur3Digest();
+        for (int i = 0; i < 100; i++)
+        {
+            byte[] bytes = new byte[rand.nextInt(200)];
+            rand.nextBytes(bytes);
+
+            int offset = 0;
+            while (offset < bytes.length)
+            {
+                int length = Math.min(rand.nextInt(20), bytes.length - offset);
+                switch (rand.nextInt(4))
+                {
+                    case 0:
+                        digest.update(bytes[offset]);
+                        length = 1;
+                        break;
+                    case 1:
+                        digest.update(bytes, offset, length);
+                        break;
+                    case 2:
+                        digest.update(ByteBuffer.wrap(bytes, offset, length));
+                        break;
+                    default:
+                        ByteBuffer direct = ByteBuffer.allocateDirect(length + 3);
+                        direct.position(3);
+                        direct.put(bytes, offset, length);
+                        direct.position(3);
+                        digest.update(direct);
+                }
+                offset += length;
+            }
+            assertArrayEquals(guava(bytes), digest.digest());
+        }
+    }
+
+    private static byte[] guava(byte[] bytes)
+    {
+        return Hashing.murmur3_128().hashBytes(bytes).asBytes();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils.trie;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.UnsignedBytes;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryTrieTest
+{
+    private static final Comparator<byte[]> COMPARATOR = UnsignedBytes.lexicographicalComparator();
+
+    @Test
+    public void testEmpty()
+    {
+        InMemoryTrie<String> trie = new InMemoryTrie<>();
+        assertTrue(trie.isEmpty());
+        assertNull(trie.get(new byte[0]));
+        assertNull(trie.get(new byte[]{ 1, 2 }));
+        assertTrue(!trie.values().hasNext());
+        assertTrue(!trie.valuesFrom(new byte[]{ 1 }).hasNext());
+        trie.release();
+    }
+
+    @Test
+    public void testPrefixes()
+    {
+        InMemoryTrie<String> trie = new InMemoryTrie<>();
+        TreeMap<byte[], String> expected = new TreeMap<>(COMPARATOR);
+        for (byte[] key : new byte[][]{ { 1, 2, 3, 4 }, { 1, 2 }, { 1, 2, 3 }, {}, { 1, 2, 3, 5 }, { 1 }, { 2 }, { 1, 2, (byte) 0xFF } })
+            put(trie, expected, key);
+
+        assertNull(trie.putIfAbsent(new byte[]{ 3 }, "x"));
+        assertEquals("x", trie.putIfAbsent(new byte[]{ 3 }, "y"));
+        expected.put(new byte[]{ 3 }, "x");
+
+        verify(trie, expected);
+        trie.release();
+    }
+
+    @Test
+    public void testRandom()
+    {
+        Random random = new Random();
+        long seed = random.nextLong();
+        random.setSeed(seed);
+
+        InMemoryTrie<String> trie = new InMemoryTrie<>();
+        TreeMap<byte[], String> expected = new TreeMap<>(COMPARATOR);
+        for (int i = 0; i < 20000; i++)
+        {
+            // a small alphabet and a shared prefix to exercise node splits and upgrades
+            byte[] key = new byte[random.nextInt(12)];
+            for (int j = 0; j < key.length; j++)
+                key[j] = (byte) (j < 2 ? 7 : random.nextInt(random.nextBoolean() ? 3 : 256));
+            put(trie, expected, key);
+        }
+        assertEquals("seed " + seed, expected.size(), trie.size());
+        verify(trie, expected);
+
+        for (int i = 0; i < 1000; i++)
+        {
+            byte[] from = new byte[random.nextInt(6)];
+            for (int j = 0; j < from.length; j++)
+                from[j] = (byte) (j < 2 ? 7 : random.nextInt(256));
+            assertEquals("seed " + seed, Lists.newArrayList(expected.tailMap(from, true).values()), Lists.newArrayList(trie.valuesFrom(from)));
+        }
+        trie.release();
+    }
+
+    @Test
+    public void testLongKeys()
+    {
+        InMemoryTrie<String> trie = new InMemoryTrie<>();
+        TreeMap<byte[], String> expected = new TreeMap<>(COMPARATOR);
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++)
+        {
+            byte[] key = new byte[InMemoryTrie.MAX_CHAIN_LENGTH * 3 + random.nextInt(100)];
+            random.nextBytes(key);
+            put(trie, expected, key);
+            byte[] prefix = Arrays.copyOf(key, random.nextInt(key.length));
+            put(trie, expected, prefix);
+        }
+        verify(trie, expected);
+        trie.release();
+    }
+
+    @Test
+    public void testConcurrentReads() throws Throwable
+    {
+        final InMemoryTrie<Integer> trie = new InMemoryTrie<>();
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final int count = 50000;
+
+        // keys are inserted in random order, so each reader checks it sees a sorted subset of them
+        Thread reader = new Thread(() -> {
+            try
+            {
+                while (!done.get())
+                {
+                    int last = -1;
+                    Iterator<Integer> iter = trie.values();
+                    while (iter.hasNext())
+                    {
+                        int next = iter.next();
+                        assertTrue(next > last);
+                        assertEquals(Integer.valueOf(next), trie.get(key(next)));
+                        last = next;
+                    }
+                }
+            }
+            catch (Throwable t)
+            {
+                failure.set(t);
+            }
+        });
+        reader.start();
+
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            values.add(i);
+        Collections.shuffle(values);
+        for (Integer value : values)
+            trie.putIfAbsent(key(value), value);
+
+        done.set(true);
+        reader.join();
+        if (failure.get() != null)
+            throw failure.get();
+        assertEquals(count, trie.size());
+        trie.release();
+    }
+
+    private static byte[] key(int value)
+    {
+        return new byte[]{ (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value, 1, 2, 3 };
+    }
+
+    private static void put(InMemoryTrie<String> trie, TreeMap<byte[], String> expected, byte[] key)
+    {
+        String value = Arrays.toString(key);
+        String previous = expected.putIfAbsent(key, value);
+        assertEquals(previous, trie.putIfAbsent(key, value));
+    }
+
+    private static void verify(InMemoryTrie<String> trie, TreeMap<byte[], String> expected)
+    {
+        assertEquals(expected.size(), trie.size());
+        int step = Math.max(1, expected.size() / 200);
+        int i = 0;
+        for (Map.Entry<byte[], String> entry : expected.entrySet())
+        {
+            assertEquals(entry.getValue(), trie.get(entry.getKey()));
+            if (i++ % step == 0)
+                assertEquals(Lists.newArrayList(expected.tailMap(entry.getKey(), true).values()), Lists.newArrayList(trie.valuesFrom(entry.getKey())));
+        }
+        assertEquals(Lists.newArrayList(expected.values()), Lists.newArrayList(trie.values()));
+    }
+}